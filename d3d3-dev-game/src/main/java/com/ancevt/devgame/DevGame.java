@@ -5,19 +5,19 @@ import com.ancevt.d3d3.engine.core.Application;
 import com.ancevt.d3d3.engine.core.Engine;
 import com.ancevt.d3d3.engine.core.EngineContext;
 import com.ancevt.d3d3.engine.core.LaunchConfig;
+import com.ancevt.d3d3.engine.render.Light;
 import com.ancevt.d3d3.engine.render.ShaderProgram;
 import com.ancevt.d3d3.engine.scene.*;
-import com.ancevt.d3d3.engine.util.TextLoader;
 import com.ancevt.d3d3.engine.util.TransformUtil;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glUniform1i;
 import static org.lwjgl.opengl.GL20C.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL20C.GL_VERTEX_SHADER;
 
@@ -30,6 +30,8 @@ public class DevGame implements Application {
                         .width(2000)
                         .height(1000)
                         .title("D3D3 Dev")
+                        // правки текстур, моделей и шейдеров видны без перезапуска
+                        .hotReloadRoots(Path.of("d3d3-dev-game", "src", "main", "resources"))
                         .build()
         ).start(new DevGame());
     }
@@ -40,6 +42,19 @@ public class DevGame implements Application {
     public void init(EngineContext ctx) {
         this.ctx = ctx;
         AssetManager assetManager = ctx.getAssetManager();
+        System.out.println("Asset source: " + AssetSources.get().describe());
+        if (assetManager.isHotReloadEnabled()) {
+            System.out.printf("Hot reload: watching %s%n", assetManager.getHotReloadRoots());
+            assetManager.setHotReloadListener((key, nanos) ->
+                    System.out.printf("Hot reload: %s (%.1f ms)%n", key, nanos / 1e6));
+        }
+
+        // === Atlas === (декодируется в фоне, пока грузится skybox)
+        CompletableFuture<Atlas> atlasFuture = assetManager.buildAtlasAsync(new Atlas()
+                .addImage("ground", "/texture/ground1.png")
+                .addImage("wall", "/texture/wall.png")
+                .addImage("sq-tiger", "/texture/sq-tiger.png")
+                .debugSave("test_atlas.png"));
 
         // === Skybox ===
         String[] faces = {
@@ -53,25 +68,19 @@ public class DevGame implements Application {
         int cubemapTex = TextureLoader.loadCubemap(faces);
 
         ShaderProgram skyboxShader = new ShaderProgram();
-        skyboxShader.attachShader(TextLoader.load("shaders/skybox.vert"), GL_VERTEX_SHADER);
-        skyboxShader.attachShader(TextLoader.load("shaders/skybox.frag"), GL_FRAGMENT_SHADER);
+        skyboxShader.attachShaderResource("shaders/skybox.vert", GL_VERTEX_SHADER);
+        skyboxShader.attachShaderResource("shaders/skybox.frag", GL_FRAGMENT_SHADER);
         skyboxShader.link();
+        assetManager.watchShader(skyboxShader);
 
         skyboxShader.use();
-        int loc = glGetUniformLocation(skyboxShader.getId(), "skybox");
-        glUniform1i(loc, 0);
+        skyboxShader.uniformInt("skybox").set(0);
 
         Engine.skybox = new Skybox(cubemapTex, skyboxShader);
 
-        // === Atlas ===
-        Atlas atlas = new Atlas()
-                .addImage("ground", "/texture/ground1.png")
-                .addImage("wall", "/texture/wall.png")
-                .addImage("sq-tiger", "/texture/sq-tiger.png")
-                .build();
-
-
-        atlas.debugSave("test_atlas.png");
+        Atlas atlas = assetManager.getUploadQueue().await(atlasFuture);
+        System.out.printf("Atlas packed into %d page(s) %s, efficiency %.1f%%%n",
+                atlas.getPageCount(), atlas.getPageSizes(), atlas.getPackingEfficiency() * 100);
 
 
         // === Генерация многоэтажного лабиринта ===
@@ -82,6 +91,17 @@ public class DevGame implements Application {
                 6,   // размер куба
                 atlas // передаём атлас
         );
+
+        // === Губка Менгера (.vox) ===
+        VoxModel sponge = assetManager.loadVox("models/menger.vox");
+        VoxelVolume volume = sponge.volume;
+        System.out.printf("VOX menger: %dx%dx%d, %d voxels; triangles: cubes %d, visible faces %d, greedy %d%n",
+                volume.getSizeX(), volume.getSizeY(), volume.getSizeZ(), volume.getSolidCount(),
+                volume.getSolidCount() * 12, sponge.faceCount * 2, sponge.mesh.getTriangleCount());
+        GameObjectNode spongeNode = new GameObjectNode(sponge.mesh, sponge.paletteTexture);
+        spongeNode.setPosition(-100, 0, -100);
+        spongeNode.setCollidable(false);
+        ctx.getEngine().root.addChild(spongeNode);
     }
 
 
@@ -98,6 +118,8 @@ public class DevGame implements Application {
 
         float wallDensity = 0.4f;   // вероятность появления стены (40%)
         float holeChance = 0.3f;    // вероятность дыры в полу (30%)
+        float torchChance = 0.05f;  // вероятность факела над полом (5%)
+        int torches = 0;
 
         for (int y = 0; y < sizeY; y++) {
             for (int x = 0; x < sizeX; x++) {
@@ -151,6 +173,17 @@ public class DevGame implements Application {
                                             z * cubeSize + cubeSize / 2f
                                     )
                             ));
+
+                            if (rand.nextFloat() < torchChance) {
+                                // тёплый свет чуть ниже потолка, цвет слегка гуляет от факела к факелу
+                                ctx.getEngine().getLighting().add(new Light(
+                                        new Vector3f(x * cubeSize, y * cubeSize + cubeSize * 0.8f, z * cubeSize),
+                                        new Vector3f(1.0f, 0.55f + rand.nextFloat() * 0.2f, 0.2f),
+                                        1.5f,
+                                        cubeSize * 2.5f
+                                ));
+                                torches++;
+                            }
                         }
                     }
 
@@ -158,18 +191,18 @@ public class DevGame implements Application {
             }
         }
 
-        // === Сборка в один меш ===
-        int totalLen = chunks.stream().mapToInt(a -> a.length).sum();
-        float[] merged = new float[totalLen];
-        int pos = 0;
+        // === Раскладка по чанкам 4x4x4 куба: каждый отсекается и перестраивается отдельно ===
+        // 12 байт на вершину вместо 32: стены лабиринта не требуют float-точности
+        ChunkedMeshNode level = new ChunkedMeshNode(cubeSize * 4, atlas.getTextureId(), VertexLayout.FIXED);
         for (float[] arr : chunks) {
-            System.arraycopy(arr, 0, merged, pos, arr.length);
-            pos += arr.length;
+            level.addVertices(arr);
         }
-
-        Mesh mesh = new Mesh(merged, 8);
-        MazeNode node = new MazeNode(mesh, atlas.getTextureId(), colliders);
-        ctx.getEngine().root.addChild(node);
+        for (AABB collider : colliders) {
+            level.addCollider(collider);
+        }
+        level.build();
+        System.out.printf("Maze: %d chunks, %d triangles, %d torches%n", level.getChunkCount(), level.getTriangleCount(), torches);
+        ctx.getEngine().root.addChild(level);
     }
 
 
@@ -232,6 +265,14 @@ public class DevGame implements Application {
         AssetManager assetManager = ctx.getAssetManager();
 
         OBJModel obj1 = assetManager.loadObj("models/" + filename);
+        if (obj1.optimizeStats != null) {
+            System.out.printf("OBJ %s: %s%n", filename, obj1.optimizeStats);
+        }
+        StringBuilder chain = new StringBuilder().append(obj1.mesh.getTriangleCount());
+        for (int lod = 1; lod < obj1.mesh.getLodCount(); lod++) {
+            chain.append(String.format(" -> %d (%.4f)", obj1.mesh.getTriangleCount(lod), obj1.mesh.getLodErrors()[lod]));
+        }
+        System.out.printf("OBJ %s: LOD triangles %s%n", filename, chain);
         int tex1 = assetManager.loadTexture("texture/wall.png", true);
         GameObjectNode go1 = new GameObjectNode(obj1.mesh, tex1);
         go1.setPosition(x, y, z);
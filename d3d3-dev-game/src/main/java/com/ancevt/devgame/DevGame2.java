@@ -18,8 +18,6 @@ import org.joml.Vector3f;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glUniform1i;
 import static org.lwjgl.opengl.GL20C.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL20C.GL_VERTEX_SHADER;
 
@@ -60,8 +58,7 @@ public class DevGame2 implements Application {
         skyboxShader.link();
 
         skyboxShader.use();
-        int loc = glGetUniformLocation(skyboxShader.getId(), "skybox");
-        glUniform1i(loc, 0);
+        skyboxShader.uniformInt("skybox").set(0);
 
         Engine.skybox = new Skybox(cubemapTex, skyboxShader);
 
@@ -70,10 +67,9 @@ public class DevGame2 implements Application {
                 .addImage("ground", "/texture/ground1.png")
                 .addImage("wall", "/texture/wall.png")
                 .addImage("sq-tiger", "/texture/sq-tiger.png")
+                .debugSave("test_atlas.png")
                 .build();
 
-        atlas.debugSave("test_atlas.png");
-
         generateLevel(atlas);
     }
 
@@ -108,7 +104,7 @@ public class DevGame2 implements Application {
             float[] cube = MeshFactory.createTexturedCube(cubeSize, wallUV);
             Matrix4f transform = new Matrix4f().translate(x, y + i * cubeSize + cubeSize / 2, z);
             float[] verts = TransformUtil.transformVertices(cube, transform);
-            Mesh mesh = new Mesh(verts, 8);
+            Mesh mesh = MeshFactory.createIndexedMesh(verts, 8);
             MazeNode node = new MazeNode(mesh, atlas.getTextureId(), List.of(
                     new AABB(new Vector3f(x - cubeSize/2, y+i*cubeSize, z - cubeSize/2),
                             new Vector3f(x + cubeSize/2, y+(i+1)*cubeSize, z + cubeSize/2))
@@ -129,7 +125,7 @@ public class DevGame2 implements Application {
                 float[] floorVerts = MeshFactory.createFloorTile(tileSize, 0.1f, uv);
                 Matrix4f transform = new Matrix4f().translate(offsetX + x * tileSize, offsetY, offsetZ + z * tileSize);
                 float[] verts = TransformUtil.transformVertices(floorVerts, transform);
-                Mesh mesh = new Mesh(verts, 8);
+                Mesh mesh = MeshFactory.createIndexedMesh(verts, 8);
                 ctx.getEngine().root.addChild(new MazeNode(mesh, atlas.getTextureId(), List.of()));
             }
         }
@@ -137,8 +133,7 @@ public class DevGame2 implements Application {
 
     private void placeCube(Atlas atlas, String tex, float x, float y, float z) {
         UVRect uv = atlas.getUV(tex);
-        float[] verts = MeshFactory.createTexturedCube(6, uv);
-        Mesh mesh = new Mesh(verts, 8);
+        Mesh mesh = MeshFactory.createTexturedCubeMesh(6, uv);
         GameObjectNode node = new GameObjectNode(mesh, atlas.getTextureId());
         node.setPosition(x, y, z);
         ctx.getEngine().root.addChild(node);
@@ -247,15 +242,12 @@ public class DevGame2 implements Application {
         }
 
         // === Сборка меша ===
-        int totalLen = chunks.stream().mapToInt(a -> a.length).sum();
-        float[] merged = new float[totalLen];
-        int pos = 0;
+        MeshBuilder builder = new MeshBuilder(8);
         for (float[] arr : chunks) {
-            System.arraycopy(arr, 0, merged, pos, arr.length);
-            pos += arr.length;
+            builder.addVertices(arr);
         }
 
-        Mesh mesh = new Mesh(merged, 8);
+        Mesh mesh = builder.build();
         MazeNode node = new MazeNode(mesh, atlas.getTextureId(), colliders);
         ctx.getEngine().root.addChild(node);
     }
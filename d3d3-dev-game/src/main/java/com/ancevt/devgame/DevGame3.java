@@ -18,8 +18,6 @@ import org.joml.Vector3f;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.lwjgl.opengl.GL20.glGetUniformLocation;
-import static org.lwjgl.opengl.GL20.glUniform1i;
 import static org.lwjgl.opengl.GL20C.GL_FRAGMENT_SHADER;
 import static org.lwjgl.opengl.GL20C.GL_VERTEX_SHADER;
 
@@ -60,8 +58,7 @@ public class DevGame3 implements Application {
         skyboxShader.link();
 
         skyboxShader.use();
-        int loc = glGetUniformLocation(skyboxShader.getId(), "skybox");
-        glUniform1i(loc, 0);
+        skyboxShader.uniformInt("skybox").set(0);
 
         Engine.skybox = new Skybox(cubemapTex, skyboxShader);
 
@@ -70,11 +67,9 @@ public class DevGame3 implements Application {
                 .addImage("ground", "/texture/ground1.png")
                 .addImage("wall", "/texture/wall.png")
                 .addImage("sq-tiger", "/texture/sq-tiger.png")
+                .debugSave("test_atlas.png")
                 .build();
 
-
-        atlas.debugSave("test_atlas.png");
-
         new LevelShowcase(ctx).build(atlas, 6f);
     }
 
@@ -180,15 +175,12 @@ public class DevGame3 implements Application {
         }
 
         // === Сборка меша ===
-        int totalLen = chunks.stream().mapToInt(a -> a.length).sum();
-        float[] merged = new float[totalLen];
-        int pos = 0;
+        MeshBuilder builder = new MeshBuilder(8);
         for (float[] arr : chunks) {
-            System.arraycopy(arr, 0, merged, pos, arr.length);
-            pos += arr.length;
+            builder.addVertices(arr);
         }
 
-        Mesh mesh = new Mesh(merged, 8);
+        Mesh mesh = builder.build();
         MazeNode node = new MazeNode(mesh, atlas.getTextureId(), colliders);
         ctx.getEngine().root.addChild(node);
     }
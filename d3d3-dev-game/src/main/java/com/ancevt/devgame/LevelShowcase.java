@@ -14,9 +14,22 @@ import java.util.Random;
 
 public class LevelShowcase {
 
+    // материалы блоков: номер в BlockGrid -> тайл атласа
+    public static final int WALL = 1;
+    public static final int GROUND = 2;
+    public static final int TIGER = 3;
+    // куб — два блока сетки по высоте (блок — плита пола в полкуба)
+    private static final int CUBE_BLOCKS = 2;
+
     private final EngineContext ctx;
     private final Random rnd = new Random(1337); // фиксированный seed
 
+    // всё, что лежит на сетке (кубы и плиты пола), — блоки; остальное (ступени лестниц) — куски меша
+    private BlockGrid grid;
+    // сколько было бы треугольников и вершин, если бы каждый куб и плита были отдельным мешем
+    private int pieceTriangles;
+    private int pieceVertices;
+
     public LevelShowcase(EngineContext ctx) {
         this.ctx = ctx;
     }
@@ -29,82 +42,114 @@ public class LevelShowcase {
         UVRect UV_GROUND = atlas.getUV("ground");
         UVRect UV_TIGER = atlas.getUV("sq-tiger");
 
-        float groundH = 3f;
+        BlockGrid levelGrid = layout(unit, UV_WALL, UV_GROUND, chunks, colliders);
+
+        // ---- блоки: только открытые грани, слитые в квады; коллайдеры — слитые боксы
+        float chunkSize = unit * 8;
+        BlockMesher mesher = new BlockMesher(new UVRect[]{null, UV_WALL, UV_GROUND, UV_TIGER}, unit, chunkSize);
+        long start = System.nanoTime();
+        BlockMesher.Result blocks = mesher.mesh(levelGrid);
+        System.out.printf("Showcase blocks: %d blocks, %d open faces -> %d quads, %d colliders in %.1f ms%n",
+                blocks.blockCount(), blocks.faceCount(), blocks.quadCount(), blocks.colliderCount(),
+                (System.nanoTime() - start) / 1e6);
+
+        // ---- раскладываем по чанкам 8x8x8 юнитов и добавляем в сцену
+        ChunkedMeshNode level = new ChunkedMeshNode(chunkSize, atlas.getTextureId(), VertexLayout.FIXED_TILED);
+        level.addBlocks(blocks);
+        for (float[] a : chunks) {
+            level.addVertices(MeshFactory.withEmptyTile(a));
+        }
+        for (AABB collider : colliders) {
+            level.addCollider(collider);
+        }
+        level.build();
+        System.out.printf("Showcase: %d chunks, %d triangles, %d vertices (as separate cubes: %d triangles, %d vertices)%n",
+                level.getChunkCount(), level.getTriangleCount(), level.getVertexCount(),
+                pieceTriangles, pieceVertices);
+        ctx.getEngine().root.addChild(level);
+    }
+
+    /**
+     * Раскладка уровня без GL: кубы и плиты пола — блоки сетки (материалы {@link #WALL}, {@link #GROUND},
+     * {@link #TIGER}), ступени лестниц — куски меша (stride 8) в chunks и коллайдеры в colliders.
+     */
+    public BlockGrid layout(float unit, UVRect UV_WALL, UVRect UV_GROUND, List<float[]> chunks, List<AABB> colliders) {
+        // плита пола — полблока куба, чтобы пол и кубы легли на одну сетку
+        float groundH = unit / 2f;
 
         // ---- параметры зоны
         float ox = 0, oy = 0, oz = 0;
 
+        // блок сетки — unit x groundH x unit, центры кубов — в узлах (ox + x * unit, oz + z * unit)
+        grid = new BlockGrid(new Vector3f(ox - unit / 2f, oy - groundH, oz - unit / 2f), new Vector3f(unit, groundH, unit));
+        pieceTriangles = 0;
+        pieceVertices = 0;
+
         // 1) Центральная площадь с мозаикой
         int plazaX = 48, plazaZ = 48;
-        addMosaicFloor(chunks, colliders, UV_GROUND, unit, groundH, ox, oy, oz, plazaX, plazaZ);
+        addMosaicFloor(GROUND, unit, groundH, ox, oy, oz, plazaX, plazaZ);
 
         // 2) Периметр — колоннада (столбики) + низкая стена
-        addColonnade(chunks, colliders, UV_WALL, unit, ox, oy, oz, plazaX, plazaZ, 4);
+        addColonnade(WALL, unit, ox, oy, oz, plazaX, plazaZ, 4);
 
         // 3) Арочные стены на входах (с «окнами»)
-        addArches(chunks, colliders, UV_WALL, UV_TIGER, unit, ox, oy, oz, plazaX, plazaZ, 6, 8);
+        addArches(WALL, TIGER, unit, ox, oy, oz, plazaX, plazaZ, 6, 8);
 
-        // 4) Две лестницы на террасы (слева/справа)
+        // 4) Две лестницы на террасы (слева/справа) — ступени на 0.6 юнита, мимо сетки
         addStairs(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
                 ox - unit * 10, oy, oz + unit * 4, 10, 8, +1);
         addStairs(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
                 ox + unit * (plazaX + 2), oy, oz + unit * (plazaZ - 12), 10, 8, -1);
 
         // 5) Мостики через «ямы/воду»
-        addPitsAndBridges(chunks, colliders, UV_GROUND, UV_WALL, unit, groundH,
+        addPitsAndBridges(GROUND, WALL, unit, groundH,
                 ox + unit * 4, oy, oz + unit * (plazaZ / 2 - 6), 8, 6);
-        addPitsAndBridges(chunks, colliders, UV_GROUND, UV_WALL, unit, groundH,
+        addPitsAndBridges(GROUND, WALL, unit, groundH,
                 ox + unit * (plazaX - 12), oy, oz + unit * (plazaZ / 2 + 2), 8, 6);
 
         // 6) Узкие коридоры-каньоны, ведущие в «залы»
-        addCanyonCorridor(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
+        addCanyonCorridor(WALL, GROUND, unit, groundH,
                 ox + unit * (plazaX + 8), oy, oz + unit * 4, 18, 3, 6);
-        addCanyonCorridor(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
+        addCanyonCorridor(WALL, GROUND, unit, groundH,
                 ox - unit * (18), oy, oz + unit * (plazaZ - 8), 18, 3, 6);
 
         // 7) Два «зала»: решётка колонн + ажурные стены
-        addHall(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
+        addHall(WALL, GROUND, unit, groundH,
                 ox + unit * (plazaX + 8 + 18), oy, oz + unit * 2, 16, 12, 6);
-        addHall(chunks, colliders, UV_WALL, UV_GROUND, unit, groundH,
+        addHall(WALL, GROUND, unit, groundH,
                 ox - unit * (18 + 16), oy, oz + unit * (plazaZ - 14), 16, 12, 6);
 
         // 8) Несколько «скульптур»/обелисков на площади
-        addObelisks(chunks, colliders, UV_TIGER, unit, ox + unit * 6, oy, oz + unit * 6);
-        addObelisks(chunks, colliders, UV_TIGER, unit, ox + unit * (plazaX - 10), oy, oz + unit * (plazaZ - 10));
+        addObelisks(TIGER, unit, ox + unit * 6, oy, oz + unit * 6);
+        addObelisks(TIGER, unit, ox + unit * (plazaX - 10), oy, oz + unit * (plazaZ - 10));
 
-        // ---- мерджим и добавляем в сцену
-        int total = chunks.stream().mapToInt(a -> a.length).sum();
-        float[] merged = new float[total];
-        int p = 0;
-        for (float[] a : chunks) {
-            System.arraycopy(a, 0, merged, p, a.length);
-            p += a.length;
-        }
+        // ступени лестниц — тоже кубы и плиты: 12 треугольников, 24 вершины после сварки
+        pieceTriangles += 12 * chunks.size();
+        pieceVertices += 24 * chunks.size();
+        return grid;
+    }
+
+    /** Треугольников, если бы каждый куб и плита пола уровня были отдельным мешем (после {@link #layout}) */
+    public int getPieceTriangles() {
+        return pieceTriangles;
+    }
 
-        Mesh mesh = new Mesh(merged, 8);
-        MazeNode node = new MazeNode(mesh, atlas.getTextureId(), colliders);
-        ctx.getEngine().root.addChild(node);
+    public int getPieceVertices() {
+        return pieceVertices;
     }
 
     // ---------- Блоки-помощники ----------
 
-    private void addMosaicFloor(List<float[]> chunks, List<AABB> col, UVRect uv, float unit, float h,
+    private void addMosaicFloor(int material, float unit, float h,
                                 float ox, float oy, float oz, int sx, int sz) {
         for (int x = 0; x < sx; x++) {
             for (int z = 0; z < sz; z++) {
-                float[] tile = MeshFactory.createFloorTile(unit, h, uv);
-                Matrix4f tr = new Matrix4f()
-                        .translate(ox + x * unit, oy - h / 2f, oz + z * unit)
-                        .rotate((x + z) % 2 == 0 ? 0f : (float) Math.PI, 0, 1, 0); // простая «мозаика»
-                chunks.add(TransformUtil.transformVertices(tile, tr));
-                addBox(col,
-                        ox + x * unit - unit / 2f, oy - h, oz + z * unit - unit / 2f,
-                        ox + x * unit + unit / 2f, oy, oz + z * unit + unit / 2f);
+                placeFloorTile(material, ox + x * unit, oy - h / 2f, oz + z * unit);
             }
         }
     }
 
-    private void addColonnade(List<float[]> chunks, List<AABB> col, UVRect uv, float unit,
+    private void addColonnade(int material, float unit,
                               float ox, float oy, float oz, int sx, int sz, int height) {
         // столбики по периметру каждые 3 клетки
         for (int x = 0; x < sx; x++) {
@@ -114,16 +159,7 @@ public class LevelShowcase {
                 if ((x + z) % 3 != 0) continue;
 
                 for (int y = 0; y < height; y++) {
-                    float[] cube = MeshFactory.createTexturedCube(unit, uv);
-                    Matrix4f tr = new Matrix4f().translate(
-                            ox + x * unit,
-                            oy + y * unit + unit / 2f,
-                            oz + z * unit
-                    );
-                    chunks.add(TransformUtil.transformVertices(cube, tr));
-                    addBox(col,
-                            ox + x * unit - unit / 2f, oy + y * unit, oz + z * unit - unit / 2f,
-                            ox + x * unit + unit / 2f, oy + (y + 1) * unit, oz + z * unit + unit / 2f);
+                    placeCube(material, unit, ox + x * unit, oy + y * unit + unit / 2f, oz + z * unit);
                 }
             }
         }
@@ -132,43 +168,30 @@ public class LevelShowcase {
         for (int x = 1; x < sx - 1; x++) {
             for (int side = 0; side < 2; side++) {
                 int z = (side == 0) ? 1 : sz - 2;
-                float[] cube = MeshFactory.createTexturedCube(unit, uv);
-                Matrix4f tr = new Matrix4f().translate(ox + x * unit, oy + unit / 2f, oz + z * unit);
-                chunks.add(TransformUtil.transformVertices(cube, tr));
-                addBox(col,
-                        ox + x * unit - unit / 2f, oy, oz + z * unit - unit / 2f,
-                        ox + x * unit + unit / 2f, oy + unit, oz + z * unit + unit / 2f);
+                placeCube(material, unit, ox + x * unit, oy + unit / 2f, oz + z * unit);
             }
         }
         for (int z = 1; z < sz - 1; z++) {
             for (int side = 0; side < 2; side++) {
                 int x = (side == 0) ? 1 : sx - 2;
-                float[] cube = MeshFactory.createTexturedCube(unit, uv);
-                Matrix4f tr = new Matrix4f().translate(ox + x * unit, oy + unit / 2f, oz + z * unit);
-                chunks.add(TransformUtil.transformVertices(cube, tr));
-                addBox(col,
-                        ox + x * unit - unit / 2f, oy, oz + z * unit - unit / 2f,
-                        ox + x * unit + unit / 2f, oy + unit, oz + z * unit + unit / 2f);
+                placeCube(material, unit, ox + x * unit, oy + unit / 2f, oz + z * unit);
             }
         }
     }
 
-    private void addArches(List<float[]> chunks, List<AABB> col, UVRect uvWall, UVRect uvCenter,
-                           float unit, float ox, float oy, float oz,
+    private void addArches(int wall, int center, float unit, float ox, float oy, float oz,
                            int sx, int sz, int archH, int archSpan) {
         // север/юг
         for (int x = sx / 2 - archSpan / 2; x <= sx / 2 + archSpan / 2; x++) {
             for (int h = 0; h < archH; h++) {
                 boolean window = (h == archH / 2) && (x % 2 == 0);
-                UVRect uv = window ? uvCenter : uvWall;
+                int material = window ? center : wall;
 
                 // северная стенка
-                placeCube(chunks, col, uv, unit,
-                        ox + x * unit, oy + h * unit + unit / 2f, oz - unit);
+                placeCube(material, unit, ox + x * unit, oy + h * unit + unit / 2f, oz - unit);
 
                 // южная стенка
-                placeCube(chunks, col, uv, unit,
-                        ox + x * unit, oy + h * unit + unit / 2f, oz + sz * unit);
+                placeCube(material, unit, ox + x * unit, oy + h * unit + unit / 2f, oz + sz * unit);
             }
         }
 
@@ -176,15 +199,13 @@ public class LevelShowcase {
         for (int z = sz / 2 - archSpan / 2; z <= sz / 2 + archSpan / 2; z++) {
             for (int h = 0; h < archH; h++) {
                 boolean window = (h == archH / 2) && (z % 2 == 1);
-                UVRect uv = window ? uvCenter : uvWall;
+                int material = window ? center : wall;
 
                 // западная стенка
-                placeCube(chunks, col, uv, unit,
-                        ox - unit, oy + h * unit + unit / 2f, oz + z * unit);
+                placeCube(material, unit, ox - unit, oy + h * unit + unit / 2f, oz + z * unit);
 
                 // восточная стенка
-                placeCube(chunks, col, uv, unit,
-                        ox + sx * unit, oy + h * unit + unit / 2f, oz + z * unit);
+                placeCube(material, unit, ox + sx * unit, oy + h * unit + unit / 2f, oz + z * unit);
             }
         }
     }
@@ -219,76 +240,59 @@ public class LevelShowcase {
         }
     }
 
-    private void addPitsAndBridges(List<float[]> chunks, List<AABB> col,
-                                   UVRect uvGround, UVRect uvWall,
-                                   float unit, float groundH,
+    private void addPitsAndBridges(int ground, int wall, float unit, float groundH,
                                    float ox, float oy, float oz, int sx, int sz) {
         // яма — просто не кладём часть пола и при этом делаем «бордюры»
         for (int x = 0; x < sx; x++) {
             for (int z = 0; z < sz; z++) {
                 boolean hole = (x > 1 && x < sx - 2 && z > 1 && z < sz - 2);
                 if (!hole || (x == sx / 2)) { // мостик по центру X
-                    float[] tile = MeshFactory.createFloorTile(unit, groundH, uvGround);
-                    Matrix4f tr = new Matrix4f().translate(ox + x * unit, oy - groundH / 2f, oz + z * unit);
-                    chunks.add(TransformUtil.transformVertices(tile, tr));
-                    addBox(col,
-                            ox + x * unit - unit / 2f, oy - groundH, oz + z * unit - unit / 2f,
-                            ox + x * unit + unit / 2f, oy, oz + z * unit + unit / 2f);
+                    placeFloorTile(ground, ox + x * unit, oy - groundH / 2f, oz + z * unit);
                 }
             }
         }
 
         // борта «ямы» кубами
         for (int x = 1; x < sx - 1; x++) {
-            placeCube(chunks, col, uvWall, unit, ox + x * unit, oy + unit / 2f, oz + 1 * unit);
-            placeCube(chunks, col, uvWall, unit, ox + x * unit, oy + unit / 2f, oz + (sz - 2) * unit);
+            placeCube(wall, unit, ox + x * unit, oy + unit / 2f, oz + 1 * unit);
+            placeCube(wall, unit, ox + x * unit, oy + unit / 2f, oz + (sz - 2) * unit);
         }
         for (int z = 1; z < sz - 1; z++) {
-            placeCube(chunks, col, uvWall, unit, ox + 1 * unit, oy + unit / 2f, oz + z * unit);
-            placeCube(chunks, col, uvWall, unit, ox + (sx - 2) * unit, oy + unit / 2f, oz + z * unit);
+            placeCube(wall, unit, ox + 1 * unit, oy + unit / 2f, oz + z * unit);
+            placeCube(wall, unit, ox + (sx - 2) * unit, oy + unit / 2f, oz + z * unit);
         }
     }
 
-    private void addCanyonCorridor(List<float[]> chunks, List<AABB> col, UVRect uvWall, UVRect uvGround,
-                                   float unit, float groundH, float ox, float oy, float oz,
-                                   int len, int width, int height) {
+    private void addCanyonCorridor(int wall, int ground, float unit, float groundH,
+                                   float ox, float oy, float oz, int len, int width, int height) {
         // пол
         for (int i = 0; i < len; i++) {
             for (int w = 0; w < width; w++) {
-                float[] tile = MeshFactory.createFloorTile(unit, groundH, uvGround);
-                Matrix4f tr = new Matrix4f().translate(ox + i * unit, oy - groundH / 2f, oz + w * unit);
-                chunks.add(TransformUtil.transformVertices(tile, tr));
-                addBox(col,
-                        ox + i * unit - unit / 2f, oy - groundH, oz + w * unit - unit / 2f,
-                        ox + i * unit + unit / 2f, oy, oz + w * unit + unit / 2f);
+                placeFloorTile(ground, ox + i * unit, oy - groundH / 2f, oz + w * unit);
             }
         }
         // стены-каньона
         for (int i = 0; i < len; i++) {
             for (int h = 0; h < height; h++) {
                 // левая
-                placeCube(chunks, col, uvWall, unit,
-                        ox + i * unit, oy + h * unit + unit / 2f, oz - unit);
+                placeCube(wall, unit, ox + i * unit, oy + h * unit + unit / 2f, oz - unit);
                 // правая
-                placeCube(chunks, col, uvWall, unit,
-                        ox + i * unit, oy + h * unit + unit / 2f, oz + width * unit);
+                placeCube(wall, unit, ox + i * unit, oy + h * unit + unit / 2f, oz + width * unit);
             }
         }
     }
 
-    private void addHall(List<float[]> chunks, List<AABB> col, UVRect uvWall, UVRect uvGround,
-                         float unit, float groundH, float ox, float oy, float oz,
-                         int sx, int sz, int h) {
+    private void addHall(int wall, int ground, float unit, float groundH,
+                         float ox, float oy, float oz, int sx, int sz, int h) {
         // пол
-        addMosaicFloor(chunks, col, uvGround, unit, groundH, ox, oy, oz, sx, sz);
+        addMosaicFloor(ground, unit, groundH, ox, oy, oz, sx, sz);
 
         // сетка колонн 3x3 шаг
         for (int x = 2; x < sx - 2; x += 3) {
             for (int z = 2; z < sz - 2; z += 3) {
                 int height = h + (x + z) % 3;
                 for (int yy = 0; yy < height; yy++) {
-                    placeCube(chunks, col, uvWall, unit,
-                            ox + x * unit, oy + yy * unit + unit / 2f, oz + z * unit);
+                    placeCube(wall, unit, ox + x * unit, oy + yy * unit + unit / 2f, oz + z * unit);
                 }
             }
         }
@@ -298,10 +302,8 @@ public class LevelShowcase {
             for (int yy = 0; yy < h; yy++) {
                 boolean window = yy == h / 2 && (x % 2 == 0);
                 if (x == 0 || x == sx - 1) {
-                    placeCube(chunks, col, window ? uvGround : uvWall, unit,
-                            ox + x * unit, oy + yy * unit + unit / 2f, oz - unit);
-                    placeCube(chunks, col, window ? uvGround : uvWall, unit,
-                            ox + x * unit, oy + yy * unit + unit / 2f, oz + sz * unit);
+                    placeCube(window ? ground : wall, unit, ox + x * unit, oy + yy * unit + unit / 2f, oz - unit);
+                    placeCube(window ? ground : wall, unit, ox + x * unit, oy + yy * unit + unit / 2f, oz + sz * unit);
                 }
             }
         }
@@ -309,33 +311,38 @@ public class LevelShowcase {
             for (int yy = 0; yy < h; yy++) {
                 boolean window = yy == h / 2 && (z % 2 == 1);
                 if (z == 0 || z == sz - 1) {
-                    placeCube(chunks, col, window ? uvGround : uvWall, unit,
-                            ox - unit, oy + yy * unit + unit / 2f, oz + z * unit);
-                    placeCube(chunks, col, window ? uvGround : uvWall, unit,
-                            ox + sx * unit, oy + yy * unit + unit / 2f, oz + z * unit);
+                    placeCube(window ? ground : wall, unit, ox - unit, oy + yy * unit + unit / 2f, oz + z * unit);
+                    placeCube(window ? ground : wall, unit, ox + sx * unit, oy + yy * unit + unit / 2f, oz + z * unit);
                 }
             }
         }
     }
 
-    private void addObelisks(List<float[]> chunks, List<AABB> col, UVRect uv, float unit, float ox, float oy, float oz) {
+    private void addObelisks(int material, float unit, float ox, float oy, float oz) {
         int pillars = 5 + rnd.nextInt(5);
         for (int i = 0; i < pillars; i++) {
             int h = 3 + rnd.nextInt(5);
             float px = ox + rnd.nextInt(10) * unit;
             float pz = oz + rnd.nextInt(10) * unit;
             for (int y = 0; y < h; y++) {
-                placeCube(chunks, col, uv, unit, px, oy + y * unit + unit / 2f, pz);
+                placeCube(material, unit, px, oy + y * unit + unit / 2f, pz);
             }
         }
     }
 
-    private void placeCube(List<float[]> chunks, List<AABB> col, UVRect uv, float unit,
-                           float x, float y, float z) {
-        float[] cube = MeshFactory.createTexturedCube(unit, uv);
-        Matrix4f tr = new Matrix4f().translate(x, y, z);
-        chunks.add(TransformUtil.transformVertices(cube, tr));
-        addBox(col, x - unit / 2f, y - unit / 2f, z - unit / 2f, x + unit / 2f, y + unit / 2f, z + unit / 2f);
+    /** Куб unit с центром (x, y, z) — два блока сетки по высоте */
+    private void placeCube(int material, float unit, float x, float y, float z) {
+        int bx = grid.blockX(x), by = grid.blockY(y - unit / 4f), bz = grid.blockZ(z);
+        grid.fill(bx, by, bz, bx + 1, by + CUBE_BLOCKS, bz + 1, material);
+        pieceTriangles += 12;
+        pieceVertices += 24;
+    }
+
+    /** Плита пола с центром (x, y, z) — один блок сетки */
+    private void placeFloorTile(int material, float x, float y, float z) {
+        grid.set(grid.blockX(x), grid.blockY(y), grid.blockZ(z), material);
+        pieceTriangles += 12;
+        pieceVertices += 24;
     }
 
     private void addBox(List<AABB> col, float minx, float miny, float minz, float maxx, float maxy, float maxz) {
@@ -0,0 +1,101 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.AssetBuffer;
+import com.ancevt.d3d3.engine.asset.AssetPacker;
+import com.ancevt.d3d3.engine.asset.AssetSource;
+import com.ancevt.d3d3.engine.asset.ClasspathAssetSource;
+import com.ancevt.d3d3.engine.asset.PackAssetSource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+/**
+ * Чтение всех ресурсов: из JAR через classpath против пака ассетов.
+ * Каждый раунд открывает источник заново (как при старте игры) и читает каждый ассет целиком.
+ * Файлы при этом уже в page cache ОС, так что меряется работа JVM: поиск записи, распаковка, копии.
+ * <p>
+ * Запуск: AssetPackBenchmark [resourcesDir=src/main/resources] [rounds=10]
+ */
+public class AssetPackBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path root = Path.of(args.length > 0 ? args[0] : "src/main/resources");
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        List<String> paths;
+        try (Stream<Path> files = Files.walk(root)) {
+            paths = files.filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                    .toList();
+        }
+
+        Path dir = Files.createTempDirectory("asset-pack-bench");
+        Path jar = dir.resolve("assets.jar");
+        Path pack = dir.resolve("assets.pak");
+        writeJar(root, paths, jar);
+        AssetPacker.pack(root, pack, AssetPacker.DEFAULT_DEFLATE);
+        System.out.printf("%d files, jar %d bytes, pack %d bytes%n", paths.size(), Files.size(jar), Files.size(pack));
+
+        URL jarUrl = jar.toUri().toURL();
+        run("jar  ", rounds, paths, () -> new ClasspathAssetSource(new URLClassLoader(new URL[]{jarUrl}, null)));
+        run("pack ", rounds, paths, () -> new PackAssetSource(pack));
+    }
+
+    private static void run(String name, int rounds, List<String> paths, Supplier<AssetSource> sources) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+
+        long first = 0;
+        long total = 0;
+        long allocated = 0;
+        long checksum = 0;
+        for (int r = 0; r < rounds; r++) {
+            long allocBefore = threads.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+
+            AssetSource source = sources.get();
+            for (String path : paths) {
+                try (AssetBuffer asset = source.open(path)) {
+                    checksum += touch(asset.data());
+                }
+            }
+
+            long elapsed = System.nanoTime() - start;
+            allocated += threads.getThreadAllocatedBytes(tid) - allocBefore;
+            if (r == 0) first = elapsed;
+            total += elapsed;
+        }
+        System.out.printf("%s: first %.2f ms, avg %.2f ms/round, %.1f KB heap/round (checksum %d)%n",
+                name, first / 1e6, total / 1e6 / rounds, allocated / 1024.0 / rounds, checksum);
+    }
+
+    /** Читает каждую страницу, чтобы mapped-данные действительно подгрузились */
+    private static long touch(ByteBuffer data) {
+        long sum = 0;
+        for (int i = 0; i < data.limit(); i += 4096) sum += data.get(i);
+        return sum + data.limit();
+    }
+
+    private static void writeJar(Path root, List<String> paths, Path jar) throws IOException {
+        try (OutputStream out = Files.newOutputStream(jar);
+             JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (String path : paths) {
+                jarOut.putNextEntry(new JarEntry(path));
+                jarOut.write(Files.readAllBytes(root.resolve(path)));
+                jarOut.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.Atlas;
+
+/**
+ * Время CPU-сборки атласа (декодирование + упаковка + раскладка) на большом числе тайлов.
+ * GL-контекст не нужен: upload() не вызывается.
+ * <p>
+ * Запуск: AtlasBenchmark [tiles] [iterations]
+ */
+public class AtlasBenchmark {
+
+    private static final String[] TEXTURES = {
+            "/texture/ground1.png",
+            "/texture/wall.png",
+            "/texture/sq-tiger.png"
+    };
+
+    public static void main(String[] args) {
+        int tiles = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        compose(tiles); // прогрев JIT
+
+        Atlas atlas = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            atlas = compose(tiles);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%d tiles, %d cores: %.1f ms/build, %d page(s) %s, efficiency %.1f%%%n",
+                tiles, Runtime.getRuntime().availableProcessors(), elapsed / 1e6 / iterations,
+                atlas.getPageCount(), atlas.getPageSizes(), atlas.getPackingEfficiency() * 100);
+    }
+
+    private static Atlas compose(int tiles) {
+        Atlas atlas = new Atlas().maxPageSize(4096);
+        for (int i = 0; i < tiles; i++) {
+            atlas.addImage("tile" + i, TEXTURES[i % TEXTURES.length]);
+        }
+        atlas.compose().releasePixels();
+        return atlas;
+    }
+}
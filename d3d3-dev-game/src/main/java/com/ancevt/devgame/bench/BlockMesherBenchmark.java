@@ -0,0 +1,132 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.UVRect;
+import com.ancevt.d3d3.engine.scene.AABB;
+import com.ancevt.d3d3.engine.scene.BlockGrid;
+import com.ancevt.d3d3.engine.scene.BlockMesher;
+import com.ancevt.d3d3.engine.scene.MeshBuilder;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.devgame.LevelShowcase;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link BlockMesher} на уровне LevelShowcase: треугольники и вершины, если каждый куб и плита — отдельный
+ * меш, только открытые грани и открытые грани, слитые в квады. Площадь квадов сверяется с площадью
+ * открытых граней, коллайдеры — с заполненными блоками (каждый блок ровно в одном боксе).
+ * Отдельно — перестройка после правки одного блока. GL не нужен.
+ * <p>
+ * Запуск: BlockMesherBenchmark [unit]
+ */
+public class BlockMesherBenchmark {
+
+    public static void main(String[] args) {
+        float unit = args.length > 0 ? Float.parseFloat(args[0]) : 6f;
+
+        List<float[]> pieces = new ArrayList<>();
+        List<AABB> pieceColliders = new ArrayList<>();
+        UVRect wall = new UVRect(0, 0, 0.5f, 0.5f);
+        UVRect ground = new UVRect(0.5f, 0, 0.5f, 0.5f);
+        UVRect tiger = new UVRect(0, 0.5f, 0.5f, 0.5f);
+        LevelShowcase showcase = new LevelShowcase(null);
+        BlockGrid grid = showcase.layout(unit, wall, ground, pieces, pieceColliders);
+        BlockMesher mesher = new BlockMesher(new UVRect[]{null, wall, ground, tiger}, unit, unit * 8);
+
+        BlockMesher.Result result = null;
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            long start = System.nanoTime();
+            result = mesher.mesh(grid);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+
+        int vertices = 0;
+        float quadArea = 0;
+        for (BlockMesher.Region region : result.regions()) {
+            if (region.vertices().length == 0) continue;
+            MeshData data = new MeshBuilder(BlockMesher.STRIDE).addVertices(region.vertices()).buildData();
+            vertices += data.getVertexCount();
+            data.free();
+            quadArea += area(region.vertices());
+        }
+
+        int stairs = pieces.size();
+        System.out.printf("LevelShowcase (unit %.1f): %d blocks, %d stair pieces left as meshes%n", unit, result.blockCount(), stairs);
+        System.out.printf("  separate cubes:   %7d triangles %7d vertices%n",
+                showcase.getPieceTriangles() - 12 * stairs, showcase.getPieceVertices() - 24 * stairs);
+        System.out.printf("  open faces only:  %7d triangles %7d vertices%n", result.faceCount() * 2, result.faceCount() * 4);
+        System.out.printf("  greedy quads:     %7d triangles %7d vertices (%.1fx fewer triangles than cubes)%n",
+                result.getTriangleCount(), vertices,
+                (double) (showcase.getPieceTriangles() - 12 * stairs) / Math.max(result.getTriangleCount(), 1));
+        System.out.printf("  colliders: %d boxes instead of %d (%d regions), meshed in %.1f ms on %d threads%n",
+                result.colliderCount(), result.blockCount(), result.regions().size(), best / 1e6,
+                ForkJoinPool.commonPool().getParallelism());
+
+        // площадь квадов = площадь открытых граней
+        Vector3f size = grid.getBlockSize();
+        float faceArea = 0;
+        for (int z = grid.getMinZ(); z < grid.getMaxZ(); z++) {
+            for (int y = grid.getMinY(); y < grid.getMaxY(); y++) {
+                for (int x = grid.getMinX(); x < grid.getMaxX(); x++) {
+                    if (grid.get(x, y, z) == 0) continue;
+                    if (grid.get(x - 1, y, z) == 0) faceArea += size.y * size.z;
+                    if (grid.get(x + 1, y, z) == 0) faceArea += size.y * size.z;
+                    if (grid.get(x, y - 1, z) == 0) faceArea += size.x * size.z;
+                    if (grid.get(x, y + 1, z) == 0) faceArea += size.x * size.z;
+                    if (grid.get(x, y, z - 1) == 0) faceArea += size.x * size.y;
+                    if (grid.get(x, y, z + 1) == 0) faceArea += size.x * size.y;
+                }
+            }
+        }
+        if (Math.abs(faceArea - quadArea) > faceArea * 1e-5f) {
+            throw new IllegalStateException("Quad area " + quadArea + " != open face area " + faceArea);
+        }
+
+        // каждый заполненный блок — ровно в одном коллайдере, пустой — ни в одном
+        List<AABB> colliders = new ArrayList<>();
+        for (BlockMesher.Region region : result.regions()) colliders.addAll(region.colliders());
+        Vector3f center = new Vector3f();
+        for (int z = grid.getMinZ() - 1; z <= grid.getMaxZ(); z++) {
+            for (int y = grid.getMinY() - 1; y <= grid.getMaxY(); y++) {
+                for (int x = grid.getMinX() - 1; x <= grid.getMaxX(); x++) {
+                    center.set(x + 0.5f, y + 0.5f, z + 0.5f).mul(size).add(grid.getOrigin());
+                    int inside = 0;
+                    for (AABB box : colliders) {
+                        if (box.intersects(center)) inside++;
+                    }
+                    int expected = grid.get(x, y, z) != 0 ? 1 : 0;
+                    if (inside != expected) {
+                        throw new IllegalStateException("Block " + x + "," + y + "," + z + " is in " + inside + " colliders");
+                    }
+                }
+            }
+        }
+        System.out.println("  quad area matches open faces, colliders cover solid blocks exactly once");
+
+        // правка: убрать блок посреди площади и перестроить только задетые регионы
+        int x = (grid.getMinX() + grid.getMaxX()) / 2;
+        int z = (grid.getMinZ() + grid.getMaxZ()) / 2;
+        int y = grid.getMinY();
+        grid.set(x, y, z, 0);
+        long start = System.nanoTime();
+        BlockMesher.Result edit = mesher.mesh(grid, x, y, z, x + 1, y + 1, z + 1);
+        System.out.printf("  one block removed: %d regions rebuilt in %.2f ms%n",
+                edit.regions().size(), (System.nanoTime() - start) / 1e6);
+    }
+
+    /** Площадь треугольников triangle soup stride 12 */
+    private static float area(float[] v) {
+        float sum = 0;
+        Vector3f a = new Vector3f(), b = new Vector3f(), c = new Vector3f();
+        for (int i = 0; i + 3 * BlockMesher.STRIDE <= v.length; i += 3 * BlockMesher.STRIDE) {
+            a.set(v[i], v[i + 1], v[i + 2]);
+            b.set(v[i + 12], v[i + 13], v[i + 14]).sub(a);
+            c.set(v[i + 24], v[i + 25], v[i + 26]).sub(a);
+            sum += b.cross(c).length() / 2;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,151 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.render.Light;
+import com.ancevt.d3d3.engine.render.LightClusters;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link LightClusters} на факелах в объёме лабиринта DevGame: время раскладки (общий пул и один поток)
+ * и сколько источников в среднем и максимум перебирает фрагмент при росте их общего числа — в том же
+ * объёме (плотность растёт) и в лабиринте, растущем вместе с числом факелов (плотность постоянна).
+ * Для случайных точек в кадре проверяется, что каждый источник, чья сфера содержит точку, есть
+ * в списке её кластера. GL не нужен.
+ * <p>
+ * Запуск: LightClusterBenchmark [размер лабиринта] [радиус источника]
+ */
+public class LightClusterBenchmark {
+
+    private static final int CAMERAS = 40;
+    private static final int SAMPLES = 4000;
+    private static final float FOV = (float) Math.toRadians(70.0);
+    private static final float ASPECT = 2f;
+
+    public static void main(String[] args) {
+        float size = args.length > 0 ? Float.parseFloat(args[0]) : 120f;
+        float radius = args.length > 1 ? Float.parseFloat(args[1]) : 15f;
+
+        ForkJoinPool single = new ForkJoinPool(1);
+        System.out.printf("Radius %.1f, %d cameras, grid %dx%dx%d%n", radius, CAMERAS,
+                LightClusters.DEFAULT_TILES_X, LightClusters.DEFAULT_TILES_Y, LightClusters.DEFAULT_SLICES);
+        System.out.printf("Same %.0f^3 volume:%n", size);
+        for (int count : new int[]{100, 300, 1000, 3000}) {
+            run(count, size, radius, single);
+        }
+        System.out.println("Maze growing with the torch count (same density as 100 lights in the volume above):");
+        for (int count : new int[]{100, 300, 1000, 3000}) {
+            run(count, (float) (size * Math.cbrt(count / 100.0)), radius, single);
+        }
+        single.shutdown();
+        System.out.println("  every light containing a sample point is in the point's cluster");
+    }
+
+    private static void run(int count, float size, float radius, ForkJoinPool single) {
+        Random rand = new Random(count);
+        List<Matrix4f> views = new ArrayList<>();
+        for (int i = 0; i < CAMERAS; i++) {
+            Vector3f eye = new Vector3f(rand.nextFloat(), rand.nextFloat(), rand.nextFloat()).mul(size);
+            Vector3f dir = new Vector3f(rand.nextFloat() - 0.5f, (rand.nextFloat() - 0.5f) * 0.5f, rand.nextFloat() - 0.5f);
+            views.add(new Matrix4f().lookAt(eye, eye.add(dir.normalize(), new Vector3f()), new Vector3f(0, 1, 0)));
+        }
+
+        List<Light> lights = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            lights.add(new Light(
+                    new Vector3f(rand.nextFloat(), rand.nextFloat(), rand.nextFloat()).mul(size),
+                    new Vector3f(1, 0.6f, 0.2f), 1.5f, radius));
+        }
+
+        LightClusters parallel = new LightClusters(LightClusters.DEFAULT_TILES_X, LightClusters.DEFAULT_TILES_Y,
+                LightClusters.DEFAULT_SLICES, LightClusters.DEFAULT_NEAR, LightClusters.DEFAULT_FAR, 4096,
+                ForkJoinPool.commonPool());
+        LightClusters serial = new LightClusters(LightClusters.DEFAULT_TILES_X, LightClusters.DEFAULT_TILES_Y,
+                LightClusters.DEFAULT_SLICES, LightClusters.DEFAULT_NEAR, LightClusters.DEFAULT_FAR, 4096, single);
+
+        // прогрев
+        for (int i = 0; i < 3; i++) {
+            for (Matrix4f view : views) {
+                parallel.build(lights, view, FOV, ASPECT);
+                serial.build(lights, view, FOV, ASPECT);
+            }
+        }
+
+        long parallelNanos = 0, serialNanos = 0;
+        long visible = 0, perFragment = 0, fragments = 0, overflow = 0;
+        int maxPerCluster = 0;
+        for (Matrix4f view : views) {
+            serial.build(lights, view, FOV, ASPECT);
+            serialNanos += serial.getBuildNanos();
+            parallel.build(lights, view, FOV, ASPECT);
+            parallelNanos += parallel.getBuildNanos();
+
+            visible += parallel.getVisibleCount();
+            maxPerCluster = Math.max(maxPerCluster, parallel.getMaxPerCluster());
+            overflow += parallel.getOverflow();
+            if (!Arrays.equals(serial.getClusters(), parallel.getClusters())) {
+                throw new IllegalStateException("Serial and parallel builds differ");
+            }
+            long[] cost = verify(parallel, lights, view, rand);
+            perFragment += cost[0];
+            fragments += cost[1];
+        }
+
+        System.out.printf("  %5d lights in %4.0f^3: %4d visible, per fragment avg %.1f max %d (overflow %d), build %.3f ms (%d threads) / %.3f ms (1 thread)%n",
+                count, size, visible / CAMERAS, (double) perFragment / fragments, maxPerCluster, overflow,
+                parallelNanos / 1e6 / CAMERAS, ForkJoinPool.commonPool().getParallelism(), serialNanos / 1e6 / CAMERAS);
+    }
+
+    /**
+     * Случайные точки кадра: кластер каждой должен содержать все источники, чья сфера её накрывает.
+     *
+     * @return сумма длин списков кластеров точек и число точек
+     */
+    private static long[] verify(LightClusters clusters, List<Light> lights, Matrix4f view, Random rand) {
+        int[] slot = new int[lights.size()];
+        Arrays.fill(slot, -1);
+        int[] visible = clusters.getVisibleLights();
+        for (int i = 0; i < clusters.getVisibleCount(); i++) slot[visible[i]] = i;
+
+        Matrix4f inverse = view.invert(new Matrix4f());
+        float tanY = (float) Math.tan(FOV / 2), tanX = tanY * ASPECT;
+        int[] cells = clusters.getClusters();
+        Vector3f point = new Vector3f();
+        long cost = 0;
+        int samples = 0;
+        for (int s = 0; s < SAMPLES; s++) {
+            float nx = rand.nextFloat() * 2 - 1, ny = rand.nextFloat() * 2 - 1;
+            float depth = 0.5f + rand.nextFloat() * 200f;
+            int slice = clusters.sliceOf(depth);
+            if (slice >= clusters.getSlices()) continue;
+            // как в шейдере: тайл по позиции на экране
+            int tx = Math.min((int) ((nx + 1) * 0.5f * clusters.getTilesX()), clusters.getTilesX() - 1);
+            int ty = Math.min((int) ((ny + 1) * 0.5f * clusters.getTilesY()), clusters.getTilesY() - 1);
+            int cluster = tx + clusters.getTilesX() * (ty + clusters.getTilesY() * slice);
+            int offset = cells[cluster * 2], count = cells[cluster * 2 + 1];
+            cost += count;
+            samples++;
+            if (count == LightClusters.MAX_LIGHTS_PER_CLUSTER) continue;
+
+            inverse.transformPosition(point.set(nx * depth * tanX, ny * depth * tanY, -depth));
+            for (int i = 0; i < lights.size(); i++) {
+                Light light = lights.get(i);
+                if (point.distance(light.getPosition()) >= light.getRadius() * 0.999f) continue;
+                boolean found = false;
+                for (int k = 0; k < count && !found; k++) {
+                    found = slot[i] >= 0 && clusters.getIndices().get(offset + k) == slot[i];
+                }
+                if (!found) {
+                    throw new IllegalStateException("Light " + i + " lights point " + point
+                            + " but is missing from cluster " + cluster);
+                }
+            }
+        }
+        return new long[]{cost, samples};
+    }
+}
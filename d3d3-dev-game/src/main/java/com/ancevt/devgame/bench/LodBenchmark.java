@@ -0,0 +1,239 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.ObjParser;
+import com.ancevt.d3d3.engine.scene.AABB;
+import com.ancevt.d3d3.engine.scene.LodSelector;
+import com.ancevt.d3d3.engine.scene.LodSettings;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.MeshLod;
+import com.ancevt.d3d3.engine.scene.MeshOptimizer;
+import com.ancevt.d3d3.engine.scene.MeshSimplifier;
+import com.ancevt.d3d3.engine.scene.SubMesh;
+import com.ancevt.d3d3.engine.util.IntArray;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Цепочки LOD ({@link MeshSimplifier}) на моделях игры и выбор уровня ({@link LodSelector})
+ * для сцены из 100 копий модели при удалении камеры. Каждая модель ещё и режется пополам на два
+ * материала: шов между ними не должен расходиться ни на одном уровне. GL не нужен.
+ * <p>
+ * Запуск: LodBenchmark [resourcePath...]
+ */
+public class LodBenchmark {
+
+    // projection.m11 при вертикальном FOV 60° (как в Engine)
+    private static final float PROJECTION_M11 = (float) (1 / Math.tan(Math.toRadians(30)));
+
+    public static void main(String[] args) throws IOException {
+        String[] paths = args.length > 0 ? args : new String[]{
+                "models/teapot.obj", "models/castle.obj", "models/monu1.obj"
+        };
+
+        for (String path : paths) {
+            byte[] bytes;
+            try (InputStream in = LodBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+                if (in == null) throw new IOException("Resource not found: " + path);
+                bytes = in.readAllBytes();
+            }
+            ByteBuffer source = MemoryUtil.memAlloc(bytes.length);
+            source.put(bytes).flip();
+            MeshData data = new ObjParser(source.duplicate()).parse();
+            MemoryUtil.memFree(source);
+            MeshOptimizer.optimize(data);
+
+            long start = System.nanoTime();
+            List<MeshLod> lods = MeshSimplifier.buildChain(data, LodSettings.DEFAULT);
+            long nanos = System.nanoTime() - start;
+            data.setLods(lods);
+
+            AABB bounds = data.getBounds();
+            float radius = bounds.max.distance(bounds.min) * 0.5f;
+            System.out.printf("%s: radius %.2f, chain built in %.1f ms%n", path, radius, nanos / 1e6);
+            System.out.printf("  LOD0 %6d triangles%n", data.getIndexCount() / 3);
+            float[] errors = new float[lods.size() + 1];
+            for (int i = 0; i < lods.size(); i++) {
+                MeshLod lod = lods.get(i);
+                errors[i + 1] = lod.error();
+                checkIndices(lod, data.getVertexCount());
+                System.out.printf("  LOD%d %6d triangles (%4.1f%%), error %.4f (%.2f%% of radius)%n",
+                        i + 1, lod.getTriangleCount(), 100.0 * lod.getTriangleCount() / (data.getIndexCount() / 3),
+                        lod.error(), 100 * lod.error() / radius);
+            }
+
+            scene(data, errors, radius);
+            seams(data);
+            data.free();
+        }
+    }
+
+    /** 100 копий на сетке 10x10 с шагом 4 радиуса; камера отъезжает от края сетки */
+    private static void scene(MeshData data, float[] errors, float radius) {
+        int[] triangles = new int[errors.length];
+        triangles[0] = data.getIndexCount() / 3;
+        for (int i = 1; i < errors.length; i++) triangles[i] = data.getLods().get(i - 1).getTriangleCount();
+
+        long full = 100L * triangles[0];
+        StringBuilder line = new StringBuilder("  scene of 100:");
+        for (float distance : new float[]{5, 20, 50, 100, 200}) {
+            long drawn = 0;
+            for (int x = 0; x < 10; x++) {
+                for (int z = 0; z < 10; z++) {
+                    float dx = x * 4 * radius;
+                    float dz = distance * radius + z * 4 * radius;
+                    int lod = LodSelector.select(errors, 0, errorScale(dx, dz, radius));
+                    drawn += triangles[lod];
+                }
+            }
+            line.append(String.format(" %.0fr %.0f%%", distance, 100.0 * drawn / full));
+        }
+        System.out.println(line);
+
+        // дрожание камеры около границ уровней: смены LOD с гистерезисом и без
+        Random random = new Random(7);
+        int with = 0;
+        int without = 0;
+        int currentWith = 0;
+        int currentWithout = 0;
+        for (int frame = 0; frame < 20000; frame++) {
+            float distance = radius * (2 + frame * 0.01f) + (random.nextFloat() - 0.5f) * radius * 0.2f;
+            float scale = errorScale(0, distance, radius);
+            int nextWith = LodSelector.select(errors, currentWith, scale);
+            int nextWithout = LodSelector.select(errors, errors.length, scale);
+            if (nextWith != currentWith) with++;
+            if (nextWithout != currentWithout) without++;
+            currentWith = nextWith;
+            currentWithout = nextWithout;
+        }
+        System.out.printf("  jittered fly-away, %d levels: %d LOD switches with hysteresis, %d without%n",
+                errors.length, with, without);
+    }
+
+    private static float errorScale(float dx, float dz, float radius) {
+        float distance = (float) Math.sqrt(dx * dx + dz * dz) - radius;
+        return distance <= 0 ? Float.POSITIVE_INFINITY : PROJECTION_M11 / distance;
+    }
+
+    /**
+     * Модель, разрезанная по центру на два материала (сабмеша). Шов — рёбра, открытые в одном сабмеше,
+     * с обоими концами на общих точках; каждое такое ребро должно быть открыто и в другом сабмеше,
+     * иначе шов разошёлся (T-образный стык, трещина).
+     */
+    private static void seams(MeshData data) {
+        int[] all = data.indicesToArray();
+        FloatBuffer vertices = data.getVertices();
+        int base = vertices.position();
+        int stride = data.getStride();
+        AABB bounds = data.getBounds();
+        float middle = (bounds.min.x + bounds.max.x) / 2;
+
+        IntArray left = new IntArray(all.length);
+        IntArray right = new IntArray(all.length);
+        for (int t = 0; t < all.length; t += 3) {
+            float x = vertices.get(base + all[t] * stride) + vertices.get(base + all[t + 1] * stride)
+                    + vertices.get(base + all[t + 2] * stride);
+            (x / 3 < middle ? left : right).add(all[t], all[t + 1], all[t + 2]);
+        }
+        IntArray split = new IntArray(all.length);
+        split.addAll(left.array(), 0, left.size());
+        split.addAll(right.array(), 0, right.size());
+        List<SubMesh> ranges = List.of(new SubMesh(0, 0, left.size()), new SubMesh(1, left.size(), right.size()));
+
+        ByteBuffer packed = MeshData.packIndices(split.array(), split.size(), data.getVertexCount());
+        MeshData twoMaterials = MeshData.view(vertices, stride, packed, data.getIndexType(), bounds);
+        twoMaterials.setSubMeshes(ranges);
+        List<MeshLod> lods = MeshSimplifier.buildChain(twoMaterials, LodSettings.DEFAULT);
+
+        int[] point = pointIds(vertices, base, stride, data.getVertexCount());
+        int baseline = unmatchedSeamEdges(split.array(), ranges, point);
+        StringBuilder line = new StringBuilder("  split into 2 materials, unmatched seam edges: LOD0 " + baseline);
+        for (int i = 0; i < lods.size(); i++) {
+            MeshLod lod = lods.get(i);
+            int unmatched = unmatchedSeamEdges(indices(lod), lod.subMeshes(), point);
+            line.append(String.format(", LOD%d %d (%d triangles)", i + 1, unmatched, lod.getTriangleCount()));
+            if (unmatched > baseline) {
+                throw new IllegalStateException("Material seam cracked at LOD" + (i + 1) + ": " + unmatched + " unmatched edges");
+            }
+        }
+        System.out.println(line);
+        MemoryUtil.memFree(packed);
+    }
+
+    /** Номер точки (уникальной позиции) для каждой вершины */
+    private static int[] pointIds(FloatBuffer vertices, int base, int stride, int vertexCount) {
+        Map<List<Float>, Integer> points = new HashMap<>();
+        int[] point = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            int o = base + v * stride;
+            List<Float> key = List.of(vertices.get(o), vertices.get(o + 1), vertices.get(o + 2));
+            point[v] = points.computeIfAbsent(key, k -> points.size());
+        }
+        return point;
+    }
+
+    private static int unmatchedSeamEdges(int[] indices, List<SubMesh> ranges, int[] point) {
+        // точки, на которые ссылаются оба сабмеша (биты сабмешей)
+        Map<Integer, Integer> owners = new HashMap<>();
+        for (int r = 0; r < ranges.size(); r++) {
+            SubMesh range = ranges.get(r);
+            for (int i = range.firstIndex(); i < range.firstIndex() + range.indexCount(); i++) {
+                owners.merge(point[indices[i]], 1 << r, (a, b) -> a | b);
+            }
+        }
+
+        List<Set<Long>> open = new ArrayList<>();
+        for (SubMesh range : ranges) {
+            Map<Long, Integer> uses = new HashMap<>();
+            for (int t = range.firstIndex(); t < range.firstIndex() + range.indexCount(); t += 3) {
+                for (int j = 0; j < 3; j++) {
+                    int a = point[indices[t + j]];
+                    int b = point[indices[t + (j + 1) % 3]];
+                    uses.merge(a < b ? ((long) a << 32) | b : ((long) b << 32) | a, 1, Integer::sum);
+                }
+            }
+            Set<Long> edges = new HashSet<>();
+            uses.forEach((edge, count) -> {
+                if (count == 1 && owners.get((int) (edge >>> 32)) == 3 && owners.get((int) (long) edge) == 3) {
+                    edges.add(edge);
+                }
+            });
+            open.add(edges);
+        }
+
+        int unmatched = 0;
+        for (int r = 0; r < open.size(); r++) {
+            for (long edge : open.get(r)) {
+                if (!open.get(1 - r).contains(edge)) unmatched++;
+            }
+        }
+        return unmatched;
+    }
+
+    private static int[] indices(MeshLod lod) {
+        ByteBuffer indices = lod.indices();
+        boolean shorts = indices.limit() == lod.indexCount() * 2;
+        int[] values = new int[lod.indexCount()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = shorts ? Short.toUnsignedInt(indices.getShort(i * 2)) : indices.getInt(i * 4);
+        }
+        return values;
+    }
+
+    private static void checkIndices(MeshLod lod, int vertexCount) {
+        if (Arrays.stream(indices(lod)).anyMatch(v -> v >= vertexCount)) {
+            throw new IllegalStateException("LOD index out of range");
+        }
+    }
+}
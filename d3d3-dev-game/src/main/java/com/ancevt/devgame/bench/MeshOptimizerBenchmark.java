@@ -0,0 +1,148 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.ObjParser;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.MeshOptimizer;
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ACMR до/после {@link MeshOptimizer} и время оптимизации на моделях игры.
+ * Перед замером проверяется, что набор треугольников (с обходом) не изменился.
+ * <p>
+ * Модели игры — кубы с плоскими нормалями (вершины почти не общие, ATVR уже около 1),
+ * поэтому дополнительно меряются они же с перемешанными треугольниками (как после слияния
+ * мешей в произвольном порядке) и гладкая процедурная сетка 256x256.
+ * <p>
+ * Запуск: MeshOptimizerBenchmark [iterations=10] [resourcePath...]
+ */
+public class MeshOptimizerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String[] paths = args.length > 1
+                ? Arrays.copyOfRange(args, 1, args.length)
+                : new String[]{"models/castle.obj", "models/teapot.obj"};
+
+        for (String path : paths) {
+            byte[] bytes;
+            try (InputStream in = MeshOptimizerBenchmark.class.getClassLoader().getResourceAsStream(path)) {
+                if (in == null) throw new IOException("Resource not found: " + path);
+                bytes = in.readAllBytes();
+            }
+            ByteBuffer source = MemoryUtil.memAlloc(bytes.length);
+            source.put(bytes).flip();
+
+            check(path, new ObjParser(source.duplicate()).parse());
+            MeshData shuffled = new ObjParser(source.duplicate()).parse();
+            shuffle(shuffled);
+            check(path + " (shuffled)", shuffled);
+
+            // прогрев JIT
+            for (int i = 0; i < 3; i++) optimizeOnce(source);
+            long total = 0;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < iterations; i++) {
+                long nanos = optimizeOnce(source);
+                total += nanos;
+                best = Math.min(best, nanos);
+            }
+            System.out.printf("  optimize: avg %.2f ms, best %.2f ms%n", total / 1e6 / iterations, best / 1e6);
+            MemoryUtil.memFree(source);
+        }
+
+        check("grid 256x256 (row order)", grid(256));
+    }
+
+    private static void check(String path, MeshData data) {
+        String[] before = triangles(data);
+        float acmr32 = MeshOptimizer.acmr(data, 32);
+        MeshOptimizer.Stats stats = MeshOptimizer.optimize(data);
+        float acmr32After = MeshOptimizer.acmr(data, 32);
+        boolean same = Arrays.equals(before, triangles(data));
+        System.out.printf("%s: %d vertices, %d triangles, %d submeshes; triangles %s%n",
+                path, data.getVertexCount(), data.getIndexCount() / 3, data.getSubMeshes().size(),
+                same ? "identical" : "CHANGED");
+        System.out.printf("  cache 16: %s%n", stats);
+        System.out.printf("  cache 32: ACMR %.3f -> %.3f%n", acmr32, acmr32After);
+        data.free();
+        if (!same) System.exit(1);
+    }
+
+    /** Перемешивает треугольники (фиксированное зерно) */
+    private static void shuffle(MeshData data) {
+        int[] indices = data.indicesToArray();
+        Random random = new Random(42);
+        for (int t = indices.length / 3 - 1; t > 0; t--) {
+            int r = random.nextInt(t + 1);
+            for (int j = 0; j < 3; j++) {
+                int tmp = indices[t * 3 + j];
+                indices[t * 3 + j] = indices[r * 3 + j];
+                indices[r * 3 + j] = tmp;
+            }
+        }
+        ByteBuffer packed = MeshData.packIndices(indices, indices.length, data.getVertexCount());
+        MemoryUtil.memCopy(packed, data.getIndices());
+        MemoryUtil.memFree(packed);
+    }
+
+    /** Гладкая сетка n x n квадов: вершины общие, треугольники построчно */
+    private static MeshData grid(int n) {
+        FloatArray vertices = new FloatArray((n + 1) * (n + 1) * 8);
+        for (int z = 0; z <= n; z++) {
+            for (int x = 0; x <= n; x++) {
+                vertices.add(x, (float) Math.sin(x * 0.1) * (float) Math.cos(z * 0.1), z);
+                vertices.add((float) x / n, (float) z / n);
+                vertices.add(0, 1, 0);
+            }
+        }
+        IntArray indices = new IntArray(n * n * 6);
+        for (int z = 0; z < n; z++) {
+            for (int x = 0; x < n; x++) {
+                int a = z * (n + 1) + x;
+                int b = a + n + 1;
+                indices.add(a, b, a + 1);
+                indices.add(a + 1, b, b + 1);
+            }
+        }
+        return MeshData.indexed(vertices, 8, indices);
+    }
+
+    private static long optimizeOnce(ByteBuffer source) {
+        MeshData data = new ObjParser(source.duplicate()).parse();
+        long start = System.nanoTime();
+        MeshOptimizer.optimize(data);
+        long nanos = System.nanoTime() - start;
+        data.free();
+        return nanos;
+    }
+
+    /** Треугольники как отсортированный список строк; вершины циклически сдвинуты, обход сохранён */
+    private static String[] triangles(MeshData data) {
+        float[] vertices = data.toArray();
+        int stride = data.getStride();
+        int count = data.getIndexCount() / 3;
+        String[] result = new String[count];
+        for (int t = 0; t < count; t++) {
+            String[] corners = new String[3];
+            for (int j = 0; j < 3; j++) {
+                int v = data.getIndex(t * 3 + j) * stride;
+                corners[j] = Arrays.toString(Arrays.copyOfRange(vertices, v, v + stride));
+            }
+            int first = 0;
+            for (int j = 1; j < 3; j++) {
+                if (corners[j].compareTo(corners[first]) < 0) first = j;
+            }
+            result[t] = corners[first] + corners[(first + 1) % 3] + corners[(first + 2) % 3];
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,195 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.ObjParser;
+import com.ancevt.d3d3.engine.asset.ParallelObjParser;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import org.joml.Vector2f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Сравнение старого построчного OBJ-лоадера (split + Vector3f + List&lt;Float&gt;)
+ * с потоковым {@link ObjParser} и многопоточным {@link ParallelObjParser}.
+ * GL-контекст не нужен: меряется только парсинг. Перед замером проверяется, что
+ * параллельный парсер при любом числе чанков выдаёт ровно то же, что последовательный.
+ * <p>
+ * Запуск: ObjLoaderBenchmark [resourcePath] [iterations]
+ */
+public class ObjLoaderBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        String resourcePath = args.length > 0 ? args[0] : "models/teapot.obj";
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        byte[] bytes;
+        try (InputStream in = ObjLoaderBenchmark.class.getClassLoader().getResourceAsStream(resourcePath)) {
+            if (in == null) throw new IOException("Resource not found: " + resourcePath);
+            bytes = in.readAllBytes();
+        }
+        ByteBuffer data = MemoryUtil.memAlloc(bytes.length);
+        data.put(bytes).flip();
+
+        float[] legacy = legacyParse(bytes);
+        MeshData streaming = new ObjParser(data.duplicate()).parse();
+        float[] fresh = expand(streaming);
+        System.out.printf("%s: %d bytes, %d vertices -> %d unique + %d indices, outputs %s%n",
+                resourcePath, bytes.length, legacy.length / ObjParser.STRIDE,
+                streaming.getVertexCount(), streaming.getIndexCount(),
+                compare(legacy, fresh));
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int chunks : new int[]{1, 2, 3, 7, cores * 4, 64}) {
+            MeshData parallel = new ParallelObjParser(data.duplicate()).parse(chunks);
+            String result = compareMeshData(streaming, parallel);
+            System.out.printf("parallel, %d chunks: %s%n", chunks, result);
+            parallel.free();
+            if (!result.equals("identical")) {
+                System.exit(1);
+            }
+        }
+        streaming.free();
+
+        // прогрев JIT
+        for (int i = 0; i < 3; i++) {
+            legacyParse(bytes);
+            new ObjParser(data.duplicate()).parse().free();
+            new ParallelObjParser(data.duplicate()).parse().free();
+        }
+
+        run("legacy   ", iterations, () -> legacyParse(bytes));
+        run("streaming", iterations, () -> new ObjParser(data.duplicate()).parse().free());
+        run("parallel ", iterations, () -> new ParallelObjParser(data.duplicate()).parse().free());
+
+        MemoryUtil.memFree(data);
+    }
+
+    private static void run(String name, int iterations, ThrowingRunnable task) throws IOException {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long gcBefore = gcCount();
+
+        long allocBefore = threads.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            task.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long alloc = threads.getThreadAllocatedBytes(tid) - allocBefore;
+
+        System.out.printf("%s: %8.2f ms/iter, %10.1f KB heap/iter, %d GC%n",
+                name, elapsed / 1e6 / iterations, alloc / 1024.0 / iterations, gcCount() - gcBefore);
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(gc -> Math.max(0, gc.getCollectionCount()))
+                .sum();
+    }
+
+    /** Разворачивает индексированный меш обратно в triangle soup */
+    private static float[] expand(MeshData data) {
+        int stride = data.getStride();
+        float[] vertices = data.toArray();
+        float[] soup = new float[data.getIndexCount() * stride];
+        for (int i = 0; i < data.getIndexCount(); i++) {
+            System.arraycopy(vertices, data.getIndex(i) * stride, soup, i * stride, stride);
+        }
+        return soup;
+    }
+
+    private static String compareMeshData(MeshData a, MeshData b) {
+        if (a.getIndexType() != b.getIndexType()) return "DIFFER in index type";
+        if (a.getVertexCount() != b.getVertexCount()) {
+            return "DIFFER in vertex count: " + a.getVertexCount() + " vs " + b.getVertexCount();
+        }
+        if (!Arrays.equals(a.indicesToArray(), b.indicesToArray())) return "DIFFER in indices";
+        if (!a.getSubMeshes().equals(b.getSubMeshes())) return "DIFFER in submeshes";
+        return compare(a.toArray(), b.toArray());
+    }
+
+    private static String compare(float[] a, float[] b) {
+        if (a.length != b.length) return "DIFFER in length: " + a.length + " vs " + b.length;
+        int mismatches = 0;
+        for (int i = 0; i < a.length; i++) {
+            if (Float.floatToIntBits(a[i]) != Float.floatToIntBits(b[i])) mismatches++;
+        }
+        return mismatches == 0 ? "identical" : "differ in " + mismatches + " floats";
+    }
+
+    /** Старый алгоритм OBJLoader.load без создания Mesh */
+    private static float[] legacyParse(byte[] bytes) throws IOException {
+        List<Vector3f> positions = new ArrayList<>();
+        List<Vector2f> texCoords = new ArrayList<>();
+        List<Vector3f> normals = new ArrayList<>();
+        List<Float> verticesList = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(bytes)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("v ")) {
+                    String[] tokens = line.split("\\s+");
+                    positions.add(new Vector3f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2]),
+                            Float.parseFloat(tokens[3])));
+                } else if (line.startsWith("vt ")) {
+                    String[] tokens = line.split("\\s+");
+                    texCoords.add(new Vector2f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2])));
+                } else if (line.startsWith("vn ")) {
+                    String[] tokens = line.split("\\s+");
+                    normals.add(new Vector3f(
+                            Float.parseFloat(tokens[1]),
+                            Float.parseFloat(tokens[2]),
+                            Float.parseFloat(tokens[3])));
+                } else if (line.startsWith("f ")) {
+                    String[] tokens = line.split("\\s+");
+                    for (int i = 1; i <= 3; i++) {
+                        String[] parts = tokens[i].split("/");
+                        int posIndex = Integer.parseInt(parts[0]) - 1;
+                        int texIndex = parts.length > 1 && !parts[1].isEmpty() ? Integer.parseInt(parts[1]) - 1 : -1;
+                        int normIndex = parts.length > 2 ? Integer.parseInt(parts[2]) - 1 : -1;
+
+                        Vector3f pos = positions.get(posIndex);
+                        Vector2f tex = texIndex >= 0 && texIndex < texCoords.size() && texCoords.size() > 1
+                                ? texCoords.get(texIndex)
+                                : new Vector2f(pos.x * 0.2f, pos.y * 0.2f);
+                        Vector3f norm = normIndex >= 0 ? normals.get(normIndex) : new Vector3f(0, 0, 1);
+
+                        verticesList.add(pos.x);
+                        verticesList.add(pos.y);
+                        verticesList.add(pos.z);
+                        verticesList.add(tex.x);
+                        verticesList.add(tex.y);
+                        verticesList.add(norm.x);
+                        verticesList.add(norm.y);
+                        verticesList.add(norm.z);
+                    }
+                }
+            }
+        }
+
+        float[] vertices = new float[verticesList.size()];
+        for (int i = 0; i < verticesList.size(); i++) {
+            vertices[i] = verticesList.get(i);
+        }
+        return vertices;
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,249 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.scene.AABB;
+import com.ancevt.d3d3.engine.scene.DynamicAabbTree;
+import com.ancevt.d3d3.engine.scene.Node;
+import com.ancevt.d3d3.engine.scene.OcclusionBuffer;
+import com.ancevt.d3d3.engine.scene.OcclusionCuller;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@link OcclusionCuller} на лабиринте как в DevGame.generateMultiFloorMaze: коллайдеры стен и пола —
+ * перекрыватели, кандидаты — чанки лабиринта по 4x4x4 клетки и мелкие предметы в пустых клетках.
+ * Для камер в случайных пустых клетках считается доля отброшенных из прошедших пирамиду видимости,
+ * время построения буфера (параллельно и в один поток) и проверки. Каждый отброшенный узел
+ * сверяется лучами из камеры к точкам внутри него: луч должен упереться в стену раньше.
+ * GL не нужен.
+ * <p>
+ * Запуск: OcclusionBenchmark [size] [floors] [props] [cameras]
+ */
+public class OcclusionBenchmark {
+
+    private static final float CUBE = 6f;
+    private static final float GROUND = 0.1f;
+    private static final int CHUNK = 4;
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int floors = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int props = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int cameras = args.length > 3 ? Integer.parseInt(args[3]) : 150;
+
+        Random random = new Random(7);
+        List<AABB> colliders = new ArrayList<>();
+        List<Vector3f> emptyCells = new ArrayList<>();
+        for (int y = 0; y < floors; y++) {
+            for (int x = 0; x < size; x++) {
+                for (int z = 0; z < size; z++) {
+                    if (random.nextFloat() < 0.4f) {
+                        colliders.add(box(x * CUBE - CUBE / 2, y * CUBE, z * CUBE - CUBE / 2,
+                                x * CUBE + CUBE / 2, y * CUBE + CUBE, z * CUBE + CUBE / 2));
+                    } else if (y == 0 || random.nextFloat() >= 0.3f) {
+                        colliders.add(box(x * CUBE - CUBE / 2, y * CUBE - GROUND, z * CUBE - CUBE / 2,
+                                x * CUBE + CUBE / 2, y * CUBE, z * CUBE + CUBE / 2));
+                        emptyCells.add(new Vector3f(x * CUBE, y * CUBE, z * CUBE));
+                    }
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        List<AABB> occluders = OcclusionCuller.mergeBoxes(colliders);
+        System.out.printf("%dx%dx%d maze: %d colliders merged into %d occluders in %.1f ms%n",
+                size, floors, size, colliders.size(), occluders.size(), (System.nanoTime() - start) / 1e6);
+
+        // сцена: лабиринт целиком (перекрыватели), его чанки и предметы
+        Node root = new Node();
+        root.addChild(new BoxNode(bounds(colliders), occluders));
+        int chunks = 0;
+        for (int cx = 0; cx < size; cx += CHUNK) {
+            for (int cy = 0; cy < floors; cy += CHUNK) {
+                for (int cz = 0; cz < size; cz += CHUNK) {
+                    root.addChild(new BoxNode(box(cx * CUBE - CUBE / 2, cy * CUBE - GROUND, cz * CUBE - CUBE / 2,
+                            Math.min(cx + CHUNK, size) * CUBE - CUBE / 2,
+                            Math.min(cy + CHUNK, floors) * CUBE,
+                            Math.min(cz + CHUNK, size) * CUBE - CUBE / 2), List.of()));
+                    chunks++;
+                }
+            }
+        }
+        for (int i = 0; i < props; i++) {
+            Vector3f cell = emptyCells.get(random.nextInt(emptyCells.size()));
+            float x = cell.x + (random.nextFloat() - 0.5f) * CUBE * 0.6f;
+            float z = cell.z + (random.nextFloat() - 0.5f) * CUBE * 0.6f;
+            root.addChild(new BoxNode(box(x - 0.4f, cell.y, z - 0.4f, x + 0.4f, cell.y + 1.2f, z + 0.4f), List.of()));
+        }
+        DynamicAabbTree<Node> index = new DynamicAabbTree<>();
+        root.updateTransforms(index);
+        System.out.printf("  %d nodes: 1 maze, %d chunks, %d props%n", index.size(), chunks, props);
+
+        DynamicAabbTree<AABB> walls3d = new DynamicAabbTree<>();
+        for (AABB collider : colliders) {
+            walls3d.insert(collider, collider);
+        }
+
+        OcclusionCuller parallel = new OcclusionCuller();
+        OcclusionCuller serial = new OcclusionCuller(
+                new OcclusionBuffer(OcclusionBuffer.DEFAULT_WIDTH, OcclusionBuffer.DEFAULT_HEIGHT, new ForkJoinPool(1)),
+                OcclusionCuller.DEFAULT_MAX_OCCLUDERS);
+
+        Matrix4f projection = new Matrix4f().perspective((float) Math.toRadians(70), 16 / 9f, 0.01f, 10000f);
+        Matrix4f projectionView = new Matrix4f();
+        FrustumIntersection frustum = new FrustumIntersection();
+        List<Node> visible = new ArrayList<>();
+
+        long frustumVisible = 0;
+        long rejected = 0;
+        long parallelNanos = 0;
+        long serialNanos = 0;
+        long testNanos = 0;
+        int falseRejects = 0;
+        int triangles = 0;
+        for (int round = 0; round < 2; round++) {
+            // первый проход — прогрев
+            boolean measure = round == 1;
+            for (int c = 0; c < cameras; c++) {
+                Vector3f cell = emptyCells.get(random.nextInt(emptyCells.size()));
+                Vector3f eye = new Vector3f(cell).add(0, 1.8f, 0);
+                float yaw = random.nextFloat() * 6.28f;
+                float pitch = (random.nextFloat() - 0.5f) * 1.2f;
+                Vector3f target = new Vector3f(eye).add(
+                        (float) (Math.cos(yaw) * Math.cos(pitch)), (float) Math.sin(pitch), (float) (Math.sin(yaw) * Math.cos(pitch)));
+                projection.mul(new Matrix4f().lookAt(eye, target, new Vector3f(0, 1, 0)), projectionView);
+                frustum.set(projectionView);
+
+                visible.clear();
+                index.queryFrustum(frustum, visible::add);
+
+                serial.build(visible, projectionView, frustum, eye);
+                parallel.build(visible, projectionView, frustum, eye);
+                long testStart = System.nanoTime();
+                int occluded = 0;
+                List<Node> rejectedNodes = new ArrayList<>();
+                for (Node node : visible) {
+                    if (parallel.isOccluded(node.getWorldBounds())) {
+                        occluded++;
+                        rejectedNodes.add(node);
+                    }
+                }
+                long testTime = System.nanoTime() - testStart;
+                if (!measure) continue;
+
+                frustumVisible += visible.size();
+                rejected += occluded;
+                parallelNanos += parallel.getBuildNanos();
+                serialNanos += serial.getBuildNanos();
+                testNanos += testTime;
+                triangles += parallel.getBuffer().getTriangleCount();
+                for (Node node : rejectedNodes) {
+                    if (seen(node.getWorldBounds(), eye, frustum, walls3d)) falseRejects++;
+                }
+            }
+        }
+
+        System.out.printf("  %d cameras: %.1f nodes in frustum, %.1f%% of them rejected by occlusion%n",
+                cameras, (double) frustumVisible / cameras, 100.0 * rejected / Math.max(frustumVisible, 1));
+        System.out.printf("  build: %.3f ms tiled on %d threads, %.3f ms on 1 thread (%d triangles avg)%n",
+                parallelNanos / 1e6 / cameras, ForkJoinPool.commonPool().getParallelism(),
+                serialNanos / 1e6 / cameras, triangles / cameras);
+        System.out.printf("  test:  %.4f ms per frame%n", testNanos / 1e6 / cameras);
+        System.out.printf("  rejected nodes with a sampled point seen from the camera: %d of %d%n", falseRejects, rejected);
+
+        gapCheck();
+    }
+
+    /**
+     * Столб за щелью между двумя стенами, щель уже пикселя буфера: пиксели щели закрыты стенами
+     * лишь частично и остаются пустыми, столб не отбрасывается. Без щели — отбрасывается.
+     */
+    private static void gapCheck() {
+        Matrix4f projectionView = new Matrix4f().perspective((float) Math.toRadians(70), 2f, 0.01f, 10000f);
+        AABB pole = box(-0.01f, -1, -51, 0.01f, 1, -50);
+        OcclusionBuffer buffer = new OcclusionBuffer(OcclusionBuffer.DEFAULT_WIDTH, OcclusionBuffer.DEFAULT_HEIGHT, new ForkJoinPool(1));
+        for (float gap : new float[]{0.06f, 0.5f}) {
+            buffer.begin(projectionView);
+            buffer.addOccluder(box(-20, -10, -11, -gap / 2, 10, -10), null);
+            buffer.addOccluder(box(gap / 2, -10, -11, 20, 10, -10), null);
+            buffer.rasterize();
+            if (buffer.isOccluded(pole)) {
+                throw new IllegalStateException("Pole behind a " + gap + " gap is rejected");
+            }
+        }
+        buffer.begin(projectionView);
+        buffer.addOccluder(box(-20, -10, -11, 20, 10, -10), null);
+        buffer.rasterize();
+        if (!buffer.isOccluded(pole)) {
+            throw new IllegalStateException("Pole behind a solid wall is not rejected");
+        }
+        System.out.println("  a pole behind a sub-pixel gap stays visible, behind a solid wall it is rejected");
+    }
+
+    /** Виден ли из глаза хоть один узел решётки 4x4x4 внутри бокса на экране (луч не упирается в стену раньше) */
+    private static boolean seen(AABB bounds, Vector3f eye, FrustumIntersection frustum, DynamicAabbTree<AABB> walls) {
+        Vector3f point = new Vector3f();
+        Vector3f dir = new Vector3f();
+        for (int i = 0; i < 64; i++) {
+            point.set(
+                    lerp(bounds.min.x, bounds.max.x, (i & 3) / 3f),
+                    lerp(bounds.min.y, bounds.max.y, (i >> 2 & 3) / 3f),
+                    lerp(bounds.min.z, bounds.max.z, (i >> 4 & 3) / 3f));
+            if (!frustum.testPoint(point)) continue;
+            float distance = point.distance(eye);
+            point.sub(eye, dir).normalize();
+            float[] nearest = {Float.MAX_VALUE};
+            walls.raycast(eye, dir, distance, (box, t, limit) -> {
+                if (t < nearest[0]) nearest[0] = t;
+                return Math.min(t, limit);
+            });
+            // точка на самой стене не считается видимой сквозь неё
+            if (nearest[0] >= distance - 0.05f) return true;
+        }
+        return false;
+    }
+
+    private static float lerp(float a, float b, float t) {
+        // чуть внутрь бокса: точки на гранях лежат на поверхности соседних стен
+        return a + (b - a) * (0.02f + t * 0.96f);
+    }
+
+    private static AABB box(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        return new AABB(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ));
+    }
+
+    private static AABB bounds(List<AABB> boxes) {
+        AABB result = new AABB(boxes.get(0).min, boxes.get(0).max);
+        for (AABB b : boxes) {
+            result.min.min(b.min);
+            result.max.max(b.max);
+        }
+        return result;
+    }
+
+    /** Узел с заданными границами и перекрывателями, без GL */
+    private static class BoxNode extends Node {
+        private final AABB bounds;
+        private final List<AABB> occluders;
+
+        BoxNode(AABB bounds, List<AABB> occluders) {
+            this.bounds = bounds;
+            this.occluders = occluders;
+        }
+
+        @Override
+        public AABB getLocalBounds() {
+            return bounds;
+        }
+
+        @Override
+        public List<AABB> getOccluders() {
+            return occluders;
+        }
+    }
+}
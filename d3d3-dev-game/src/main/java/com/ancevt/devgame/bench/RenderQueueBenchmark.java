@@ -0,0 +1,130 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.scene.RenderContext;
+import com.ancevt.d3d3.engine.scene.RenderQueue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Сортировка {@link RenderQueue} на синтетической сцене: смены текстур/VAO в порядке обхода дерева
+ * и после сортировки, число вызовов с инстансингом, время поразрядной сортировки
+ * против Arrays.sort с компаратором. GL не нужен.
+ * <p>
+ * Запуск: RenderQueueBenchmark [items] [textures] [meshes] [transparent%]
+ */
+public class RenderQueueBenchmark {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int textureCount = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int meshCount = args.length > 2 ? Integer.parseInt(args[2]) : 400;
+        int transparentPercent = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        Random random = new Random(42);
+        int[] textures = new int[count];
+        int[] vaos = new int[count];
+        float[] depths = new float[count];
+        boolean[] transparent = new boolean[count];
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            textures[i] = 1 + random.nextInt(textureCount);
+            vaos[i] = 1 + random.nextInt(meshCount);
+            float d = 1 + random.nextFloat() * 500;
+            depths[i] = d * d;
+            transparent[i] = random.nextInt(100) < transparentPercent;
+            keys[i] = transparent[i]
+                    ? RenderQueue.transparentKey(3, textures[i], vaos[i], depths[i])
+                    : RenderQueue.opaqueKey(3, textures[i], vaos[i], depths[i]);
+        }
+
+        RenderQueue queue = new RenderQueue();
+        // прогрев
+        for (int r = 0; r < 200; r++) fill(queue, keys).sort();
+
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[i] = i;
+        System.out.printf("%d items, %d textures, %d meshes, %d%% transparent%n",
+                count, textureCount, meshCount, transparentPercent);
+        System.out.printf("  tree order: %s%n", switches(order, textures, vaos));
+
+        fill(queue, keys).sort();
+        for (int i = 0; i < count; i++) order[i] = queue.slotAt(i);
+        System.out.printf("  sorted:     %s, %d draw calls with instancing (min %d)%n",
+                switches(order, textures, vaos), instancedDraws(order, textures, vaos, transparent),
+                RenderContext.MIN_INSTANCES);
+        check(queue, order, keys, depths, transparent);
+
+        int rounds = 300;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) fill(queue, keys).sort();
+        double radix = (System.nanoTime() - start) / 1e6 / rounds;
+
+        Integer[] boxed = new Integer[count];
+        Comparator<Integer> byKey = (a, b) -> Long.compareUnsigned(keys[a], keys[b]);
+        for (int r = 0; r < 50; r++) {
+            for (int i = 0; i < count; i++) boxed[i] = i;
+            Arrays.sort(boxed, byKey);
+        }
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < count; i++) boxed[i] = i;
+            Arrays.sort(boxed, byKey);
+        }
+        double comparator = (System.nanoTime() - start) / 1e6 / rounds;
+        System.out.printf("  sort: radix %.3f ms, Arrays.sort(comparator) %.3f ms%n", radix, comparator);
+    }
+
+    private static RenderQueue fill(RenderQueue queue, long[] keys) {
+        queue.clear();
+        for (long key : keys) queue.add(key);
+        return queue;
+    }
+
+    private static String switches(int[] order, int[] textures, int[] vaos) {
+        int textureSwitches = 0;
+        int vaoSwitches = 0;
+        for (int i = 1; i < order.length; i++) {
+            if (textures[order[i]] != textures[order[i - 1]]) textureSwitches++;
+            if (vaos[order[i]] != vaos[order[i - 1]]) vaoSwitches++;
+        }
+        return textureSwitches + " texture binds, " + vaoSwitches + " VAO binds";
+    }
+
+    /** Вызовы при инстансинге: серия соседей с той же текстурой, мешем и проходом — один вызов */
+    private static int instancedDraws(int[] order, int[] textures, int[] vaos, boolean[] transparent) {
+        int draws = 0;
+        for (int i = 0; i < order.length; ) {
+            int run = 1;
+            while (i + run < order.length
+                    && textures[order[i + run]] == textures[order[i]]
+                    && vaos[order[i + run]] == vaos[order[i]]
+                    && transparent[order[i + run]] == transparent[order[i]]) {
+                run++;
+            }
+            draws += run >= RenderContext.MIN_INSTANCES ? 1 : run;
+            i += run;
+        }
+        return draws;
+    }
+
+    /** Ключи по возрастанию, непрозрачные раньше прозрачных, прозрачные сзади вперёд */
+    private static void check(RenderQueue queue, int[] order, long[] keys, float[] depths, boolean[] transparent) {
+        boolean seenTransparent = false;
+        for (int i = 0; i < order.length; i++) {
+            if (queue.keyAt(i) != keys[order[i]]) throw new IllegalStateException("Key/slot mismatch at " + i);
+            if (i > 0 && Long.compareUnsigned(queue.keyAt(i - 1), queue.keyAt(i)) > 0) {
+                throw new IllegalStateException("Keys out of order at " + i);
+            }
+            if (transparent[order[i]]) {
+                if (seenTransparent && depths[order[i]] > depths[order[i - 1]] * 1.001f) {
+                    throw new IllegalStateException("Transparent items not back-to-front at " + i);
+                }
+                seenTransparent = true;
+            } else if (seenTransparent) {
+                throw new IllegalStateException("Opaque item after transparent at " + i);
+            }
+        }
+    }
+}
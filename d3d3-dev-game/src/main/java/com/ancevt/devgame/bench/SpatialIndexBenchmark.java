@@ -0,0 +1,221 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.scene.AABB;
+import com.ancevt.d3d3.engine.scene.DynamicAabbTree;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@link DynamicAabbTree} против линейного перебора: запросы AABB, сфера, пирамида видимости и луч
+ * по уровню из N объектов, часть которых двигается каждый кадр. Результаты сверяются с перебором.
+ * GL не нужен.
+ * <p>
+ * Запуск: SpatialIndexBenchmark [objects] [moving%]
+ */
+public class SpatialIndexBenchmark {
+
+    private static final float WORLD = 2000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int movingPercent = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Random random = new Random(1);
+        List<AABB> boxes = new ArrayList<>();
+        DynamicAabbTree<Integer> tree = new DynamicAabbTree<>();
+        int[] proxies = new int[count];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            boxes.add(randomBox(random));
+            proxies[i] = tree.insert(boxes.get(i), i);
+        }
+        System.out.printf("%d objects: built in %.1f ms, height %d%n",
+                count, (System.nanoTime() - start) / 1e6, tree.getHeight());
+
+        // движение: мелкие шаги остаются в толстом AABB, дерево не трогается
+        int moving = count * movingPercent / 100;
+        int reinserted = 0;
+        start = System.nanoTime();
+        for (int frame = 0; frame < 60; frame++) {
+            for (int i = 0; i < moving; i++) {
+                AABB box = boxes.get(i);
+                Vector3f step = new Vector3f(random.nextFloat() - 0.5f, 0, random.nextFloat() - 0.5f).mul(0.5f);
+                box.min.add(step);
+                box.max.add(step);
+                if (tree.move(proxies[i], box)) reinserted++;
+            }
+        }
+        System.out.printf("  %d moving x 60 frames: %.3f ms/frame, %.1f%% reinserted, height %d%n",
+                moving, (System.nanoTime() - start) / 1e6 / 60, 100.0 * reinserted / (moving * 60), tree.getHeight());
+
+        // удаление и повторная вставка
+        for (int i = 0; i < count; i += 10) tree.remove(proxies[i]);
+        for (int i = 0; i < count; i += 10) proxies[i] = tree.insert(boxes.get(i), i);
+
+        int queries = 2000;
+        AABB[] regions = new AABB[queries];
+        Vector3f[] centers = new Vector3f[queries];
+        for (int q = 0; q < queries; q++) {
+            Vector3f c = new Vector3f(random.nextFloat() * WORLD, random.nextFloat() * 50, random.nextFloat() * WORLD);
+            centers[q] = c;
+            regions[q] = new AABB(new Vector3f(c).sub(10, 10, 10), new Vector3f(c).add(10, 10, 10));
+        }
+
+        // AABB
+        long[] counter = new long[1];
+        Runnable treeAabb = () -> {
+            for (AABB region : regions) tree.query(region, item -> counter[0]++);
+        };
+        Runnable linearAabb = () -> {
+            for (AABB region : regions) {
+                for (int i = 0; i < count; i++) if (overlaps(boxes.get(i), region)) counter[0]++;
+            }
+        };
+        for (int q = 0; q < 200; q++) {
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < count; i++) if (overlaps(boxes.get(i), regions[q])) expected.add(i);
+            Set<Integer> found = new HashSet<>();
+            tree.query(regions[q], found::add);
+            if (!found.equals(expected)) throw new IllegalStateException("AABB query mismatch");
+        }
+        report("AABB query", treeAabb, linearAabb, queries, counter);
+
+        // сфера
+        Runnable treeSphere = () -> {
+            for (Vector3f c : centers) tree.querySphere(c, 15, item -> counter[0]++);
+        };
+        Runnable linearSphere = () -> {
+            for (Vector3f c : centers) {
+                for (int i = 0; i < count; i++) if (sphereOverlaps(boxes.get(i), c, 15)) counter[0]++;
+            }
+        };
+        for (int q = 0; q < 200; q++) {
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < count; i++) if (sphereOverlaps(boxes.get(i), centers[q], 15)) expected.add(i);
+            Set<Integer> found = new HashSet<>();
+            tree.querySphere(centers[q], 15, found::add);
+            if (!found.equals(expected)) throw new IllegalStateException("Sphere query mismatch");
+        }
+        report("sphere query", treeSphere, linearSphere, queries, counter);
+
+        // пирамида видимости: камера в уровне, дальность 300
+        int frusta = 100;
+        List<FrustumIntersection> all = new ArrayList<>();
+        for (int q = 0; q < frusta; q++) {
+            Vector3f eye = centers[q];
+            float angle = random.nextFloat() * 6.28f;
+            Matrix4f m = new Matrix4f().perspective((float) Math.toRadians(70), 16 / 9f, 0.1f, 300)
+                    .lookAt(eye, new Vector3f(eye).add((float) Math.cos(angle), 0, (float) Math.sin(angle)), new Vector3f(0, 1, 0));
+            all.add(new FrustumIntersection(m));
+        }
+        Runnable treeFrustum = () -> {
+            for (FrustumIntersection f : all) tree.queryFrustum(f, item -> counter[0]++);
+        };
+        Runnable linearFrustum = () -> {
+            for (FrustumIntersection f : all) {
+                for (int i = 0; i < count; i++) {
+                    AABB b = boxes.get(i);
+                    if (f.testAab(b.min, b.max)) counter[0]++;
+                }
+            }
+        };
+        for (FrustumIntersection f : all) {
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < count; i++) {
+                AABB b = boxes.get(i);
+                if (f.testAab(b.min, b.max)) expected.add(i);
+            }
+            Set<Integer> found = new HashSet<>();
+            tree.queryFrustum(f, found::add);
+            if (!found.equals(expected)) throw new IllegalStateException("Frustum query mismatch");
+        }
+        report("frustum query", treeFrustum, linearFrustum, frusta, counter);
+
+        // луч: ближайший по входу в AABB
+        start = System.nanoTime();
+        int hits = 0;
+        for (int q = 0; q < queries; q++) {
+            Vector3f dir = new Vector3f(random.nextFloat() - 0.5f, -0.1f, random.nextFloat() - 0.5f).normalize();
+            int[] nearest = {-1};
+            float[] nearestT = {Float.MAX_VALUE};
+            tree.raycast(centers[q], dir, 500, (item, t, limit) -> {
+                if (t >= limit) return limit;
+                nearest[0] = item;
+                nearestT[0] = t;
+                return t;
+            });
+            if (nearest[0] >= 0) hits++;
+            if (q < 200) {
+                float best = Float.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    float t = rayEnter(boxes.get(i), centers[q], dir);
+                    if (t >= 0 && t <= 500 && t < best) best = t;
+                }
+                float got = nearest[0] >= 0 ? nearestT[0] : Float.MAX_VALUE;
+                if (Math.abs(best - got) > 1e-3f) throw new IllegalStateException("Ray mismatch: " + best + " vs " + got);
+            }
+        }
+        System.out.printf("  raycast:       tree %.4f ms incl. checks (%d/%d hit)%n",
+                (System.nanoTime() - start) / 1e6 / queries, hits, queries);
+        System.out.println("  all queries match linear scan");
+    }
+
+    private static void report(String name, Runnable tree, Runnable linear, int queries, long[] counter) {
+        for (int i = 0; i < 3; i++) {
+            tree.run();
+            linear.run();
+        }
+        counter[0] = 0;
+        long start = System.nanoTime();
+        tree.run();
+        double treeMs = (System.nanoTime() - start) / 1e6 / queries;
+        double results = (double) counter[0] / queries;
+        start = System.nanoTime();
+        linear.run();
+        double linearMs = (System.nanoTime() - start) / 1e6 / queries;
+        System.out.printf("  %-14s tree %.4f ms, linear %.4f ms (%.1f results avg)%n",
+                name + ":", treeMs, linearMs, results);
+    }
+
+    private static AABB randomBox(Random random) {
+        Vector3f min = new Vector3f(random.nextFloat() * WORLD, random.nextFloat() * 50, random.nextFloat() * WORLD);
+        Vector3f size = new Vector3f(0.5f + random.nextFloat() * 4, 0.5f + random.nextFloat() * 4, 0.5f + random.nextFloat() * 4);
+        return new AABB(min, new Vector3f(min).add(size));
+    }
+
+    private static boolean overlaps(AABB a, AABB b) {
+        return a.min.x <= b.max.x && a.max.x >= b.min.x && a.min.y <= b.max.y && a.max.y >= b.min.y
+                && a.min.z <= b.max.z && a.max.z >= b.min.z;
+    }
+
+    private static boolean sphereOverlaps(AABB b, Vector3f c, float r) {
+        float dx = Math.max(Math.max(b.min.x - c.x, 0), c.x - b.max.x);
+        float dy = Math.max(Math.max(b.min.y - c.y, 0), c.y - b.max.y);
+        float dz = Math.max(Math.max(b.min.z - c.z, 0), c.z - b.max.z);
+        return dx * dx + dy * dy + dz * dz <= r * r;
+    }
+
+    private static float rayEnter(AABB b, Vector3f o, Vector3f d) {
+        float tMin = 0;
+        float tMax = Float.MAX_VALUE;
+        float[] min = {b.min.x, b.min.y, b.min.z};
+        float[] max = {b.max.x, b.max.y, b.max.z};
+        float[] origin = {o.x, o.y, o.z};
+        float[] dir = {d.x, d.y, d.z};
+        for (int axis = 0; axis < 3; axis++) {
+            float t1 = (min[axis] - origin[axis]) / dir[axis];
+            float t2 = (max[axis] - origin[axis]) / dir[axis];
+            tMin = Math.max(tMin, Math.min(t1, t2));
+            tMax = Math.min(tMax, Math.max(t1, t2));
+        }
+        return tMax >= tMin ? tMin : -1;
+    }
+}
@@ -0,0 +1,102 @@
+package com.ancevt.devgame.bench;
+
+import com.ancevt.d3d3.engine.asset.OBJLoader;
+import com.ancevt.d3d3.engine.asset.VoxLoader;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.VertexCodec;
+import com.ancevt.d3d3.engine.scene.VertexLayout;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Видеопамять и погрешность компактных раскладок вершин ({@link VertexLayout}) на моделях игры.
+ * GL-контекст не нужен: вершины кодируются и декодируются тем же {@link VertexCodec}, что и при загрузке меша.
+ * <p>
+ * Запуск: VertexFormatBenchmark [resourcePath...]
+ */
+public class VertexFormatBenchmark {
+
+    private static final VertexLayout[] LAYOUTS = {VertexLayout.FLOAT, VertexLayout.HALF, VertexLayout.FIXED};
+
+    public static void main(String[] args) {
+        String[] paths = args.length > 0 ? args : new String[]{
+                "models/teapot.obj", "models/castle.obj", "models/monu1.obj", "models/menger.vox"
+        };
+
+        for (String path : paths) {
+            MeshData data = path.endsWith(".vox")
+                    ? VoxLoader.read(path).meshData()
+                    : OBJLoader.read(path, null).meshData();
+            try {
+                report(path, data);
+            } finally {
+                data.free();
+            }
+        }
+    }
+
+    private static void report(String path, MeshData data) {
+        int vertexCount = data.getVertexCount();
+        int stride = data.getStride();
+        FloatBuffer vertices = data.getVertices();
+        long indexBytes = (long) data.getIndexCount() * MeshData.indexSize(data.getIndexType());
+
+        float extent = 0;
+        for (int axis = 0; axis < 3; axis++) {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for (int i = 0; i < vertexCount; i++) {
+                float v = vertices.get(i * stride + axis);
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+            extent = Math.max(extent, max - min);
+        }
+        System.out.printf("%s: %d vertices, %d indices, extent %.2f%n",
+                path, vertexCount, data.getIndexCount(), extent);
+
+        long floatBytes = (long) vertexCount * VertexLayout.FLOAT.getStride() + indexBytes;
+        for (VertexLayout layout : LAYOUTS) {
+            long start = System.nanoTime();
+            VertexCodec.Encoded encoded = VertexCodec.encode(vertices, stride, vertexCount, layout);
+            long encodeNanos = System.nanoTime() - start;
+            float[] decoded = VertexCodec.decode(encoded.vertices(), vertexCount, layout, encoded.decode());
+            MemoryUtil.memFree(encoded.vertices());
+
+            double position = 0, uv = 0, normal = 0;
+            for (int i = 0; i < vertexCount; i++) {
+                int s = i * stride;
+                int d = i * 8;
+                for (int c = 0; c < 3; c++) {
+                    position = Math.max(position, Math.abs(vertices.get(s + c) - decoded[d + c]));
+                }
+                for (int c = 3; c < 5; c++) {
+                    uv = Math.max(uv, Math.abs(vertices.get(s + c) - decoded[d + c]));
+                }
+                normal = Math.max(normal, angle(vertices, s + 5, decoded, d + 5));
+            }
+
+            long bytes = (long) vertexCount * layout.getStride() + indexBytes;
+            System.out.printf("  %-6s %2d B/vertex, VRAM %8.1f KB (%3.0f%%), encode %6.2f ms, "
+                            + "max error: position %.5f (%.4f%% of extent), uv %.6f, normal %.3f deg%n",
+                    name(layout), layout.getStride(), bytes / 1024.0, 100.0 * bytes / floatBytes,
+                    encodeNanos / 1e6, position, 100 * position / extent, uv, normal);
+        }
+    }
+
+    private static double angle(FloatBuffer a, int i, float[] b, int j) {
+        double ax = a.get(i), ay = a.get(i + 1), az = a.get(i + 2);
+        double la = Math.sqrt(ax * ax + ay * ay + az * az);
+        if (la == 0) return 0;
+        double bx = b[j], by = b[j + 1], bz = b[j + 2];
+        double lb = Math.sqrt(bx * bx + by * by + bz * bz);
+        double cos = (ax * bx + ay * by + az * bz) / (la * lb);
+        return Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cos))));
+    }
+
+    private static String name(VertexLayout layout) {
+        if (layout == VertexLayout.HALF) return "HALF";
+        if (layout == VertexLayout.FIXED) return "FIXED";
+        return "FLOAT";
+    }
+}
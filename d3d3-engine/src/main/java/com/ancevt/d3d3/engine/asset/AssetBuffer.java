@@ -0,0 +1,78 @@
+package com.ancevt.d3d3.engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Байты ассета из {@link AssetSource}: срез memory-mapped файла (без копий) или
+ * off-heap буфер, который освобождается в {@link #close()}.
+ */
+public final class AssetBuffer implements AutoCloseable {
+    private final ByteBuffer data;
+    private final boolean owned;
+    private boolean closed;
+
+    private AssetBuffer(ByteBuffer data, boolean owned) {
+        this.data = data;
+        this.owned = owned;
+    }
+
+    /** Чужая память (mapped-файл): close() её не трогает */
+    static AssetBuffer view(ByteBuffer data) {
+        return new AssetBuffer(data, false);
+    }
+
+    /** Буфер из MemoryUtil.memAlloc, освобождается в close() */
+    static AssetBuffer owned(ByteBuffer data) {
+        return new AssetBuffer(data, true);
+    }
+
+    /** Содержимое (position = 0, limit = размер); валидно до close() */
+    public ByteBuffer data() {
+        return data;
+    }
+
+    public int size() {
+        return data.remaining();
+    }
+
+    /** Поток поверх буфера; закрытие потока закрывает и буфер */
+    public InputStream asStream() {
+        ByteBuffer src = data.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return src.hasRemaining() ? src.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) return 0;
+                if (!src.hasRemaining()) return -1;
+                int n = Math.min(len, src.remaining());
+                src.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return src.remaining();
+            }
+
+            @Override
+            public void close() {
+                AssetBuffer.this.close();
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (owned && !closed) {
+            closed = true;
+            MemoryUtil.memFree(data);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.ancevt.d3d3.engine.asset;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Кэш загруженных ассетов со счётчиком ссылок и бюджетом видеопамяти.
+ * Пока на ассет есть хоть один {@link AssetHandle}, он не выгружается; ассеты без ссылок
+ * остаются в кэше (повторная загрузка уровня — попадание), пока суммарный размер
+ * не превысит бюджет, после чего выгружаются в порядке LRU.
+ * <p>
+ * {@link #evict()} и {@link #trim(long)} освобождают GL-ресурсы, поэтому зовутся только из потока рендера.
+ */
+public class AssetCache {
+
+    private final Map<String, Entry<?>> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong gpuBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long budgetBytes;
+
+    /**
+     * @param budgetBytes бюджет видеопамяти; 0 — без ограничения
+     */
+    public AssetCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public record Stats(long hits, long misses, long evictions, long gpuBytes, long budgetBytes, int entries) {
+        public double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    /**
+     * Берёт ссылку на ассет, запуская загрузку при промахе.
+     *
+     * @param loader   загрузка (future завершается уже созданным GL-объектом)
+     * @param sizeOf   оценка занятой видеопамяти
+     * @param disposer освобождение GL-ресурсов при выгрузке (поток рендера)
+     */
+    @SuppressWarnings("unchecked")
+    public <T> AssetHandle<T> acquire(String key, Supplier<CompletableFuture<T>> loader,
+                                      ToLongFunction<T> sizeOf, Consumer<T> disposer) {
+        while (true) {
+            boolean[] created = {false};
+            Entry<T> entry = (Entry<T>) entries.computeIfAbsent(key, k -> {
+                created[0] = true;
+                return new Entry<>(k, loader, sizeOf, disposer, gpuBytes);
+            });
+
+            synchronized (entry) {
+                // запись успели выгрузить между computeIfAbsent и захватом — пробуем ещё раз
+                if (entry.evicted) continue;
+                entry.refs++;
+                entry.lastAccess = clock.incrementAndGet();
+            }
+
+            if (created[0]) {
+                misses.incrementAndGet();
+                // неудачную загрузку не кэшируем, следующий запрос попробует снова
+                entry.future.whenComplete((value, error) -> {
+                    if (error != null) entries.remove(key, entry);
+                });
+            } else {
+                hits.incrementAndGet();
+            }
+            return new AssetHandle<>(this, entry);
+        }
+    }
+
+    void release(Entry<?> entry) {
+        synchronized (entry) {
+            entry.refs--;
+            entry.lastAccess = clock.incrementAndGet();
+        }
+    }
+
+    /** Выгружает ассеты без ссылок, пока занято больше бюджета */
+    public int evict() {
+        long budget = budgetBytes;
+        return budget > 0 ? trim(budget) : 0;
+    }
+
+    /**
+     * Выгружает давно не использованные ассеты без ссылок, пока занято больше targetBytes.
+     * trim(0) — выгрузить всё, на что нет ссылок (например, при смене уровня).
+     */
+    public int trim(long targetBytes) {
+        if (gpuBytes.get() <= targetBytes) return 0;
+
+        List<Entry<?>> candidates = entries.values().stream()
+                .filter(Entry::isEvictable)
+                .sorted(Comparator.comparingLong(e -> e.lastAccess))
+                .toList();
+
+        int count = 0;
+        for (Entry<?> entry : candidates) {
+            if (gpuBytes.get() <= targetBytes) break;
+            if (entry.evict()) {
+                entries.remove(entry.key, entry);
+                gpuBytes.addAndGet(-entry.gpuBytes);
+                evictions.incrementAndGet();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Новый размер ассета после горячей перезагрузки на месте: общий счётчик сдвигается на разницу.
+     * Только поток рендера (как и выгрузка).
+     */
+    void resize(String key, long bytes) {
+        Entry<?> entry = entries.get(key);
+        if (entry == null) return;
+        synchronized (entry) {
+            if (entry.evicted) return;
+            gpuBytes.addAndGet(bytes - entry.gpuBytes);
+            entry.gpuBytes = bytes;
+        }
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), evictions.get(), gpuBytes.get(), budgetBytes, entries.size());
+    }
+
+    static class Entry<T> {
+        final String key;
+        final CompletableFuture<T> future;
+        private final Consumer<T> disposer;
+
+        // под synchronized (this)
+        int refs;
+        boolean evicted;
+
+        volatile long lastAccess;
+        volatile long gpuBytes;
+
+        Entry(String key, Supplier<CompletableFuture<T>> loader, ToLongFunction<T> sizeOf,
+              Consumer<T> disposer, AtomicLong totalBytes) {
+            this.key = key;
+            this.disposer = disposer;
+            // размер учитывается до того, как future станет done, поэтому evict его всегда видит
+            this.future = loader.get().thenApply(value -> {
+                long bytes = sizeOf.applyAsLong(value);
+                gpuBytes = bytes;
+                totalBytes.addAndGet(bytes);
+                return value;
+            });
+        }
+
+        synchronized boolean isEvictable() {
+            return refs == 0 && !evicted && future.isDone() && !future.isCompletedExceptionally();
+        }
+
+        synchronized boolean evict() {
+            if (!isEvictable()) return false;
+            evicted = true;
+            disposer.accept(future.join());
+            return true;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.ancevt.d3d3.engine.asset;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Ссылка на ассет из {@link AssetCache}. Пока ссылка не отпущена, ассет не выгружается.
+ */
+public class AssetHandle<T> implements AutoCloseable {
+    private final AssetCache cache;
+    private final AssetCache.Entry<T> entry;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    AssetHandle(AssetCache cache, AssetCache.Entry<T> entry) {
+        this.cache = cache;
+        this.entry = entry;
+    }
+
+    public String getKey() {
+        return entry.key;
+    }
+
+    public CompletableFuture<T> future() {
+        return entry.future;
+    }
+
+    public boolean isReady() {
+        return entry.future.isDone() && !entry.future.isCompletedExceptionally();
+    }
+
+    /** Загруженный ассет или null, если он ещё грузится (не блокирует) */
+    public T get() {
+        return isReady() ? entry.future.join() : null;
+    }
+
+    /** Отпускает ссылку; повторный вызов ничего не делает */
+    public void release() {
+        if (released.compareAndSet(false, true)) {
+            cache.release(entry);
+        }
+    }
+
+    @Override
+    public void close() {
+        release();
+    }
+}
@@ -1,18 +1,388 @@
 package com.ancevt.d3d3.engine.asset;
 
-import java.util.HashMap;
+import com.ancevt.d3d3.engine.render.GLState;
+import com.ancevt.d3d3.engine.core.GpuUploadQueue;
+import com.ancevt.d3d3.engine.render.ShaderProgram;
+import com.ancevt.d3d3.engine.scene.LodSettings;
+import com.ancevt.d3d3.engine.scene.ModelNode;
+import org.joml.Vector3f;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 
+/**
+ * Загрузка ассетов. Чтение файлов, декодирование и парсинг идут в рабочих потоках,
+ * создание GL-объектов — через {@link GpuUploadQueue}, которую движок разбирает каждый кадр.
+ * Одновременные запросы одного и того же пути получают один и тот же future.
+ * <p>
+ * Загруженное лежит в {@link AssetCache}: acquire* возвращают {@link AssetHandle}, и после
+ * {@link AssetHandle#release()} ассет может быть выгружен при превышении бюджета видеопамяти.
+ * load* — старый API без хэндлов: такие ассеты закреплены навсегда.
+ * <p>
+ * Синхронные методы (loadTexture, loadObj) оставлены для удобства: в потоке рендера
+ * они, ожидая результат, сами выполняют GL-задачи из очереди.
+ * <p>
+ * После {@link #enableHotReload(List)} изменённые на диске текстуры, OBJ и шейдеры
+ * обновляются на месте — id текстур, мешей и программ не меняются.
+ */
 public class AssetManager {
-    private final Map<String, Integer> textures = new HashMap<>();
-    private final Map<String, OBJModel> objs = new HashMap<>();
+    private final AssetCache cache;
+    private final MeshCache meshCache;
+    private final GpuUploadQueue uploadQueue;
+    private final ExecutorService workers;
+
+    // белая текстура для материалов без map_Kd (создаётся при первом запросе, поток рендера)
+    private int whiteTexture;
+
+    // null — горячая перезагрузка выключена; подписки по загруженному ассету
+    private volatile HotReloader hotReloader;
+    private volatile HotReloader.Listener hotReloadListener;
+    private final Map<Object, HotReloader.Watch<?>> reloadWatches = new ConcurrentHashMap<>();
+    // узлы loadModel по модели: при перезагрузке OBJ им пересобирается таблица материалов
+    private final Map<OBJModel, ModelNodes> modelNodes = new ConcurrentHashMap<>();
+
+    // цепочка LOD для загружаемых OBJ
+    private volatile LodSettings lodSettings = LodSettings.DEFAULT;
+
+    public AssetManager() {
+        this(null);
+    }
+
+    /**
+     * @param meshCache бинарный кэш мешей или null
+     */
+    public AssetManager(MeshCache meshCache) {
+        this(meshCache, new GpuUploadQueue(), 0);
+    }
+
+    /**
+     * @param gpuBudgetBytes бюджет видеопамяти для ассетов без ссылок; 0 — без ограничения
+     */
+    public AssetManager(MeshCache meshCache, GpuUploadQueue uploadQueue, long gpuBudgetBytes) {
+        this.cache = new AssetCache(gpuBudgetBytes);
+        this.meshCache = meshCache;
+        this.uploadQueue = uploadQueue;
+        this.workers = Executors.newFixedThreadPool(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new WorkerThreadFactory());
+    }
+
+    public GpuUploadQueue getUploadQueue() {
+        return uploadQueue;
+    }
+
+    public LodSettings getLodSettings() {
+        return lodSettings;
+    }
+
+    public void setLodSettings(LodSettings lodSettings) {
+        this.lodSettings = lodSettings;
+    }
+
+    public AssetHandle<Texture> acquireTexture(String path, boolean repeat) {
+        String key = "texture:" + path;
+        return cache.acquire(key,
+                () -> CompletableFuture
+                        .supplyAsync(() -> TextureLoader.decode(path), workers)
+                        .thenApplyAsync(image -> {
+                            int width = image.getWidth();
+                            int height = image.getHeight();
+                            Texture texture = new Texture(TextureLoader.upload(image, repeat), width, height);
+                            watchTexture(key, path, texture);
+                            return texture;
+                        }, uploadQueue),
+                Texture::gpuBytes,
+                texture -> {
+                    unwatch(texture);
+                    GLState.deleteTexture(texture.id());
+                });
+    }
+
+    public AssetHandle<OBJModel> acquireObj(String path) {
+        return acquireObj("obj:" + path, () -> OBJLoader.read(path, meshCache, lodSettings),
+                (reloader, reloadable) -> reloader.watch(path, reloadable));
+    }
+
+    public AssetHandle<OBJModel> acquireObj(Path file) {
+        Path absolute = file.toAbsolutePath();
+        return acquireObj("obj:" + absolute, () -> OBJLoader.read(absolute, meshCache, lodSettings),
+                (reloader, reloadable) -> reloader.watch(absolute, reloadable));
+    }
+
+    private AssetHandle<OBJModel> acquireObj(String key, Supplier<OBJLoader.Parsed> reader, WatchFactory watchFactory) {
+        return cache.acquire(key,
+                () -> CompletableFuture
+                        .supplyAsync(reader, workers)
+                        .thenApplyAsync(parsed -> {
+                            OBJModel model = OBJLoader.upload(parsed);
+                            watchObj(key, model, watchFactory);
+                            return model;
+                        }, uploadQueue),
+                model -> model.mesh.getGpuBytes(),
+                model -> {
+                    unwatch(model);
+                    model.mesh.cleanup();
+                });
+    }
+
+    public AssetHandle<VoxModel> acquireVox(String path) {
+        return cache.acquire("vox:" + path,
+                () -> CompletableFuture
+                        .supplyAsync(() -> VoxLoader.read(path), workers)
+                        .thenApplyAsync(VoxLoader::upload, uploadQueue),
+                model -> model.mesh.getGpuBytes() + 256 * 4,
+                model -> {
+                    model.mesh.cleanup();
+                    GLState.deleteTexture(model.paletteTexture);
+                });
+    }
+
+    public CompletableFuture<Integer> loadTextureAsync(String path, boolean repeat) {
+        return acquireTexture(path, repeat).future().thenApply(Texture::id);
+    }
+
+    public CompletableFuture<OBJModel> loadObjAsync(String path) {
+        return acquireObj(path).future();
+    }
+
+    public CompletableFuture<OBJModel> loadObjAsync(Path file) {
+        return acquireObj(file).future();
+    }
+
+    public CompletableFuture<VoxModel> loadVoxAsync(String path) {
+        return acquireVox(path).future();
+    }
+
+    /** Декодирование и раскладка атласа в фоне, загрузка текстуры — в потоке рендера */
+    public CompletableFuture<Atlas> buildAtlasAsync(Atlas atlas) {
+        return CompletableFuture
+                .supplyAsync(atlas::compose, workers)
+                .thenApplyAsync(Atlas::upload, uploadQueue);
+    }
 
     public int loadTexture(String path, boolean repeat) {
-        return textures.computeIfAbsent(path,
-                p -> TextureLoader.loadTextureFromResources(p, repeat));
+        return uploadQueue.await(loadTextureAsync(path, repeat));
     }
 
     public OBJModel loadObj(String path) {
-        return objs.computeIfAbsent(path, OBJLoader::load);
+        return uploadQueue.await(loadObjAsync(path));
+    }
+
+    public OBJModel loadObj(Path file) {
+        return uploadQueue.await(loadObjAsync(file));
+    }
+
+    public VoxModel loadVox(String path) {
+        return uploadQueue.await(loadVoxAsync(path));
+    }
+
+    /**
+     * OBJ с материалами как один узел: один VBO/EBO, по сабмешу на материал.
+     * Текстуры map_Kd ищутся рядом с OBJ; материалы без текстуры рисуются цветом Kd.
+     */
+    public ModelNode loadModel(String path) {
+        OBJModel model = loadObj(path);
+        String directory = path.substring(0, path.lastIndexOf('/') + 1);
+
+        ModelNode node = new ModelNode(model.mesh,
+                materialTextures(model.materials, directory), materialColors(model.materials));
+        if (hotReloader != null) {
+            modelNodes.computeIfAbsent(model, m -> new ModelNodes(directory, new CopyOnWriteArrayList<>()))
+                    .nodes().add(node);
+        }
+        return node;
+    }
+
+    /** Текстура по индексу материала (только поток рендера) */
+    private int[] materialTextures(List<Material> materials, String directory) {
+        int count = materials.size();
+        int[] textureIds = new int[Math.max(count, 1)];
+        for (int i = 0; i < textureIds.length; i++) {
+            Material material = i < count ? materials.get(i) : Material.defaults("");
+            textureIds[i] = material.diffuseMap() != null
+                    ? loadTexture(directory + material.diffuseMap(), true)
+                    : getWhiteTexture();
+        }
+        return textureIds;
+    }
+
+    /** Цвет (Kd) по индексу материала */
+    private static Vector3f[] materialColors(List<Material> materials) {
+        int count = materials.size();
+        Vector3f[] colors = new Vector3f[Math.max(count, 1)];
+        for (int i = 0; i < colors.length; i++) {
+            Material material = i < count ? materials.get(i) : Material.defaults("");
+            colors[i] = new Vector3f(material.diffuse());
+        }
+        return colors;
+    }
+
+    private int getWhiteTexture() {
+        if (whiteTexture == 0) whiteTexture = TextureLoader.createSolidTexture(0xFFFFFFFF);
+        return whiteTexture;
+    }
+
+    /**
+     * Включает горячую перезагрузку ассетов из каталогов ресурсов (например, src/main/resources).
+     * Действует на ассеты, загруженные после вызова.
+     */
+    public void enableHotReload(List<Path> roots) {
+        if (hotReloader == null) {
+            HotReloader reloader = new HotReloader(roots, workers, uploadQueue);
+            reloader.setListener(hotReloadListener);
+            hotReloader = reloader;
+        }
+    }
+
+    public boolean isHotReloadEnabled() {
+        return hotReloader != null;
+    }
+
+    /** Каталоги горячей перезагрузки; пусто, если она выключена */
+    public List<Path> getHotReloadRoots() {
+        HotReloader reloader = hotReloader;
+        return reloader != null ? reloader.getRoots() : List.of();
+    }
+
+    /** Кому сообщать о перезагруженных ассетах; null — никому */
+    public void setHotReloadListener(HotReloader.Listener listener) {
+        hotReloadListener = listener;
+        HotReloader reloader = hotReloader;
+        if (reloader != null) reloader.setListener(listener);
+    }
+
+    /** Перелинковывать программу при изменении её стадий из {@link ShaderProgram#attachShaderResource} */
+    public void watchShader(ShaderProgram program) {
+        HotReloader reloader = hotReloader;
+        if (reloader == null) return;
+        program.getShaderResources().forEach((type, resource) ->
+                reloader.watch(resource, new HotReloader.Reloadable<String>() {
+                    @Override
+                    public String load(Path file) throws IOException {
+                        return Files.readString(file);
+                    }
+
+                    @Override
+                    public void apply(String code) {
+                        program.reload(type, code);
+                    }
+                }));
+    }
+
+    private void watchTexture(String key, String path, Texture texture) {
+        HotReloader reloader = hotReloader;
+        if (reloader == null) return;
+        reloadWatches.put(texture, reloader.watch(path, new HotReloader.Reloadable<DecodedImage>() {
+            @Override
+            public DecodedImage load(Path file) throws IOException {
+                return TextureLoader.decode(file);
+            }
+
+            @Override
+            public void apply(DecodedImage image) {
+                long bytes = Texture.gpuBytes(image.getWidth(), image.getHeight());
+                TextureLoader.reload(texture.id(), image);
+                cache.resize(key, bytes);
+            }
+
+            @Override
+            public void discard(DecodedImage image) {
+                image.free();
+            }
+        }));
+    }
+
+    private void watchObj(String key, OBJModel model, WatchFactory watchFactory) {
+        HotReloader reloader = hotReloader;
+        if (reloader == null) return;
+        reloadWatches.put(model, watchFactory.watch(reloader, new HotReloader.Reloadable<OBJLoader.Parsed>() {
+            @Override
+            public OBJLoader.Parsed load(Path file) {
+                return OBJLoader.read(file, null, lodSettings);
+            }
+
+            @Override
+            public void apply(OBJLoader.Parsed parsed) {
+                try {
+                    // таблицы материалов узлов собираются до замены меша: новые сабмеши могут ссылаться
+                    // на материалы, которых в старых таблицах нет, а ошибка текстуры оставит прежнюю версию
+                    ModelNodes nodes = modelNodes.get(model);
+                    int[] textureIds = nodes != null ? materialTextures(parsed.materials(), nodes.directory()) : null;
+
+                    model.mesh.reload(parsed.meshData());
+                    model.materials = parsed.materials();
+                    model.textureFile = parsed.textureFile();
+                    model.optimizeStats = parsed.optimizeStats();
+                    cache.resize(key, model.mesh.getGpuBytes());
+
+                    if (nodes != null) {
+                        Vector3f[] colors = materialColors(parsed.materials());
+                        nodes.nodes().forEach(node -> node.setMaterials(textureIds, colors));
+                    }
+                } finally {
+                    parsed.meshData().free();
+                }
+            }
+
+            @Override
+            public void discard(OBJLoader.Parsed parsed) {
+                parsed.meshData().free();
+            }
+        }));
+    }
+
+    private void unwatch(Object asset) {
+        HotReloader.Watch<?> watch = reloadWatches.remove(asset);
+        if (watch != null) watch.cancel();
+    }
+
+    /** Раз в кадр из потока рендера: выгрузка по бюджету */
+    public void update() {
+        cache.evict();
+    }
+
+    /** Выгружает все ассеты без ссылок (только поток рендера), например при смене уровня */
+    public int releaseUnused() {
+        return cache.trim(0);
+    }
+
+    public AssetCache.Stats getStats() {
+        return cache.getStats();
+    }
+
+    public void shutdown() {
+        if (hotReloader != null) hotReloader.close();
+        workers.shutdownNow();
+    }
+
+    /** Узлы {@link #loadModel} одной модели; текстуры их материалов ищутся в directory */
+    private record ModelNodes(String directory, List<ModelNode> nodes) {
+    }
+
+    private interface WatchFactory {
+        HotReloader.Watch<?> watch(HotReloader reloader, HotReloader.Reloadable<OBJLoader.Parsed> reloadable);
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "asset-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -0,0 +1,27 @@
+package com.ancevt.d3d3.engine.asset;
+
+/**
+ * Формат пака ассетов (little-endian):
+ * <pre>
+ * header : magic 'D3PK', version, entryCount
+ * index  : [pathLength, path UTF-8, offset, length, rawLength, compression] * N,
+ *          отсортирован по пути (String.compareTo) — поиск бинарный
+ * data   : содержимое записей, каждая выровнена на 16 байт
+ * </pre>
+ * Несжатые записи отдаются срезами mapped-файла без копирования.
+ */
+final class AssetPack {
+    static final int MAGIC = 0x4B503344; // "D3PK"
+    static final int VERSION = 1;
+    static final int ALIGN = 16;
+
+    static final int STORED = 0;
+    static final int DEFLATE = 1;
+
+    private AssetPack() {
+    }
+
+    static long align(long offset) {
+        return (offset + ALIGN - 1) & -ALIGN;
+    }
+}
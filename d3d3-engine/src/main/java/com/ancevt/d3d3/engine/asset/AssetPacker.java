@@ -0,0 +1,140 @@
+package com.ancevt.d3d3.engine.asset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Собирает каталог ресурсов в один пак ({@link PackAssetSource}).
+ * <p>
+ * Запуск: AssetPacker &lt;resourcesDir&gt; &lt;out.pak&gt;
+ */
+public class AssetPacker {
+
+    // мелкие текстовые файлы жмутся; картинки уже сжаты, а OBJ парсится прямо из mapped-памяти
+    public static final Set<String> DEFAULT_DEFLATE = Set.of("mtl", "vert", "frag", "glsl", "txt", "json");
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: AssetPacker <resourcesDir> <out.pak>");
+            System.exit(1);
+        }
+        pack(Path.of(args[0]), Path.of(args[1]), DEFAULT_DEFLATE);
+    }
+
+    /**
+     * @param deflateExtensions расширения файлов, которые сжимаются (без точки)
+     */
+    public static void pack(Path root, Path out, Set<String> deflateExtensions) {
+        long start = System.nanoTime();
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                String path = root.relativize(file).toString().replace('\\', '/');
+                byte[] raw = Files.readAllBytes(file);
+                boolean deflate = deflateExtensions.contains(extension(path));
+                byte[] data = deflate ? deflate(raw) : raw;
+                // не выиграли — храним как есть
+                if (deflate && data.length >= raw.length) {
+                    data = raw;
+                    deflate = false;
+                }
+                entries.add(new Entry(path, data, raw.length, deflate ? AssetPack.DEFLATE : AssetPack.STORED));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to read assets: " + root, e);
+        }
+        entries.sort(Comparator.comparing(Entry::path));
+
+        // индекс, затем данные с выравниванием
+        int indexSize = 12;
+        for (Entry entry : entries) {
+            indexSize += 4 + entry.pathBytes().length + 16;
+        }
+        long offset = indexSize;
+        int[] offsets = new int[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            offset = AssetPack.align(offset);
+            offsets[i] = (int) offset;
+            offset += entries.get(i).data().length;
+            if (offset > Integer.MAX_VALUE) {
+                throw new RuntimeException("Asset pack larger than 2 GB: " + root);
+            }
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(indexSize).order(ByteOrder.LITTLE_ENDIAN);
+        index.putInt(AssetPack.MAGIC).putInt(AssetPack.VERSION).putInt(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            index.putInt(entry.pathBytes().length).put(entry.pathBytes());
+            index.putInt(offsets[i]).putInt(entry.data().length).putInt(entry.rawLength()).putInt(entry.compression());
+        }
+        index.flip();
+
+        try {
+            Path parent = out.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, out.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                writeFully(channel, index, 0);
+                for (int i = 0; i < entries.size(); i++) {
+                    writeFully(channel, ByteBuffer.wrap(entries.get(i).data()), offsets[i]);
+                }
+            }
+            Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write asset pack: " + out, e);
+        }
+
+        System.out.printf("Asset pack %s: %d entries, %d bytes, %.1f ms%n",
+                out, entries.size(), offset, (System.nanoTime() - start) / 1e6);
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteBuffer out = ByteBuffer.allocate(raw.length + 64);
+            while (!deflater.finished() && out.hasRemaining()) {
+                deflater.deflate(out);
+            }
+            // не поместилось — сжатие бессмысленно
+            if (!deflater.finished()) return raw;
+            byte[] data = new byte[out.position()];
+            out.flip().get(data);
+            return data;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String extension(String path) {
+        int dot = path.lastIndexOf('.');
+        return dot < 0 ? "" : path.substring(dot + 1).toLowerCase();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private record Entry(String path, byte[] data, int rawLength, int compression) {
+        byte[] pathBytes() {
+            return path.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ancevt.d3d3.engine.asset;
+
+/**
+ * Откуда загрузчики берут байты ассетов по пути ресурса ("texture/wall.png").
+ * Текущий источник — {@link AssetSources#get()}.
+ */
+public interface AssetSource {
+
+    /**
+     * @param path путь ресурса без ведущего '/'
+     * @return байты ассета (закрыть после использования) или null, если ассета нет
+     */
+    AssetBuffer open(String path);
+
+    /** Человекочитаемое описание для логов */
+    String describe();
+}
@@ -0,0 +1,69 @@
+package com.ancevt.d3d3.engine.asset;
+
+/**
+ * Текущий {@link AssetSource} для всех загрузчиков. По умолчанию — classpath;
+ * движок ставит пак с classpath в качестве запасного ({@link #chain}).
+ */
+public final class AssetSources {
+
+    private static final AssetSource CLASSPATH = new ClasspathAssetSource(AssetSources.class.getClassLoader());
+
+    private static volatile AssetSource current = CLASSPATH;
+
+    private AssetSources() {
+    }
+
+    public static AssetSource get() {
+        return current;
+    }
+
+    public static void install(AssetSource source) {
+        current = source;
+    }
+
+    public static AssetSource classpath() {
+        return CLASSPATH;
+    }
+
+    /** Ищет ассет в источниках по порядку */
+    public static AssetSource chain(AssetSource... sources) {
+        return new AssetSource() {
+            @Override
+            public AssetBuffer open(String path) {
+                for (AssetSource source : sources) {
+                    AssetBuffer buffer = source.open(path);
+                    if (buffer != null) return buffer;
+                }
+                return null;
+            }
+
+            @Override
+            public String describe() {
+                StringBuilder sb = new StringBuilder();
+                for (AssetSource source : sources) {
+                    if (sb.length() > 0) sb.append(" -> ");
+                    sb.append(source.describe());
+                }
+                return sb.toString();
+            }
+        };
+    }
+
+    /** Ассет из текущего источника или null; ведущий '/' отбрасывается */
+    public static AssetBuffer open(String path) {
+        return current.open(normalize(path));
+    }
+
+    /** Как {@link #open}, но отсутствие ассета — ошибка */
+    public static AssetBuffer require(String path) {
+        AssetBuffer buffer = open(path);
+        if (buffer == null) {
+            throw new RuntimeException("Resource not found: " + path);
+        }
+        return buffer;
+    }
+
+    static String normalize(String path) {
+        return path.startsWith("/") ? path.substring(1) : path;
+    }
+}
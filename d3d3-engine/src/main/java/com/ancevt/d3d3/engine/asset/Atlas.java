@@ -1,122 +1,381 @@
 package com.ancevt.d3d3.engine.asset;
 
-import org.lwjgl.BufferUtils;
+import com.ancevt.d3d3.engine.render.GLState;
+import org.lwjgl.system.MemoryUtil;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL30C.glGenerateMipmap;
-import static org.lwjgl.stb.STBImage.*;
 import static org.lwjgl.stb.STBImageWrite.stbi_write_png;
 
+/**
+ * Текстурный атлас. Картинки раскладываются упаковщиком {@link MaxRectsPacker} на страницы
+ * размером степень двойки: берётся наименьшая страница, куда влезает всё; если не влезает
+ * и в maxPageSize — остаток уходит на следующую страницу (номер страницы — в {@link UVRect#page()}).
+ * Вокруг каждого тайла оставляется padding, заполненный продолжением краёв тайла,
+ * чтобы мип-уровни не подмешивали соседей.
+ */
 public class Atlas {
 
-    private final List<ImageData> images = new ArrayList<>();
+    private final List<Source> sources = new ArrayList<>();
     private final Map<String, UVRect> uvMap = new HashMap<>();
-    private int textureId = -1;
-    private int atlasWidth;
-    private int atlasHeight;
-    private ByteBuffer atlasBuffer;
+    private final List<Page> pages = new ArrayList<>();
 
+    private int maxPageSize = 2048;
+    private int padding = 2;
+    private boolean extrude = true;
+    private boolean square;
+
+    private float efficiency;
+    private String debugSavePath;
+
+    /** Запоминает картинку; чтение и декодирование происходят в {@link #build()} / {@link #compose()} */
     public Atlas addImage(String name, String resourcePath) {
-        try (InputStream in = Atlas.class.getResourceAsStream(resourcePath)) {
-            if (in == null) throw new IOException("Not found: " + resourcePath);
-            byte[] bytes = in.readAllBytes();
-            ByteBuffer buf = BufferUtils.createByteBuffer(bytes.length);
-            buf.put(bytes).flip();
+        sources.add(new Source(name, resourcePath));
+        return this;
+    }
 
-            IntBuffer w = BufferUtils.createIntBuffer(1);
-            IntBuffer h = BufferUtils.createIntBuffer(1);
-            IntBuffer c = BufferUtils.createIntBuffer(1);
+    /** Максимальная сторона страницы (степень двойки, не больше GL_MAX_TEXTURE_SIZE) */
+    public Atlas maxPageSize(int maxPageSize) {
+        if (Integer.bitCount(maxPageSize) != 1) {
+            throw new IllegalArgumentException("Page size must be a power of two: " + maxPageSize);
+        }
+        this.maxPageSize = maxPageSize;
+        return this;
+    }
 
-            stbi_set_flip_vertically_on_load(true);
+    /** Отступ вокруг каждого тайла в пикселях */
+    public Atlas padding(int padding) {
+        if (padding < 0) throw new IllegalArgumentException("Padding must not be negative");
+        this.padding = padding;
+        return this;
+    }
 
-            ByteBuffer pixels = stbi_load_from_memory(buf, w, h, c, 4);
-            if (pixels == null) throw new RuntimeException("STB fail: " + stbi_failure_reason());
+    /** Заполнять отступ краевыми пикселями тайла (иначе — прозрачным) */
+    public Atlas extrude(boolean extrude) {
+        this.extrude = extrude;
+        return this;
+    }
 
-            images.add(new ImageData(name, pixels, w.get(), h.get()));
-        } catch (IOException e) {
-            throw new RuntimeException("Atlas addImage failed: " + resourcePath, e);
-        }
+    /** Квадратные страницы вместо прямоугольных */
+    public Atlas square(boolean square) {
+        this.square = square;
         return this;
     }
 
     public Atlas build() {
-        // складываем по вертикали
-        atlasWidth = images.stream().mapToInt(img -> img.width).max().orElse(0);
-        atlasHeight = images.stream().mapToInt(img -> img.height).sum();
+        return compose().upload();
+    }
+
+    /**
+     * CPU-часть сборки: декодирование картинок, упаковка и раскладка по страницам.
+     * GL не трогает, поэтому может выполняться в рабочем потоке (см. AssetManager.buildAtlasAsync).
+     */
+    public Atlas compose() {
+        // декодирование всех картинок параллельно (флаг переворота stb — свой у каждого потока)
+        List<ImageData> images = new ArrayList<>(sources.parallelStream()
+                .map(source -> new ImageData(source.name, decode(source.resourcePath)))
+                .toList());
+        sources.clear();
+
+        // крупные вперёд — так MaxRects пакует плотнее
+        images.sort(Comparator.<ImageData>comparingInt(img -> Math.max(img.width, img.height))
+                .thenComparingInt(img -> img.width * img.height)
+                .reversed());
+
+        for (ImageData img : images) {
+            if (img.width + padding * 2 > maxPageSize || img.height + padding * 2 > maxPageSize) {
+                throw new IllegalStateException("Image " + img.name + " (" + img.width + "x" + img.height
+                        + ") does not fit into atlas page " + maxPageSize + "x" + maxPageSize);
+            }
+        }
+
+        long imageArea = 0;
+        long pageArea = 0;
+        List<ImageData> remaining = images;
+        while (!remaining.isEmpty()) {
+            List<ImageData> rest = new ArrayList<>();
+            List<Placement> placements = packPage(remaining, rest);
+
+            int pageIndex = pages.size();
+            Page page = new Page(placements.get(0).pageWidth, placements.get(0).pageHeight);
+            // регионы тайлов (вместе с padding) не пересекаются — копируем параллельно
+            placements.parallelStream().forEach(placement -> {
+                blit(placement.image, page, placement.x, placement.y);
+                placement.image.image.free();
+            });
+            for (Placement placement : placements) {
+                ImageData img = placement.image;
+                uvMap.put(img.name, new UVRect(
+                        (float) placement.x / page.width,
+                        (float) placement.y / page.height,
+                        (float) img.width / page.width,
+                        (float) img.height / page.height,
+                        pageIndex));
+                imageArea += (long) img.width * img.height;
+            }
+            pages.add(page);
+            pageArea += (long) page.width * page.height;
+            remaining = rest;
+        }
 
-        atlasBuffer = BufferUtils.createByteBuffer(atlasWidth * atlasHeight * 4);
+        efficiency = pageArea == 0 ? 0 : (float) imageArea / pageArea;
 
-        int yOffset = 0;
+        if (debugSavePath != null) {
+            savePages(debugSavePath);
+        }
+        return this;
+    }
+
+    /** GL-часть сборки (только поток рендера) */
+    public Atlas upload() {
+        if (pages.isEmpty()) throw new IllegalStateException("Compose atlas first");
+
+        int maxTextureSize = glGetInteger(GL_MAX_TEXTURE_SIZE);
+        for (Page page : pages) {
+            if (page.width > maxTextureSize || page.height > maxTextureSize) {
+                throw new IllegalStateException("Atlas page " + page.width + "x" + page.height
+                        + " exceeds GL_MAX_TEXTURE_SIZE " + maxTextureSize);
+            }
+            page.textureId = glGenTextures();
+            GLState.bindTexture(GL_TEXTURE_2D, page.textureId);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, page.width, page.height, 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, page.buffer);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+            glGenerateMipmap(GL_TEXTURE_2D);
+        }
+
+        // пиксели уже в GPU, CPU-копия больше не нужна
+        releasePixels();
+        return this;
+    }
+
+    /** Освобождает CPU-копию страниц (upload() делает это сам) */
+    public void releasePixels() {
+        for (Page page : pages) {
+            if (page.buffer != null) {
+                MemoryUtil.memFree(page.buffer);
+                page.buffer = null;
+            }
+        }
+    }
+
+    /**
+     * Подбирает наименьшую страницу (степень двойки), в которую влезают все оставшиеся картинки;
+     * если не влезают и в максимальную — заполняет максимальную, а лишнее возвращает в rest.
+     */
+    private List<Placement> packPage(List<ImageData> images, List<ImageData> rest) {
+        long area = 0;
+        int minW = 1;
+        int minH = 1;
         for (ImageData img : images) {
-            for (int y = 0; y < img.height; y++) {
-                for (int x = 0; x < img.width; x++) {
-                    int src = (y * img.width + x) * 4;
-                    int dst = ((yOffset + y) * atlasWidth + x) * 4;
-                    for (int i = 0; i < 4; i++) {
-                        atlasBuffer.put(dst + i, img.pixels.get(src + i));
-                    }
+            int w = img.width + padding * 2;
+            int h = img.height + padding * 2;
+            area += (long) w * h;
+            minW = Math.max(minW, w);
+            minH = Math.max(minH, h);
+        }
+
+        int pageW = nextPowerOfTwo(minW);
+        int pageH = nextPowerOfTwo(minH);
+        if (square) pageW = pageH = Math.max(pageW, pageH);
+        // сразу пропускаем размеры, которые заведомо меньше суммарной площади
+        while ((long) pageW * pageH < area && (pageW < maxPageSize || pageH < maxPageSize)) {
+            int[] next = grow(pageW, pageH);
+            pageW = next[0];
+            pageH = next[1];
+        }
+
+        while (true) {
+            boolean last = pageW >= maxPageSize && pageH >= maxPageSize;
+            MaxRectsPacker packer = new MaxRectsPacker(pageW, pageH);
+            List<Placement> placements = new ArrayList<>();
+            rest.clear();
+            for (ImageData img : images) {
+                MaxRectsPacker.Rect rect = packer.insert(img.width + padding * 2, img.height + padding * 2);
+                if (rect == null) {
+                    rest.add(img);
+                    if (!last) break;
+                } else {
+                    placements.add(new Placement(img, rect.x() + padding, rect.y() + padding, pageW, pageH));
                 }
             }
-            // считать UV с учётом ширины
-            float u = 0f;
-            float v = (float) yOffset / atlasHeight;
-            float uw = (float) img.width / atlasWidth;
-            float vh = (float) img.height / atlasHeight;
-            uvMap.put(img.name, new UVRect(u, v, uw, vh));
-
-            yOffset += img.height;
-            stbi_image_free(img.pixels);
-        }
-
-        // OpenGL upload
-        textureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, textureId);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, atlasWidth, atlasHeight, 0,
-                GL_RGBA, GL_UNSIGNED_BYTE, atlasBuffer);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
-        glGenerateMipmap(GL_TEXTURE_2D);
+            if (rest.isEmpty() || last) return placements;
 
+            int[] next = grow(pageW, pageH);
+            pageW = next[0];
+            pageH = next[1];
+        }
+    }
+
+    /** Следующий размер страницы: удваивается меньшая сторона (для квадратных — обе) */
+    private int[] grow(int pageW, int pageH) {
+        if (square) {
+            return new int[]{Math.min(pageW * 2, maxPageSize), Math.min(pageH * 2, maxPageSize)};
+        }
+        if ((pageW <= pageH && pageW < maxPageSize) || pageH >= maxPageSize) {
+            return new int[]{Math.min(pageW * 2, maxPageSize), pageH};
+        }
+        return new int[]{pageW, Math.min(pageH * 2, maxPageSize)};
+    }
+
+    /** Копирует тайл в страницу построчно; при extrude продлевает крайние пиксели на ширину padding */
+    private void blit(ImageData img, Page page, int x0, int y0) {
+        long src = MemoryUtil.memAddress(img.pixels);
+        long dst = MemoryUtil.memAddress(page.buffer);
+        long srcStride = img.width * 4L;
+        long dstStride = page.width * 4L;
+        int border = extrude ? padding : 0;
+
+        for (int y = 0; y < img.height; y++) {
+            long srcRow = src + y * srcStride;
+            long dstRow = dst + (y0 + y) * dstStride + x0 * 4L;
+            MemoryUtil.memCopy(srcRow, dstRow, srcStride);
+            if (border > 0) {
+                int left = MemoryUtil.memGetInt(srcRow);
+                int right = MemoryUtil.memGetInt(srcRow + srcStride - 4);
+                for (int x = 1; x <= border; x++) {
+                    MemoryUtil.memPutInt(dstRow - x * 4L, left);
+                    MemoryUtil.memPutInt(dstRow + srcStride + (x - 1) * 4L, right);
+                }
+            }
+        }
+
+        // верхние и нижние поля — копии крайних строк вместе с боковыми полями
+        long rowBytes = (img.width + border * 2) * 4L;
+        long firstRow = dst + y0 * dstStride + (x0 - border) * 4L;
+        long lastRow = firstRow + (img.height - 1) * dstStride;
+        for (int y = 1; y <= border; y++) {
+            MemoryUtil.memCopy(firstRow, firstRow - y * dstStride, rowBytes);
+            MemoryUtil.memCopy(lastRow, lastRow + y * dstStride, rowBytes);
+        }
+    }
+
+    private static DecodedImage decode(String resourcePath) {
+        try (AssetBuffer asset = AssetSources.open(resourcePath)) {
+            if (asset == null) throw new RuntimeException("Atlas addImage failed, not found: " + resourcePath);
+            return DecodedImage.decode(asset.data(), resourcePath, true, 4);
+        }
+    }
+
+    /**
+     * Сохраняет страницы в PNG: первая — filePath, остальные — с суффиксом _N.
+     * После upload() пиксели на CPU освобождаются, поэтому зовётся до build()/upload():
+     * до compose() путь запоминается и страницы пишутся сразу после раскладки.
+     */
+    public Atlas debugSave(String filePath) {
+        if (pages.isEmpty()) {
+            debugSavePath = filePath;
+        } else if (pages.get(0).buffer != null) {
+            savePages(filePath);
+        } else {
+            throw new IllegalStateException("Atlas pixels are released after upload; call debugSave before build");
+        }
         return this;
     }
 
-    public void debugSave(String filePath) {
-        if (atlasBuffer == null) throw new IllegalStateException("Build atlas first");
-        atlasBuffer.rewind();
-        boolean ok = stbi_write_png(filePath, atlasWidth, atlasHeight, 4, atlasBuffer, atlasWidth * 4);
-        if (!ok) {
-            throw new RuntimeException("Failed to save atlas: " + filePath);
+    private void savePages(String filePath) {
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            String path = i == 0 ? filePath : withSuffix(filePath, "_" + i);
+            boolean ok = stbi_write_png(path, page.width, page.height, 4, page.buffer, page.width * 4);
+            if (!ok) {
+                throw new RuntimeException("Failed to save atlas: " + path);
+            }
+            System.out.println("Atlas saved to " + path);
         }
-        System.out.println("Atlas saved to " + filePath);
     }
 
     public UVRect getUV(String name) {
         return uvMap.get(name);
     }
 
+    /**
+     * Текстура атласа, уместившегося на одну страницу. Если страниц больше, тайлы со страниц 1+
+     * с этой текстурой рисовались бы чужими текселями — тогда текстуру страницы берут по
+     * {@link UVRect#page()} через {@link #getTextureId(int)}.
+     */
     public int getTextureId() {
-        return textureId;
+        if (pages.size() > 1) {
+            throw new IllegalStateException("Atlas spans " + pages.size() + " pages (" + pageSizes()
+                    + "); bind getTextureId(uv.page()) per tile or raise maxPageSize");
+        }
+        return pages.isEmpty() ? -1 : pages.get(0).textureId;
+    }
+
+    public int getTextureId(int page) {
+        return pages.get(page).textureId;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    /** Размеры страниц через запятую, например "1024x512, 256x256" */
+    public String getPageSizes() {
+        return pageSizes();
+    }
+
+    /** Площадь картинок / суммарная площадь страниц */
+    public float getPackingEfficiency() {
+        return efficiency;
+    }
+
+    private String pageSizes() {
+        StringBuilder sb = new StringBuilder();
+        for (Page page : pages) {
+            if (!sb.isEmpty()) sb.append(", ");
+            sb.append(page.width).append('x').append(page.height);
+        }
+        return sb.toString();
+    }
+
+    private static String withSuffix(String filePath, String suffix) {
+        int dot = filePath.lastIndexOf('.');
+        return dot > 0 ? filePath.substring(0, dot) + suffix + filePath.substring(dot) : filePath + suffix;
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    private record Source(String name, String resourcePath) {
+    }
+
+    private record Placement(ImageData image, int x, int y, int pageWidth, int pageHeight) {
+    }
+
+    private static class Page {
+        final int width, height;
+        ByteBuffer buffer;
+        int textureId = -1;
+
+        Page(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.buffer = MemoryUtil.memCalloc(width * height * 4);
+        }
     }
 
     private static class ImageData {
         final String name;
+        final DecodedImage image;
         final ByteBuffer pixels;
         final int width, height;
 
-        ImageData(String name, ByteBuffer pixels, int width, int height) {
+        ImageData(String name, DecodedImage image) {
             this.name = name;
-            this.pixels = pixels;
-            this.width = width;
-            this.height = height;
+            this.image = image;
+            this.pixels = image.getPixels();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
         }
     }
 }
@@ -0,0 +1,77 @@
+package com.ancevt.d3d3.engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ассеты из classpath. Ресурс, лежащий файлом на диске (IDE, exploded classpath), мапится;
+ * запись JAR распаковывается сразу в off-heap буфер, без промежуточного byte[].
+ */
+public class ClasspathAssetSource implements AssetSource {
+
+    private final ClassLoader classLoader;
+
+    public ClasspathAssetSource(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public AssetBuffer open(String path) {
+        URL url = classLoader.getResource(path);
+        if (url == null) return null;
+
+        try {
+            if ("file".equals(url.getProtocol())) {
+                try (FileChannel channel = FileChannel.open(Path.of(url.toURI()), StandardOpenOption.READ)) {
+                    return AssetBuffer.view(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                }
+            }
+
+            URLConnection connection = url.openConnection();
+            long length = connection.getContentLengthLong();
+            try (InputStream in = connection.getInputStream()) {
+                return length >= 0 ? readExactly(in, (int) length) : readAll(in);
+            }
+        } catch (IOException | URISyntaxException e) {
+            throw new RuntimeException("Failed to load resource: " + path, e);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "classpath";
+    }
+
+    private static AssetBuffer readExactly(InputStream in, int length) throws IOException {
+        ByteBuffer buffer = MemoryUtil.memAlloc(Math.max(length, 1)).limit(length);
+        try {
+            ReadableByteChannel channel = Channels.newChannel(in);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new IOException("Unexpected end of resource");
+            }
+            buffer.flip();
+            return AssetBuffer.owned(buffer);
+        } catch (IOException | RuntimeException e) {
+            MemoryUtil.memFree(buffer);
+            throw e;
+        }
+    }
+
+    private static AssetBuffer readAll(InputStream in) throws IOException {
+        byte[] bytes = in.readAllBytes();
+        ByteBuffer buffer = MemoryUtil.memAlloc(Math.max(bytes.length, 1));
+        buffer.put(bytes).flip();
+        return AssetBuffer.owned(buffer);
+    }
+}
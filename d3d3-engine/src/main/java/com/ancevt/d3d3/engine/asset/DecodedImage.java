@@ -0,0 +1,52 @@
+package com.ancevt.d3d3.engine.asset;
+
+import lombok.Getter;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.*;
+
+/**
+ * Раскодированная картинка (пиксели от stb_image). GL не нужен, можно создавать в любом потоке.
+ */
+@Getter
+public class DecodedImage {
+    private final ByteBuffer pixels;
+    private final int width;
+    private final int height;
+    private final int channels;
+
+    private DecodedImage(ByteBuffer pixels, int width, int height, int channels) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.channels = channels;
+    }
+
+    /**
+     * @param encoded         PNG/JPG/... в памяти
+     * @param flip            перевернуть по вертикали (для текстур OpenGL)
+     * @param desiredChannels 4 — всегда RGBA, 0 — как в файле
+     */
+    public static DecodedImage decode(ByteBuffer encoded, String name, boolean flip, int desiredChannels) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer c = stack.mallocInt(1);
+
+            // флаг переворота у stb глобальный, поэтому выставляем его для своего потока
+            stbi_set_flip_vertically_on_load_thread(flip ? 1 : 0);
+            ByteBuffer pixels = stbi_load_from_memory(encoded, w, h, c, desiredChannels);
+            if (pixels == null) {
+                throw new RuntimeException("Failed to load image: " + name + " reason: " + stbi_failure_reason());
+            }
+            return new DecodedImage(pixels, w.get(0), h.get(0), desiredChannels != 0 ? desiredChannels : c.get(0));
+        }
+    }
+
+    public void free() {
+        stbi_image_free(pixels);
+    }
+}
@@ -0,0 +1,244 @@
+package com.ancevt.d3d3.engine.asset;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Горячая перезагрузка ассетов: следит за каталогами ресурсов через {@link WatchService}
+ * и при изменении файла перечитывает только подписанные на него ассеты.
+ * <p>
+ * События копятся, пока файлы не перестанут меняться {@link #DEBOUNCE_MILLIS} мс (редакторы
+ * пишут файл в несколько приёмов). Затем {@link Reloadable#load} выполняется в рабочем потоке,
+ * {@link Reloadable#apply} — в потоке рендера, где GL-объект обновляется на месте.
+ */
+public class HotReloader implements AutoCloseable {
+
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    private final List<Path> roots = new ArrayList<>();
+    private final Executor workers;
+    private final Executor renderThread;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+    private final Map<String, List<Watch<?>>> watches = new ConcurrentHashMap<>();
+    private final Thread thread;
+    private volatile Listener listener;
+
+    /** Двухфазная перезагрузка ассета */
+    public interface Reloadable<T> {
+        /** Чтение и декодирование файла (рабочий поток) */
+        T load(Path file) throws IOException;
+
+        /** Обновление GL-объекта на месте (поток рендера) */
+        void apply(T data);
+
+        /** Данные не понадобились: подписку сняли, пока файл читался */
+        default void discard(T data) {
+        }
+    }
+
+    /** Уведомление об успешной перезагрузке (поток рендера) */
+    public interface Listener {
+        /**
+         * @param key   ресурс classpath или абсолютный путь, как в подписке
+         * @param nanos от изменения файла до конца apply
+         */
+        void reloaded(String key, long nanos);
+    }
+
+    /**
+     * @param roots        каталоги ресурсов (src/main/resources и т.п.); несуществующие пропускаются
+     * @param renderThread исполнитель в потоке рендера (обычно {@link com.ancevt.d3d3.engine.core.GpuUploadQueue})
+     */
+    public HotReloader(List<Path> roots, Executor workers, Executor renderThread) {
+        this.workers = workers;
+        this.renderThread = renderThread;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            for (Path root : roots) {
+                if (!Files.isDirectory(root)) {
+                    System.err.println("Hot reload root not found: " + root.toAbsolutePath());
+                    continue;
+                }
+                Path absolute = root.toAbsolutePath().normalize();
+                this.roots.add(absolute);
+                registerTree(absolute);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to start hot reload: " + roots, e);
+        }
+
+        thread = new Thread(this::run, "hot-reload");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Каталоги, за которыми идёт слежение (абсолютные, без несуществующих) */
+    public List<Path> getRoots() {
+        return Collections.unmodifiableList(roots);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Подписка на ресурс classpath ("texture/wall.png") — ищется относительно корней.
+     */
+    public <T> Watch<T> watch(String resourcePath, Reloadable<T> reloadable) {
+        String key = resourcePath.startsWith("/") ? resourcePath.substring(1) : resourcePath;
+        return add(key, reloadable);
+    }
+
+    /** Подписка на файл по абсолютному пути */
+    public <T> Watch<T> watch(Path file, Reloadable<T> reloadable) {
+        return add(file.toAbsolutePath().normalize().toString(), reloadable);
+    }
+
+    private <T> Watch<T> add(String key, Reloadable<T> reloadable) {
+        Watch<T> watch = new Watch<>(key, reloadable);
+        watches.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(watch);
+        return watch;
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close hot reload watcher: " + e);
+        }
+    }
+
+    private void run() {
+        Set<Path> changed = new LinkedHashSet<>();
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // пока есть накопленные изменения — ждём тишины не дольше DEBOUNCE_MILLIS
+                WatchKey key = changed.isEmpty()
+                        ? watchService.take()
+                        : watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+
+                if (key == null) {
+                    changed.forEach(this::reload);
+                    changed.clear();
+                    continue;
+                }
+
+                Path directory = directories.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW || directory == null) continue;
+                    Path file = directory.resolve((Path) event.context());
+                    if (Files.isDirectory(file)) {
+                        if (event.kind() == ENTRY_CREATE) registerTree(file);
+                    } else {
+                        changed.add(file);
+                    }
+                }
+                if (!key.reset()) directories.remove(key);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // остановка
+        } catch (IOException e) {
+            System.err.println("Hot reload stopped: " + e);
+        }
+    }
+
+    private void reload(Path file) {
+        if (!Files.isRegularFile(file)) return;
+
+        List<Watch<?>> matched = new ArrayList<>(watches.getOrDefault(file.toString(), List.of()));
+        for (Path root : roots) {
+            if (file.startsWith(root)) {
+                String resource = root.relativize(file).toString().replace('\\', '/');
+                matched.addAll(watches.getOrDefault(resource, List.of()));
+            }
+        }
+        for (Watch<?> watch : matched) {
+            if (watch.isActive()) watch.reload(file);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Подписка на файл; {@link #cancel()} при выгрузке ассета */
+    public class Watch<T> {
+        private final String key;
+        private final Reloadable<T> reloadable;
+        private volatile boolean active = true;
+
+        private Watch(String key, Reloadable<T> reloadable) {
+            this.key = key;
+            this.reloadable = reloadable;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        /** Снимает подписку; зовётся из потока рендера, поэтому apply после cancel уже не выполнится */
+        public void cancel() {
+            active = false;
+            List<Watch<?>> list = watches.get(key);
+            if (list != null) list.remove(this);
+        }
+
+        private void reload(Path file) {
+            long start = System.nanoTime();
+            CompletableFuture
+                    .supplyAsync(() -> {
+                        try {
+                            return reloadable.load(file);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Failed to reload: " + file, e);
+                        }
+                    }, workers)
+                    .thenAcceptAsync(data -> {
+                        if (!active) {
+                            reloadable.discard(data);
+                            return;
+                        }
+                        reloadable.apply(data);
+                        Listener current = listener;
+                        if (current != null) current.reloaded(key, System.nanoTime() - start);
+                    }, renderThread)
+                    .exceptionally(e -> {
+                        // ошибка в файле не роняет игру — остаётся прежняя версия ассета
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        System.err.println("Hot reload failed (" + key + "): " + cause.getMessage());
+                        return null;
+                    });
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.ancevt.d3d3.engine.asset;
+
+import org.joml.Vector3f;
+
+/**
+ * Материал из MTL. Пути текстур — как в файле (относительно MTL), null — текстуры нет.
+ *
+ * @param shininess Ns
+ * @param opacity   d (или 1 - Tr)
+ */
+public record Material(String name,
+                       Vector3f ambient,
+                       Vector3f diffuse,
+                       Vector3f specular,
+                       float shininess,
+                       float opacity,
+                       String diffuseMap,
+                       String normalMap) {
+
+    /** Материал, которого нет в MTL (или граней без usemtl): белый, без текстуры */
+    public static Material defaults(String name) {
+        return new Material(name, new Vector3f(), new Vector3f(1, 1, 1), new Vector3f(), 0f, 1f, null, null);
+    }
+}
@@ -0,0 +1,116 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.scene.SubMesh;
+import com.ancevt.d3d3.engine.util.IntArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Группировка граней OBJ по материалам (usemtl). Грани одного материала, разбросанные по файлу,
+ * собираются в один непрерывный диапазон индексов — модель рисуется с одним bind на материал.
+ * <p>
+ * Файл может разбираться частями ({@link ParallelObjParser}): части добавляются по порядку,
+ * грани в начале части наследуют материал, действующий в конце предыдущей.
+ */
+class MaterialGroups {
+
+    // материал граней до первого usemtl
+    static final String DEFAULT_MATERIAL = "";
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final IntArray ranges = new IntArray(64); // [part, material, start, end]
+    private int[] destinations;
+    private int current = -1;
+
+    /**
+     * @param materials  локальная таблица материалов части
+     * @param switches   пары [локальный материал, позиция первого индекса]
+     * @param indexCount число индексов части
+     */
+    void add(int part, List<String> materials, IntArray switches, int indexCount) {
+        int[] sw = switches.array();
+        int start = 0;
+        for (int i = 0; i < switches.size(); i += 2) {
+            addRange(part, start, sw[i + 1]);
+            current = id(materials.get(sw[i]));
+            start = sw[i + 1];
+        }
+        addRange(part, start, indexCount);
+    }
+
+    /** Итоговые сабмеши (материалы в порядке первого появления) и позиции диапазонов в них */
+    List<SubMesh> layout() {
+        int[] counts = new int[names.size()];
+        int[] rs = ranges.array();
+        for (int i = 0; i < ranges.size(); i += 4) {
+            counts[rs[i + 1]] += rs[i + 3] - rs[i + 2];
+        }
+
+        List<SubMesh> subMeshes = new ArrayList<>();
+        int[] cursors = new int[names.size()];
+        int offset = 0;
+        for (int m = 0; m < names.size(); m++) {
+            cursors[m] = offset;
+            if (counts[m] > 0) subMeshes.add(new SubMesh(m, offset, counts[m]));
+            offset += counts[m];
+        }
+
+        destinations = new int[rangeCount()];
+        for (int r = 0; r < destinations.length; r++) {
+            int material = rs[r * 4 + 1];
+            destinations[r] = cursors[material];
+            cursors[material] += rs[r * 4 + 3] - rs[r * 4 + 2];
+        }
+        return subMeshes;
+    }
+
+    /** Переставляет индексы части так, чтобы материалы шли подряд (после {@link #layout()}) */
+    void reorder(int part, int[] src, int[] dst) {
+        for (int r = 0; r < rangeCount(); r++) {
+            if (part(r) != part) continue;
+            System.arraycopy(src, start(r), dst, destination(r), end(r) - start(r));
+        }
+    }
+
+    List<String> getNames() {
+        return names;
+    }
+
+    int rangeCount() {
+        return ranges.size() / 4;
+    }
+
+    int part(int range) {
+        return ranges.get(range * 4);
+    }
+
+    int start(int range) {
+        return ranges.get(range * 4 + 2);
+    }
+
+    int end(int range) {
+        return ranges.get(range * 4 + 3);
+    }
+
+    int destination(int range) {
+        return destinations[range];
+    }
+
+    private void addRange(int part, int start, int end) {
+        if (end <= start) return;
+        if (current < 0) current = id(DEFAULT_MATERIAL);
+        ranges.add(part, current, start);
+        ranges.add(end);
+    }
+
+    private int id(String name) {
+        return ids.computeIfAbsent(name, n -> {
+            names.add(n);
+            return names.size() - 1;
+        });
+    }
+}
@@ -0,0 +1,122 @@
+package com.ancevt.d3d3.engine.asset;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Упаковка прямоугольников в страницу алгоритмом MaxRects (эвристика Best Short Side Fit).
+ * Хранит список максимальных свободных прямоугольников; после каждой вставки
+ * пересекающиеся с ней свободные области режутся, а вложенные друг в друга — удаляются.
+ */
+public class MaxRectsPacker {
+
+    public record Rect(int x, int y, int width, int height) {
+        boolean contains(Rect r) {
+            return r.x >= x && r.y >= y && r.x + r.width <= x + width && r.y + r.height <= y + height;
+        }
+
+        boolean intersects(Rect r) {
+            return r.x < x + width && r.x + r.width > x && r.y < y + height && r.y + r.height > y;
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final List<Rect> free = new ArrayList<>();
+    private final List<Rect> used = new ArrayList<>();
+    private long usedArea;
+
+    public MaxRectsPacker(int width, int height) {
+        this.width = width;
+        this.height = height;
+        free.add(new Rect(0, 0, width, height));
+    }
+
+    /** @return место под прямоугольник или null, если он больше не помещается */
+    public Rect insert(int w, int h) {
+        Rect best = null;
+        int bestShort = Integer.MAX_VALUE;
+        int bestLong = Integer.MAX_VALUE;
+
+        for (Rect f : free) {
+            if (f.width < w || f.height < h) continue;
+            int dw = f.width - w;
+            int dh = f.height - h;
+            int shortSide = Math.min(dw, dh);
+            int longSide = Math.max(dw, dh);
+            if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+                best = new Rect(f.x, f.y, w, h);
+                bestShort = shortSide;
+                bestLong = longSide;
+            }
+        }
+
+        if (best != null) place(best);
+        return best;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public List<Rect> getUsed() {
+        return used;
+    }
+
+    /** Доля занятой площади страницы */
+    public float getOccupancy() {
+        return (float) usedArea / ((long) width * height);
+    }
+
+    private void place(Rect rect) {
+        int count = free.size();
+        for (int i = 0; i < count; ) {
+            if (split(free.get(i), rect)) {
+                free.remove(i);
+                count--;
+            } else {
+                i++;
+            }
+        }
+        prune();
+        used.add(rect);
+        usedArea += (long) rect.width * rect.height;
+    }
+
+    /** Режет свободную область по занятому прямоугольнику; новые куски добавляются в конец списка */
+    private boolean split(Rect f, Rect r) {
+        if (!f.intersects(r)) return false;
+
+        if (r.x > f.x) {
+            free.add(new Rect(f.x, f.y, r.x - f.x, f.height));
+        }
+        if (r.x + r.width < f.x + f.width) {
+            free.add(new Rect(r.x + r.width, f.y, f.x + f.width - (r.x + r.width), f.height));
+        }
+        if (r.y > f.y) {
+            free.add(new Rect(f.x, f.y, f.width, r.y - f.y));
+        }
+        if (r.y + r.height < f.y + f.height) {
+            free.add(new Rect(f.x, r.y + r.height, f.width, f.y + f.height - (r.y + r.height)));
+        }
+        return true;
+    }
+
+    private void prune() {
+        for (int i = 0; i < free.size(); i++) {
+            for (int j = i + 1; j < free.size(); j++) {
+                if (free.get(j).contains(free.get(i))) {
+                    free.remove(i--);
+                    break;
+                }
+                if (free.get(i).contains(free.get(j))) {
+                    free.remove(j--);
+                }
+            }
+        }
+    }
+}
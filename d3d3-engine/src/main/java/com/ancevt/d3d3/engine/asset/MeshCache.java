@@ -0,0 +1,302 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.scene.AABB;
+import com.ancevt.d3d3.engine.scene.LodSettings;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.MeshLod;
+import com.ancevt.d3d3.engine.scene.SubMesh;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static org.lwjgl.opengl.GL11.GL_FLOAT;
+
+/**
+ * Бинарный кэш импортированных мешей. Один файл на исходник:
+ * <pre>
+ * header   : magic 'D3MC', version, sourceLength, sourceHash (CRC32C)
+ * layout   : stride, attributeCount, [location, components, glType, offsetBytes] * N
+ * geometry : vertexCount, indexType, indexCount, boundsMin xyz, boundsMax xyz
+ * meta     : mtlLib (длина + UTF-8), materialCount, [имя] * N,
+ *            subMeshCount, [material, firstIndex, indexCount] * M
+ * lods     : levels, ratio, maxError (LodSettings), lodCount,
+ *            [error, indexCount, subMeshCount, [material, firstIndex, indexCount] * S] * L
+ * data     : вершины, индексы и индексы LOD как есть, выровнены на 16 байт (little-endian)
+ * </pre>
+ * Запись, собранная с другими {@link LodSettings}, считается промахом.
+ * При попадании файл мапится, и вершины/индексы уходят в VBO прямо из mapped-памяти.
+ */
+public class MeshCache {
+
+    private static final int MAGIC = 0x434D3344; // "D3MC"
+    private static final int VERSION = 4; // 3: треугольники после MeshOptimizer, 4: LOD
+    private static final int ALIGN = 16;
+
+    private final Path directory;
+
+    public MeshCache(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public record Entry(MeshData data, String mtlLib, List<String> materials) {
+    }
+
+    /** Хэш содержимого исходника — ключ валидности кэша */
+    public static long hash(ByteBuffer source) {
+        CRC32C crc = new CRC32C();
+        crc.update(source.duplicate());
+        return crc.getValue();
+    }
+
+    /**
+     * @return закэшированный меш (MeshData смотрит в mapped-файл) или null при промахе
+     */
+    public Entry find(String key, ByteBuffer source, LodSettings lodSettings) {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) return null;
+
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (map.getInt() != MAGIC || map.getInt() != VERSION) return null;
+            if (map.getLong() != source.remaining() || map.getLong() != hash(source)) return null;
+
+            int stride = map.getInt();
+            int attributeCount = map.getInt();
+            if (!Layout.matches(stride, attributeCount, map)) return null;
+
+            int vertexCount = map.getInt();
+            int indexType = map.getInt();
+            int indexCount = map.getInt();
+            AABB bounds = new AABB(
+                    new Vector3f(map.getFloat(), map.getFloat(), map.getFloat()),
+                    new Vector3f(map.getFloat(), map.getFloat(), map.getFloat()));
+            String mtlLib = readString(map);
+
+            int materialCount = map.getInt();
+            List<String> materials = new ArrayList<>(materialCount);
+            for (int i = 0; i < materialCount; i++) {
+                String name = readString(map);
+                materials.add(name == null ? "" : name);
+            }
+            List<SubMesh> subMeshes = readSubMeshes(map);
+
+            LodSettings storedLods = new LodSettings(map.getInt(), map.getFloat(), map.getFloat());
+            if (!storedLods.equals(lodSettings)) return null;
+            int lodCount = map.getInt();
+            float[] lodErrors = new float[lodCount];
+            int[] lodIndexCounts = new int[lodCount];
+            List<List<SubMesh>> lodSubMeshes = new ArrayList<>(lodCount);
+            for (int l = 0; l < lodCount; l++) {
+                lodErrors[l] = map.getFloat();
+                lodIndexCounts[l] = map.getInt();
+                lodSubMeshes.add(readSubMeshes(map));
+            }
+
+            int vertexBytes = vertexCount * stride * Float.BYTES;
+            int indexBytes = indexCount * MeshData.indexSize(indexType);
+
+            int vertexOffset = align(map.position());
+            int indexOffset = align(vertexOffset + vertexBytes);
+            if (vertexOffset + vertexBytes > map.capacity()) return null;
+            if (indexCount > 0 && indexOffset + indexBytes > map.capacity()) return null;
+
+            FloatBuffer vertices = map.slice(vertexOffset, vertexBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .asFloatBuffer();
+            ByteBuffer indices = indexCount > 0
+                    ? map.slice(indexOffset, indexBytes).order(ByteOrder.LITTLE_ENDIAN)
+                    : null;
+
+            List<MeshLod> lods = new ArrayList<>(lodCount);
+            int lodOffset = indexOffset + indexBytes;
+            for (int l = 0; l < lodCount; l++) {
+                lodOffset = align(lodOffset);
+                int bytes = lodIndexCounts[l] * MeshData.indexSize(indexType);
+                if (lodOffset + bytes > map.capacity()) return null;
+                ByteBuffer lodIndices = map.slice(lodOffset, bytes).order(ByteOrder.LITTLE_ENDIAN);
+                lods.add(new MeshLod(lodIndices, lodIndexCounts[l], lodSubMeshes.get(l), lodErrors[l]));
+                lodOffset += bytes;
+            }
+
+            MeshData data = MeshData.view(vertices, stride, indices, indexType, bounds);
+            data.setSubMeshes(subMeshes);
+            data.setLods(lods);
+            return new Entry(data, mtlLib, materials);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Mesh cache entry ignored (" + key + "): " + e);
+            return null;
+        }
+    }
+
+    public void store(String key, ByteBuffer source, MeshData data, String mtlLib, List<String> materials,
+                      LodSettings lodSettings) {
+        if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) return;
+
+        byte[] mtl = mtlLib == null ? new byte[0] : mtlLib.getBytes(StandardCharsets.UTF_8);
+        List<byte[]> names = materials.stream().map(name -> name.getBytes(StandardCharsets.UTF_8)).toList();
+        List<SubMesh> subMeshes = data.getSubMeshes();
+        int stride = data.getStride();
+        int attributeCount = Layout.attributeCount(stride);
+
+        int headerSize = 4 + 4 + 8 + 8
+                + 4 + 4 + attributeCount * 16
+                + 4 + 4 + 4 + 6 * 4
+                + 4 + mtl.length
+                + 4 + names.stream().mapToInt(name -> 4 + name.length).sum()
+                + 4 + subMeshes.size() * 12
+                + 4 + 4 + 4 + 4 + data.getLods().stream().mapToInt(lod -> 12 + lod.subMeshes().size() * 12).sum();
+        int vertexBytes = data.getVertexCount() * stride * Float.BYTES;
+        int indexBytes = data.isIndexed() ? data.getIndexCount() * MeshData.indexSize(data.getIndexType()) : 0;
+        int vertexOffset = align(headerSize);
+        int indexOffset = align(vertexOffset + vertexBytes);
+        int[] lodOffsets = new int[data.getLods().size()];
+        int lodOffset = indexOffset + indexBytes;
+        for (int l = 0; l < lodOffsets.length; l++) {
+            lodOffsets[l] = align(lodOffset);
+            MeshLod lod = data.getLods().get(l);
+            lodOffset = lodOffsets[l] + lod.indexCount() * MeshData.indexSize(data.getIndexType());
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(vertexOffset).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        header.putLong(source.remaining()).putLong(hash(source));
+        header.putInt(stride).putInt(attributeCount);
+        Layout.write(stride, header);
+        header.putInt(data.getVertexCount());
+        header.putInt(data.isIndexed() ? data.getIndexType() : 0);
+        header.putInt(data.getIndexCount());
+        AABB bounds = data.getBounds();
+        header.putFloat(bounds.min.x).putFloat(bounds.min.y).putFloat(bounds.min.z);
+        header.putFloat(bounds.max.x).putFloat(bounds.max.y).putFloat(bounds.max.z);
+        header.putInt(mtl.length).put(mtl);
+        header.putInt(names.size());
+        for (byte[] name : names) header.putInt(name.length).put(name);
+        writeSubMeshes(subMeshes, header);
+        header.putInt(lodSettings.levels()).putFloat(lodSettings.ratio()).putFloat(lodSettings.maxError());
+        header.putInt(data.getLods().size());
+        for (MeshLod lod : data.getLods()) {
+            header.putFloat(lod.error()).putInt(lod.indexCount());
+            writeSubMeshes(lod.subMeshes(), header);
+        }
+        header.clear();
+
+        Path file = fileFor(key);
+        try {
+            Files.createDirectories(directory);
+            Path tmp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                writeFully(channel, header, 0);
+                // off-heap буферы пишутся в файл напрямую, без копии на куче
+                writeFully(channel, floatBytes(data.getVertices()), vertexOffset);
+                if (indexBytes > 0) {
+                    writeFully(channel, data.getIndices().duplicate(), indexOffset);
+                }
+                for (int l = 0; l < lodOffsets.length; l++) {
+                    writeFully(channel, data.getLods().get(l).indices().duplicate(), lodOffsets[l]);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write mesh cache (" + key + "): " + e);
+        }
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key.replaceAll("[^A-Za-z0-9._-]", "_") + ".d3m");
+    }
+
+    private static ByteBuffer floatBytes(FloatBuffer buffer) {
+        return MemoryUtil.memByteBuffer(MemoryUtil.memAddress(buffer), buffer.remaining() * Float.BYTES);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static List<SubMesh> readSubMeshes(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<SubMesh> subMeshes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            subMeshes.add(new SubMesh(buffer.getInt(), buffer.getInt(), buffer.getInt()));
+        }
+        return subMeshes;
+    }
+
+    private static void writeSubMeshes(List<SubMesh> subMeshes, ByteBuffer out) {
+        out.putInt(subMeshes.size());
+        for (SubMesh subMesh : subMeshes) {
+            out.putInt(subMesh.material()).putInt(subMesh.firstIndex()).putInt(subMesh.indexCount());
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int align(int offset) {
+        return (offset + ALIGN - 1) & -ALIGN;
+    }
+
+    /** Раскладка вершины, которую понимает Mesh: position(0) [+ texCoord(1)] [+ normal(2)] во float */
+    private static class Layout {
+        static int attributeCount(int stride) {
+            return stride >= 8 ? 3 : stride >= 5 ? 2 : 1;
+        }
+
+        static void write(int stride, ByteBuffer out) {
+            int[][] attributes = attributes(stride);
+            for (int[] a : attributes) {
+                out.putInt(a[0]).putInt(a[1]).putInt(GL_FLOAT).putInt(a[2]);
+            }
+        }
+
+        static boolean matches(int stride, int attributeCount, ByteBuffer in) {
+            int[][] attributes = attributes(stride);
+            if (attributeCount != attributes.length) return false;
+            for (int[] a : attributes) {
+                if (in.getInt() != a[0] || in.getInt() != a[1] || in.getInt() != GL_FLOAT || in.getInt() != a[2]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int[][] attributes(int stride) {
+            int[][] all = {
+                    {0, 3, 0},
+                    {1, 2, 3 * Float.BYTES},
+                    {2, 3, 5 * Float.BYTES}
+            };
+            return Arrays.copyOf(all, attributeCount(stride));
+        }
+    }
+}
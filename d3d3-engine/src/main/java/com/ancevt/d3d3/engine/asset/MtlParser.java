@@ -0,0 +1,89 @@
+package com.ancevt.d3d3.engine.asset;
+
+import org.joml.Vector3f;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Разбор MTL: newmtl, Ka/Kd/Ks, Ns, d/Tr, map_Kd, map_Bump/bump/norm.
+ * Опции текстур (-s, -o, -bm ...) пропускаются, берётся имя файла.
+ */
+public class MtlParser {
+
+    /** Материалы по имени в порядке объявления */
+    public static Map<String, Material> parse(InputStream in) throws IOException {
+        Map<String, Material> materials = new LinkedHashMap<>();
+        if (in == null) return materials;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Builder current = null;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] tokens = line.split("\\s+");
+            String key = tokens[0];
+            if (key.equals("newmtl")) {
+                if (current != null) materials.put(current.name, current.build());
+                current = new Builder(tokens.length > 1 ? line.substring(key.length()).trim() : "");
+                continue;
+            }
+            if (current == null) continue;
+
+            switch (key) {
+                case "Ka" -> current.ambient = color(tokens);
+                case "Kd" -> current.diffuse = color(tokens);
+                case "Ks" -> current.specular = color(tokens);
+                case "Ns" -> current.shininess = number(tokens, current.shininess);
+                case "d" -> current.opacity = number(tokens, current.opacity);
+                case "Tr" -> current.opacity = 1f - number(tokens, 1f - current.opacity);
+                case "map_Kd" -> current.diffuseMap = tokens[tokens.length - 1];
+                case "map_Bump", "map_bump", "bump", "norm" -> current.normalMap = tokens[tokens.length - 1];
+                default -> {
+                }
+            }
+        }
+        if (current != null) materials.put(current.name, current.build());
+        return materials;
+    }
+
+    private static Vector3f color(String[] tokens) {
+        if (tokens.length < 2) return new Vector3f(1, 1, 1);
+        float r = Float.parseFloat(tokens[1]);
+        // "Kd 0.5" — серый
+        float g = tokens.length > 3 ? Float.parseFloat(tokens[2]) : r;
+        float b = tokens.length > 3 ? Float.parseFloat(tokens[3]) : r;
+        return new Vector3f(r, g, b);
+    }
+
+    private static float number(String[] tokens, float fallback) {
+        return tokens.length > 1 ? Float.parseFloat(tokens[1]) : fallback;
+    }
+
+    private static class Builder {
+        final String name;
+        Vector3f ambient = new Vector3f();
+        Vector3f diffuse = new Vector3f(1, 1, 1);
+        Vector3f specular = new Vector3f();
+        float shininess;
+        float opacity = 1f;
+        String diffuseMap;
+        String normalMap;
+
+        Builder(String name) {
+            this.name = name;
+        }
+
+        Material build() {
+            return new Material(name, ambient, diffuse, specular, shininess, opacity, diffuseMap, normalMap);
+        }
+    }
+}
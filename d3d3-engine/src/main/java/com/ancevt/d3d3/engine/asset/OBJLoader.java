@@ -1,115 +1,172 @@
 package com.ancevt.d3d3.engine.asset;
 
+import com.ancevt.d3d3.engine.scene.LodSettings;
 import com.ancevt.d3d3.engine.scene.Mesh;
-import org.joml.Vector2f;
-import org.joml.Vector3f;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.MeshOptimizer;
+import com.ancevt.d3d3.engine.scene.MeshSimplifier;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
-class OBJLoader {
+public class OBJLoader {
+
+    // с этого размера файл парсится на всех ядрах (ParallelObjParser)
+    private static final int PARALLEL_THRESHOLD_BYTES = 4 << 20;
+
+    /**
+     * Результат чтения OBJ без GL-объектов: меш на CPU, первая текстура из MTL, таблица материалов
+     * (индекс — {@link com.ancevt.d3d3.engine.scene.SubMesh#material()}) и статистика перестановки
+     * треугольников (null, если меш взят из {@link MeshCache} или без индексов)
+     */
+    public record Parsed(MeshData meshData, String textureFile, List<Material> materials,
+                         MeshOptimizer.Stats optimizeStats) {
+    }
 
     public static OBJModel load(String resourcePath) {
-        List<Vector3f> positions = new ArrayList<>();
-        List<Vector2f> texCoords = new ArrayList<>();
-        List<Vector3f> normals = new ArrayList<>();
+        return load(resourcePath, null);
+    }
 
-        List<Float> verticesList = new ArrayList<>();
+    public static OBJModel load(String resourcePath, MeshCache cache) {
+        return upload(read(resourcePath, cache));
+    }
+
+    public static OBJModel load(Path file) {
+        return load(file, null);
+    }
+
+    public static OBJModel load(Path file, MeshCache cache) {
+        return upload(read(file, cache));
+    }
 
+    /** Создаёт Mesh (только поток рендера) и освобождает CPU-данные */
+    public static OBJModel upload(Parsed parsed) {
         OBJModel objModel = new OBJModel();
+        try {
+            objModel.mesh = new Mesh(parsed.meshData());
+        } finally {
+            parsed.meshData().free();
+        }
+        objModel.textureFile = parsed.textureFile();
+        objModel.materials = parsed.materials();
+        objModel.optimizeStats = parsed.optimizeStats();
+        return objModel;
+    }
 
-        try (InputStream in = OBJLoader.class.getClassLoader().getResourceAsStream(resourcePath);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("v ")) {
-                    String[] tokens = line.split("\\s+");
-                    positions.add(new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3])
-                    ));
-                } else if (line.startsWith("vt ")) {
-                    String[] tokens = line.split("\\s+");
-                    texCoords.add(new Vector2f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2])
-                    ));
-                } else if (line.startsWith("vn ")) {
-                    String[] tokens = line.split("\\s+");
-                    normals.add(new Vector3f(
-                            Float.parseFloat(tokens[1]),
-                            Float.parseFloat(tokens[2]),
-                            Float.parseFloat(tokens[3])
-                    ));
-                } else if (line.startsWith("f ")) {
-                    String[] tokens = line.split("\\s+");
-                    for (int i = 1; i <= 3; i++) { // треугольник
-                        String[] parts = tokens[i].split("/");
-                        int posIndex = Integer.parseInt(parts[0]) - 1;
-                        int texIndex = parts.length > 1 && !parts[1].isEmpty() ? Integer.parseInt(parts[1]) - 1 : -1;
-                        int normIndex = parts.length > 2 ? Integer.parseInt(parts[2]) - 1 : -1;
-
-                        Vector3f pos = positions.get(posIndex);
-                        Vector2f tex;
-                        if (texIndex >= 0 && texIndex < texCoords.size() && texCoords.size() > 1) {
-                            // использовать UV только если их несколько
-                            tex = texCoords.get(texIndex);
-                        } else {
-                            // генерим UV по X и Y, чтобы текстура легла как кирпич
-                            tex = new Vector2f(pos.x * 0.2f, pos.y * 0.2f);
-                        }
-
-                        Vector3f norm = normIndex >= 0 ? normals.get(normIndex) : new Vector3f(0, 0, 1);
-
-                        // posXYZ (3) + texUV (2) + normXYZ (3) = stride 8
-                        verticesList.add(pos.x);
-                        verticesList.add(pos.y);
-                        verticesList.add(pos.z);
-
-                        verticesList.add(tex.x);
-                        verticesList.add(tex.y);
-
-                        verticesList.add(norm.x);
-                        verticesList.add(norm.y);
-                        verticesList.add(norm.z);
-                    }
-                } else if (line.startsWith("mtllib ")) {
-                    String[] tokens = line.split("\\s+");
-                    String mtlFile = tokens[1];
-                    objModel.textureFile = parseMTL(resourcePath.replace(".obj", ".mtl"));
-                }
-            }
+    /** Чтение и парсинг без GL — можно звать из рабочего потока */
+    public static Parsed read(String resourcePath, MeshCache cache) {
+        return read(resourcePath, cache, LodSettings.DEFAULT);
+    }
+
+    public static Parsed read(Path file, MeshCache cache) {
+        return read(file, cache, LodSettings.DEFAULT);
+    }
+
+    /** @param lods цепочка LOD, которую построить при импорте (в кэше хранится вместе с мешем) */
+    public static Parsed read(String resourcePath, MeshCache cache, LodSettings lods) {
+        AssetBuffer asset = AssetSources.open(resourcePath);
+        if (asset == null) {
+            throw new RuntimeException("OBJ resource not found: " + resourcePath);
+        }
+
+        String directory = resourcePath.substring(0, resourcePath.lastIndexOf('/') + 1);
+        try (asset) {
+            return read(asset.data(), resourcePath, cache, lods, mtlLib -> {
+                AssetBuffer mtl = AssetSources.open(directory + mtlLib);
+                if (mtl == null) mtl = AssetSources.open(resourcePath.replace(".obj", ".mtl"));
+                return mtl != null ? mtl.asStream() : null;
+            });
         } catch (IOException e) {
             throw new RuntimeException("Failed to load OBJ file: " + resourcePath, e);
         }
+    }
 
-        float[] vertices = new float[verticesList.size()];
-        for (int i = 0; i < verticesList.size(); i++) {
-            vertices[i] = verticesList.get(i);
-        }
+    public static Parsed read(Path file, MeshCache cache, LodSettings lods) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
 
-        objModel.mesh = new Mesh(vertices, 8);
-        return objModel;
+            return read(data, file.toAbsolutePath().toString(), cache, lods, mtlLib -> {
+                Path mtl = file.resolveSibling(mtlLib);
+                if (!Files.exists(mtl)) {
+                    mtl = file.resolveSibling(file.getFileName().toString().replace(".obj", ".mtl"));
+                }
+                return Files.exists(mtl) ? Files.newInputStream(mtl) : null;
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to load OBJ file: " + file, e);
+        }
     }
 
-    private static String parseMTL(String mtlResourcePath) {
-        try (InputStream in = OBJLoader.class.getClassLoader().getResourceAsStream(mtlResourcePath);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
+    private static Parsed read(ByteBuffer data, String key, MeshCache cache, LodSettings lods,
+                               MtlSource mtlSource) throws IOException {
+        MeshCache.Entry cached = cache != null ? cache.find(key, data, lods) : null;
+
+        MeshData meshData;
+        String mtlLib;
+        List<String> materialNames;
+        MeshOptimizer.Stats optimizeStats = null;
+        if (cached != null) {
+            // попадание: вершины и индексы смотрят прямо в mapped-файл кэша
+            meshData = cached.data();
+            mtlLib = cached.mtlLib();
+            materialNames = cached.materials();
+        } else {
+            if (data.remaining() >= PARALLEL_THRESHOLD_BYTES && Runtime.getRuntime().availableProcessors() > 1) {
+                ParallelObjParser parser = new ParallelObjParser(data.duplicate());
+                meshData = parser.parse();
+                mtlLib = parser.getMtlLib();
+                materialNames = parser.getMaterials();
+            } else {
+                ObjParser parser = new ObjParser(data.duplicate());
+                meshData = parser.parse();
+                mtlLib = parser.getMtlLib();
+                materialNames = parser.getMaterials();
+            }
+            if (meshData.isIndexed()) {
+                // порядок треугольников под кэш вершин — один раз при импорте, в кэш идёт уже оптимизированный меш
+                optimizeStats = MeshOptimizer.optimize(meshData);
+                meshData.setLods(MeshSimplifier.buildChain(meshData, lods));
+            }
+            if (cache != null) {
+                cache.store(key, data, meshData, mtlLib, materialNames, lods);
+            }
+        }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                if (line.startsWith("map_Kd ")) {
-                    String[] tokens = line.split("\\s+");
-                    return tokens[1]; // например "monu.png"
-                }
+        Map<String, Material> library = Map.of();
+        if (mtlLib != null) {
+            try (InputStream in = mtlSource.open(mtlLib)) {
+                library = MtlParser.parse(in);
+            } catch (IOException | RuntimeException e) {
+                meshData.free();
+                throw e;
             }
-        } catch (IOException ignored) {}
-        return null;
+        }
+
+        // первая текстура библиотеки — для моделей с одним материалом
+        String textureFile = library.values().stream()
+                .map(Material::diffuseMap)
+                .filter(map -> map != null)
+                .findFirst()
+                .orElse(null);
+
+        List<Material> materials = new ArrayList<>(materialNames.size());
+        for (String name : materialNames) {
+            Material material = library.get(name);
+            materials.add(material != null ? material : Material.defaults(name));
+        }
+        return new Parsed(meshData, textureFile, materials, optimizeStats);
+    }
+
+    private interface MtlSource {
+        InputStream open(String mtlLib) throws IOException;
     }
 }
@@ -1,9 +1,14 @@
 package com.ancevt.d3d3.engine.asset;
 
 import com.ancevt.d3d3.engine.scene.Mesh;
+import com.ancevt.d3d3.engine.scene.MeshOptimizer;
+
+import java.util.List;
 
 public class OBJModel {
     public Mesh mesh;
     public String textureFile;
+    public List<Material> materials; // по индексу SubMesh.material
+    public MeshOptimizer.Stats optimizeStats; // null, если меш взят из MeshCache
 }
 
@@ -0,0 +1,409 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.SubMesh;
+import com.ancevt.d3d3.engine.scene.VertexWelder;
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковый парсер OBJ: читает байты напрямую из буфера (в т.ч. memory-mapped),
+ * без String.split, Vector3f и List&lt;Float&gt;. Результат — индексированный меш:
+ * уникальные interleaved вершины (posXYZ + texUV + normXYZ = stride 8) и индексы треугольников.
+ * Грани одного материала (usemtl) собираются подряд, диапазоны — в {@link MeshData#getSubMeshes()}.
+ */
+public class ObjParser {
+
+    public static final int STRIDE = 8;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // младшие 29 бит мантиссы double, которых нет у float, и их значение в середине между float
+    private static final long FLOAT_HALF_ULP_MASK = (1L << 29) - 1;
+    private static final long FLOAT_HALF_ULP = 1L << 28;
+
+    private final ByteBuffer src;
+    private final int limit;
+    private int pos;
+
+    private final FloatArray positions;
+    private final FloatArray texCoords;
+    private final FloatArray normals;
+    private final IntArray corners = new IntArray(16);
+
+    private final float[] vertex = new float[STRIDE];
+    private VertexWelder welder;
+    private IntArray indices;
+
+    private String mtlLib;
+
+    // таблица материалов и переключения usemtl: [материал, позиция первой грани]
+    private List<String> materials = new ArrayList<>();
+    private final IntArray materialSwitches = new IntArray(16);
+
+    public ObjParser(ByteBuffer src) {
+        this(src, src.position(), src.limit(), new FloatArray(1024), new FloatArray(1024), new FloatArray(1024));
+    }
+
+    /** Парсер диапазона [start, end) с заданными массивами атрибутов (для {@link ParallelObjParser}) */
+    ObjParser(ByteBuffer src, int start, int end, FloatArray positions, FloatArray texCoords, FloatArray normals) {
+        this.src = src;
+        this.pos = start;
+        this.limit = end;
+        this.positions = positions;
+        this.texCoords = texCoords;
+        this.normals = normals;
+    }
+
+    public MeshData parse() {
+        // грубая оценка: ~30 байт на строку
+        int expectedLines = Math.max(1024, (limit - pos) / 30);
+        welder = new VertexWelder(STRIDE, expectedLines);
+        indices = new IntArray(expectedLines * 3);
+
+        scan(null);
+
+        MaterialGroups groups = new MaterialGroups();
+        groups.add(0, materials, materialSwitches, indices.size());
+        List<SubMesh> subMeshes = groups.layout();
+        materials = groups.getNames();
+
+        if (groups.rangeCount() > 1) {
+            int[] ordered = new int[indices.size()];
+            groups.reorder(0, indices.array(), ordered);
+            indices.clear();
+            indices.addAll(ordered, 0, ordered.length);
+        }
+
+        MeshData data = MeshData.indexed(welder, indices);
+        data.setSubMeshes(subMeshes);
+        return data;
+    }
+
+    public String getMtlLib() {
+        return mtlLib;
+    }
+
+    /** Таблица материалов; {@link SubMesh#material()} — индекс в ней. Материал без usemtl — пустая строка */
+    public List<String> getMaterials() {
+        return materials;
+    }
+
+    /**
+     * Проход по строкам: v/vt/vn складываются в массивы атрибутов, грани либо разбираются сразу
+     * (faces == null), либо откладываются как [позиция, vCount, tCount, nCount] для второго прохода.
+     */
+    void scan(IntArray faces) {
+        while (pos < limit) {
+            skipSpaces();
+            if (pos >= limit) break;
+
+            byte c = src.get(pos);
+            if (c == 'v') {
+                byte n = at(pos + 1);
+                if (isSpace(n)) {
+                    pos += 1;
+                    positions.add(parseFloat(), parseFloat(), parseFloat());
+                } else if (n == 't' && isSpace(at(pos + 2))) {
+                    pos += 2;
+                    texCoords.add(parseFloat(), parseFloat());
+                } else if (n == 'n' && isSpace(at(pos + 2))) {
+                    pos += 2;
+                    normals.add(parseFloat(), parseFloat(), parseFloat());
+                }
+            } else if (c == 'f' && isSpace(at(pos + 1))) {
+                pos += 1;
+                if (faces == null) {
+                    parseFace(positions.size() / 3, texCoords.size() / 2, normals.size() / 3);
+                } else {
+                    faces.add(pos);
+                    faces.add(positions.size() / 3, texCoords.size() / 2, normals.size() / 3);
+                }
+            } else if (c == 'm' && startsWith("mtllib") && isSpace(at(pos + 6))) {
+                pos += 6;
+                mtlLib = readToken();
+            } else if (c == 'u' && startsWith("usemtl") && isSpace(at(pos + 6))) {
+                pos += 6;
+                String name = readToken();
+                int material = materials.indexOf(name);
+                if (material < 0) {
+                    material = materials.size();
+                    materials.add(name);
+                }
+                // позиция в индексах или, при отложенном разборе, в записях граней
+                materialSwitches.add(material);
+                materialSwitches.add(faces == null ? indices.size() : faces.size());
+            }
+            skipLine();
+        }
+    }
+
+    /**
+     * Второй проход: разбирает отложенные {@link #scan(IntArray)} грани. Счётчики атрибутов
+     * в записях локальные, к ним прибавляются смещения чанка (vBase, tBase, nBase).
+     * Позиции в materialSwitches переписываются на позиции в indices.
+     */
+    void parseFaces(IntArray faces, int vBase, int tBase, int nBase, VertexWelder welder, IntArray indices,
+                    IntArray materialSwitches) {
+        this.welder = welder;
+        this.indices = indices;
+        int[] fs = faces.array();
+        int[] sw = materialSwitches.array();
+        int next = 0;
+        for (int i = 0; i < faces.size(); i += 4) {
+            // переключения материала переводятся из записей граней в позиции индексов
+            while (next < materialSwitches.size() && sw[next + 1] == i) {
+                sw[next + 1] = indices.size();
+                next += 2;
+            }
+            pos = fs[i];
+            parseFace(vBase + fs[i + 1], tBase + fs[i + 2], nBase + fs[i + 3]);
+        }
+        for (; next < materialSwitches.size(); next += 2) {
+            sw[next + 1] = indices.size();
+        }
+    }
+
+    IntArray getMaterialSwitches() {
+        return materialSwitches;
+    }
+
+    FloatArray getPositions() {
+        return positions;
+    }
+
+    FloatArray getTexCoords() {
+        return texCoords;
+    }
+
+    FloatArray getNormals() {
+        return normals;
+    }
+
+    private void parseFace(int vCount, int tCount, int nCount) {
+        corners.clear();
+
+        while (true) {
+            skipSpaces();
+            byte c = at(pos);
+            if (c == '\n' || c == '\r' || c == '#' || c == 0) break;
+
+            int p = resolve(parseInt(), vCount);
+            int t = -1;
+            int n = -1;
+            if (at(pos) == '/') {
+                pos++;
+                if (at(pos) != '/') t = resolve(parseInt(), tCount);
+                if (at(pos) == '/') {
+                    pos++;
+                    n = resolve(parseInt(), nCount);
+                }
+            }
+            corners.add(p, t, n);
+        }
+
+        // веер треугольников (0, i, i + 1)
+        int count = corners.size() / 3;
+        for (int i = 1; i + 1 < count; i++) {
+            emit(0, vCount, tCount, nCount);
+            emit(i, vCount, tCount, nCount);
+            emit(i + 1, vCount, tCount, nCount);
+        }
+    }
+
+    private void emit(int corner, int vCount, int tCount, int nCount) {
+        int[] cs = corners.array();
+        int p = cs[corner * 3];
+        int t = cs[corner * 3 + 1];
+        int n = cs[corner * 3 + 2];
+
+        if (p < 0 || p >= vCount) {
+            throw new IllegalStateException("OBJ face references missing vertex at byte " + pos);
+        }
+
+        float[] ps = positions.array();
+        float px = ps[p * 3];
+        float py = ps[p * 3 + 1];
+        float pz = ps[p * 3 + 2];
+
+        vertex[0] = px;
+        vertex[1] = py;
+        vertex[2] = pz;
+
+        if (t >= 0 && t < tCount && tCount > 1) {
+            // использовать UV только если их несколько
+            vertex[3] = texCoords.get(t * 2);
+            vertex[4] = texCoords.get(t * 2 + 1);
+        } else {
+            // генерим UV по X и Y, чтобы текстура легла как кирпич
+            vertex[3] = px * 0.2f;
+            vertex[4] = py * 0.2f;
+        }
+
+        if (n >= 0 && n < nCount) {
+            float[] ns = normals.array();
+            vertex[5] = ns[n * 3];
+            vertex[6] = ns[n * 3 + 1];
+            vertex[7] = ns[n * 3 + 2];
+        } else {
+            vertex[5] = 0f;
+            vertex[6] = 0f;
+            vertex[7] = 1f;
+        }
+
+        indices.add(welder.add(vertex, 0));
+    }
+
+    /** OBJ-индексы: 1-based, отрицательные — относительно конца списка */
+    private static int resolve(int index, int count) {
+        if (index > 0) return index - 1;
+        if (index < 0) return count + index;
+        return -1;
+    }
+
+    private int parseInt() {
+        skipSpaces();
+        boolean neg = false;
+        byte c = at(pos);
+        if (c == '-') {
+            neg = true;
+            pos++;
+        } else if (c == '+') {
+            pos++;
+        }
+        int start = pos;
+        int v = 0;
+        while (pos < limit) {
+            int d = src.get(pos) - '0';
+            if (d < 0 || d > 9) break;
+            v = v * 10 + d;
+            pos++;
+        }
+        if (pos == start) {
+            throw new IllegalStateException("OBJ: integer expected at byte " + pos);
+        }
+        return neg ? -v : v;
+    }
+
+    private float parseFloat() {
+        skipSpaces();
+        int start = pos;
+        boolean neg = false;
+        byte c = at(pos);
+        if (c == '-') {
+            neg = true;
+            pos++;
+        } else if (c == '+') {
+            pos++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exp = 0;
+        boolean any = false;
+
+        while (pos < limit) {
+            int d = src.get(pos) - '0';
+            if (d < 0 || d > 9) break;
+            any = true;
+            if (digits < 18) {
+                mantissa = mantissa * 10 + d;
+                if (mantissa != 0) digits++;
+            } else {
+                exp++;
+            }
+            pos++;
+        }
+
+        if (at(pos) == '.') {
+            pos++;
+            while (pos < limit) {
+                int d = src.get(pos) - '0';
+                if (d < 0 || d > 9) break;
+                any = true;
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + d;
+                    if (mantissa != 0) digits++;
+                    exp--;
+                }
+                pos++;
+            }
+        }
+
+        c = at(pos);
+        if (any && (c == 'e' || c == 'E')) {
+            pos++;
+            exp += parseInt();
+        }
+
+        if (!any || isTokenChar(at(pos))) {
+            return slowParseFloat(start);
+        }
+
+        // быстрый путь Клингера: мантисса и степень точно представимы в double, результат
+        // округлён к double один раз. Приведение к float округляет второй раз и ошибается, только
+        // если double попал ровно в середину между соседними float — тогда как Float.parseFloat
+        if (mantissa <= 1L << 53 && exp >= -22 && exp <= 22) {
+            double v = exp < 0 ? mantissa / POW10[-exp] : mantissa * POW10[exp];
+            if ((Double.doubleToRawLongBits(v) & FLOAT_HALF_ULP_MASK) != FLOAT_HALF_ULP) {
+                return (float) (neg ? -v : v);
+            }
+        }
+        return slowParseFloat(start);
+    }
+
+    private float slowParseFloat(int start) {
+        pos = start;
+        String token = readToken();
+        try {
+            return Float.parseFloat(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("OBJ: bad float '" + token + "' at byte " + start, e);
+        }
+    }
+
+    private String readToken() {
+        skipSpaces();
+        int start = pos;
+        while (pos < limit && isTokenChar(src.get(pos))) pos++;
+        byte[] bytes = new byte[pos - start];
+        src.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean startsWith(String keyword) {
+        if (pos + keyword.length() > limit) return false;
+        for (int i = 0; i < keyword.length(); i++) {
+            if (src.get(pos + i) != keyword.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void skipSpaces() {
+        while (pos < limit && isSpace(src.get(pos))) pos++;
+    }
+
+    private void skipLine() {
+        while (pos < limit && src.get(pos) != '\n') pos++;
+        pos++;
+    }
+
+    private byte at(int index) {
+        return index < limit ? src.get(index) : 0;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static boolean isTokenChar(byte c) {
+        return c != ' ' && c != '\t' && c != '\n' && c != '\r' && c != 0 && c != '/';
+    }
+}
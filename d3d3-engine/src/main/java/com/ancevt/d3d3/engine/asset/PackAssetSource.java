@@ -0,0 +1,97 @@
+package com.ancevt.d3d3.engine.asset;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Ассеты из пака ({@link AssetPacker}). Файл мапится целиком, индекс читается один раз;
+ * несжатые записи отдаются срезами mapped-памяти, сжатые распаковываются в off-heap буфер.
+ */
+public class PackAssetSource implements AssetSource {
+
+    private final Path file;
+    private final MappedByteBuffer map;
+    private final String[] paths;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+    private final int[] compressions;
+
+    public PackAssetSource(Path file) {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open asset pack: " + file, e);
+        }
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.getInt() != AssetPack.MAGIC || map.getInt() != AssetPack.VERSION) {
+            throw new RuntimeException("Not an asset pack (or unsupported version): " + file);
+        }
+
+        int count = map.getInt();
+        paths = new String[count];
+        offsets = new int[count];
+        lengths = new int[count];
+        rawLengths = new int[count];
+        compressions = new int[count];
+        for (int i = 0; i < count; i++) {
+            byte[] path = new byte[map.getInt()];
+            map.get(path);
+            paths[i] = new String(path, StandardCharsets.UTF_8);
+            offsets[i] = map.getInt();
+            lengths[i] = map.getInt();
+            rawLengths[i] = map.getInt();
+            compressions[i] = map.getInt();
+        }
+    }
+
+    @Override
+    public AssetBuffer open(String path) {
+        int i = Arrays.binarySearch(paths, path);
+        if (i < 0) return null;
+
+        ByteBuffer slice = map.slice(offsets[i], lengths[i]);
+        if (compressions[i] == AssetPack.STORED) {
+            return AssetBuffer.view(slice);
+        }
+
+        ByteBuffer raw = MemoryUtil.memAlloc(Math.max(rawLengths[i], 1)).limit(rawLengths[i]);
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(slice);
+            while (raw.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(raw) == 0 && inflater.needsInput()) break;
+            }
+            if (raw.hasRemaining()) throw new DataFormatException("truncated entry");
+            raw.flip();
+            return AssetBuffer.owned(raw);
+        } catch (DataFormatException e) {
+            MemoryUtil.memFree(raw);
+            throw new RuntimeException("Failed to load resource from pack: " + path, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public int getEntryCount() {
+        return paths.length;
+    }
+
+    @Override
+    public String describe() {
+        return "pack " + file + " (" + paths.length + " entries)";
+    }
+}
@@ -0,0 +1,212 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.SubMesh;
+import com.ancevt.d3d3.engine.scene.VertexWelder;
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Многопоточный вариант {@link ObjParser} для больших файлов. Результат побайтно совпадает
+ * с последовательным парсером (те же вершины в том же порядке и те же индексы).
+ * <ol>
+ *   <li>файл режется на чанки по границам строк; v/vt/vn каждого чанка парсятся параллельно,
+ *       грани только запоминаются (позиция строки + локальные счётчики атрибутов);</li>
+ *   <li>префиксные суммы дают смещения атрибутов чанков, атрибуты склеиваются в общие массивы;</li>
+ *   <li>грани разбираются параллельно, каждый чанк склеивает свои вершины локально;</li>
+ *   <li>локально уникальные вершины по порядку чанков сливаются в общий {@link VertexWelder}
+ *       (порядок первого появления сохраняется), диапазоны граней группируются по материалам,
+ *       затем вершины и индексы раскладываются в итоговые буферы параллельно.</li>
+ * </ol>
+ */
+public class ParallelObjParser {
+
+    private static final int STRIDE = ObjParser.STRIDE;
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+
+    private final ByteBuffer src;
+    private final ForkJoinPool pool;
+
+    private String mtlLib;
+    private List<String> materials = List.of();
+
+    public ParallelObjParser(ByteBuffer src) {
+        this(src, ForkJoinPool.commonPool());
+    }
+
+    public ParallelObjParser(ByteBuffer src, ForkJoinPool pool) {
+        this.src = src;
+        this.pool = pool;
+    }
+
+    public MeshData parse() {
+        int bytes = src.remaining();
+        return parse(Math.max(1, Math.min(pool.getParallelism() * 4, bytes / MIN_CHUNK_BYTES)));
+    }
+
+    /** @param chunkCount желаемое число чанков (фактическое может быть меньше для коротких файлов) */
+    public MeshData parse(int chunkCount) {
+        int[] bounds = split(chunkCount);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int k = 0; k < chunks.length; k++) {
+            chunks[k] = new Chunk(new ObjParser(src, bounds[k], bounds[k + 1],
+                    new FloatArray(1024), new FloatArray(1024), new FloatArray(1024)));
+        }
+
+        // 1. атрибуты и позиции граней
+        forEach(chunks.length, k -> chunks[k].parser.scan(chunks[k].faces));
+
+        // 2. префиксные суммы и общие массивы атрибутов
+        FloatArray positions = new FloatArray(1024);
+        FloatArray texCoords = new FloatArray(1024);
+        FloatArray normals = new FloatArray(1024);
+        for (Chunk chunk : chunks) {
+            chunk.vBase = positions.size() / 3;
+            chunk.tBase = texCoords.size() / 2;
+            chunk.nBase = normals.size() / 3;
+            append(positions, chunk.parser.getPositions());
+            append(texCoords, chunk.parser.getTexCoords());
+            append(normals, chunk.parser.getNormals());
+            if (chunk.parser.getMtlLib() != null) mtlLib = chunk.parser.getMtlLib();
+        }
+
+        // 3. грани с локальной склейкой вершин
+        forEach(chunks.length, k -> {
+            Chunk chunk = chunks[k];
+            int faceCount = chunk.faces.size() / 4;
+            chunk.welder = new VertexWelder(STRIDE, Math.max(1024, faceCount * 2));
+            chunk.indices = new IntArray(Math.max(16, faceCount * 3));
+            new ObjParser(src, bounds[k], bounds[k + 1], positions, texCoords, normals)
+                    .parseFaces(chunk.faces, chunk.vBase, chunk.tBase, chunk.nBase, chunk.welder, chunk.indices,
+                            chunk.parser.getMaterialSwitches());
+            chunk.faces = null;
+        });
+
+        // 4. слияние локальных вершин в общий порядок, раскладка индексов по материалам
+        MaterialGroups groups = new MaterialGroups();
+        int expected = 0;
+        for (Chunk chunk : chunks) expected += chunk.welder.getVertexCount();
+        VertexWelder welder = new VertexWelder(STRIDE, expected);
+        int indexCount = 0;
+        for (int k = 0; k < chunks.length; k++) {
+            Chunk chunk = chunks[k];
+            float[] local = chunk.welder.getVertices().array();
+            chunk.remap = new int[chunk.welder.getVertexCount()];
+            chunk.firstVertex = welder.getVertexCount();
+            for (int i = 0; i < chunk.remap.length; i++) {
+                chunk.remap[i] = welder.add(local, i * STRIDE);
+            }
+            chunk.lastVertex = welder.getVertexCount();
+            chunk.firstRange = groups.rangeCount();
+            groups.add(k, chunk.parser.getMaterials(), chunk.parser.getMaterialSwitches(), chunk.indices.size());
+            chunk.lastRange = groups.rangeCount();
+            indexCount += chunk.indices.size();
+            chunk.welder = null;
+        }
+        List<SubMesh> subMeshes = groups.layout();
+        materials = groups.getNames();
+
+        // 5. итоговые буферы
+        int vertexCount = welder.getVertexCount();
+        int indexType = MeshData.indexTypeFor(vertexCount);
+        int indexSize = MeshData.indexSize(indexType);
+        float[] vertices = welder.getVertices().array();
+        FloatBuffer vb = MemoryUtil.memAllocFloat(Math.max(vertexCount * STRIDE, 1));
+        ByteBuffer ib = MemoryUtil.memAlloc(Math.max(indexCount * indexSize, 1));
+        long ibAddress = MemoryUtil.memAddress(ib);
+
+        forEach(chunks.length, k -> {
+            Chunk chunk = chunks[k];
+            int from = chunk.firstVertex * STRIDE;
+            vb.put(from, vertices, from, (chunk.lastVertex - chunk.firstVertex) * STRIDE);
+
+            int[] local = chunk.indices.array();
+            for (int r = chunk.firstRange; r < chunk.lastRange; r++) {
+                long address = ibAddress + (long) (groups.destination(r) - groups.start(r)) * indexSize;
+                for (int i = groups.start(r); i < groups.end(r); i++) {
+                    int index = chunk.remap[local[i]];
+                    if (indexType == GL_UNSIGNED_SHORT) {
+                        MemoryUtil.memPutShort(address + i * 2L, (short) index);
+                    } else {
+                        MemoryUtil.memPutInt(address + i * 4L, index);
+                    }
+                }
+            }
+        });
+
+        vb.limit(vertexCount * STRIDE);
+        ib.limit(indexCount * indexSize);
+        MeshData data = new MeshData(vb, STRIDE, ib, indexType);
+        data.setSubMeshes(subMeshes);
+        return data;
+    }
+
+    public String getMtlLib() {
+        return mtlLib;
+    }
+
+    /** Таблица материалов, как у {@link ObjParser#getMaterials()} */
+    public List<String> getMaterials() {
+        return materials;
+    }
+
+    /** Границы чанков: каждая, кроме первой, стоит сразу после '\n' */
+    private int[] split(int chunkCount) {
+        int start = src.position();
+        int end = src.limit();
+        int size = Math.max(1, (end - start) / Math.max(1, chunkCount));
+
+        IntArray bounds = new IntArray(chunkCount + 1);
+        bounds.add(start);
+        int pos = start;
+        while (true) {
+            pos += size;
+            if (pos >= end) break;
+            while (pos < end && src.get(pos - 1) != '\n') pos++;
+            if (pos >= end) break;
+            bounds.add(pos);
+        }
+        bounds.add(end);
+        return bounds.toArray();
+    }
+
+    private void forEach(int count, IntConsumer action) {
+        if (count == 1) {
+            action.accept(0);
+            return;
+        }
+        // parallel stream внутри задачи пула выполняется на воркерах этого же пула
+        pool.submit(() -> IntStream.range(0, count).parallel().forEach(action)).join();
+    }
+
+    private static void append(FloatArray dst, FloatArray src) {
+        dst.addAll(src.array(), 0, src.size());
+    }
+
+    private static class Chunk {
+        final ObjParser parser;
+        IntArray faces = new IntArray(1024);
+        int vBase, tBase, nBase;
+
+        VertexWelder welder;
+        IntArray indices;
+
+        int[] remap;
+        int firstVertex, lastVertex;
+        int firstRange, lastRange;
+
+        Chunk(ObjParser parser) {
+            this.parser = parser;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.ancevt.d3d3.engine.asset;
+
+/**
+ * GL-текстура, загруженная через {@link AssetManager}.
+ */
+public record Texture(int id, int width, int height) {
+
+    /** Оценка видеопамяти: RGBA8 со всей цепочкой мип-уровней */
+    public long gpuBytes() {
+        return gpuBytes(width, height);
+    }
+
+    public static long gpuBytes(int width, int height) {
+        long bytes = 0;
+        int w = width;
+        int h = height;
+        while (true) {
+            bytes += (long) w * h * 4;
+            if (w == 1 && h == 1) break;
+            w = Math.max(1, w / 2);
+            h = Math.max(1, h / 2);
+        }
+        return bytes;
+    }
+}
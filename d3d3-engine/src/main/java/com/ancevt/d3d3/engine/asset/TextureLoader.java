@@ -1,14 +1,16 @@
 package com.ancevt.d3d3.engine.asset;
 
-import com.ancevt.d3d3.engine.core.Engine;
+import com.ancevt.d3d3.engine.render.GLState;
 import org.lwjgl.stb.STBImage;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.system.MemoryUtil;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
@@ -21,37 +23,58 @@ import static org.lwjgl.stb.STBImage.stbi_image_free;
 public class TextureLoader {
 
     public static int loadTextureFromResources(String resourcePath, boolean repeat) {
-        ByteBuffer imageBuffer;
-        try (InputStream in = Engine.class.getClassLoader().getResourceAsStream(resourcePath)) {
-            if (in == null) {
-                throw new IOException("Resource not found: " + resourcePath);
-            }
-            byte[] data = in.readAllBytes();
-            imageBuffer = MemoryUtil.memAlloc(data.length);
-            imageBuffer.put(data).flip();
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load resource: " + resourcePath, e);
-        }
+        return upload(decode(resourcePath), repeat);
+    }
 
-        int textureId;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
+    /** Чтение и декодирование картинки; GL не трогает, можно звать из рабочего потока */
+    public static DecodedImage decode(String resourcePath) {
+        try (AssetBuffer asset = AssetSources.require(resourcePath)) {
+            return DecodedImage.decode(asset.data(), resourcePath, true, 4);
+        }
+    }
 
-            STBImage.stbi_set_flip_vertically_on_load(true);
-            ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 4);
+    /** Декодирование файла с диска (горячая перезагрузка) */
+    public static DecodedImage decode(Path file) throws IOException {
+        byte[] data = Files.readAllBytes(file);
+        ByteBuffer imageBuffer = MemoryUtil.memAlloc(data.length);
+        try {
+            imageBuffer.put(data).flip();
+            return DecodedImage.decode(imageBuffer, file.toString(), true, 4);
+        } finally {
             MemoryUtil.memFree(imageBuffer);
+        }
+    }
 
-            if (image == null) {
-                throw new RuntimeException("Failed to load image: " + STBImage.stbi_failure_reason());
+    /**
+     * Обновляет существующую текстуру на месте, id не меняется: при тех же размерах —
+     * glTexSubImage2D, иначе хранилище пересоздаётся. Картинка освобождается.
+     */
+    public static void reload(int textureId, DecodedImage image) {
+        try {
+            GLState.bindTexture(GL_TEXTURE_2D, textureId);
+            int width = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_WIDTH);
+            int height = glGetTexLevelParameteri(GL_TEXTURE_2D, 0, GL_TEXTURE_HEIGHT);
+
+            if (width == image.getWidth() && height == image.getHeight()) {
+                glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_RGBA, GL_UNSIGNED_BYTE, image.getPixels());
+            } else {
+                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, image.getWidth(), image.getHeight(), 0,
+                        GL_RGBA, GL_UNSIGNED_BYTE, image.getPixels());
             }
+            glGenerateMipmap(GL_TEXTURE_2D);
+        } finally {
+            image.free();
+        }
+    }
 
-            textureId = glGenTextures();
-            glBindTexture(GL_TEXTURE_2D, textureId);
+    /** Создание GL-текстуры из раскодированной картинки (только поток рендера); картинка освобождается */
+    public static int upload(DecodedImage image, boolean repeat) {
+        try {
+            int textureId = glGenTextures();
+            GLState.bindTexture(GL_TEXTURE_2D, textureId);
 
-            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, w.get(), h.get(), 0,
-                    GL_RGBA, GL_UNSIGNED_BYTE, image);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, image.getWidth(), image.getHeight(), 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, image.getPixels());
             glGenerateMipmap(GL_TEXTURE_2D);
 
             // фильтрация
@@ -63,26 +86,36 @@ public class TextureLoader {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, wrap);
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, wrap);
 
-            stbi_image_free(image);
+            return textureId;
+        } finally {
+            image.free();
         }
-        return textureId;
     }
 
+    /** Текстура 1x1 одного цвета (0xAABBGGRR) — для материалов без map_Kd */
+    public static int createSolidTexture(int rgba) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            ByteBuffer pixel = stack.malloc(4).order(ByteOrder.LITTLE_ENDIAN);
+            pixel.putInt(0, rgba);
+
+            int textureId = glGenTextures();
+            GLState.bindTexture(GL_TEXTURE_2D, textureId);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, 1, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixel);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            return textureId;
+        }
+    }
+
+
     public static int loadCubemap(String[] faces) {
         int textureID = glGenTextures();
-        glBindTexture(GL_TEXTURE_CUBE_MAP, textureID);
+        GLState.bindTexture(GL_TEXTURE_CUBE_MAP, textureID);
 
         for (int i = 0; i < faces.length; i++) {
-            ByteBuffer imageBuffer;
-            try (InputStream in = Engine.class.getClassLoader().getResourceAsStream(faces[i])) {
-                if (in == null) {
-                    throw new IOException("Cubemap face not found: " + faces[i]);
-                }
-                byte[] data = in.readAllBytes();
-                imageBuffer = MemoryUtil.memAlloc(data.length);
-                imageBuffer.put(data).flip();
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to load cubemap face: " + faces[i], e);
+            AssetBuffer asset = AssetSources.open(faces[i]);
+            if (asset == null) {
+                throw new RuntimeException("Cubemap face not found: " + faces[i]);
             }
 
             try (MemoryStack stack = MemoryStack.stackPush()) {
@@ -90,9 +123,9 @@ public class TextureLoader {
                 IntBuffer h = stack.mallocInt(1);
                 IntBuffer channels = stack.mallocInt(1);
 
-                STBImage.stbi_set_flip_vertically_on_load(false); // для cubemap не переворачиваем
-                ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 0);
-                MemoryUtil.memFree(imageBuffer);
+                STBImage.stbi_set_flip_vertically_on_load_thread(0); // для cubemap не переворачиваем
+                ByteBuffer image = STBImage.stbi_load_from_memory(asset.data(), w, h, channels, 0);
+                asset.close();
 
                 if (image == null) {
                     throw new RuntimeException("Failed to load cubemap face: " + faces[i] +
@@ -122,10 +155,4 @@ public class TextureLoader {
 
         return textureID;
     }
-
-
-
-
-
-
 }
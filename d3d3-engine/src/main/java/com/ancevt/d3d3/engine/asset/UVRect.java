@@ -1,4 +1,11 @@
 package com.ancevt.d3d3.engine.asset;
 
-public record UVRect(float u, float v, float width, float height) {
+/**
+ * Прямоугольник тайла в атласе (в UV-координатах страницы) и номер страницы атласа.
+ */
+public record UVRect(float u, float v, float width, float height, int page) {
+
+    public UVRect(float u, float v, float width, float height) {
+        this(u, v, width, height, 0);
+    }
 }
@@ -0,0 +1,181 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.render.GLState;
+import com.ancevt.d3d3.engine.scene.GreedyMesher;
+import com.ancevt.d3d3.engine.scene.Mesh;
+import com.ancevt.d3d3.engine.scene.MeshData;
+import com.ancevt.d3d3.engine.scene.VertexLayout;
+import com.ancevt.d3d3.engine.scene.VoxelVolume;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+
+/**
+ * Загрузчик MagicaVoxel (.vox). Из чанков SIZE/XYZI/RGBA берётся первая модель и палитра,
+ * остальные чанки (nTRN, nGRP, MATL, ...) пропускаются. Меш строится {@link GreedyMesher},
+ * цвет каждого квада берётся из текстуры палитры 256x1.
+ * <p>
+ * В MagicaVoxel вверх смотрит Z; при загрузке оси переводятся в движковые (Y вверх).
+ */
+public class VoxLoader {
+
+    private static final int MAGIC = 0x20584F56; // "VOX "
+    private static final int PALETTE_SIZE = 256;
+
+    /**
+     * Результат чтения без GL: объём, палитра (RGBA, индекс = материал), меш на CPU
+     * и число видимых граней вокселей до слияния в квады
+     */
+    public record Parsed(VoxelVolume volume, int[] palette, MeshData meshData, int faceCount) {
+    }
+
+    public static VoxModel load(String resourcePath) {
+        return upload(read(resourcePath));
+    }
+
+    /** Чтение, парсинг и greedy meshing без GL — можно звать из рабочего потока */
+    public static Parsed read(String resourcePath) {
+        int[] palette = defaultPalette();
+        VoxelVolume volume;
+        try (AssetBuffer asset = AssetSources.require(resourcePath)) {
+            volume = parse(asset.data().duplicate().order(ByteOrder.LITTLE_ENDIAN), palette, resourcePath);
+        }
+
+        GreedyMesher mesher = new GreedyMesher(GreedyMesher.MaterialUV.palette(PALETTE_SIZE), 1f);
+        MeshData meshData = mesher.mesh(volume);
+        return new Parsed(volume, palette, meshData, mesher.getFaceCount());
+    }
+
+    /** Создаёт Mesh и текстуру палитры (только поток рендера) */
+    public static VoxModel upload(Parsed parsed) {
+        VoxModel model = new VoxModel();
+        try {
+            // координаты вокселей — целые/полуцелые от центра, в half-float они точны
+            model.mesh = new Mesh(parsed.meshData(), VertexLayout.HALF);
+        } finally {
+            parsed.meshData().free();
+        }
+        model.paletteTexture = createPaletteTexture(parsed.palette());
+        model.volume = parsed.volume();
+        model.faceCount = parsed.faceCount();
+        return model;
+    }
+
+    static VoxelVolume parse(ByteBuffer data, int[] palette, String name) {
+        if (data.remaining() < 8 || data.getInt() != MAGIC) {
+            throw new RuntimeException("Not a VOX file: " + name);
+        }
+        data.getInt(); // версия
+
+        VoxelVolume volume = null;
+        int sizeX = 0, sizeY = 0, sizeZ = 0;
+
+        // MAIN содержит все остальные чанки как детей, поэтому просто идём по чанкам подряд
+        while (data.remaining() >= 12) {
+            int id = data.getInt();
+            int contentSize = data.getInt();
+            data.getInt(); // размер детей
+            int contentStart = data.position();
+
+            switch (chunkName(id)) {
+                case "MAIN" -> {
+                    continue; // дети идут сразу за пустым содержимым
+                }
+                case "SIZE" -> {
+                    if (volume == null) {
+                        sizeX = data.getInt();
+                        sizeY = data.getInt();
+                        sizeZ = data.getInt();
+                    }
+                }
+                case "XYZI" -> {
+                    if (volume == null) {
+                        // Z вверх -> Y вверх: (x, y, z) -> (x, z, sizeY - 1 - y)
+                        volume = new VoxelVolume(sizeX, sizeZ, sizeY);
+                        int count = data.getInt();
+                        for (int i = 0; i < count; i++) {
+                            int x = data.get() & 0xFF;
+                            int y = data.get() & 0xFF;
+                            int z = data.get() & 0xFF;
+                            int color = data.get() & 0xFF;
+                            if (x < sizeX && y < sizeY && z < sizeZ) {
+                                volume.set(x, z, sizeY - 1 - y, color);
+                            }
+                        }
+                    }
+                }
+                case "RGBA" -> {
+                    // цвет i хранится как palette[i - 1]
+                    for (int i = 1; i < PALETTE_SIZE; i++) {
+                        palette[i] = data.getInt();
+                    }
+                }
+                default -> {
+                }
+            }
+            data.position(contentStart + contentSize);
+        }
+
+        if (volume == null) {
+            throw new RuntimeException("VOX file has no voxel data: " + name);
+        }
+        return volume;
+    }
+
+    private static String chunkName(int id) {
+        return new String(new byte[]{(byte) id, (byte) (id >> 8), (byte) (id >> 16), (byte) (id >> 24)});
+    }
+
+    /**
+     * Палитра MagicaVoxel по умолчанию (для файлов без RGBA): куб 6x6x6 без чёрного,
+     * затем по 10 оттенков красного, зелёного, синего и серого. Формат 0xAABBGGRR.
+     */
+    private static int[] defaultPalette() {
+        int[] palette = new int[PALETTE_SIZE];
+        int[] cube = {0xFF, 0xCC, 0x99, 0x66, 0x33, 0x00};
+        int[] ramp = {0xEE, 0xDD, 0xBB, 0xAA, 0x88, 0x77, 0x55, 0x44, 0x22, 0x11};
+
+        int i = 1;
+        for (int r : cube) {
+            for (int g : cube) {
+                for (int b : cube) {
+                    if (r == 0 && g == 0 && b == 0) continue;
+                    palette[i++] = rgba(r, g, b);
+                }
+            }
+        }
+        for (int c : ramp) palette[i++] = rgba(c, 0, 0);
+        for (int c : ramp) palette[i++] = rgba(0, c, 0);
+        for (int c : ramp) palette[i++] = rgba(0, 0, c);
+        for (int c : ramp) palette[i++] = rgba(c, c, c);
+        return palette;
+    }
+
+    private static int rgba(int r, int g, int b) {
+        return 0xFF000000 | (b << 16) | (g << 8) | r;
+    }
+
+    private static int createPaletteTexture(int[] palette) {
+        ByteBuffer pixels = MemoryUtil.memAlloc(PALETTE_SIZE * 4).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            for (int color : palette) pixels.putInt(color);
+            pixels.flip();
+
+            int textureId = glGenTextures();
+            GLState.bindTexture(GL_TEXTURE_2D, textureId);
+            glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, PALETTE_SIZE, 1, 0, GL_RGBA, GL_UNSIGNED_BYTE, pixels);
+            // цвета палитры не смешиваются
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+            return textureId;
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+}
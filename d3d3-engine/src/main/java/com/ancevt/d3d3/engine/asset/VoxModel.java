@@ -0,0 +1,11 @@
+package com.ancevt.d3d3.engine.asset;
+
+import com.ancevt.d3d3.engine.scene.Mesh;
+import com.ancevt.d3d3.engine.scene.VoxelVolume;
+
+public class VoxModel {
+    public Mesh mesh;
+    public int paletteTexture; // 256x1, материал i — texel i
+    public VoxelVolume volume;
+    public int faceCount; // видимых граней вокселей до greedy-слияния
+}
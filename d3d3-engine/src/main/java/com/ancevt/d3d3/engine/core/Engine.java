@@ -1,15 +1,24 @@
 package com.ancevt.d3d3.engine.core;
 
 import com.ancevt.d3d3.engine.asset.AssetManager;
+import com.ancevt.d3d3.engine.asset.AssetSources;
+import com.ancevt.d3d3.engine.asset.MeshCache;
+import com.ancevt.d3d3.engine.asset.PackAssetSource;
 import com.ancevt.d3d3.engine.render.Camera;
+import com.ancevt.d3d3.engine.render.ClusteredLighting;
 import com.ancevt.d3d3.engine.render.DefaultShaders;
+import com.ancevt.d3d3.engine.render.GLState;
 import com.ancevt.d3d3.engine.render.Light;
+import com.ancevt.d3d3.engine.render.LightClusters;
 import com.ancevt.d3d3.engine.render.ShaderProgram;
+import com.ancevt.d3d3.engine.render.Uniform;
 import com.ancevt.d3d3.engine.scene.*;
 import com.ancevt.d3d3.engine.window.Window;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
-import org.lwjgl.system.MemoryStack;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.opengl.GL11.*;
@@ -44,8 +53,11 @@ public class Engine {
     private Vector3f playerSize = new Vector3f(0.1f, 4f, 0.1f); // ширина, высота, глубина
 
     public Node root;
+    private final DynamicAabbTree<Node> sceneIndex = new DynamicAabbTree<>();
     public Light mainLight;
+    private ClusteredLighting lighting;
     private Application application;
+    private AssetManager assetManager;
 
     private int frames = 0;
     private long lastTime = System.currentTimeMillis();
@@ -71,6 +83,7 @@ public class Engine {
         loop();
 
         application.shutdown();
+        assetManager.shutdown();
     }
 
     private void prepareEngine() {
@@ -87,8 +100,9 @@ public class Engine {
         shader.attachShader(DefaultShaders.FRAGMENT, GL_FRAGMENT_SHADER);
         shader.link();
 
-        glUseProgram(shader.getId());
-        glUniform1i(glGetUniformLocation(shader.getId(), "texture1"), 0);
+        shader.use();
+        shader.uniformInt("texture1").set(0);
+        lighting = new ClusteredLighting(shader, launchConfig.getMaxLights());
 
         glfwSetInputMode(window.getWindowHandle(), GLFW_CURSOR, GLFW_CURSOR_DISABLED);
 
@@ -118,10 +132,29 @@ public class Engine {
     }
 
     private EngineContext createContext() {
+        Path assetPack = launchConfig.getAssetPack();
+        if (assetPack != null) {
+            if (Files.isRegularFile(assetPack)) {
+                AssetSources.install(AssetSources.chain(new PackAssetSource(assetPack), AssetSources.classpath()));
+            } else {
+                System.err.println("Asset pack not found, using classpath: " + assetPack.toAbsolutePath());
+            }
+        }
+
+        Path meshCacheDir = launchConfig.getMeshCacheDir();
+        assetManager = new AssetManager(
+                meshCacheDir != null ? new MeshCache(meshCacheDir) : null,
+                new GpuUploadQueue(),
+                launchConfig.getGpuBudgetBytes()
+        );
+        assetManager.setLodSettings(launchConfig.getLodSettings());
+        if (!launchConfig.getHotReloadRoots().isEmpty()) {
+            assetManager.enableHotReload(launchConfig.getHotReloadRoots());
+        }
         EngineContext engineContext = new EngineContext(
                 this,
                 launchConfig,
-                new AssetManager()
+                assetManager
         );
 
         return engineContext;
@@ -135,16 +168,39 @@ public class Engine {
         float zNear = 0.01f, zFar = 10000f;
 
 
+        Uniform.Mat4 projectionUniform = shader.uniformMat4("projection");
+        Uniform.Mat4 viewUniform = shader.uniformMat4("view");
+        Uniform.Vec3 lightPosUniform = shader.uniformVec3("lightPos");
+        Uniform.Vec3 viewPosUniform = shader.uniformVec3("viewPos");
+        Uniform.Vec3 lightColorUniform = shader.uniformVec3("lightColor");
+        Matrix4f projection = new Matrix4f();
+        // очередь отрисовки внутри контекста переиспользуется между кадрами
+        RenderContext ctxRender = new RenderContext(shader, camera, projection);
+        if (launchConfig.isOcclusionCulling()) {
+            ctxRender.setOcclusionCuller(new OcclusionCuller());
+        }
+        int[] framebuffer = new int[2];
+        long uniformUploads = Uniform.getUploadCount();
+        long stateChanges = GLState.getChangeCount();
+
+        // индекс нужен коллизиям уже в первом кадре
+        root.updateTransforms(sceneIndex);
+
         long lastFrameTime = System.nanoTime();
         long targetFrameTime = 1000000000L / TARGET_FPS;
+        long uploadBudget = (long) (launchConfig.getUploadBudgetMillis() * 1_000_000L);
         while (!window.shouldClose()) {
             long currentFrameTime = System.nanoTime();
             float deltaTime = (currentFrameTime - lastFrameTime) / 1_000_000_000.0f;
             lastFrameTime = currentFrameTime;
 
+            // GL-часть фоновой загрузки ассетов, не дольше бюджета
+            assetManager.getUploadQueue().drain(uploadBudget);
+            assetManager.update();
+
             // Очистка экрана
             glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT);
-            glEnable(GL_DEPTH_TEST);
+            GLState.enable(GL_DEPTH_TEST);
 
             // Управление камерой/клавиатура/мышь
             processInput(deltaTime);
@@ -153,44 +209,35 @@ public class Engine {
             shader.use();
 
             // === Матрицы проекции и вида ===
-            Matrix4f projection = new Matrix4f().perspective(fov, aspect, zNear, zFar);
-            Matrix4f view = camera.getViewMatrix();
-
-            int projLoc = glGetUniformLocation(shader.getId(), "projection");
-            int viewLoc = glGetUniformLocation(shader.getId(), "view");
-
-            try (var stack = MemoryStack.stackPush()) {
-                glUniformMatrix4fv(projLoc, false, projection.get(stack.mallocFloat(16)));
-                glUniformMatrix4fv(viewLoc, false, view.get(stack.mallocFloat(16)));
-            }
+            // неизменившиеся значения uniform-ы в GL не грузят
+            projection.setPerspective(fov, aspect, zNear, zFar);
+            projectionUniform.set(projection);
+            viewUniform.set(camera.getViewMatrix());
 
             mainLight.getPosition().set(camera.getPosition());
 
-// === Источник света ===
-            int lightPosLoc = glGetUniformLocation(shader.getId(), "lightPos");
-            int viewPosLoc = glGetUniformLocation(shader.getId(), "viewPos");
-            int lightColorLoc = glGetUniformLocation(shader.getId(), "lightColor");
+            // === Источник света ===
+            lightPosUniform.set(mainLight.getPosition());
+            viewPosUniform.set(camera.getPosition());
+            lightColorUniform.set(mainLight.getColor());
 
-            try (var stack = MemoryStack.stackPush()) {
-                Vector3f pos = mainLight.getPosition();
-                Vector3f color = mainLight.getColor();
-
-                glUniform3fv(lightPosLoc, new float[]{pos.x, pos.y, pos.z});
-                glUniform3fv(viewPosLoc, camera.getPosition().get(stack.mallocFloat(3)));
-                glUniform3f(lightColorLoc, color.x, color.y, color.z);
-            }
+            // === Точечные источники: раскладка по кластерам кадра ===
+            window.getFramebufferSize(framebuffer);
+            lighting.update(camera.getViewMatrix(), fov, aspect, framebuffer[0], framebuffer[1]);
 
             // === Обновление и рендер всего дерева ===
             float time = (System.currentTimeMillis() % 100000) / 1000.0f;
 
             root.update(time);
+            root.updateTransforms(sceneIndex);
 
             if (skybox != null) {
                 skybox.render(camera, projection);
             }
 
-            RenderContext ctxRender = new RenderContext(shader, camera, projection);
-            root.render(ctxRender);
+            ctxRender.beginFrame(camera.getViewMatrix());
+            ctxRender.render(sceneIndex);
+            ctxRender.flush();
 
             long endTime = System.nanoTime();
             long frameTime = endTime - currentFrameTime;
@@ -211,18 +258,28 @@ public class Engine {
             long now = System.currentTimeMillis();
             if (now - lastTime >= 1000) { // раз в секунду
                 fps = frames;
+                long uploadsPerFrame = (Uniform.getUploadCount() - uniformUploads) / Math.max(frames, 1);
+                uniformUploads = Uniform.getUploadCount();
+                long changesPerFrame = (GLState.getChangeCount() - stateChanges) / Math.max(frames, 1);
+                stateChanges = GLState.getChangeCount();
                 frames = 0;
                 lastTime = now;
 
                 // обновляем заголовок окна
                 glfwSetWindowTitle(window.getWindowHandle(),
-                        launchConfig.getTitle() + " | FPS: " + fps);
+                        launchConfig.getTitle() + " | FPS: " + fps + " | draws: " + ctxRender.getDrawCalls()
+                                + " | nodes drawn/culled: " + ctxRender.getDrawnNodes() + "/" + ctxRender.getCulledNodes()
+                                + " | occluded: " + occlusionStats(ctxRender)
+                                + " | lights: " + lightingStats()
+                                + " | uniforms/frame: " + uploadsPerFrame
+                                + " | state changes/frame: " + changesPerFrame);
             }
 
             application.update();
         }
 
-
+        ctxRender.cleanup();
+        lighting.cleanup();
     }
 
 
@@ -341,24 +398,16 @@ public class Engine {
 
 
     private Float findGroundBelow(Vector3f pos) {
-        float closest = Float.NEGATIVE_INFINITY;
-
-        // проходим по всем groundColliders
-        for (Node child : root.getChildren()) {
-            if (child instanceof MazeNode maze) {
-                for (AABB box : maze.getColliders()) {
-                    if (pos.x >= box.min.x && pos.x <= box.max.x &&
-                            pos.z >= box.min.z && pos.z <= box.max.z) {
-                        // нашли плитку под ногами
-                        if (box.max.y > closest && box.max.y <= pos.y) {
-                            closest = box.max.y;
-                        }
-                    }
-                }
+        float[] closest = {Float.NEGATIVE_INFINITY};
+
+        // лабиринты, чьи границы пересекают столб под точкой
+        sceneIndex.query(pos.x, Float.NEGATIVE_INFINITY, pos.z, pos.x, pos.y, pos.z, node -> {
+            if (node instanceof MazeNode maze) {
+                closest[0] = Math.max(closest[0], maze.findGroundBelow(pos));
             }
-        }
+        });
 
-        return closest == Float.NEGATIVE_INFINITY ? null : closest;
+        return closest[0] == Float.NEGATIVE_INFINITY ? null : closest[0];
     }
 
 
@@ -390,50 +439,62 @@ public class Engine {
                 new Vector3f(newPos).add(half)
         );
 
-        return checkCollisionRecursive(root, playerAABB);
+        boolean[] hit = {false};
+        sceneIndex.query(playerAABB, node -> {
+            if (!hit[0] && collides(node, playerAABB)) hit[0] = true;
+        });
+        return hit[0];
     }
 
-    private boolean checkCollisionRecursive(Node node, AABB playerAABB) {
+    /** Узел из индекса: его мировой AABB уже пересекает AABB игрока */
+    private boolean collides(Node node, AABB playerAABB) {
         if (node instanceof MazeNode maze) {
             // Проверяем по кубикам
-            if (maze.checkCollision(playerAABB)) {
-                return true;
-            }
-        } else if (node instanceof GameObjectNode g) {
-            if (!g.isCollidable()) return false;
-
-            // Здесь оставляем bounding box только для обычных объектов
-            Mesh mesh = g.getMesh();
-            if (mesh != null) {
-                AABB box = calculateBoundingBox(g);
-                if (playerAABB.min.x <= box.max.x && playerAABB.max.x >= box.min.x &&
-                        playerAABB.min.y <= box.max.y && playerAABB.max.y >= box.min.y &&
-                        playerAABB.min.z <= box.max.z && playerAABB.max.z >= box.min.z) {
-                    return true;
-                }
-            }
+            return maze.checkCollision(playerAABB);
         }
+        return node instanceof GameObjectNode g && g.isCollidable();
+    }
 
-        for (Node child : node.getChildren()) {
-            if (checkCollisionRecursive(child, playerAABB)) return true;
-        }
-        return false;
+    /** Доля отброшенных перекрытием узлов из прошедших пирамиду видимости и время построения буфера */
+    private static String occlusionStats(RenderContext ctxRender) {
+        OcclusionCuller culler = ctxRender.getOcclusionCuller();
+        if (culler == null) return "off";
+        int candidates = ctxRender.getDrawnNodes() + ctxRender.getOccludedNodes();
+        return String.format("%d%% (%.2f ms)",
+                candidates > 0 ? ctxRender.getOccludedNodes() * 100 / candidates : 0, culler.getBuildNanos() / 1e6);
     }
 
+    /** Видимые/все точечные источники и время раскладки по кластерам */
+    private String lightingStats() {
+        LightClusters clusters = lighting.getClusters();
+        return String.format("%d/%d (%.2f ms)",
+                clusters.getVisibleCount(), lighting.getLights().size(), clusters.getBuildNanos() / 1e6);
+    }
 
-    private AABB calculateBoundingBox(GameObjectNode g) {
-        Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
-        Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+    /** Точечные источники света сцены; раскладываются по кластерам каждый кадр */
+    public ClusteredLighting getLighting() {
+        return lighting;
+    }
 
-        Matrix4f model = g.getWorldTransform();
-        for (Vector3f[] tri : g.getMesh().getTriangles()) {
-            for (Vector3f v : tri) {
-                Vector3f worldPos = v.mulPosition(model, new Vector3f());
-                min.min(worldPos);
-                max.max(worldPos);
-            }
-        }
-        return new AABB(min, max);
+    /** Пространственный индекс узлов с геометрией; обновляется раз в кадр */
+    public DynamicAabbTree<Node> getSceneIndex() {
+        return sceneIndex;
+    }
+
+    /**
+     * Ближайший узел, чей мировой AABB пересекает луч (выбор мышью, прицел и т.п.).
+     *
+     * @param direction нормализованное направление
+     * @return null, если луч ни во что не попал
+     */
+    public Node pick(Vector3f origin, Vector3f direction, float maxDistance) {
+        Node[] nearest = {null};
+        sceneIndex.raycast(origin, direction, maxDistance, (node, distance, limit) -> {
+            if (distance >= limit) return limit;
+            nearest[0] = node;
+            return distance;
+        });
+        return nearest[0];
     }
 
 
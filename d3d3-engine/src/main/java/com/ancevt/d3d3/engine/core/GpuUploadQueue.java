@@ -0,0 +1,95 @@
+package com.ancevt.d3d3.engine.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Очередь GL-задач (создание текстур, VBO и т.п.), поставленных из рабочих потоков.
+ * Выполняется только в потоке рендера: {@link Engine} вызывает {@link #drain(long)} каждый кадр
+ * с бюджетом времени, поэтому загрузка ассетов растягивается на несколько кадров без фризов.
+ */
+public class GpuUploadQueue implements Executor {
+
+    private final LinkedBlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+    private final Thread renderThread;
+
+    /** Поток рендера — текущий (в нём живёт GL-контекст) */
+    public GpuUploadQueue() {
+        this(Thread.currentThread());
+    }
+
+    public GpuUploadQueue(Thread renderThread) {
+        this.renderThread = renderThread;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+    }
+
+    public boolean isRenderThread() {
+        return Thread.currentThread() == renderThread;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Выполняет задачи, пока не кончится бюджет. Хотя бы одна задача выполняется всегда,
+     * иначе тяжёлая загрузка никогда не пролезла бы в маленький бюджет.
+     *
+     * @return количество выполненных задач
+     */
+    public int drain(long budgetNanos) {
+        long start = System.nanoTime();
+        int count = 0;
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            run(task);
+            count++;
+            if (System.nanoTime() - start >= budgetNanos) break;
+        }
+        return count;
+    }
+
+    /**
+     * Блокирующее ожидание. В потоке рендера, пока future не готов, выполняет GL-задачи сам
+     * (иначе ждал бы сам себя); в остальных потоках — обычный join.
+     */
+    public <T> T await(CompletableFuture<T> future) {
+        try {
+            if (isRenderThread()) {
+                while (!future.isDone()) {
+                    Runnable task = tasks.poll(1, TimeUnit.MILLISECONDS);
+                    if (task != null) run(task);
+                }
+            }
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for asset", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private static void run(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            System.err.println("GPU upload task failed: " + e);
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RuntimeException re ? re : new RuntimeException(cause);
+    }
+}
@@ -1,8 +1,12 @@
 package com.ancevt.d3d3.engine.core;
 
+import com.ancevt.d3d3.engine.scene.LodSettings;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 
+import java.nio.file.Path;
+import java.util.List;
+
 @Getter
 @RequiredArgsConstructor
 public class LaunchConfig {
@@ -10,10 +14,22 @@ public class LaunchConfig {
     private static final int DEFAULT_WIDTH = 1280;
     private static final int DEFAULT_HEIGHT = 720;
     private static final String DEFAULT_TITLE = "D3D3 Engine";
+    private static final Path DEFAULT_MESH_CACHE_DIR = Path.of(".d3d3cache", "meshes");
+    private static final float DEFAULT_UPLOAD_BUDGET_MILLIS = 4f;
+    private static final long DEFAULT_GPU_BUDGET_BYTES = 512L << 20;
+    private static final int DEFAULT_MAX_LIGHTS = 1024;
 
     private final int width;
     private final int height;
     private final String title;
+    private final Path meshCacheDir; // null — кэш мешей выключен
+    private final float uploadBudgetMillis; // время на GL-загрузку ассетов за кадр
+    private final long gpuBudgetBytes; // бюджет видеопамяти кэша ассетов, 0 — без ограничения
+    private final List<Path> hotReloadRoots; // пусто — горячая перезагрузка выключена
+    private final Path assetPack; // null — ассеты только из classpath
+    private final LodSettings lodSettings; // цепочка LOD импортируемых моделей
+    private final boolean occlusionCulling; // отсечение перекрытых узлов на CPU
+    private final int maxLights; // сколько видимых точечных источников учитывать за кадр
 
     public static Builder builder() {
         return new Builder();
@@ -23,7 +39,14 @@ public class LaunchConfig {
         private int width;
         private int height;
         private String title;
-
+        private Path meshCacheDir = DEFAULT_MESH_CACHE_DIR;
+        private float uploadBudgetMillis = DEFAULT_UPLOAD_BUDGET_MILLIS;
+        private long gpuBudgetBytes = DEFAULT_GPU_BUDGET_BYTES;
+        private List<Path> hotReloadRoots = List.of();
+        private Path assetPack;
+        private LodSettings lodSettings = LodSettings.DEFAULT;
+        private boolean occlusionCulling = true;
+        private int maxLights = DEFAULT_MAX_LIGHTS;
 
         public Builder width(int width) {
             if (width > 0) {
@@ -52,8 +75,93 @@ public class LaunchConfig {
             }
         }
 
+        /**
+         * Каталог бинарного кэша импортированных мешей; null выключает кэш
+         */
+        public Builder meshCacheDir(Path meshCacheDir) {
+            this.meshCacheDir = meshCacheDir;
+            return this;
+        }
+
+        /**
+         * Сколько миллисекунд за кадр отдавать на создание GL-объектов для фоново загруженных ассетов
+         */
+        public Builder uploadBudgetMillis(float uploadBudgetMillis) {
+            if (uploadBudgetMillis >= 0) {
+                this.uploadBudgetMillis = uploadBudgetMillis;
+                return this;
+            } else {
+                throw new IllegalArgumentException("Upload budget must not be negative");
+            }
+        }
+
+        /**
+         * Сколько видеопамяти могут занимать ассеты, прежде чем неиспользуемые начнут выгружаться; 0 — без ограничения
+         */
+        public Builder gpuBudgetBytes(long gpuBudgetBytes) {
+            if (gpuBudgetBytes >= 0) {
+                this.gpuBudgetBytes = gpuBudgetBytes;
+                return this;
+            } else {
+                throw new IllegalArgumentException("GPU budget must not be negative");
+            }
+        }
+
+        /**
+         * Каталоги исходных ресурсов, за изменениями в которых следить (текстуры, OBJ, шейдеры
+         * перезагружаются без перезапуска); по умолчанию слежение выключено
+         */
+        public Builder hotReloadRoots(Path... roots) {
+            this.hotReloadRoots = List.of(roots);
+            return this;
+        }
+
+        /**
+         * Пак ассетов (см. AssetPacker); если файл есть, ассеты читаются из него, а classpath
+         * остаётся запасным источником
+         */
+        public Builder assetPack(Path assetPack) {
+            this.assetPack = assetPack;
+            return this;
+        }
+
+        /**
+         * Сколько уровней детализации строить для импортируемых OBJ; {@link LodSettings#NONE} выключает LOD
+         */
+        public Builder lodSettings(LodSettings lodSettings) {
+            if (lodSettings != null) {
+                this.lodSettings = lodSettings;
+                return this;
+            } else {
+                throw new IllegalArgumentException("LOD settings must not be null");
+            }
+        }
+
+        /**
+         * Отсекать ли узлы, закрытые стенами (перекрывателями) уровня, программным буфером глубины на CPU;
+         * по умолчанию включено
+         */
+        public Builder occlusionCulling(boolean occlusionCulling) {
+            this.occlusionCulling = occlusionCulling;
+            return this;
+        }
+
+        /**
+         * Сколько видимых точечных источников света раскладывать по кластерам за кадр (остальные не светят);
+         * 0 выключает точечное освещение
+         */
+        public Builder maxLights(int maxLights) {
+            if (maxLights >= 0) {
+                this.maxLights = maxLights;
+                return this;
+            } else {
+                throw new IllegalArgumentException("Max lights must not be negative");
+            }
+        }
+
         public LaunchConfig build() {
-            return new LaunchConfig(width, height, title);
+            return new LaunchConfig(width, height, title, meshCacheDir, uploadBudgetMillis, gpuBudgetBytes,
+                    hotReloadRoots, assetPack, lodSettings, occlusionCulling, maxLights);
         }
 
     }
@@ -0,0 +1,184 @@
+package com.ancevt.d3d3.engine.render;
+
+import com.ancevt.d3d3.engine.util.IntArray;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_R32UI;
+import static org.lwjgl.opengl.GL30.GL_RG32UI;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+import static org.lwjgl.opengl.GL31.glTexBuffer;
+
+/**
+ * Точечные источники света сцены (clustered forward). Список источников ведёт движок;
+ * каждый кадр {@link LightClusters} раскладывает видимые по кластерам, а результат уходит
+ * в шейдер тремя texture buffer'ами:
+ * <ul>
+ *   <li>lightData (RGBA32F) — по 2 texel'я на видимый источник: позиция + радиус, цвет * интенсивность;</li>
+ *   <li>clusterData (RG32UI) — смещение и число индексов кластера;</li>
+ *   <li>lightIndices (R32UI) — номера источников по кластерам подряд.</li>
+ * </ul>
+ * Фрагмент перебирает только источники своего кластера, так что его цена не растёт с их общим числом.
+ */
+public class ClusteredLighting {
+
+    public static final int LIGHT_DATA_UNIT = 1;
+    public static final int CLUSTER_DATA_UNIT = 2;
+    public static final int LIGHT_INDICES_UNIT = 3;
+
+    private final List<Light> lights = new ArrayList<>();
+    private final List<Light> lightsView = Collections.unmodifiableList(lights);
+    private final LightClusters clusters;
+
+    private final Uniform.Vec4 clusterGridUniform;
+    private final Uniform.Vec4 clusterDepthUniform;
+
+    private final TextureBuffer lightData = new TextureBuffer(GL_RGBA32F);
+    private final TextureBuffer clusterData = new TextureBuffer(GL_RG32UI);
+    private final TextureBuffer lightIndices = new TextureBuffer(GL_R32UI);
+
+    private FloatBuffer floatStaging = MemoryUtil.memAllocFloat(1024);
+    private IntBuffer intStaging = MemoryUtil.memAllocInt(1024);
+
+    /**
+     * Программа должна быть активна: в ней назначаются юниты сэмплеров.
+     *
+     * @param maxLights сколько видимых источников учитывать за кадр
+     */
+    public ClusteredLighting(ShaderProgram shader, int maxLights) {
+        clusters = new LightClusters(maxLights);
+        shader.uniformInt("lightData").set(LIGHT_DATA_UNIT);
+        shader.uniformInt("clusterData").set(CLUSTER_DATA_UNIT);
+        shader.uniformInt("lightIndices").set(LIGHT_INDICES_UNIT);
+        clusterGridUniform = shader.uniformVec4("clusterGrid");
+        clusterDepthUniform = shader.uniformVec4("clusterDepth");
+    }
+
+    /** Источник нужен с радиусом ({@link Light#Light(Vector3f, Vector3f, float, float)}) */
+    public void add(Light light) {
+        lights.add(light);
+    }
+
+    public boolean remove(Light light) {
+        return lights.remove(light);
+    }
+
+    public void clear() {
+        lights.clear();
+    }
+
+    public List<Light> getLights() {
+        return lightsView;
+    }
+
+    public LightClusters getClusters() {
+        return clusters;
+    }
+
+    /**
+     * Раскладывает источники по кластерам кадра и загружает их в GL. Вызывается при активной
+     * программе, после смены камеры и до отрисовки.
+     *
+     * @param fovY   вертикальный угол обзора проекции, радианы
+     * @param width  ширина кадра в пикселях (для gl_FragCoord)
+     * @param height высота кадра в пикселях
+     */
+    public void update(Matrix4f view, float fovY, float aspect, int width, int height) {
+        clusters.build(lights, view, fovY, aspect);
+
+        int count = clusters.getVisibleCount();
+        int[] visible = clusters.getVisibleLights();
+        FloatBuffer floats = floatBuffer(Math.max(count, 1) * 8);
+        for (int i = 0; i < count; i++) {
+            Light light = lights.get(visible[i]);
+            Vector3f position = light.getPosition();
+            Vector3f color = light.getColor();
+            float intensity = light.getIntensity();
+            floats.put(position.x).put(position.y).put(position.z).put(light.getRadius());
+            floats.put(color.x * intensity).put(color.y * intensity).put(color.z * intensity).put(0f);
+        }
+        if (count == 0) floats.put(new float[8]);
+        lightData.upload(floats.flip());
+
+        int[] clusterArray = clusters.getClusters();
+        clusterData.upload(intBuffer(clusterArray.length).put(clusterArray).flip());
+
+        IntArray indices = clusters.getIndices();
+        IntBuffer ints = intBuffer(Math.max(indices.size(), 1));
+        ints.put(indices.array(), 0, indices.size());
+        if (indices.isEmpty()) ints.put(0);
+        lightIndices.upload(ints.flip());
+
+        clusterGridUniform.set(clusters.getTilesX(), clusters.getTilesY(), clusters.getSlices(), count > 0 ? 1 : 0);
+        clusterDepthUniform.set(clusters.getNear(), clusters.getSliceScale(), width, height);
+
+        GLState.bindTexture(LIGHT_DATA_UNIT, GL_TEXTURE_BUFFER, lightData.texture);
+        GLState.bindTexture(CLUSTER_DATA_UNIT, GL_TEXTURE_BUFFER, clusterData.texture);
+        GLState.bindTexture(LIGHT_INDICES_UNIT, GL_TEXTURE_BUFFER, lightIndices.texture);
+        // загрузчики текстур привязывают к активному юниту — возвращаем нулевой
+        GLState.activeTexture(0);
+    }
+
+    public void cleanup() {
+        lightData.cleanup();
+        clusterData.cleanup();
+        lightIndices.cleanup();
+        MemoryUtil.memFree(floatStaging);
+        MemoryUtil.memFree(intStaging);
+    }
+
+    private FloatBuffer floatBuffer(int capacity) {
+        if (floatStaging.capacity() < capacity) {
+            MemoryUtil.memFree(floatStaging);
+            floatStaging = MemoryUtil.memAllocFloat(Math.max(capacity, floatStaging.capacity() * 2));
+        }
+        return floatStaging.clear();
+    }
+
+    private IntBuffer intBuffer(int capacity) {
+        if (intStaging.capacity() < capacity) {
+            MemoryUtil.memFree(intStaging);
+            intStaging = MemoryUtil.memAllocInt(Math.max(capacity, intStaging.capacity() * 2));
+        }
+        return intStaging.clear();
+    }
+
+    /** Буфер и texture buffer поверх него; данные перезаливаются целиком каждый кадр */
+    private static class TextureBuffer {
+        final int buffer;
+        final int texture;
+
+        TextureBuffer(int format) {
+            buffer = glGenBuffers();
+            texture = glGenTextures();
+            GLState.bindBuffer(GL_TEXTURE_BUFFER, buffer);
+            glBufferData(GL_TEXTURE_BUFFER, 16, GL_STREAM_DRAW);
+            GLState.bindTexture(0, GL_TEXTURE_BUFFER, texture);
+            glTexBuffer(GL_TEXTURE_BUFFER, format, buffer);
+        }
+
+        void upload(FloatBuffer data) {
+            GLState.bindBuffer(GL_TEXTURE_BUFFER, buffer);
+            glBufferData(GL_TEXTURE_BUFFER, data, GL_STREAM_DRAW);
+        }
+
+        void upload(IntBuffer data) {
+            GLState.bindBuffer(GL_TEXTURE_BUFFER, buffer);
+            glBufferData(GL_TEXTURE_BUFFER, data, GL_STREAM_DRAW);
+        }
+
+        void cleanup() {
+            GLState.deleteTexture(texture);
+            GLState.deleteBuffer(buffer);
+        }
+    }
+}
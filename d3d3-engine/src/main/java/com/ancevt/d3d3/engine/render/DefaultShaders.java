@@ -9,6 +9,9 @@ public class DefaultShaders {
             in vec2 TexCoord;
             in vec3 FragPos;
             in vec3 Normal;
+            in vec3 Tint;
+            flat in vec4 Tile;
+            in float ViewDepth;
 
             uniform sampler2D texture1;
             uniform vec3 lightPos;
@@ -16,7 +19,42 @@ public class DefaultShaders {
             uniform vec3 lightColor;
 
             uniform vec3 objectColor;
-            
+            uniform float opacity;
+
+            // точечные источники (ClusteredLighting): кластер фрагмента -> список его источников
+            uniform samplerBuffer lightData;
+            uniform usamplerBuffer clusterData;
+            uniform usamplerBuffer lightIndices;
+            uniform vec4 clusterGrid;  // tilesX, tilesY, slices, есть ли источники
+            uniform vec4 clusterDepth; // near, множитель слоя, ширина и высота кадра
+
+            vec3 pointLights(vec3 norm, vec3 viewDir) {
+                if (clusterGrid.w == 0.0) return vec3(0.0);
+                int slice = ViewDepth <= clusterDepth.x ? 0 : int(log(ViewDepth / clusterDepth.x) * clusterDepth.y);
+                if (slice >= int(clusterGrid.z)) return vec3(0.0);
+                ivec2 tile = clamp(ivec2(gl_FragCoord.xy / clusterDepth.zw * clusterGrid.xy),
+                        ivec2(0), ivec2(clusterGrid.xy) - 1);
+                int cluster = tile.x + int(clusterGrid.x) * (tile.y + int(clusterGrid.y) * slice);
+                uvec2 range = texelFetch(clusterData, cluster).xy;
+
+                vec3 result = vec3(0.0);
+                for (uint i = 0u; i < range.y; i++) {
+                    int light = int(texelFetch(lightIndices, int(range.x + i)).r);
+                    vec4 posRadius = texelFetch(lightData, light * 2);
+                    vec3 color = texelFetch(lightData, light * 2 + 1).rgb;
+                    vec3 toLight = posRadius.xyz - FragPos;
+                    float dist = length(toLight);
+                    float falloff = clamp(1.0 - dist / posRadius.w, 0.0, 1.0);
+                    falloff *= falloff;
+                    if (falloff == 0.0) continue;
+                    vec3 lightDir = toLight / max(dist, 1e-4);
+                    float diff = max(dot(norm, lightDir), 0.0);
+                    float spec = pow(max(dot(viewDir, reflect(-lightDir, norm)), 0.0), 32);
+                    result += (diff + 0.5 * spec) * falloff * color;
+                }
+                return result;
+            }
+
             void main() {
                  float ambientStrength = 0.2;
                  vec3 ambient = ambientStrength * lightColor;
@@ -32,10 +70,15 @@ public class DefaultShaders {
                  float spec = pow(max(dot(viewDir, reflectDir), 0.0), 32);
                  vec3 specular = specularStrength * spec * lightColor;
              
-                 vec3 texColor = texture(texture1, TexCoord).rgb;
-                 vec3 lighting = (ambient + diffuse + specular) * texColor * objectColor;
+                 // тайл атласа (BlockMesher): uv повторяется внутри тайла, производные — от непрерывных uv
+                 vec4 texColor = Tile.z > 0.0
+                         ? textureGrad(texture1, Tile.xy + fract(TexCoord) * Tile.zw,
+                                 dFdx(TexCoord) * Tile.zw, dFdy(TexCoord) * Tile.zw)
+                         : texture(texture1, TexCoord);
+                 vec3 points = pointLights(norm, viewDir);
+                 vec3 lighting = (ambient + diffuse + specular + points) * texColor.rgb * objectColor * Tint;
              
-                 fragColor = vec4(lighting, 1.0);
+                 fragColor = vec4(lighting, texColor.a * opacity);
              }
             """;
 
@@ -44,20 +87,46 @@ public class DefaultShaders {
             layout(location = 0) in vec3 position;
             layout(location = 1) in vec2 texCoord;
             layout(location = 2) in vec3 normal;
+            // инстансинг: матрица и цвет экземпляра из буфера с divisor 1 (VertexLayout.applyInstanceAttributes)
+            layout(location = 3) in mat4 instanceModel;
+            layout(location = 7) in vec3 instanceColor;
+            // тайл атласа (u, v, width, height); без атрибута — (0, 0, 0, 1), повтора нет
+            layout(location = 8) in vec4 tile;
 
             out vec2 TexCoord;
             out vec3 FragPos;
             out vec3 Normal;
+            out vec3 Tint;
+            flat out vec4 Tile;
+            out float ViewDepth;
 
             uniform mat4 projection;
             uniform mat4 view;
             uniform mat4 model;
+            uniform bool instanced;
+
+            // компактные вершины (VertexLayout): uv = xy + texCoord * zw, нормаль в октаэдрической записи
+            uniform vec4 uvTransform;
+            uniform bool octNormals;
+
+            vec3 decodeOct(vec2 e) {
+                vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+                if (n.z < 0.0) {
+                    n.xy = (1.0 - abs(n.yx)) * vec2(n.x >= 0.0 ? 1.0 : -1.0, n.y >= 0.0 ? 1.0 : -1.0);
+                }
+                return normalize(n);
+            }
 
             void main() {
-                gl_Position = projection * view * model * vec4(position, 1.0);
-                FragPos = vec3(model * vec4(position, 1.0));
-                Normal = mat3(transpose(inverse(model))) * normal;
-                TexCoord = texCoord;
+                vec3 n = octNormals ? decodeOct(normal.xy) : normal;
+                mat4 m = instanced ? instanceModel : model;
+                Tint = instanced ? instanceColor : vec3(1.0);
+                gl_Position = projection * view * m * vec4(position, 1.0);
+                FragPos = vec3(m * vec4(position, 1.0));
+                ViewDepth = -(view * vec4(FragPos, 1.0)).z;
+                Normal = mat3(transpose(inverse(m))) * n;
+                TexCoord = uvTransform.xy + texCoord * uvTransform.zw;
+                Tile = tile;
             }
             """;
 }
@@ -0,0 +1,217 @@
+package com.ancevt.d3d3.engine.render;
+
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.GL_TEXTURE_BUFFER;
+
+/**
+ * Кэш состояния GL: программа, VAO, буферы, текстуры по юнитам, depth/blend/cull.
+ * Вызов, который ничего не меняет, до драйвера не доходит; реальные смены считаются.
+ * <p>
+ * Весь движок меняет это состояние только через GLState — иначе кэш разойдётся с GL
+ * (для чужого кода есть {@link #invalidate()}). Только поток рендера, один контекст.
+ * -1 — состояние неизвестно, следующий вызов дойдёт до GL в любом случае.
+ */
+public final class GLState {
+
+    public static final int MAX_TEXTURE_UNITS = 16;
+
+    // цели текстур, которые кэшируются; остальные идут в GL напрямую
+    private static final int[] TEXTURE_TARGETS = {GL_TEXTURE_2D, GL_TEXTURE_CUBE_MAP, GL_TEXTURE_BUFFER};
+
+    // флаги glEnable, которые кэшируются
+    private static final int[] CAPS = {GL_DEPTH_TEST, GL_BLEND, GL_CULL_FACE};
+
+    private static int program = -1;
+    private static int vertexArray = -1;
+    private static int arrayBuffer = -1;
+    // привязка GL_ELEMENT_ARRAY_BUFFER — часть состояния VAO
+    private static int elementBuffer = -1;
+    private static int activeUnit = -1;
+    private static final int[][] textures = new int[TEXTURE_TARGETS.length][MAX_TEXTURE_UNITS];
+    // 1 — включён, 0 — выключен, -1 — неизвестно
+    private static final int[] caps = new int[CAPS.length];
+    private static int depthFunc = -1;
+    private static int depthMask = -1;
+    private static int blendSrc = -1;
+    private static int blendDst = -1;
+    private static int cullFace = -1;
+
+    private static long changes;
+
+    static {
+        invalidate();
+    }
+
+    private GLState() {
+    }
+
+    /** Забыть всё: после кода, который трогал GL в обход GLState */
+    public static void invalidate() {
+        program = -1;
+        vertexArray = -1;
+        arrayBuffer = -1;
+        elementBuffer = -1;
+        activeUnit = -1;
+        for (int[] units : textures) Arrays.fill(units, -1);
+        Arrays.fill(caps, -1);
+        depthFunc = -1;
+        depthMask = -1;
+        blendSrc = -1;
+        blendDst = -1;
+        cullFace = -1;
+    }
+
+    /** Сколько раз состояние GL реально менялось с запуска */
+    public static long getChangeCount() {
+        return changes;
+    }
+
+    public static void useProgram(int id) {
+        if (program == id) return;
+        program = id;
+        changes++;
+        glUseProgram(id);
+    }
+
+    public static void bindVertexArray(int id) {
+        if (vertexArray == id) return;
+        vertexArray = id;
+        // у другого VAO свой индексный буфер
+        elementBuffer = -1;
+        changes++;
+        glBindVertexArray(id);
+    }
+
+    /** GL_ARRAY_BUFFER и GL_ELEMENT_ARRAY_BUFFER кэшируются, прочие цели — нет */
+    public static void bindBuffer(int target, int id) {
+        if (target == GL_ARRAY_BUFFER) {
+            if (arrayBuffer == id) return;
+            arrayBuffer = id;
+        } else if (target == GL_ELEMENT_ARRAY_BUFFER) {
+            if (elementBuffer == id) return;
+            elementBuffer = id;
+        }
+        changes++;
+        glBindBuffer(target, id);
+    }
+
+    public static void activeTexture(int unit) {
+        if (activeUnit == unit) return;
+        activeUnit = unit;
+        changes++;
+        glActiveTexture(GL_TEXTURE0 + unit);
+    }
+
+    /** Привязка к текущему активному юниту (загрузка текстур и т.п.) */
+    public static void bindTexture(int target, int id) {
+        int t = targetIndex(target);
+        if (t >= 0 && activeUnit >= 0 && activeUnit < MAX_TEXTURE_UNITS) {
+            if (textures[t][activeUnit] == id) return;
+            textures[t][activeUnit] = id;
+        }
+        changes++;
+        glBindTexture(target, id);
+    }
+
+    /** Текстура на юнит; активный юнит переключается, только если привязка меняется */
+    public static void bindTexture(int unit, int target, int id) {
+        int t = targetIndex(target);
+        if (t >= 0 && unit < MAX_TEXTURE_UNITS && textures[t][unit] == id) return;
+        activeTexture(unit);
+        bindTexture(target, id);
+    }
+
+    public static void enable(int cap) {
+        setCap(cap, true);
+    }
+
+    public static void disable(int cap) {
+        setCap(cap, false);
+    }
+
+    private static void setCap(int cap, boolean enabled) {
+        int c = indexOf(CAPS, cap);
+        int value = enabled ? 1 : 0;
+        if (c >= 0) {
+            if (caps[c] == value) return;
+            caps[c] = value;
+        }
+        changes++;
+        if (enabled) glEnable(cap);
+        else glDisable(cap);
+    }
+
+    public static void depthFunc(int func) {
+        if (depthFunc == func) return;
+        depthFunc = func;
+        changes++;
+        glDepthFunc(func);
+    }
+
+    public static void depthMask(boolean write) {
+        int value = write ? 1 : 0;
+        if (depthMask == value) return;
+        depthMask = value;
+        changes++;
+        glDepthMask(write);
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst) return;
+        blendSrc = src;
+        blendDst = dst;
+        changes++;
+        glBlendFunc(src, dst);
+    }
+
+    public static void cullFace(int mode) {
+        if (cullFace == mode) return;
+        cullFace = mode;
+        changes++;
+        glCullFace(mode);
+    }
+
+    // удаление: GL сам отвязывает удалённый объект, кэш должен сделать то же
+
+    public static void deleteTexture(int id) {
+        glDeleteTextures(id);
+        for (int[] units : textures) {
+            for (int i = 0; i < units.length; i++) {
+                if (units[i] == id) units[i] = 0;
+            }
+        }
+    }
+
+    public static void deleteBuffer(int id) {
+        glDeleteBuffers(id);
+        if (arrayBuffer == id) arrayBuffer = 0;
+        if (elementBuffer == id) elementBuffer = 0;
+    }
+
+    public static void deleteVertexArray(int id) {
+        glDeleteVertexArrays(id);
+        if (vertexArray == id) {
+            vertexArray = 0;
+            elementBuffer = -1;
+        }
+    }
+
+    public static void deleteProgram(int id) {
+        glDeleteProgram(id);
+        // активная программа удаляется отложенно и остаётся текущей, но её id может достаться новой
+        if (program == id) program = -1;
+    }
+
+    private static int targetIndex(int target) {
+        return indexOf(TEXTURE_TARGETS, target);
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+}
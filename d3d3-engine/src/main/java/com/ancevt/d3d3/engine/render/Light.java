@@ -1,12 +1,16 @@
-// === Light.java ===
 package com.ancevt.d3d3.engine.render;
 
 import org.joml.Vector3f;
 
+/**
+ * Источник света. С радиусом больше 0 — точечный источник {@link ClusteredLighting}: светит
+ * в пределах сферы радиуса, затухая к её границе.
+ */
 public class Light {
     private Vector3f position;
     private Vector3f color;
     private float intensity;
+    private float radius;
 
     public Light(Vector3f position, Vector3f color, float intensity) {
         this.position = position;
@@ -14,6 +18,11 @@ public class Light {
         this.intensity = intensity;
     }
 
+    public Light(Vector3f position, Vector3f color, float intensity, float radius) {
+        this(position, color, intensity);
+        this.radius = checkRadius(radius);
+    }
+
     public Vector3f getPosition() {
         return position;
     }
@@ -37,4 +46,21 @@ public class Light {
     public void setIntensity(float intensity) {
         this.intensity = intensity;
     }
+
+    /** Радиус действия; 0 — не точечный источник */
+    public float getRadius() {
+        return radius;
+    }
+
+    /** Только для точечного источника: радиус должен остаться конечным и больше 0 */
+    public void setRadius(float radius) {
+        this.radius = checkRadius(radius);
+    }
+
+    private static float checkRadius(float radius) {
+        if (!(radius > 0) || !Float.isFinite(radius)) {
+            throw new IllegalArgumentException("Light radius must be finite and greater than 0: " + radius);
+        }
+        return radius;
+    }
 }
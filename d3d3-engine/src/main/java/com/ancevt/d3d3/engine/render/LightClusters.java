@@ -0,0 +1,288 @@
+package com.ancevt.d3d3.engine.render;
+
+import com.ancevt.d3d3.engine.util.IntArray;
+import lombok.Getter;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Раскладка точечных источников света по кластерам пирамиды видимости (froxel'ам) на CPU.
+ * <p>
+ * Экран делится на tilesX x tilesY тайлов, глубина — на slices слоёв с экспоненциальным шагом
+ * от near до far (ближе near — первый слой, дальше far — без источников). Каждый кадр источники
+ * переводятся в пространство камеры, невидимые отбрасываются, и для каждого кластера собирается
+ * список источников, чья сфера (позиция, радиус) задевает его AABB. Слои строятся параллельно.
+ * <p>
+ * Результат — как его читает шейдер: для кластера (x + tilesX * (y + tilesY * slice)) смещение
+ * и число индексов в {@link #getIndices()}, индекс — номер в {@link #getVisibleLights()}.
+ */
+public class LightClusters {
+
+    public static final int DEFAULT_TILES_X = 16;
+    public static final int DEFAULT_TILES_Y = 9;
+    public static final int DEFAULT_SLICES = 24;
+    public static final float DEFAULT_NEAR = 1f;
+    public static final float DEFAULT_FAR = 1000f;
+    /** Больше источников на кластер не кладётся — цена фрагмента ограничена сверху */
+    public static final int MAX_LIGHTS_PER_CLUSTER = 64;
+
+    @Getter
+    private final int tilesX;
+    @Getter
+    private final int tilesY;
+    @Getter
+    private final int slices;
+    @Getter
+    private final float near;
+    @Getter
+    private final float far;
+    private final int maxLights;
+    private final ForkJoinPool pool;
+
+    // границы слоёв по глубине (slices + 1), первая — 0
+    private final float[] sliceDepth;
+
+    // видимые источники кадра: номер в исходном списке и (x, y, глубина, радиус) в пространстве камеры
+    private int[] visible = new int[64];
+    private float[] viewLights = new float[64 * 4];
+    @Getter
+    private int visibleCount;
+
+    // по слою: индексы источников подряд по кластерам и (смещение, число) кластеров слоя
+    private final IntArray[] sliceIndices;
+    private final int[][] sliceClusters;
+    private final int[] sliceOverflow;
+    // по слою: источники-кандидаты и их диапазоны тайлов
+    private final IntArray[] sliceCandidates;
+
+    private final int[] clusters;
+    private final IntArray indices = new IntArray(1024);
+
+    private float tanX;
+    private float tanY;
+
+    @Getter
+    private int maxPerCluster;
+    // источников, не попавших в переполненные кластеры
+    @Getter
+    private int overflow;
+    @Getter
+    private long buildNanos;
+
+    public LightClusters(int maxLights) {
+        this(DEFAULT_TILES_X, DEFAULT_TILES_Y, DEFAULT_SLICES, DEFAULT_NEAR, DEFAULT_FAR, maxLights, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param maxLights сколько видимых источников учитывать за кадр (лишние отбрасываются)
+     * @param pool      пул для параллельной раскладки по слоям
+     */
+    public LightClusters(int tilesX, int tilesY, int slices, float near, float far, int maxLights, ForkJoinPool pool) {
+        if (tilesX <= 0 || tilesY <= 0 || slices <= 0) {
+            throw new IllegalArgumentException("Cluster grid must be at least 1x1x1: " + tilesX + "x" + tilesY + "x" + slices);
+        }
+        if (!(near > 0 && far > near)) {
+            throw new IllegalArgumentException("Cluster depth range must satisfy 0 < near < far: " + near + ", " + far);
+        }
+        if (maxLights < 0) {
+            throw new IllegalArgumentException("Max lights must not be negative: " + maxLights);
+        }
+        this.tilesX = tilesX;
+        this.tilesY = tilesY;
+        this.slices = slices;
+        this.near = near;
+        this.far = far;
+        this.maxLights = maxLights;
+        this.pool = pool;
+
+        sliceDepth = new float[slices + 1];
+        for (int i = 1; i <= slices; i++) {
+            sliceDepth[i] = (float) (near * Math.pow(far / near, (double) i / slices));
+        }
+        sliceIndices = new IntArray[slices];
+        sliceCandidates = new IntArray[slices];
+        sliceClusters = new int[slices][tilesX * tilesY * 2];
+        sliceOverflow = new int[slices];
+        for (int i = 0; i < slices; i++) {
+            sliceIndices[i] = new IntArray(256);
+            sliceCandidates[i] = new IntArray(256);
+        }
+        clusters = new int[tilesX * tilesY * slices * 2];
+    }
+
+    /**
+     * Раскладывает источники по кластерам кадра.
+     *
+     * @param view   матрица вида
+     * @param fovY   вертикальный угол обзора проекции, радианы
+     * @param aspect ширина / высота
+     */
+    public void build(List<Light> lights, Matrix4f view, float fovY, float aspect) {
+        long start = System.nanoTime();
+        tanY = (float) Math.tan(fovY / 2);
+        tanX = tanY * aspect;
+
+        // источники — в пространство камеры, невидимые — прочь
+        visibleCount = 0;
+        Vector3f p = new Vector3f();
+        float[] range = new float[4];
+        for (int i = 0; i < lights.size() && visibleCount < maxLights; i++) {
+            Light light = lights.get(i);
+            float r = light.getRadius();
+            if (!(r > 0)) continue;
+            view.transformPosition(light.getPosition(), p);
+            float depth = -p.z;
+            if (depth + r <= 0 || depth - r >= far) continue;
+            if (!ndcRange(p.x, p.y, depth, r, depth - r, depth + r, range)) continue;
+            if (visibleCount == visible.length) {
+                visible = Arrays.copyOf(visible, visibleCount * 2);
+                viewLights = Arrays.copyOf(viewLights, visibleCount * 8);
+            }
+            visible[visibleCount] = i;
+            viewLights[visibleCount * 4] = p.x;
+            viewLights[visibleCount * 4 + 1] = p.y;
+            viewLights[visibleCount * 4 + 2] = depth;
+            viewLights[visibleCount * 4 + 3] = r;
+            visibleCount++;
+        }
+
+        // parallel stream внутри задачи пула выполняется на воркерах этого же пула
+        pool.submit(() -> IntStream.range(0, slices).parallel().forEach(this::buildSlice)).join();
+
+        // слои — в общий список; смещения кластеров — от начала общего списка
+        indices.clear();
+        maxPerCluster = 0;
+        overflow = 0;
+        int perSlice = tilesX * tilesY;
+        for (int s = 0; s < slices; s++) {
+            int base = indices.size();
+            int[] local = sliceClusters[s];
+            int[] global = clusters;
+            int offset = s * perSlice * 2;
+            for (int c = 0; c < perSlice; c++) {
+                global[offset + c * 2] = base + local[c * 2];
+                global[offset + c * 2 + 1] = local[c * 2 + 1];
+                maxPerCluster = Math.max(maxPerCluster, local[c * 2 + 1]);
+            }
+            IntArray slice = sliceIndices[s];
+            indices.addAll(slice.array(), 0, slice.size());
+            overflow += sliceOverflow[s];
+        }
+        buildNanos = System.nanoTime() - start;
+    }
+
+    private void buildSlice(int s) {
+        float d0 = sliceDepth[s];
+        float d1 = sliceDepth[s + 1];
+        IntArray out = sliceIndices[s];
+        IntArray candidates = sliceCandidates[s];
+        int[] local = sliceClusters[s];
+        out.clear();
+        candidates.clear();
+        sliceOverflow[s] = 0;
+
+        // кандидаты слоя: источник, тайлы x0..x1, y0..y1
+        float[] range = new float[4];
+        for (int i = 0; i < visibleCount; i++) {
+            float x = viewLights[i * 4], y = viewLights[i * 4 + 1], depth = viewLights[i * 4 + 2], r = viewLights[i * 4 + 3];
+            if (depth + r < d0 || depth - r > d1) continue;
+            if (!ndcRange(x, y, depth, r, Math.max(d0, depth - r), Math.min(d1, depth + r), range)) continue;
+            candidates.add(i);
+            candidates.add(tile(range[0], tilesX), tile(range[1], tilesX), tile(range[2], tilesY));
+            candidates.add(tile(range[3], tilesY));
+        }
+
+        for (int ty = 0; ty < tilesY; ty++) {
+            // AABB кластера в пространстве камеры: x, y растут с глубиной
+            float ny0 = -1 + 2f * ty / tilesY, ny1 = -1 + 2f * (ty + 1) / tilesY;
+            float minY = Math.min(ny0 * d0, ny0 * d1) * tanY, maxY = Math.max(ny1 * d0, ny1 * d1) * tanY;
+            for (int tx = 0; tx < tilesX; tx++) {
+                float nx0 = -1 + 2f * tx / tilesX, nx1 = -1 + 2f * (tx + 1) / tilesX;
+                float minX = Math.min(nx0 * d0, nx0 * d1) * tanX, maxX = Math.max(nx1 * d0, nx1 * d1) * tanX;
+
+                int cluster = tx + tilesX * ty;
+                int offset = out.size();
+                int count = 0;
+                for (int c = 0; c < candidates.size(); c += 5) {
+                    if (tx < candidates.get(c + 1) || tx > candidates.get(c + 2)
+                            || ty < candidates.get(c + 3) || ty > candidates.get(c + 4)) continue;
+                    int i = candidates.get(c);
+                    float r = viewLights[i * 4 + 3];
+                    float dx = distance(viewLights[i * 4], minX, maxX);
+                    float dy = distance(viewLights[i * 4 + 1], minY, maxY);
+                    float dz = distance(viewLights[i * 4 + 2], d0, d1);
+                    if (dx * dx + dy * dy + dz * dz > r * r) continue;
+                    if (count == MAX_LIGHTS_PER_CLUSTER) {
+                        sliceOverflow[s]++;
+                        continue;
+                    }
+                    out.add(i);
+                    count++;
+                }
+                local[cluster * 2] = offset;
+                local[cluster * 2 + 1] = count;
+            }
+        }
+    }
+
+    /**
+     * Диапазон NDC x и y сферы на глубинах [depthMin, depthMax]: x / (depth * tan) монотонно по x
+     * и по глубине, так что крайние значения — в углах. false — сфера вне экрана.
+     */
+    private boolean ndcRange(float x, float y, float depth, float r, float depthMin, float depthMax, float[] out) {
+        if (depthMin < 1e-3f) {
+            // сфера задевает плоскость камеры — на экране может быть где угодно
+            out[0] = out[2] = -1;
+            out[1] = out[3] = 1;
+            return true;
+        }
+        out[0] = Math.min((x - r) / (depthMin * tanX), (x - r) / (depthMax * tanX));
+        out[1] = Math.max((x + r) / (depthMin * tanX), (x + r) / (depthMax * tanX));
+        out[2] = Math.min((y - r) / (depthMin * tanY), (y - r) / (depthMax * tanY));
+        out[3] = Math.max((y + r) / (depthMin * tanY), (y + r) / (depthMax * tanY));
+        return out[0] <= 1 && out[1] >= -1 && out[2] <= 1 && out[3] >= -1;
+    }
+
+    private static int tile(float ndc, int tiles) {
+        return Math.max(0, Math.min(tiles - 1, (int) Math.floor((ndc + 1) * 0.5f * tiles)));
+    }
+
+    private static float distance(float v, float min, float max) {
+        return v < min ? min - v : v > max ? v - max : 0;
+    }
+
+    public int getClusterCount() {
+        return tilesX * tilesY * slices;
+    }
+
+    /** (смещение, число) индексов источников по кластерам, 2 int на кластер */
+    public int[] getClusters() {
+        return clusters;
+    }
+
+    /** Индексы видимых источников по кластерам подряд */
+    public IntArray getIndices() {
+        return indices;
+    }
+
+    /** Номера видимых источников в списке последнего {@link #build}; действительны первые {@link #getVisibleCount()} */
+    public int[] getVisibleLights() {
+        return visible;
+    }
+
+    /** Слой по глубине (расстоянию вдоль взгляда) — как в шейдере; slices — дальше far */
+    public int sliceOf(float depth) {
+        if (depth <= near) return 0;
+        return Math.min((int) (Math.log(depth / near) * slices / Math.log(far / near)), slices);
+    }
+
+    /** Множитель для шейдера: slice = log(depth / near) * scale */
+    public float getSliceScale() {
+        return (float) (slices / Math.log(far / near));
+    }
+}
@@ -1,11 +1,29 @@
 package com.ancevt.d3d3.engine.render;
 
+import com.ancevt.d3d3.engine.util.TextLoader;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
 public class ShaderProgram {
     private final int programId;
 
+    // тип стадии -> шейдер; тип стадии -> ресурс с исходником (для горячей перезагрузки)
+    private final Map<Integer, Integer> shaders = new LinkedHashMap<>();
+    private final Map<Integer, String> resources = new LinkedHashMap<>();
+
+    // активные uniform-ы после линковки: имя -> GL-тип; выданные хэндлы живут и после перелинковки
+    private final Map<String, Integer> activeTypes = new HashMap<>();
+    private final Map<String, Integer> activeLocations = new HashMap<>();
+    private final Map<String, Uniform> uniforms = new HashMap<>();
+
     public ShaderProgram() {
         programId = glCreateProgram();
         if (programId == NULL) {
@@ -14,15 +32,15 @@ public class ShaderProgram {
     }
 
     public void attachShader(String code, int type) {
-        int shaderId = glCreateShader(type);
-        glShaderSource(shaderId, code);
-        glCompileShader(shaderId);
-
-        if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == 0) {
-            throw new RuntimeException("Error compiling Shader: " + glGetShaderInfoLog(shaderId));
-        }
-
+        int shaderId = compile(code, type);
         glAttachShader(programId, shaderId);
+        shaders.put(type, shaderId);
+    }
+
+    /** Стадия из ресурса; путь запоминается, чтобы шейдер можно было перезагрузить */
+    public void attachShaderResource(String resourcePath, int type) {
+        attachShader(TextLoader.load(resourcePath), type);
+        resources.put(type, resourcePath);
     }
 
     public void link() {
@@ -30,18 +48,150 @@ public class ShaderProgram {
         if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
             throw new RuntimeException("Error linking Shader: " + glGetProgramInfoLog(programId));
         }
+        introspect();
+    }
+
+    /**
+     * Перекомпилирует стадию и перелинковывает программу на месте (id не меняется).
+     * При ошибке компиляции или линковки остаётся прежняя рабочая версия.
+     * Хэндлы {@link Uniform} после перелинковки получают новые локации сами.
+     */
+    public void reload(int type, String code) {
+        int shaderId = compile(code, type);
+        Integer old = shaders.get(type);
+        if (old != null) glDetachShader(programId, old);
+        glAttachShader(programId, shaderId);
+
+        glLinkProgram(programId);
+        if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
+            String log = glGetProgramInfoLog(programId);
+            glDetachShader(programId, shaderId);
+            glDeleteShader(shaderId);
+            if (old != null) glAttachShader(programId, old);
+            glLinkProgram(programId);
+            boolean restored = glGetProgrami(programId, GL_LINK_STATUS) != 0;
+            String restoreLog = restored ? "" : glGetProgramInfoLog(programId);
+            // перелинковка сбросила значения uniform-ов — возвращаем их из теневых копий
+            introspect();
+            if (!restored) {
+                throw new RuntimeException("Error linking Shader: " + log + "; previous version failed to relink: " + restoreLog);
+            }
+            throw new RuntimeException("Error linking Shader: " + log);
+        }
+
+        if (old != null) glDeleteShader(old);
+        shaders.put(type, shaderId);
+        introspect();
+    }
+
+    public Uniform.Mat4 uniformMat4(String name) {
+        return uniform(name, Uniform.Mat4::new, Uniform.Mat4.class);
+    }
+
+    public Uniform.Vec4 uniformVec4(String name) {
+        return uniform(name, Uniform.Vec4::new, Uniform.Vec4.class);
+    }
+
+    public Uniform.Vec3 uniformVec3(String name) {
+        return uniform(name, Uniform.Vec3::new, Uniform.Vec3.class);
+    }
+
+    public Uniform.Float1 uniformFloat(String name) {
+        return uniform(name, Uniform.Float1::new, Uniform.Float1.class);
+    }
+
+    /** int, bool или сэмплер */
+    public Uniform.Int1 uniformInt(String name) {
+        return uniform(name, Uniform.Int1::new, Uniform.Int1.class);
+    }
+
+    /**
+     * Хэндл uniform-а по имени; один и тот же объект на все вызовы.
+     * Uniform, которого нет в программе, даёт пустой хэндл; несовпадение типа — ошибка.
+     */
+    private <U extends Uniform> U uniform(String name, BiFunction<String, Integer, U> factory, Class<U> kind) {
+        Uniform existing = uniforms.get(name);
+        if (existing != null) {
+            if (!kind.isInstance(existing)) {
+                throw new IllegalArgumentException("Uniform " + name + " is already used as "
+                        + existing.getClass().getSimpleName() + ", not " + kind.getSimpleName());
+            }
+            return kind.cast(existing);
+        }
+
+        U uniform = factory.apply(name, activeLocations.getOrDefault(name, -1));
+        Integer glType = activeTypes.get(name);
+        if (glType != null && !uniform.accepts(glType)) {
+            throw new IllegalArgumentException("Uniform " + name + " is " + Uniform.typeName(glType)
+                    + ", not " + kind.getSimpleName());
+        }
+        uniforms.put(name, uniform);
+        return uniform;
+    }
+
+    /**
+     * Активные uniform-ы программы — один раз после линковки, а не glGetUniformLocation каждый кадр.
+     * Уже выданные хэндлы получают новые локации; значения после линковки сброшены, поэтому загруженные
+     * раньше заливаются заново из теневых копий (set-once uniform-ы вроде юнитов сэмплеров никто не повторит).
+     */
+    private void introspect() {
+        activeTypes.clear();
+        activeLocations.clear();
+        int count = glGetProgrami(programId, GL_ACTIVE_UNIFORMS);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer size = stack.mallocInt(1);
+            IntBuffer type = stack.mallocInt(1);
+            for (int i = 0; i < count; i++) {
+                String name = glGetActiveUniform(programId, i, size, type);
+                // массивы отдаются как name[0]
+                if (name.endsWith("[0]")) name = name.substring(0, name.length() - 3);
+                activeTypes.put(name, type.get(0));
+                activeLocations.put(name, glGetUniformLocation(programId, name));
+            }
+        }
+
+        // glUniform* пишет в активную программу
+        if (!uniforms.isEmpty()) GLState.useProgram(programId);
+        for (Uniform uniform : uniforms.values()) {
+            Integer glType = activeTypes.get(uniform.getName());
+            if (glType != null && !uniform.accepts(glType)) {
+                System.err.printf("Uniform %s changed type to %s, ignoring it%n",
+                        uniform.getName(), Uniform.typeName(glType));
+                uniform.location = -1;
+            } else {
+                uniform.location = activeLocations.getOrDefault(uniform.getName(), -1);
+            }
+            uniform.restore();
+        }
+    }
+
+    /** Ресурсы стадий, подключённых через {@link #attachShaderResource} */
+    public Map<Integer, String> getShaderResources() {
+        return resources;
     }
 
     public void use() {
-        glUseProgram(programId);
+        GLState.useProgram(programId);
     }
 
     public void cleanup() {
-        glDeleteProgram(programId);
+        GLState.deleteProgram(programId);
     }
 
     public int getId() {
         return programId;
     }
-}
 
+    private static int compile(String code, int type) {
+        int shaderId = glCreateShader(type);
+        glShaderSource(shaderId, code);
+        glCompileShader(shaderId);
+
+        if (glGetShaderi(shaderId, GL_COMPILE_STATUS) == 0) {
+            String log = glGetShaderInfoLog(shaderId);
+            glDeleteShader(shaderId);
+            throw new RuntimeException("Error compiling Shader: " + log);
+        }
+        return shaderId;
+    }
+}
@@ -0,0 +1,238 @@
+package com.ancevt.d3d3.engine.render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL31.GL_SAMPLER_BUFFER;
+import static org.lwjgl.opengl.GL31.GL_UNSIGNED_INT_SAMPLER_BUFFER;
+
+/**
+ * Типизированный uniform программы {@link ShaderProgram}.
+ * <p>
+ * Хранит теневую копию последнего загруженного значения и не вызывает GL, если значение не изменилось.
+ * Теневая копия относится к своей программе, поэтому set* вызывается при активной программе
+ * (как и сам glUniform*). Если uniform отсутствует в программе (выкинут компилятором), set* ничего не делает.
+ */
+public abstract class Uniform {
+
+    // общий off-heap буфер под матрицы: uniform-ы грузятся только из GL-потока
+    private static final FloatBuffer SCRATCH = MemoryUtil.memAllocFloat(16);
+
+    private static long uploads;
+
+    private final String name;
+    int location;
+    boolean valid;
+
+    Uniform(String name, int location) {
+        this.name = name;
+        this.location = location;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLocation() {
+        return location;
+    }
+
+    /** Есть ли uniform в слинкованной программе */
+    public boolean isActive() {
+        return location >= 0;
+    }
+
+    /** Забыть теневую копию: следующий set* загрузит значение в любом случае */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /** После перелинковки: загрузить последнее значение заново (по новой локации), если оно было */
+    void restore() {
+        if (valid && location >= 0) {
+            upload();
+        } else {
+            valid = false;
+        }
+    }
+
+    /** Загрузить теневую копию в GL */
+    abstract void upload();
+
+    /** Подходит ли GL-тип активного uniform-а этому хэндлу */
+    abstract boolean accepts(int glType);
+
+    /** Сколько раз uniform-ы реально загружались в GL с запуска */
+    public static long getUploadCount() {
+        return uploads;
+    }
+
+    static String typeName(int glType) {
+        return switch (glType) {
+            case GL_FLOAT_MAT4 -> "mat4";
+            case GL_FLOAT_VEC4 -> "vec4";
+            case GL_FLOAT_VEC3 -> "vec3";
+            case GL_FLOAT -> "float";
+            case GL_INT -> "int";
+            case GL_BOOL -> "bool";
+            case GL_SAMPLER_2D -> "sampler2D";
+            case GL_SAMPLER_CUBE -> "samplerCube";
+            case GL_SAMPLER_BUFFER -> "samplerBuffer";
+            case GL_UNSIGNED_INT_SAMPLER_BUFFER -> "usamplerBuffer";
+            default -> "0x" + Integer.toHexString(glType);
+        };
+    }
+
+    public static final class Mat4 extends Uniform {
+        private final Matrix4f value = new Matrix4f();
+
+        Mat4(String name, int location) {
+            super(name, location);
+        }
+
+        public void set(Matrix4f m) {
+            if (location < 0 || valid && value.equals(m)) return;
+            value.set(m);
+            valid = true;
+            upload();
+        }
+
+        @Override
+        void upload() {
+            uploads++;
+            glUniformMatrix4fv(location, false, value.get(SCRATCH));
+        }
+
+        @Override
+        boolean accepts(int glType) {
+            return glType == GL_FLOAT_MAT4;
+        }
+    }
+
+    public static final class Vec4 extends Uniform {
+        private final Vector4f value = new Vector4f();
+
+        Vec4(String name, int location) {
+            super(name, location);
+        }
+
+        public void set(Vector4f v) {
+            set(v.x, v.y, v.z, v.w);
+        }
+
+        public void set(float x, float y, float z, float w) {
+            if (location < 0 || valid && value.equals(x, y, z, w)) return;
+            value.set(x, y, z, w);
+            valid = true;
+            upload();
+        }
+
+        @Override
+        void upload() {
+            uploads++;
+            glUniform4f(location, value.x, value.y, value.z, value.w);
+        }
+
+        @Override
+        boolean accepts(int glType) {
+            return glType == GL_FLOAT_VEC4;
+        }
+    }
+
+    public static final class Vec3 extends Uniform {
+        private final Vector3f value = new Vector3f();
+
+        Vec3(String name, int location) {
+            super(name, location);
+        }
+
+        public void set(Vector3f v) {
+            set(v.x, v.y, v.z);
+        }
+
+        public void set(float x, float y, float z) {
+            if (location < 0 || valid && value.equals(x, y, z)) return;
+            value.set(x, y, z);
+            valid = true;
+            upload();
+        }
+
+        @Override
+        void upload() {
+            uploads++;
+            glUniform3f(location, value.x, value.y, value.z);
+        }
+
+        @Override
+        boolean accepts(int glType) {
+            return glType == GL_FLOAT_VEC3;
+        }
+    }
+
+    public static final class Float1 extends Uniform {
+        private float value;
+
+        Float1(String name, int location) {
+            super(name, location);
+        }
+
+        public void set(float v) {
+            if (location < 0 || valid && Float.floatToIntBits(value) == Float.floatToIntBits(v)) return;
+            value = v;
+            valid = true;
+            upload();
+        }
+
+        @Override
+        void upload() {
+            uploads++;
+            glUniform1f(location, value);
+        }
+
+        @Override
+        boolean accepts(int glType) {
+            return glType == GL_FLOAT;
+        }
+    }
+
+    /** int, bool и сэмплеры (номер текстурного юнита) — всё грузится через glUniform1i */
+    public static final class Int1 extends Uniform {
+        private int value;
+
+        Int1(String name, int location) {
+            super(name, location);
+        }
+
+        public void set(boolean v) {
+            set(v ? 1 : 0);
+        }
+
+        public void set(int v) {
+            if (location < 0 || valid && value == v) return;
+            value = v;
+            valid = true;
+            upload();
+        }
+
+        @Override
+        void upload() {
+            uploads++;
+            glUniform1i(location, value);
+        }
+
+        @Override
+        boolean accepts(int glType) {
+            return switch (glType) {
+                case GL_INT, GL_BOOL, GL_SAMPLER_1D, GL_SAMPLER_2D, GL_SAMPLER_3D, GL_SAMPLER_CUBE,
+                     GL_SAMPLER_1D_SHADOW, GL_SAMPLER_2D_SHADOW,
+                     GL_SAMPLER_BUFFER, GL_UNSIGNED_INT_SAMPLER_BUFFER -> true;
+                default -> false;
+            };
+        }
+    }
+}
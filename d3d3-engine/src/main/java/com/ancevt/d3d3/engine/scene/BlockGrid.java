@@ -0,0 +1,159 @@
+package com.ancevt.d3d3.engine.scene;
+
+import lombok.Getter;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Разреженная сетка блоков уровня: один байт на блок, 0 — пусто, иначе номер материала (1..255).
+ * Блоки хранятся секциями 16x16x16, координаты блоков — любые int (в т.ч. отрицательные).
+ * Блок (x, y, z) занимает в мире [origin + (x, y, z) * blockSize, origin + (x + 1, y + 1, z + 1) * blockSize];
+ * размер блока по осям может различаться (например, плиты пола в полблока высотой).
+ * Геометрию и коллайдеры строит {@link BlockMesher}.
+ */
+public class BlockGrid {
+
+    public static final int SECTION = 16;
+    private static final int SHIFT = 4;
+    private static final int MASK = SECTION - 1;
+
+    @Getter
+    private final Vector3f origin;
+    @Getter
+    private final Vector3f blockSize;
+    private final Map<Long, byte[]> sections = new HashMap<>();
+
+    // границы заполнявшихся блоков: [min, max)
+    @Getter
+    private int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE;
+    @Getter
+    private int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+
+    public BlockGrid(Vector3f origin, Vector3f blockSize) {
+        if (!(blockSize.x > 0 && blockSize.y > 0 && blockSize.z > 0)) {
+            throw new IllegalArgumentException("Block size must be greater than 0: " + blockSize);
+        }
+        this.origin = new Vector3f(origin);
+        this.blockSize = new Vector3f(blockSize);
+    }
+
+    /** @return материал блока или 0 */
+    public int get(int x, int y, int z) {
+        byte[] section = sections.get(key(x >> SHIFT, y >> SHIFT, z >> SHIFT));
+        return section == null ? 0 : section[index(x, y, z)] & 0xFF;
+    }
+
+    public void set(int x, int y, int z, int material) {
+        if (material < 0 || material > 255) {
+            throw new IllegalArgumentException("Block material must be in 0..255: " + material);
+        }
+        long key = key(x >> SHIFT, y >> SHIFT, z >> SHIFT);
+        byte[] section = sections.get(key);
+        if (section == null) {
+            if (material == 0) return;
+            section = new byte[SECTION * SECTION * SECTION];
+            sections.put(key, section);
+        }
+        section[index(x, y, z)] = (byte) material;
+        if (material != 0) {
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x + 1);
+            maxY = Math.max(maxY, y + 1);
+            maxZ = Math.max(maxZ, z + 1);
+        }
+    }
+
+    /** Заполняет блоки [x0, x1) x [y0, y1) x [z0, z1) */
+    public void fill(int x0, int y0, int z0, int x1, int y1, int z1, int material) {
+        for (int z = z0; z < z1; z++) {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    set(x, y, z, material);
+                }
+            }
+        }
+    }
+
+    /** Блок, в который попадает мировая точка */
+    public int blockX(float worldX) {
+        return (int) Math.floor((worldX - origin.x) / blockSize.x);
+    }
+
+    public int blockY(float worldY) {
+        return (int) Math.floor((worldY - origin.y) / blockSize.y);
+    }
+
+    public int blockZ(float worldZ) {
+        return (int) Math.floor((worldZ - origin.z) / blockSize.z);
+    }
+
+    /** Ставит блок, в который попадает мировая точка */
+    public void setAt(Vector3f world, int material) {
+        set(blockX(world.x), blockY(world.y), blockZ(world.z), material);
+    }
+
+    /** Мировые границы блоков [x0, x1) x [y0, y1) x [z0, z1) */
+    public AABB getBounds(int x0, int y0, int z0, int x1, int y1, int z1) {
+        return new AABB(
+                new Vector3f(x0, y0, z0).mul(blockSize).add(origin),
+                new Vector3f(x1, y1, z1).mul(blockSize).add(origin));
+    }
+
+    public boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    public int getSolidCount() {
+        int count = 0;
+        for (byte[] section : sections.values()) {
+            for (byte b : section) {
+                if (b != 0) count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Копирует блоки [x0, x0 + sx) x [y0, y0 + sy) x [z0, z0 + sz) в dest (индекс x + sx * (y + sy * z)).
+     * Секции ищутся по одному разу — для мешера, читающего область целиком. Без записи в сетку
+     * можно вызывать из нескольких потоков.
+     */
+    public void copy(int x0, int y0, int z0, int sx, int sy, int sz, byte[] dest) {
+        for (int z = z0; z < z0 + sz; ) {
+            int zEnd = Math.min((z | MASK) + 1, z0 + sz);
+            for (int y = y0; y < y0 + sy; ) {
+                int yEnd = Math.min((y | MASK) + 1, y0 + sy);
+                for (int x = x0; x < x0 + sx; ) {
+                    int xEnd = Math.min((x | MASK) + 1, x0 + sx);
+                    byte[] section = sections.get(key(x >> SHIFT, y >> SHIFT, z >> SHIFT));
+                    for (int bz = z; bz < zEnd; bz++) {
+                        for (int by = y; by < yEnd; by++) {
+                            int d = (x - x0) + sx * ((by - y0) + sy * (bz - z0));
+                            if (section == null) {
+                                Arrays.fill(dest, d, d + xEnd - x, (byte) 0);
+                            } else {
+                                System.arraycopy(section, index(x, by, bz), dest, d, xEnd - x);
+                            }
+                        }
+                    }
+                    x = xEnd;
+                }
+                y = yEnd;
+            }
+            z = zEnd;
+        }
+    }
+
+    private static int index(int x, int y, int z) {
+        return (x & MASK) + SECTION * ((y & MASK) + SECTION * (z & MASK));
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+}
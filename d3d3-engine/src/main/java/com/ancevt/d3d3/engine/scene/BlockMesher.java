@@ -0,0 +1,286 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.asset.UVRect;
+import com.ancevt.d3d3.engine.util.FloatArray;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Геометрия и коллайдеры уровня из {@link BlockGrid}. Сетка режется на регионы размером примерно
+ * regionSize (в единицах мира — как чанк {@link ChunkedMeshNode}), регионы строятся параллельно.
+ * <p>
+ * В регионе рисуются только открытые грани блоков (между блоком и пустотой, в том числе через
+ * границу региона), а соседние грани одной плоскости и одного материала сливаются в один квад
+ * (greedy meshing). Чтобы текстура не растягивалась по большому кваду, вершины несут тайл атласа
+ * материала ({@link VertexLayout.Semantic#TILE}), а uv — в тайлах от origin сетки: шейдер
+ * повторяет тайл через каждые textureSize единиц мира.
+ * <p>
+ * Тем же проходом блоки региона сливаются в крупные боксы-коллайдеры (они же перекрыватели).
+ * <p>
+ * Вершины — triangle soup в формате pos xyz + uv + normal xyz + tile (stride 12), для раскладок
+ * {@link VertexLayout#FLOAT_TILED} / {@link VertexLayout#FIXED_TILED}.
+ */
+public class BlockMesher {
+
+    public static final int STRIDE = 12;
+
+    // оси текстуры для граней, смотрящих вдоль оси d: стены — (горизонталь, Y), пол/потолок — (X, Z)
+    private static final int[] TEXTURE_U = {2, 0, 0};
+    private static final int[] TEXTURE_V = {1, 2, 1};
+
+    private final UVRect[] materials;
+    private final float textureSize;
+    private final float regionSize;
+
+    /**
+     * @param materials   тайл атласа материала по его номеру (materials[0] не используется)
+     * @param textureSize через сколько единиц мира повторяется тайл
+     * @param regionSize  примерный размер региона в единицах мира
+     */
+    public BlockMesher(UVRect[] materials, float textureSize, float regionSize) {
+        if (!(textureSize > 0)) {
+            throw new IllegalArgumentException("Texture size must be greater than 0: " + textureSize);
+        }
+        if (!(regionSize > 0)) {
+            throw new IllegalArgumentException("Region size must be greater than 0: " + regionSize);
+        }
+        this.materials = materials.clone();
+        this.textureSize = textureSize;
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * Регион сетки (x, y, z — его номер): геометрия, коллайдеры и счётчики.
+     *
+     * @param bounds    мировые границы блоков региона
+     * @param vertices  triangle soup stride 12 (пустой, если открытых граней нет)
+     * @param faceCount открытых граней блоков — столько квадов было бы без слияния
+     */
+    public record Region(int x, int y, int z, AABB bounds, float[] vertices, List<AABB> colliders,
+                         int faceCount, int quadCount) {
+
+        public boolean isEmpty() {
+            return vertices.length == 0 && colliders.isEmpty();
+        }
+    }
+
+    public record Result(List<Region> regions, int blockCount, int faceCount, int quadCount, int colliderCount) {
+
+        public int getTriangleCount() {
+            return quadCount * 2;
+        }
+    }
+
+    /** Все регионы, где есть блоки */
+    public Result mesh(BlockGrid grid) {
+        if (grid.isEmpty()) return new Result(List.of(), 0, 0, 0, 0);
+        return mesh(grid, grid.getMinX(), grid.getMinY(), grid.getMinZ(), grid.getMaxX(), grid.getMaxY(), grid.getMaxZ());
+    }
+
+    /**
+     * Регионы, на которые влияют блоки [x0, x1) x [y0, y1) x [z0, z1): их собственные и соседние
+     * через грань (у соседа могла открыться или закрыться грань). После правки сетки достаточно
+     * перестроить изменённую область и отдать результат в {@link ChunkedMeshNode#addBlocks}.
+     */
+    public Result mesh(BlockGrid grid, int x0, int y0, int z0, int x1, int y1, int z1) {
+        int[] size = regionBlocks(grid);
+        int rx0 = Math.floorDiv(x0 - 1, size[0]), rx1 = Math.floorDiv(x1, size[0]);
+        int ry0 = Math.floorDiv(y0 - 1, size[1]), ry1 = Math.floorDiv(y1, size[1]);
+        int rz0 = Math.floorDiv(z0 - 1, size[2]), rz1 = Math.floorDiv(z1, size[2]);
+        int nx = rx1 - rx0 + 1, ny = ry1 - ry0 + 1, nz = rz1 - rz0 + 1;
+
+        Region[] regions = new Region[nx * ny * nz];
+        IntStream.range(0, regions.length).parallel().forEach(i ->
+                regions[i] = meshRegion(grid, rx0 + i % nx, ry0 + i / nx % ny, rz0 + i / (nx * ny), size));
+
+        int faces = 0, quads = 0, colliders = 0;
+        for (Region region : regions) {
+            faces += region.faceCount();
+            quads += region.quadCount();
+            colliders += region.colliders().size();
+        }
+        return new Result(List.of(regions), grid.getSolidCount(), faces, quads, colliders);
+    }
+
+    /** Размер региона в блоках по осям */
+    public int[] regionBlocks(BlockGrid grid) {
+        Vector3f blockSize = grid.getBlockSize();
+        return new int[]{
+                Math.max(1, Math.round(regionSize / blockSize.x)),
+                Math.max(1, Math.round(regionSize / blockSize.y)),
+                Math.max(1, Math.round(regionSize / blockSize.z))};
+    }
+
+    private Region meshRegion(BlockGrid grid, int rx, int ry, int rz, int[] dims) {
+        int[] base = {rx * dims[0], ry * dims[1], rz * dims[2]};
+        // блоки региона с рамкой в один блок — грани на границе видят соседа
+        int px = dims[0] + 2, py = dims[1] + 2, pz = dims[2] + 2;
+        byte[] blocks = new byte[px * py * pz];
+        grid.copy(base[0] - 1, base[1] - 1, base[2] - 1, px, py, pz, blocks);
+        int[] step = {1, px, px * py};
+
+        Vector3f origin = grid.getOrigin();
+        Vector3f blockSize = grid.getBlockSize();
+        float[] corner0 = {origin.x + base[0] * blockSize.x, origin.y + base[1] * blockSize.y, origin.z + base[2] * blockSize.z};
+        float[] size = {blockSize.x, blockSize.y, blockSize.z};
+        float[] originArray = {origin.x, origin.y, origin.z};
+
+        FloatArray vertices = new FloatArray(1024);
+        int faces = 0;
+        int quads = 0;
+        int[] x = new int[3];
+        for (int d = 0; d < 3; d++) {
+            int u = (d + 1) % 3;
+            int v = (d + 2) % 3;
+            int[] mask = new int[dims[u] * dims[v]];
+
+            // плоскость p — между слоями p - 1 и p; грань принадлежит региону своего блока
+            for (int p = 0; p <= dims[d]; p++) {
+                int n = 0;
+                x[d] = p;
+                for (x[v] = 0; x[v] < dims[v]; x[v]++) {
+                    for (x[u] = 0; x[u] < dims[u]; x[u]++) {
+                        int b = (x[0] + 1) + px * ((x[1] + 1) + py * (x[2] + 1));
+                        int after = blocks[b] & 0xFF;
+                        int before = blocks[b - step[d]] & 0xFF;
+                        // > 0 — грань смотрит в +d, < 0 — в -d
+                        int face = 0;
+                        if (before != 0 && after == 0 && p > 0) face = before;
+                        else if (after != 0 && before == 0 && p < dims[d]) face = -after;
+                        if (face != 0) faces++;
+                        mask[n++] = face;
+                    }
+                }
+
+                n = 0;
+                for (int j = 0; j < dims[v]; j++) {
+                    for (int i = 0; i < dims[u]; ) {
+                        int c = mask[n];
+                        if (c == 0) {
+                            i++;
+                            n++;
+                            continue;
+                        }
+
+                        int w = 1;
+                        while (i + w < dims[u] && mask[n + w] == c) w++;
+
+                        int h = 1;
+                        grow:
+                        while (j + h < dims[v]) {
+                            for (int k = 0; k < w; k++) {
+                                if (mask[n + k + h * dims[u]] != c) break grow;
+                            }
+                            h++;
+                        }
+
+                        emitQuad(vertices, corner0, size, originArray, d, u, v, p, i, j, w, h, c);
+                        quads++;
+
+                        for (int l = 0; l < h; l++) {
+                            for (int k = 0; k < w; k++) {
+                                mask[n + k + l * dims[u]] = 0;
+                            }
+                        }
+                        i += w;
+                        n += w;
+                    }
+                }
+            }
+        }
+
+        List<AABB> colliders = mergeColliders(blocks, px, py, dims, corner0, size);
+        AABB bounds = grid.getBounds(base[0], base[1], base[2], base[0] + dims[0], base[1] + dims[1], base[2] + dims[2]);
+        return new Region(rx, ry, rz, bounds, vertices.toArray(), colliders, faces, quads);
+    }
+
+    private void emitQuad(FloatArray vertices, float[] corner0, float[] size, float[] origin,
+                          int d, int u, int v, int plane, int i, int j, int w, int h, int c) {
+        int material = Math.abs(c);
+        UVRect tile = material < materials.length ? materials[material] : null;
+        if (tile == null) {
+            throw new IllegalArgumentException("No atlas tile for block material " + material);
+        }
+        float[] normal = new float[3];
+        normal[d] = c > 0 ? 1 : -1;
+        int tu = TEXTURE_U[d];
+        int tv = TEXTURE_V[d];
+
+        float[][] corners = new float[4][3];
+        for (int k = 0; k < 4; k++) {
+            float[] p = corners[k];
+            p[d] = corner0[d] + plane * size[d];
+            p[u] = corner0[u] + (i + (k == 1 || k == 2 ? w : 0)) * size[u];
+            p[v] = corner0[v] + (j + (k >= 2 ? h : 0)) * size[v];
+        }
+
+        // (u, v, d) — правая тройка, так что обход 0-1-2-3 против часовой, если смотреть из +d
+        int[] order = c > 0 ? new int[]{0, 1, 2, 0, 2, 3} : new int[]{0, 2, 1, 0, 3, 2};
+        for (int k : order) {
+            float[] p = corners[k];
+            vertices.add(p[0], p[1], p[2]);
+            vertices.add((p[tu] - origin[tu]) / textureSize, (p[tv] - origin[tv]) / textureSize);
+            vertices.add(normal[0], normal[1], normal[2]);
+            vertices.add(tile.u(), tile.v());
+            vertices.add(tile.width(), tile.height());
+        }
+    }
+
+    /** Блоки региона — в крупные боксы: ряд по X, затем растим по Z, затем по Y */
+    private static List<AABB> mergeColliders(byte[] blocks, int px, int py, int[] dims, float[] corner0, float[] size) {
+        int sx = dims[0], sy = dims[1], sz = dims[2];
+        boolean[] used = new boolean[sx * sy * sz];
+        List<AABB> boxes = new ArrayList<>();
+        for (int y = 0; y < sy; y++) {
+            for (int z = 0; z < sz; z++) {
+                for (int x = 0; x < sx; x++) {
+                    if (!free(blocks, used, px, py, dims, x, y, z)) continue;
+
+                    int w = 1;
+                    while (x + w < sx && free(blocks, used, px, py, dims, x + w, y, z)) w++;
+
+                    int depth = 1;
+                    grow:
+                    while (z + depth < sz) {
+                        for (int k = 0; k < w; k++) {
+                            if (!free(blocks, used, px, py, dims, x + k, y, z + depth)) break grow;
+                        }
+                        depth++;
+                    }
+
+                    int h = 1;
+                    grow:
+                    while (y + h < sy) {
+                        for (int l = 0; l < depth; l++) {
+                            for (int k = 0; k < w; k++) {
+                                if (!free(blocks, used, px, py, dims, x + k, y + h, z + l)) break grow;
+                            }
+                        }
+                        h++;
+                    }
+
+                    for (int m = 0; m < h; m++) {
+                        for (int l = 0; l < depth; l++) {
+                            for (int k = 0; k < w; k++) {
+                                used[(x + k) + sx * ((y + m) + sy * (z + l))] = true;
+                            }
+                        }
+                    }
+                    boxes.add(new AABB(
+                            new Vector3f(corner0[0] + x * size[0], corner0[1] + y * size[1], corner0[2] + z * size[2]),
+                            new Vector3f(corner0[0] + (x + w) * size[0], corner0[1] + (y + h) * size[1],
+                                    corner0[2] + (z + depth) * size[2])));
+                }
+            }
+        }
+        return boxes;
+    }
+
+    /** Блок заполнен и ещё не попал в коллайдер */
+    private static boolean free(byte[] blocks, boolean[] used, int px, int py, int[] dims, int x, int y, int z) {
+        return blocks[(x + 1) + px * ((y + 1) + py * (z + 1))] != 0 && !used[x + dims[0] * (y + dims[1] * z)];
+    }
+}
@@ -0,0 +1,314 @@
+package com.ancevt.d3d3.engine.scene;
+
+import lombok.Getter;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Сгенерированная геометрия уровня, разложенная по кубическим чанкам фиксированного размера.
+ * <p>
+ * Куски геометрии (кубик, плитка — triangle soup во float-stride раскладки) и коллайдеры попадают в чанк,
+ * где лежит их центр. Каждый чанк — отдельный дочерний {@link Chunk} со своим мешем (VBO),
+ * границами и подмножеством коллайдеров: он отдельно отсекается пирамидой видимости и
+ * перекрытием, выбирает свой LOD и перестраивается без остальных. Коллизии и перекрыватели
+ * чанков работают как у {@link MazeNode}.
+ * <p>
+ * Изменения ({@link #addVertices}, {@link #addCollider}, {@link #remove}) помечают чанки,
+ * {@link #build()} перестраивает только помеченные. Регионы {@link BlockMesher} кладутся через
+ * {@link #addBlocks} и при повторной сборке заменяют свою прежнюю геометрию.
+ */
+public class ChunkedMeshNode extends Node {
+
+    @Getter
+    private final float chunkSize;
+    private final int textureId;
+    private final VertexLayout layout;
+    private final LodSettings lodSettings;
+    private final int stride;
+    private final Map<Long, Chunk> chunks = new HashMap<>();
+    // последние регионы BlockMesher по номеру — что убрать при их перестройке
+    private final Map<Long, BlockMesher.Region> blockRegions = new HashMap<>();
+
+    public ChunkedMeshNode(float chunkSize, int textureId, VertexLayout layout) {
+        this(chunkSize, textureId, layout, LodSettings.NONE);
+    }
+
+    /**
+     * @param chunkSize   ребро чанка в единицах сцены
+     * @param layout      раскладка вершин мешей чанков (компактные кодируются по AABB своего чанка)
+     * @param lodSettings цепочка LOD каждого чанка
+     */
+    public ChunkedMeshNode(float chunkSize, int textureId, VertexLayout layout, LodSettings lodSettings) {
+        if (!(chunkSize > 0)) {
+            throw new IllegalArgumentException("Chunk size must be greater than 0: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+        this.textureId = textureId;
+        this.layout = layout;
+        this.lodSettings = lodSettings;
+        this.stride = layout.getFloatStride();
+    }
+
+    /** Кусок геометрии (triangle soup, stride {@link VertexLayout#getFloatStride()} раскладки) — целиком в чанк его центра */
+    public void addVertices(float[] vertices) {
+        Vector3f center = center(vertices);
+        chunkAt(center, true).addPiece(new Piece(vertices, center));
+    }
+
+    /** Коллайдер — в чанк его центра */
+    public void addCollider(AABB box) {
+        Chunk chunk = chunkAt(new Vector3f(box.min).add(box.max).mul(0.5f), true);
+        chunk.colliderList.add(box);
+        chunk.dirty = true;
+    }
+
+    /**
+     * Кладёт регионы {@link BlockMesher}: геометрия и коллайдеры региона, собранного раньше из той же
+     * сетки, заменяются новыми. Остальные куски и коллайдеры не трогаются. Нужна раскладка с тайлом
+     * ({@link VertexLayout#FIXED_TILED}, {@link VertexLayout#FLOAT_TILED}).
+     */
+    public void addBlocks(BlockMesher.Result result) {
+        if (stride != BlockMesher.STRIDE) {
+            throw new IllegalArgumentException("Block geometry needs a tiled vertex layout: " + layout);
+        }
+        for (BlockMesher.Region region : result.regions()) {
+            long regionKey = key(region.x(), region.y(), region.z());
+            BlockMesher.Region old = region.isEmpty() ? blockRegions.remove(regionKey) : blockRegions.put(regionKey, region);
+            if (old != null) {
+                if (old.vertices().length > 0) {
+                    Chunk chunk = chunkAt(center(old.vertices()), false);
+                    if (chunk != null && chunk.pieces.removeIf(piece -> piece.vertices() == old.vertices())) chunk.dirty = true;
+                }
+                for (AABB box : old.colliders()) {
+                    Chunk chunk = chunkAt(new Vector3f(box.min).add(box.max).mul(0.5f), false);
+                    if (chunk != null && chunk.colliderList.removeIf(c -> c == box)) chunk.dirty = true;
+                }
+            }
+            if (region.vertices().length > 0) addVertices(region.vertices());
+            for (AABB box : region.colliders()) {
+                addCollider(box);
+            }
+        }
+    }
+
+    /**
+     * Убирает куски геометрии и коллайдеры, чей центр внутри region; затронутые чанки
+     * перестроятся в следующем {@link #build()}.
+     *
+     * @return сколько кусков и коллайдеров убрано
+     */
+    public int remove(AABB region) {
+        int removed = 0;
+        for (Chunk chunk : chunks.values()) {
+            if (!overlaps(chunk.region, region)) continue;
+            int before = chunk.pieces.size() + chunk.colliderList.size();
+            chunk.pieces.removeIf(piece -> region.intersects(piece.center()));
+            chunk.colliderList.removeIf(box -> region.intersects(new Vector3f(box.min).add(box.max).mul(0.5f)));
+            int count = before - chunk.pieces.size() - chunk.colliderList.size();
+            if (count > 0) chunk.dirty = true;
+            removed += count;
+        }
+        return removed;
+    }
+
+    /**
+     * Перестраивает изменившиеся чанки. Сварка вершин, оптимизация и LOD идут параллельно
+     * на пуле потоков, загрузка в GL — в вызывающем (GL) потоке. Опустевшие чанки удаляются.
+     *
+     * @return сколько чанков перестроено
+     */
+    public int build() {
+        List<Chunk> dirty = new ArrayList<>();
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.dirty) dirty.add(chunk);
+        }
+        if (dirty.isEmpty()) return 0;
+
+        MeshData[] data = new MeshData[dirty.size()];
+        IntStream.range(0, data.length).parallel()
+                .forEach(i -> data[i] = dirty.get(i).buildData(stride, lodSettings));
+
+        for (int i = 0; i < data.length; i++) {
+            Chunk chunk = dirty.get(i);
+            try {
+                chunk.upload(data[i], layout);
+            } finally {
+                if (data[i] != null) data[i].free();
+            }
+            if (chunk.getMesh() == null && chunk.colliderList.isEmpty()) {
+                removeChild(chunk);
+                chunks.remove(key(chunk.x, chunk.y, chunk.z));
+            } else if (chunk.getParent() != this) {
+                addChild(chunk);
+            }
+        }
+        return dirty.size();
+    }
+
+    /** Чанк, в который попадает точка, или null */
+    public Chunk getChunkAt(Vector3f point) {
+        return chunkAt(point, false);
+    }
+
+    public Collection<Chunk> getChunks() {
+        return Collections.unmodifiableCollection(chunks.values());
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /** Треугольники всех чанков (уровень 0) */
+    public int getTriangleCount() {
+        int triangles = 0;
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.getMesh() != null) triangles += chunk.getMesh().getTriangleCount();
+        }
+        return triangles;
+    }
+
+    /** Вершины мешей всех чанков (уровень 0) */
+    public int getVertexCount() {
+        int vertices = 0;
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.getMesh() != null) vertices += chunk.getMesh().getVertexCount();
+        }
+        return vertices;
+    }
+
+    /** Освобождает меши чанков */
+    public void cleanup() {
+        for (Chunk chunk : chunks.values()) {
+            if (chunk.getMesh() != null) chunk.getMesh().cleanup();
+        }
+    }
+
+    private Chunk chunkAt(Vector3f point, boolean create) {
+        int x = (int) Math.floor(point.x / chunkSize);
+        int y = (int) Math.floor(point.y / chunkSize);
+        int z = (int) Math.floor(point.z / chunkSize);
+        long key = key(x, y, z);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null && create) {
+            chunk = new Chunk(x, y, z, chunkSize, textureId);
+            chunks.put(key, chunk);
+        }
+        return chunk;
+    }
+
+    private static long key(int x, int y, int z) {
+        return ((long) (x & 0x1FFFFF) << 42) | ((long) (y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    private Vector3f center(float[] vertices) {
+        Vector3f center = new Vector3f();
+        int count = vertices.length / stride;
+        for (int i = 0; i < count * stride; i += stride) {
+            center.add(vertices[i], vertices[i + 1], vertices[i + 2]);
+        }
+        return count > 0 ? center.div(count) : center;
+    }
+
+    private static boolean overlaps(AABB a, AABB b) {
+        return a.min.x <= b.max.x && a.max.x >= b.min.x
+                && a.min.y <= b.max.y && a.max.y >= b.min.y
+                && a.min.z <= b.max.z && a.max.z >= b.min.z;
+    }
+
+    private record Piece(float[] vertices, Vector3f center) {
+    }
+
+    /**
+     * Чанк уровня: меш своих кусков и свои коллайдеры. Границы — объединение меша и коллайдеров,
+     * чтобы пространственный индекс находил чанк и по коллайдерам без геометрии.
+     */
+    public static class Chunk extends MazeNode {
+        @Getter
+        private final int x;
+        @Getter
+        private final int y;
+        @Getter
+        private final int z;
+        // ячейка чанка: куда попадают центры его кусков (геометрия может выступать за неё)
+        private final AABB region;
+        private final List<Piece> pieces = new ArrayList<>();
+        private final List<AABB> colliderList = new ArrayList<>();
+        private AABB bounds;
+        private boolean dirty;
+
+        private Chunk(int x, int y, int z, float size, int textureId) {
+            super(null, textureId, List.of());
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            region = new AABB(new Vector3f(x, y, z).mul(size), new Vector3f(x + 1, y + 1, z + 1).mul(size));
+        }
+
+        private void addPiece(Piece piece) {
+            pieces.add(piece);
+            dirty = true;
+        }
+
+        /** CPU-часть меша; null — геометрии нет. Без GL, вызывается из пула потоков */
+        private MeshData buildData(int stride, LodSettings lodSettings) {
+            if (pieces.isEmpty()) return null;
+            MeshBuilder builder = new MeshBuilder(stride);
+            for (Piece piece : pieces) {
+                builder.addVertices(piece.vertices());
+            }
+            MeshData data = builder.buildData();
+            if (lodSettings.isEnabled()) data.setLods(MeshSimplifier.buildChain(data, lodSettings));
+            return data;
+        }
+
+        private void upload(MeshData data, VertexLayout layout) {
+            Mesh mesh = getMesh();
+            if (data == null) {
+                if (mesh != null) mesh.cleanup();
+                mesh = null;
+            } else if (mesh == null) {
+                mesh = new Mesh(data, layout);
+            } else {
+                mesh.reload(data);
+            }
+            setMesh(mesh);
+            setColliders(new ArrayList<>(colliderList));
+
+            AABB union = null;
+            if (mesh != null) union = new AABB(mesh.getBounds().min, mesh.getBounds().max);
+            for (AABB box : colliderList) {
+                if (union == null) {
+                    union = new AABB(box.min, box.max);
+                } else {
+                    union.min.min(box.min);
+                    union.max.max(box.max);
+                }
+            }
+            bounds = union;
+            dirty = false;
+        }
+
+        @Override
+        protected void draw(RenderContext ctx) {
+            if (getMesh() != null) super.draw(ctx);
+        }
+
+        @Override
+        public AABB getLocalBounds() {
+            return bounds;
+        }
+
+        /** Коллайдеры без геометрии (невидимые стены) ничего не закрывают */
+        @Override
+        public List<AABB> getOccluders() {
+            return getMesh() != null ? super.getOccluders() : List.of();
+        }
+    }
+}
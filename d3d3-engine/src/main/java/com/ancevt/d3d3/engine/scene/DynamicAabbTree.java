@@ -0,0 +1,522 @@
+package com.ancevt.d3d3.engine.scene;
+
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Динамическое дерево AABB (BVH) для пространственных запросов: пирамида видимости, пересечение AABB,
+ * сфера, луч. Стоимость запроса растёт с числом найденного, а не с размером сцены.
+ * <p>
+ * Лист хранит точный AABB объекта и «толстый» AABB с запасом; внутренние узлы — объединение толстых.
+ * Пока объект не вышел за толстый AABB, {@link #move} только обновляет точный — дерево не перестраивается.
+ * Вставка выбирает соседа по площади поверхности (SAH), после вставки и удаления дерево
+ * балансируется поворотами. Узлы — в параллельных массивах со списком свободных.
+ * <p>
+ * Не потокобезопасно.
+ */
+public class DynamicAabbTree<T> {
+
+    /** Запас толстого AABB: абсолютный + доля размера объекта */
+    public static final float FAT_MARGIN = 0.1f;
+    public static final float FAT_MARGIN_RATIO = 0.1f;
+
+    private static final int NULL = -1;
+
+    /** Луч: получает объект и расстояние входа в его AABB, возвращает новую дальность луча */
+    @FunctionalInterface
+    public interface RayCallback<T> {
+        /**
+         * @return maxDistance — продолжить, меньше — укоротить луч, 0 — остановиться
+         */
+        float hit(T item, float distance, float maxDistance);
+    }
+
+    private int capacity = 16;
+    // min xyz, max xyz на узел
+    private float[] fat = new float[capacity * 6];
+    private float[] tight = new float[capacity * 6];
+    private int[] parent = new int[capacity];
+    private int[] left = new int[capacity];
+    private int[] right = new int[capacity];
+    private int[] height = new int[capacity];
+    private Object[] items = new Object[capacity];
+
+    private int root = NULL;
+    private int freeList = NULL;
+    private int leafCount;
+
+    private int[] stack = new int[64];
+
+    public DynamicAabbTree() {
+        initFreeList(0);
+    }
+
+    /** Добавляет объект; возвращает идентификатор листа для {@link #move} и {@link #remove} */
+    public int insert(AABB bounds, T item) {
+        int leaf = allocate();
+        setTight(leaf, bounds);
+        fatten(leaf);
+        items[leaf] = item;
+        height[leaf] = 0;
+        insertLeaf(leaf);
+        leafCount++;
+        return leaf;
+    }
+
+    public void remove(int proxy) {
+        removeLeaf(proxy);
+        free(proxy);
+        leafCount--;
+    }
+
+    /**
+     * Новые границы объекта. Дерево перестраивается, только если объект вышел за толстый AABB.
+     *
+     * @return true, если лист переставлен
+     */
+    public boolean move(int proxy, AABB bounds) {
+        setTight(proxy, bounds);
+        int o = proxy * 6;
+        if (fat[o] <= bounds.min.x && fat[o + 1] <= bounds.min.y && fat[o + 2] <= bounds.min.z
+                && fat[o + 3] >= bounds.max.x && fat[o + 4] >= bounds.max.y && fat[o + 5] >= bounds.max.z) {
+            return false;
+        }
+        removeLeaf(proxy);
+        fatten(proxy);
+        insertLeaf(proxy);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int proxy) {
+        return (T) items[proxy];
+    }
+
+    public int size() {
+        return leafCount;
+    }
+
+    /** Высота дерева (0 — пусто или один лист) */
+    public int getHeight() {
+        return root == NULL ? 0 : height[root];
+    }
+
+    public void clear() {
+        Arrays.fill(items, null);
+        root = NULL;
+        leafCount = 0;
+        initFreeList(0);
+    }
+
+    // === запросы ===
+
+    /** Объекты, чей AABB пересекает bounds */
+    public void query(AABB bounds, Consumer<T> consumer) {
+        query(bounds.min.x, bounds.min.y, bounds.min.z, bounds.max.x, bounds.max.y, bounds.max.z, consumer);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, Consumer<T> consumer) {
+        if (root == NULL) return;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            float[] box = isLeaf(node) ? tight : fat;
+            int o = node * 6;
+            if (box[o] > maxX || box[o + 3] < minX || box[o + 1] > maxY || box[o + 4] < minY
+                    || box[o + 2] > maxZ || box[o + 5] < minZ) {
+                continue;
+            }
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    /** Объекты, чей AABB пересекает сферу */
+    @SuppressWarnings("unchecked")
+    public void querySphere(Vector3f center, float radius, Consumer<T> consumer) {
+        if (root == NULL) return;
+        float r2 = radius * radius;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            float[] box = isLeaf(node) ? tight : fat;
+            if (distanceSquared(box, node * 6, center) > r2) continue;
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    /**
+     * Объекты, чей AABB пересекает пирамиду видимости. Поддерево, целиком лежащее внутри,
+     * отдаётся без проверок.
+     */
+    @SuppressWarnings("unchecked")
+    public void queryFrustum(FrustumIntersection frustum, Consumer<T> consumer) {
+        if (root == NULL) return;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            int o = node * 6;
+            if (isLeaf(node)) {
+                if (frustum.testAab(tight[o], tight[o + 1], tight[o + 2], tight[o + 3], tight[o + 4], tight[o + 5])) {
+                    consumer.accept((T) items[node]);
+                }
+                continue;
+            }
+            int result = frustum.intersectAab(fat[o], fat[o + 1], fat[o + 2], fat[o + 3], fat[o + 4], fat[o + 5]);
+            if (result == FrustumIntersection.INSIDE) {
+                collectLeaves(node, top, consumer);
+            } else if (result == FrustumIntersection.INTERSECT) {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    /**
+     * Объекты, чей AABB пересекает луч origin + t * direction, t в [0, maxDistance].
+     * Сначала проверяется ближний по входу ребёнок; callback может укоротить луч.
+     *
+     * @param direction нормализованное направление
+     */
+    @SuppressWarnings("unchecked")
+    public void raycast(Vector3f origin, Vector3f direction, float maxDistance, RayCallback<T> callback) {
+        if (root == NULL) return;
+        float invX = 1f / direction.x;
+        float invY = 1f / direction.y;
+        float invZ = 1f / direction.z;
+        float limit = maxDistance;
+        int top = push(0, root);
+        while (top > 0) {
+            int node = stack[--top];
+            boolean leaf = isLeaf(node);
+            float t = rayEnter(leaf ? tight : fat, node * 6, origin, invX, invY, invZ, limit);
+            if (t < 0) continue;
+            if (leaf) {
+                limit = callback.hit((T) items[node], t, limit);
+                if (limit <= 0) return;
+                continue;
+            }
+            // ближний ребёнок — на вершину стека
+            int a = left[node];
+            int b = right[node];
+            float ta = rayEnter(isLeaf(a) ? tight : fat, a * 6, origin, invX, invY, invZ, limit);
+            float tb = rayEnter(isLeaf(b) ? tight : fat, b * 6, origin, invX, invY, invZ, limit);
+            if (ta >= 0 && tb >= 0) {
+                if (ta <= tb) {
+                    top = push(top, b);
+                    top = push(top, a);
+                } else {
+                    top = push(top, a);
+                    top = push(top, b);
+                }
+            } else if (ta >= 0) {
+                top = push(top, a);
+            } else if (tb >= 0) {
+                top = push(top, b);
+            }
+        }
+    }
+
+    /** Точный AABB объекта */
+    public AABB getBounds(int proxy, AABB dest) {
+        int o = proxy * 6;
+        dest.min.set(tight[o], tight[o + 1], tight[o + 2]);
+        dest.max.set(tight[o + 3], tight[o + 4], tight[o + 5]);
+        return dest;
+    }
+
+    /** Все листья поддерева; стек используется выше top — ожидающие узлы внешнего обхода не трогаются */
+    @SuppressWarnings("unchecked")
+    private void collectLeaves(int subtree, int base, Consumer<T> consumer) {
+        int top = push(base, subtree);
+        while (top > base) {
+            int node = stack[--top];
+            if (isLeaf(node)) {
+                consumer.accept((T) items[node]);
+            } else {
+                top = push(top, left[node]);
+                top = push(top, right[node]);
+            }
+        }
+    }
+
+    // === вставка / удаление ===
+
+    private void insertLeaf(int leaf) {
+        if (root == NULL) {
+            root = leaf;
+            parent[leaf] = NULL;
+            return;
+        }
+
+        // спуск к соседу с минимальным приростом площади
+        int index = root;
+        while (!isLeaf(index)) {
+            float area = area(fat, index, NULL);
+            float combined = area(fat, index, leaf);
+            float cost = 2 * combined;
+            float inheritance = 2 * (combined - area);
+
+            float cost1 = childCost(left[index], leaf) + inheritance;
+            float cost2 = childCost(right[index], leaf) + inheritance;
+            if (cost < cost1 && cost < cost2) break;
+            index = cost1 < cost2 ? left[index] : right[index];
+        }
+        int sibling = index;
+
+        int oldParent = parent[sibling];
+        int newParent = allocate();
+        parent[newParent] = oldParent;
+        items[newParent] = null;
+        union(sibling, leaf, newParent);
+        height[newParent] = height[sibling] + 1;
+
+        if (oldParent != NULL) {
+            if (left[oldParent] == sibling) left[oldParent] = newParent;
+            else right[oldParent] = newParent;
+        } else {
+            root = newParent;
+        }
+        left[newParent] = sibling;
+        right[newParent] = leaf;
+        parent[sibling] = newParent;
+        parent[leaf] = newParent;
+
+        refit(parent[leaf]);
+    }
+
+    private float childCost(int child, int leaf) {
+        float combined = area(fat, child, leaf);
+        return isLeaf(child) ? combined : combined - area(fat, child, NULL);
+    }
+
+    private void removeLeaf(int leaf) {
+        if (leaf == root) {
+            root = NULL;
+            return;
+        }
+        int p = parent[leaf];
+        int grandParent = parent[p];
+        int sibling = left[p] == leaf ? right[p] : left[p];
+
+        if (grandParent != NULL) {
+            if (left[grandParent] == p) left[grandParent] = sibling;
+            else right[grandParent] = sibling;
+            parent[sibling] = grandParent;
+            free(p);
+            refit(grandParent);
+        } else {
+            root = sibling;
+            parent[sibling] = NULL;
+            free(p);
+        }
+    }
+
+    /** Подъём к корню: балансировка, высоты и объединённые AABB */
+    private void refit(int index) {
+        while (index != NULL) {
+            index = balance(index);
+            int a = left[index];
+            int b = right[index];
+            height[index] = 1 + Math.max(height[a], height[b]);
+            union(a, b, index);
+            index = parent[index];
+        }
+    }
+
+    /** Поворот, если высоты детей A различаются больше чем на 1; возвращает новый корень поддерева */
+    private int balance(int a) {
+        if (isLeaf(a) || height[a] < 2) return a;
+
+        int b = left[a];
+        int c = right[a];
+        int diff = height[c] - height[b];
+
+        if (diff > 1) return rotate(a, c, b, true);
+        if (diff < -1) return rotate(a, b, c, false);
+        return a;
+    }
+
+    /**
+     * Поднимает высокого ребёнка up на место a; low — второй ребёнок a.
+     *
+     * @param upIsRight up был правым ребёнком a
+     */
+    private int rotate(int a, int up, int low, boolean upIsRight) {
+        int f = left[up];
+        int g = right[up];
+
+        left[up] = a;
+        parent[up] = parent[a];
+        parent[a] = up;
+
+        int upParent = parent[up];
+        if (upParent != NULL) {
+            if (left[upParent] == a) left[upParent] = up;
+            else right[upParent] = up;
+        } else {
+            root = up;
+        }
+
+        // выше из внуков остаётся у up, ниже уходит к a
+        int keep = height[f] > height[g] ? f : g;
+        int give = keep == f ? g : f;
+        right[up] = keep;
+        if (upIsRight) {
+            right[a] = give;
+        } else {
+            left[a] = give;
+        }
+        parent[give] = a;
+
+        union(low, give, a);
+        height[a] = 1 + Math.max(height[low], height[give]);
+        union(a, keep, up);
+        height[up] = 1 + Math.max(height[a], height[keep]);
+        return up;
+    }
+
+    // === хранилище узлов ===
+
+    private boolean isLeaf(int node) {
+        return height[node] == 0;
+    }
+
+    private int allocate() {
+        if (freeList == NULL) grow();
+        int node = freeList;
+        freeList = parent[node];
+        parent[node] = NULL;
+        left[node] = NULL;
+        right[node] = NULL;
+        height[node] = 0;
+        return node;
+    }
+
+    private void free(int node) {
+        items[node] = null;
+        parent[node] = freeList;
+        height[node] = -1;
+        freeList = node;
+    }
+
+    private void grow() {
+        int old = capacity;
+        capacity *= 2;
+        fat = Arrays.copyOf(fat, capacity * 6);
+        tight = Arrays.copyOf(tight, capacity * 6);
+        parent = Arrays.copyOf(parent, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        height = Arrays.copyOf(height, capacity);
+        items = Arrays.copyOf(items, capacity);
+        initFreeList(old);
+    }
+
+    private void initFreeList(int from) {
+        for (int i = from; i < capacity - 1; i++) {
+            parent[i] = i + 1;
+            height[i] = -1;
+        }
+        parent[capacity - 1] = NULL;
+        height[capacity - 1] = -1;
+        freeList = from;
+    }
+
+    private int push(int top, int node) {
+        if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+        stack[top] = node;
+        return top + 1;
+    }
+
+    // === геометрия ===
+
+    private void setTight(int node, AABB bounds) {
+        int o = node * 6;
+        tight[o] = bounds.min.x;
+        tight[o + 1] = bounds.min.y;
+        tight[o + 2] = bounds.min.z;
+        tight[o + 3] = bounds.max.x;
+        tight[o + 4] = bounds.max.y;
+        tight[o + 5] = bounds.max.z;
+    }
+
+    private void fatten(int node) {
+        int o = node * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            float margin = FAT_MARGIN + FAT_MARGIN_RATIO * (tight[o + 3 + axis] - tight[o + axis]);
+            fat[o + axis] = tight[o + axis] - margin;
+            fat[o + 3 + axis] = tight[o + 3 + axis] + margin;
+        }
+    }
+
+    private void union(int a, int b, int dest) {
+        int oa = a * 6;
+        int ob = b * 6;
+        int od = dest * 6;
+        for (int axis = 0; axis < 3; axis++) {
+            fat[od + axis] = Math.min(fat[oa + axis], fat[ob + axis]);
+            fat[od + 3 + axis] = Math.max(fat[oa + 3 + axis], fat[ob + 3 + axis]);
+        }
+    }
+
+    /** Площадь поверхности AABB узла a (или объединения a и b) */
+    private static float area(float[] box, int a, int b) {
+        int oa = a * 6;
+        float dx;
+        float dy;
+        float dz;
+        if (b == NULL) {
+            dx = box[oa + 3] - box[oa];
+            dy = box[oa + 4] - box[oa + 1];
+            dz = box[oa + 5] - box[oa + 2];
+        } else {
+            int ob = b * 6;
+            dx = Math.max(box[oa + 3], box[ob + 3]) - Math.min(box[oa], box[ob]);
+            dy = Math.max(box[oa + 4], box[ob + 4]) - Math.min(box[oa + 1], box[ob + 1]);
+            dz = Math.max(box[oa + 5], box[ob + 5]) - Math.min(box[oa + 2], box[ob + 2]);
+        }
+        return 2 * (dx * dy + dy * dz + dz * dx);
+    }
+
+    private static float distanceSquared(float[] box, int o, Vector3f p) {
+        float dx = Math.max(Math.max(box[o] - p.x, 0), p.x - box[o + 3]);
+        float dy = Math.max(Math.max(box[o + 1] - p.y, 0), p.y - box[o + 4]);
+        float dz = Math.max(Math.max(box[o + 2] - p.z, 0), p.z - box[o + 5]);
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    /** Расстояние входа луча в AABB (0 — начало внутри) или -1, если луч его не задевает */
+    private static float rayEnter(float[] box, int o, Vector3f origin,
+                                  float invX, float invY, float invZ, float maxDistance) {
+        float t1 = (box[o] - origin.x) * invX;
+        float t2 = (box[o + 3] - origin.x) * invX;
+        float tMin = Math.min(t1, t2);
+        float tMax = Math.max(t1, t2);
+        t1 = (box[o + 1] - origin.y) * invY;
+        t2 = (box[o + 4] - origin.y) * invY;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (box[o + 2] - origin.z) * invZ;
+        t2 = (box[o + 5] - origin.z) * invZ;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+
+        if (tMax < Math.max(tMin, 0) || tMin > maxDistance) return -1;
+        // NaN (луч в плоскости грани) — считаем попаданием
+        return tMin > 0 ? tMin : 0;
+    }
+}
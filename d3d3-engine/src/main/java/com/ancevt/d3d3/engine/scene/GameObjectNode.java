@@ -20,6 +20,15 @@ public class GameObjectNode extends Node {
     @Setter
     private boolean collidable = true; // <- новое поле
 
+    // уровень детализации с прошлого кадра (гистерезис)
+    @Getter
+    private int lod;
+
+    // меньше 1 — рисуется в прозрачном проходе
+    @Getter
+    @Setter
+    private float opacity = 1f;
+
 
     public GameObjectNode(Mesh mesh, int textureId) {
         this.mesh = mesh;
@@ -27,10 +36,21 @@ public class GameObjectNode extends Node {
     }
 
     @Override
-    public void render(RenderContext ctx) {
-        Matrix4f model = getWorldTransform();
-        ctx.renderMesh(mesh, textureId, color, model);
-        super.render(ctx);
+    protected void draw(RenderContext ctx) {
+        Matrix4f model = getWorldMatrix();
+        lod = ctx.selectLod(mesh, model, lod);
+        ctx.submit(mesh, lod, textureId, color, opacity, model);
+    }
+
+    @Override
+    public AABB getLocalBounds() {
+        return mesh != null ? mesh.getBounds() : null;
+    }
+
+    /** Подменяет меш (например, перестроенный); уровень детализации начинается заново */
+    protected void setMesh(Mesh mesh) {
+        this.mesh = mesh;
+        lod = 0;
     }
 
     public void setColor(float r, float g, float b) {
@@ -0,0 +1,166 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+
+/**
+ * Greedy meshing воксельного объёма: грань рисуется только между заполненным и пустым вокселем,
+ * а соседние грани одной плоскости с одинаковым материалом сливаются в один большой квад.
+ * Вершины в формате движка: pos xyz + uv + normal xyz (stride 8), индексы — по 6 на квад.
+ */
+public class GreedyMesher {
+
+    public static final int STRIDE = 8;
+
+    /** UV материала: весь квад одного материала берёт цвет из одной точки текстуры */
+    public interface MaterialUV {
+        float u(int material);
+
+        float v(int material);
+
+        /** Палитра 256x1: материал i — центр i-го texel */
+        static MaterialUV palette(int size) {
+            return new MaterialUV() {
+                @Override
+                public float u(int material) {
+                    return (material + 0.5f) / size;
+                }
+
+                @Override
+                public float v(int material) {
+                    return 0.5f;
+                }
+            };
+        }
+    }
+
+    private final MaterialUV materialUV;
+    private final float scale;
+
+    private int faceCount;
+    private int quadCount;
+
+    /**
+     * @param scale размер вокселя в единицах мира
+     */
+    public GreedyMesher(MaterialUV materialUV, float scale) {
+        this.materialUV = materialUV;
+        this.scale = scale;
+    }
+
+    public MeshData mesh(VoxelVolume volume) {
+        faceCount = 0;
+        quadCount = 0;
+        FloatArray vertices = new FloatArray(4096);
+        IntArray indices = new IntArray(4096);
+
+        int[] dims = {volume.getSizeX(), volume.getSizeY(), volume.getSizeZ()};
+        int[] x = new int[3];
+        int[] q = new int[3];
+
+        for (int d = 0; d < 3; d++) {
+            int u = (d + 1) % 3;
+            int v = (d + 2) % 3;
+            int[] mask = new int[dims[u] * dims[v]];
+            q[0] = q[1] = q[2] = 0;
+            q[d] = 1;
+
+            // плоскости между слоями x[d] - 1 и x[d]
+            for (x[d] = -1; x[d] < dims[d]; ) {
+                int n = 0;
+                for (x[v] = 0; x[v] < dims[v]; x[v]++) {
+                    for (x[u] = 0; x[u] < dims[u]; x[u]++) {
+                        int a = volume.get(x[0], x[1], x[2]);
+                        int b = volume.get(x[0] + q[0], x[1] + q[1], x[2] + q[2]);
+                        // > 0 — грань смотрит в +d, < 0 — в -d; между двумя заполненными граней нет
+                        int face = (a != 0) == (b != 0) ? 0 : a != 0 ? a : -b;
+                        if (face != 0) faceCount++;
+                        mask[n++] = face;
+                    }
+                }
+                x[d]++;
+
+                n = 0;
+                for (int j = 0; j < dims[v]; j++) {
+                    for (int i = 0; i < dims[u]; ) {
+                        int c = mask[n];
+                        if (c == 0) {
+                            i++;
+                            n++;
+                            continue;
+                        }
+
+                        int w = 1;
+                        while (i + w < dims[u] && mask[n + w] == c) w++;
+
+                        int h = 1;
+                        grow:
+                        while (j + h < dims[v]) {
+                            for (int k = 0; k < w; k++) {
+                                if (mask[n + k + h * dims[u]] != c) break grow;
+                            }
+                            h++;
+                        }
+
+                        x[u] = i;
+                        x[v] = j;
+                        emitQuad(vertices, indices, x, d, u, v, w, h, c);
+
+                        for (int l = 0; l < h; l++) {
+                            for (int k = 0; k < w; k++) {
+                                mask[n + k + l * dims[u]] = 0;
+                            }
+                        }
+                        i += w;
+                        n += w;
+                    }
+                }
+            }
+        }
+
+        return MeshData.indexed(vertices, STRIDE, indices);
+    }
+
+    /** Открытых граней вокселей (по 2 треугольника) — столько было бы без слияния */
+    public int getFaceCount() {
+        return faceCount;
+    }
+
+    public int getQuadCount() {
+        return quadCount;
+    }
+
+    public int getTriangleCount() {
+        return quadCount * 2;
+    }
+
+    private void emitQuad(FloatArray vertices, IntArray indices, int[] x,
+                          int d, int u, int v, int w, int h, int c) {
+        int material = Math.abs(c);
+        float tu = materialUV.u(material);
+        float tv = materialUV.v(material);
+        float[] normal = new float[3];
+        normal[d] = c > 0 ? 1 : -1;
+
+        int base = vertices.size() / STRIDE;
+        float[] p = new float[3];
+        for (int corner = 0; corner < 4; corner++) {
+            p[d] = x[d];
+            p[u] = x[u] + (corner == 1 || corner == 2 ? w : 0);
+            p[v] = x[v] + (corner >= 2 ? h : 0);
+            vertices.add(p[0] * scale, p[1] * scale, p[2] * scale);
+            vertices.add(tu, tv);
+            vertices.add(normal[0], normal[1], normal[2]);
+        }
+
+        // (u, v, d) — правая тройка, так что обход 0-1-2-3 против часовой, если смотреть из +d
+        if (c > 0) {
+            indices.add(base, base + 1, base + 2);
+            indices.add(base, base + 2, base + 3);
+        } else {
+            indices.add(base, base + 2, base + 1);
+            indices.add(base, base + 3, base + 2);
+        }
+        quadCount++;
+    }
+}
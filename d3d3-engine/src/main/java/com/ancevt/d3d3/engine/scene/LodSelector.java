@@ -0,0 +1,37 @@
+package com.ancevt.d3d3.engine.scene;
+
+/**
+ * Выбор уровня детализации по ошибке уровня, спроецированной на экран.
+ * <p>
+ * errorScale переводит ошибку из единиц модели в долю половины высоты экрана:
+ * projection.m11 * масштаб модели / расстояние до камеры.
+ * На более грубый уровень переходим только с запасом {@link #HYSTERESIS}, на более точный — сразу:
+ * на границе порога уровень не мигает туда-обратно.
+ */
+public final class LodSelector {
+
+    /** Допустимая ошибка на экране: доля половины высоты (~2 px при 1080p) */
+    public static final float SCREEN_ERROR = 0.004f;
+
+    public static final float HYSTERESIS = 0.7f;
+
+    private LodSelector() {
+    }
+
+    /**
+     * @param errors  ошибка каждого уровня, errors[0] = 0 — исходный меш
+     * @param current уровень в прошлом кадре
+     */
+    public static int select(float[] errors, int current, float errorScale) {
+        int target = 0;
+        for (int i = 1; i < errors.length; i++) {
+            if (errors[i] * errorScale > SCREEN_ERROR) break;
+            target = i;
+        }
+        // огрубление — только если новый уровень проходит и с запасом
+        while (target > current && errors[target] * errorScale > SCREEN_ERROR * HYSTERESIS) {
+            target--;
+        }
+        return target;
+    }
+}
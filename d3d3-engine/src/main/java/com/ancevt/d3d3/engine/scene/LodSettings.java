@@ -0,0 +1,27 @@
+package com.ancevt.d3d3.engine.scene;
+
+/**
+ * Параметры цепочки LOD, которую строит {@link MeshSimplifier} при импорте.
+ *
+ * @param levels   сколько упрощённых уровней строить (0 — без LOD)
+ * @param ratio    доля треугольников следующего уровня от предыдущего
+ * @param maxError предельная ошибка упрощения относительно радиуса меша
+ */
+public record LodSettings(int levels, float ratio, float maxError) {
+
+    public static final LodSettings NONE = new LodSettings(0, 1f, 0f);
+
+    /** 50%, 25%, 12.5% треугольников */
+    public static final LodSettings DEFAULT = new LodSettings(3, 0.5f, 0.25f);
+
+    public LodSettings {
+        if (levels < 0) throw new IllegalArgumentException("LOD levels must be >= 0: " + levels);
+        if (levels > 0 && (ratio <= 0 || ratio >= 1)) {
+            throw new IllegalArgumentException("LOD ratio must be in (0, 1): " + ratio);
+        }
+    }
+
+    public boolean isEnabled() {
+        return levels > 0;
+    }
+}
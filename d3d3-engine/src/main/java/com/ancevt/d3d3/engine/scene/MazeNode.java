@@ -1,29 +1,57 @@
 package com.ancevt.d3d3.engine.scene;
 
 import lombok.Getter;
+import org.joml.Vector3f;
 
 import java.util.List;
 
 public class MazeNode extends GameObjectNode {
 
     @Getter
-    private final List<AABB> colliders;
+    private List<AABB> colliders;
+
+    // коллайдеры лабиринта в дереве AABB: проверка не перебирает все кубики
+    private final DynamicAabbTree<AABB> colliderIndex = new DynamicAabbTree<>();
+    // слитые коллайдеры — перекрыватели для OcclusionCuller, строятся при первом запросе
+    private List<AABB> occluders;
 
     public MazeNode(Mesh mesh, int textureId, List<AABB> colliders) {
         super(mesh, textureId);
+        setColliders(colliders);
+    }
+
+    /** Заменяет коллайдеры (например, у перестроенного чанка уровня) */
+    public void setColliders(List<AABB> colliders) {
         this.colliders = colliders;
+        colliderIndex.clear();
+        for (AABB box : colliders) {
+            colliderIndex.insert(box, box);
+        }
+        occluders = null;
     }
 
     public boolean checkCollision(AABB player) {
-        for (AABB box : colliders) {
-            float epsilon = 0.001f;
-            if (player.min.x <= box.max.x - epsilon && player.max.x >= box.min.x + epsilon &&
-                    player.min.y <= box.max.y - epsilon && player.max.y >= box.min.y + epsilon &&
-                    player.min.z <= box.max.z - epsilon && player.max.z >= box.min.z + epsilon) {
-                return true;
-            }
+        // касание в пределах epsilon — не столкновение: сужаем AABB игрока
+        float epsilon = 0.001f;
+        boolean[] hit = {false};
+        colliderIndex.query(player.min.x + epsilon, player.min.y + epsilon, player.min.z + epsilon,
+                player.max.x - epsilon, player.max.y - epsilon, player.max.z - epsilon,
+                box -> hit[0] = true);
+        return hit[0];
+    }
 
-        }
-        return false;
+    /** Верх ближайшего коллайдера под точкой (не выше неё) или NEGATIVE_INFINITY */
+    public float findGroundBelow(Vector3f pos) {
+        float[] closest = {Float.NEGATIVE_INFINITY};
+        colliderIndex.query(pos.x, Float.NEGATIVE_INFINITY, pos.z, pos.x, pos.y, pos.z, box -> {
+            if (box.max.y > closest[0] && box.max.y <= pos.y) closest[0] = box.max.y;
+        });
+        return closest[0];
+    }
+
+    @Override
+    public List<AABB> getOccluders() {
+        if (occluders == null) occluders = OcclusionCuller.mergeBoxes(colliders);
+        return occluders;
     }
 }
@@ -1,128 +1,499 @@
 package com.ancevt.d3d3.engine.scene;
 
+import com.ancevt.d3d3.engine.render.GLState;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
 import org.lwjgl.system.MemoryUtil;
 
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.function.IntConsumer;
 
-import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
 
 public class Mesh {
     private final int vaoId;
     private final int vboId;
-    private final int vertexCount;
-    private final int stride = 8; // xyz, uv, normal
+    private int vertexCount;
+    private final int stride; // xyz, uv, normal — float-представление на CPU
+    private final VertexLayout layout;
+    // параметры деквантизации компактной раскладки (IDENTITY для FLOAT)
+    private VertexCodec.Decode decode = VertexCodec.Decode.IDENTITY;
 
-    // Оригинальные вершины (храним для пересчёта UV без накопления ошибок)
-    private final float[] originalVertices;
+    // повтор текстуры — uniform uvTransform, VBO не трогаем
+    private float uvRepeatU = 1f;
+    private float uvRepeatV = 1f;
+
+    // индексный буфер (0 — меш без индексов)
+    private int eboId;
+    private int indexCount;
+    private int indexType;
+
+    // диапазоны индексов по материалам (пусто — один материал на весь меш)
+    private List<SubMesh> subMeshes = List.of();
+
+    // упрощённые уровни детализации: свой VAO + EBO поверх общего VBO
+    private final List<Lod> lods = new ArrayList<>();
+    private float[] lodErrors = {0f};
+
+    // уровни (0 — основной VAO), к VAO которых уже подключён буфер экземпляров instanceVbo
+    private final BitSet instanceReady = new BitSet();
+    private int instanceVbo;
+
+    // локальный AABB (для выбора LOD и отсечения)
+    private AABB bounds;
+
+    // Исходные float-вершины (для коллизий и MeshBuilder)
+    private float[] originalVertices;
+    private int[] originalIndices;
 
     public Mesh(float[] vertices, int stride) {
+        this(vertices, stride, null);
+    }
+
+    public Mesh(float[] vertices, int stride, int[] indices) {
+        this.stride = stride;
+        this.layout = VertexLayout.forFloatStride(stride);
         this.vertexCount = vertices.length / stride;
         this.originalVertices = vertices.clone();
-
-        vaoId = glGenVertexArrays();
-        glBindVertexArray(vaoId);
+        this.originalIndices = indices == null ? null : indices.clone();
 
         FloatBuffer buffer = MemoryUtil.memAllocFloat(vertices.length);
         buffer.put(vertices).flip();
+        ByteBuffer indexBuffer = indices == null ? null : MeshData.packIndices(indices, indices.length, vertexCount);
 
+        vaoId = glGenVertexArrays();
         vboId = glGenBuffers();
-        glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+        setupBuffers(bytes(buffer), indexBuffer, MeshData.indexTypeFor(vertexCount));
 
-        // position
-        glEnableVertexAttribArray(0);
-        glVertexAttribPointer(0, 3, GL_FLOAT, false, stride * Float.BYTES, 0);
+        MemoryUtil.memFree(buffer);
+        if (indexBuffer != null) MemoryUtil.memFree(indexBuffer);
+    }
+
+    /**
+     * Загружает off-heap вершины напрямую в VBO, без промежуточного float[].
+     * Копия на куче создаётся лениво — только если понадобится {@link #getVertices()}.
+     */
+    public Mesh(MeshData data) {
+        this(data, VertexLayout.forFloatStride(data.getStride()));
+    }
 
-        // texCoord
-        if (stride >= 5) {
-            glEnableVertexAttribArray(1);
-            glVertexAttribPointer(1, 2, GL_FLOAT, false, stride * Float.BYTES, 3 * Float.BYTES);
+    /**
+     * Загружает вершины в заданной раскладке. Компактные раскладки ({@link VertexLayout#HALF},
+     * {@link VertexLayout#FIXED}) кодируются из float-вершин при загрузке, нужен stride 8 (12 с тайлом).
+     */
+    public Mesh(MeshData data, VertexLayout layout) {
+        this.stride = layout.isFloat() ? data.getStride() : layout.getFloatStride();
+        this.layout = layout;
+        this.vertexCount = data.getVertexCount();
+
+        vaoId = glGenVertexArrays();
+        vboId = glGenBuffers();
+        ByteBuffer vertices = encode(data);
+        try {
+            setupBuffers(vertices, data.getIndices(), data.getIndexType());
+        } finally {
+            if (!layout.isFloat()) MemoryUtil.memFree(vertices);
+        }
+        if (isIndexed()) subMeshes = data.getSubMeshes();
+        uploadLods(data.getLods());
+        bounds = copy(data.getBounds());
+    }
+
+    private record Lod(int vaoId, int eboId, int indexCount, List<SubMesh> subMeshes) {
+    }
+
+    private void uploadLods(List<MeshLod> data) {
+        if (data.isEmpty() || !isIndexed()) return;
+        lodErrors = new float[data.size() + 1];
+        for (MeshLod lod : data) {
+            int vao = glGenVertexArrays();
+            GLState.bindVertexArray(vao);
+            GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+            layout.apply();
+            int ebo = glGenBuffers();
+            GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, ebo);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, lod.indices(), GL_STATIC_DRAW);
+            lods.add(new Lod(vao, ebo, lod.indexCount(), lod.subMeshes()));
+            lodErrors[lods.size()] = lod.error();
         }
+        GLState.bindVertexArray(0);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+        GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
 
-        // normal
-        if (stride >= 8) {
-            glEnableVertexAttribArray(2);
-            glVertexAttribPointer(2, 3, GL_FLOAT, false, stride * Float.BYTES, 5 * Float.BYTES);
+    private void deleteLods() {
+        for (Lod lod : lods) {
+            GLState.deleteBuffer(lod.eboId());
+            GLState.deleteVertexArray(lod.vaoId());
         }
+        lods.clear();
+        // VAO уровней создаются заново; у основного VAO атрибуты экземпляров остаются
+        instanceReady.clear(1, Integer.MAX_VALUE);
+        lodErrors = new float[]{0f};
+    }
 
-        MemoryUtil.memFree(buffer);
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
-        glBindVertexArray(0);
+    private static AABB copy(AABB bounds) {
+        return new AABB(bounds.min, bounds.max);
+    }
+
+    /** Вершины в формате раскладки; для float-раскладки — вид на буфер MeshData без копии */
+    private ByteBuffer encode(MeshData data) {
+        if (layout.isFloat()) {
+            if (layout.getFloatStride() != data.getStride()) {
+                throw new IllegalArgumentException("Vertex stride " + data.getStride() + " does not match " + layout);
+            }
+            return bytes(data.getVertices());
+        }
+        VertexCodec.Encoded encoded = VertexCodec.encode(data.getVertices(), data.getStride(), data.getVertexCount(), layout);
+        decode = encoded.decode();
+        return encoded.vertices();
+    }
+
+    private static ByteBuffer bytes(FloatBuffer buffer) {
+        return MemoryUtil.memByteBuffer(MemoryUtil.memAddress(buffer), buffer.remaining() * Float.BYTES);
+    }
+
+    private void setupBuffers(ByteBuffer vertices, ByteBuffer indices, int indexType) {
+        GLState.bindVertexArray(vaoId);
+
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+        glBufferData(GL_ARRAY_BUFFER, vertices, GL_STATIC_DRAW);
+
+        if (indices != null) {
+            // GL_ELEMENT_ARRAY_BUFFER запоминается в VAO
+            eboId = glGenBuffers();
+            GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices, GL_STATIC_DRAW);
+            this.indexType = indexType;
+            this.indexCount = indices.remaining() / MeshData.indexSize(indexType);
+        }
+
+        // position / texCoord / normal
+        layout.apply();
+
+        GLState.bindVertexArray(0);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+        GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Заменяет геометрию в тех же VBO/EBO — ссылки на меш (узлы сцены) остаются валидными.
+     * Буфер того же размера обновляется через glBufferSubData, иначе хранилище пересоздаётся.
+     * Раскладка сохраняется, компактные вершины кодируются заново.
+     */
+    public void reload(MeshData data) {
+        if (layout.isFloat() && data.getStride() != stride) {
+            throw new IllegalArgumentException("Mesh stride changed: " + stride + " -> " + data.getStride());
+        }
+
+        GLState.bindVertexArray(vaoId);
+        ByteBuffer vertices = encode(data);
+        try {
+            upload(GL_ARRAY_BUFFER, vboId, (long) vertexCount * layout.getStride(), vertices);
+        } finally {
+            if (!layout.isFloat()) MemoryUtil.memFree(vertices);
+        }
+
+        if (data.isIndexed()) {
+            long oldBytes = isIndexed() ? (long) indexCount * MeshData.indexSize(indexType) : -1;
+            if (eboId == 0) eboId = glGenBuffers();
+            upload(GL_ELEMENT_ARRAY_BUFFER, eboId, oldBytes, data.getIndices());
+            indexType = data.getIndexType();
+            indexCount = data.getIndexCount();
+        } else if (eboId != 0) {
+            GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+            GLState.deleteBuffer(eboId);
+            eboId = 0;
+            indexCount = 0;
+        }
+        GLState.bindVertexArray(0);
+        GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+
+        vertexCount = data.getVertexCount();
+        subMeshes = isIndexed() ? data.getSubMeshes() : List.of();
+        deleteLods();
+        uploadLods(data.getLods());
+        bounds = copy(data.getBounds());
+        // копии на куче перечитаются из буферов при необходимости
+        originalVertices = null;
+        originalIndices = null;
+    }
+
+    private static void upload(int target, int buffer, long oldBytes, ByteBuffer data) {
+        GLState.bindBuffer(target, buffer);
+        if (oldBytes == data.remaining()) {
+            glBufferSubData(target, 0, data);
+        } else {
+            glBufferData(target, data, GL_STATIC_DRAW);
+        }
     }
 
     public void render() {
-        glBindVertexArray(vaoId);
-        glDrawArrays(GL_TRIANGLES, 0, vertexCount);
-        glBindVertexArray(0);
+        render(0);
+    }
+
+    /** VAO, которым рисуется уровень lod (ключ сортировки {@link RenderQueue}) */
+    int getVaoId(int lod) {
+        return lod > 0 && !lods.isEmpty() ? lods.get(Math.min(lod, lods.size()) - 1).vaoId() : vaoId;
+    }
+
+    /**
+     * VAO после отрисовки остаётся привязанным: следующий меш всё равно привяжет свой,
+     * а тот же меш подряд не привязывается вовсе (см. {@link GLState}).
+     *
+     * @param lod уровень детализации, 0 — исходный меш; больше имеющихся — самый грубый
+     */
+    public void render(int lod) {
+        draw(lod, 0);
+    }
+
+    public void render(IntConsumer beforeDraw) {
+        render(beforeDraw, 0);
+    }
+
+    /**
+     * Рисует сабмеши с одним bind VAO. Перед каждым диапазоном вызывается beforeDraw с индексом
+     * материала — там переключаются текстура и uniform'ы. Меш без сабмешей рисуется материалом 0.
+     */
+    public void render(IntConsumer beforeDraw, int lod) {
+        draw(beforeDraw, lod, 0);
+    }
+
+    /**
+     * Рисует instances экземпляров одним вызовом. Данные экземпляров — в буфере instanceVbo
+     * в формате {@link VertexLayout#applyInstanceAttributes()}; атрибуты подключаются к VAO один раз.
+     */
+    public void renderInstanced(int lod, int instanceVbo, int instances) {
+        prepareInstancing(lod, instanceVbo);
+        draw(lod, instances);
+    }
+
+    public void renderInstanced(IntConsumer beforeDraw, int lod, int instanceVbo, int instances) {
+        prepareInstancing(lod, instanceVbo);
+        draw(beforeDraw, lod, instances);
+    }
+
+    private void prepareInstancing(int lod, int vbo) {
+        if (instanceVbo != vbo) {
+            instanceReady.clear();
+            instanceVbo = vbo;
+        }
+        int level = lod > 0 && !lods.isEmpty() ? Math.min(lod, lods.size()) : 0;
+        if (instanceReady.get(level)) return;
+        GLState.bindVertexArray(getVaoId(lod));
+        GLState.bindBuffer(GL_ARRAY_BUFFER, vbo);
+        VertexLayout.applyInstanceAttributes();
+        instanceReady.set(level);
+    }
+
+    /** @param instances 0 — обычная отрисовка */
+    private void draw(int lod, int instances) {
+        if (lod > 0 && !lods.isEmpty()) {
+            Lod level = lods.get(Math.min(lod, lods.size()) - 1);
+            GLState.bindVertexArray(level.vaoId());
+            drawElements(level.indexCount(), 0, instances);
+            return;
+        }
+        GLState.bindVertexArray(vaoId);
+        if (isIndexed()) {
+            drawElements(indexCount, 0, instances);
+        } else if (instances > 0) {
+            glDrawArraysInstanced(GL_TRIANGLES, 0, vertexCount, instances);
+        } else {
+            glDrawArrays(GL_TRIANGLES, 0, vertexCount);
+        }
+    }
+
+    private void draw(IntConsumer beforeDraw, int lod, int instances) {
+        int vao = vaoId;
+        List<SubMesh> ranges = subMeshes;
+        if (lod > 0 && !lods.isEmpty()) {
+            Lod level = lods.get(Math.min(lod, lods.size()) - 1);
+            vao = level.vaoId();
+            ranges = level.subMeshes();
+        }
+        if (ranges.isEmpty()) {
+            beforeDraw.accept(0);
+            draw(lod, instances);
+            return;
+        }
+        GLState.bindVertexArray(vao);
+        int indexSize = MeshData.indexSize(indexType);
+        for (SubMesh subMesh : ranges) {
+            beforeDraw.accept(subMesh.material());
+            drawElements(subMesh.indexCount(), (long) subMesh.firstIndex() * indexSize, instances);
+        }
+    }
+
+    private void drawElements(int count, long offset, int instances) {
+        if (instances > 0) {
+            glDrawElementsInstanced(GL_TRIANGLES, count, indexType, offset, instances);
+        } else {
+            glDrawElements(GL_TRIANGLES, count, indexType, offset);
+        }
     }
 
     public void cleanup() {
-        glDeleteBuffers(vboId);
-        glDeleteVertexArrays(vaoId);
+        deleteLods();
+        GLState.deleteBuffer(vboId);
+        if (eboId != 0) GLState.deleteBuffer(eboId);
+        GLState.deleteVertexArray(vaoId);
     }
 
     /** Возвращает список треугольников (для коллизий и пр.) */
     public List<Vector3f[]> getTriangles() {
         List<Vector3f[]> tris = new ArrayList<>();
 
-        FloatBuffer buffer = MemoryUtil.memAllocFloat(vertexCount * stride);
-        glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glGetBufferSubData(GL_ARRAY_BUFFER, 0, buffer);
+        float[] verts = getVertices();
+        int[] indices = getIndices();
+        int count = indices != null ? indices.length : vertexCount;
 
-        float[] verts = new float[vertexCount * stride];
-        buffer.get(verts);
-        MemoryUtil.memFree(buffer);
-
-        for (int i = 0; i < verts.length; i += stride * 3) {
-            Vector3f v1 = new Vector3f(verts[i],     verts[i + 1],  verts[i + 2]);
-            Vector3f v2 = new Vector3f(verts[i + 8], verts[i + 9],  verts[i + 10]);
-            Vector3f v3 = new Vector3f(verts[i + 16],verts[i + 17], verts[i + 18]);
+        for (int t = 0; t + 2 < count; t += 3) {
+            int i = (indices != null ? indices[t] : t) * stride;
+            int j = (indices != null ? indices[t + 1] : t + 1) * stride;
+            int k = (indices != null ? indices[t + 2] : t + 2) * stride;
+            Vector3f v1 = new Vector3f(verts[i], verts[i + 1], verts[i + 2]);
+            Vector3f v2 = new Vector3f(verts[j], verts[j + 1], verts[j + 2]);
+            Vector3f v3 = new Vector3f(verts[k], verts[k + 1], verts[k + 2]);
             tris.add(new Vector3f[]{v1, v2, v3});
         }
         return tris;
     }
 
-    /** ✅ Масштабирует UV относительно исходных координат */
+    /** ✅ Масштабирует UV относительно исходных координат (uniform uvTransform, без перезаливки VBO) */
     public void scaleUV(float uScale, float vScale) {
-        float[] verts = originalVertices.clone();
-
-        for (int i = 0; i < verts.length; i += stride) {
-            verts[i + 3] *= uScale; // U
-            verts[i + 4] *= vScale; // V
-        }
-
-        uploadToGPU(verts);
+        uvRepeatU = uScale;
+        uvRepeatV = vScale;
     }
 
     /** Сбрасывает UV в исходное состояние */
     public void resetUV() {
-        uploadToGPU(originalVertices);
+        scaleUV(1f, 1f);
     }
 
-    /** Вспомогательный метод: загружает массив вершин в GPU */
-    private void uploadToGPU(float[] verts) {
-        FloatBuffer newBuffer = MemoryUtil.memAllocFloat(verts.length);
-        newBuffer.put(verts).flip();
-
-        glBindBuffer(GL_ARRAY_BUFFER, vboId);
-        glBufferSubData(GL_ARRAY_BUFFER, 0, newBuffer);
-
-        MemoryUtil.memFree(newBuffer);
-        glBindBuffer(GL_ARRAY_BUFFER, 0);
+    /** uv = xy + texCoord * zw: диапазон UV компактной раскладки с учётом {@link #scaleUV} */
+    public Vector4f getUVTransform(Vector4f dest) {
+        return dest.set(decode.uOffset() * uvRepeatU, decode.vOffset() * uvRepeatV,
+                decode.uScale() * uvRepeatU, decode.vScale() * uvRepeatV);
     }
 
     public float[] getVertices() {
+        if (originalVertices == null) {
+            // меш загружен из off-heap буфера — читаем исходные вершины обратно из VBO
+            ByteBuffer buffer = MemoryUtil.memAlloc(vertexCount * layout.getStride());
+            GLState.bindBuffer(GL_ARRAY_BUFFER, vboId);
+            glGetBufferSubData(GL_ARRAY_BUFFER, 0, buffer);
+            GLState.bindBuffer(GL_ARRAY_BUFFER, 0);
+
+            if (layout.isFloat()) {
+                originalVertices = new float[vertexCount * stride];
+                buffer.asFloatBuffer().get(originalVertices);
+            } else {
+                originalVertices = VertexCodec.decode(buffer, vertexCount, layout, decode);
+            }
+            MemoryUtil.memFree(buffer);
+        }
         return originalVertices;
     }
 
+    /** Индексы треугольников или null, если меш не индексированный */
+    public int[] getIndices() {
+        if (!isIndexed()) return null;
+        if (originalIndices == null) {
+            ByteBuffer buffer = MemoryUtil.memAlloc(indexCount * MeshData.indexSize(indexType));
+            GLState.bindVertexArray(0);
+            GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, eboId);
+            glGetBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, buffer);
+            GLState.bindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+
+            originalIndices = new int[indexCount];
+            for (int i = 0; i < indexCount; i++) {
+                originalIndices[i] = indexType == GL_UNSIGNED_SHORT
+                        ? Short.toUnsignedInt(buffer.getShort(i * 2))
+                        : buffer.getInt(i * 4);
+            }
+            MemoryUtil.memFree(buffer);
+        }
+        return originalIndices;
+    }
+
+    public boolean isIndexed() {
+        return eboId != 0;
+    }
+
+    /** Stride float-вершин из {@link #getVertices()} */
     public int getStride() {
         return stride;
     }
 
+    public VertexLayout getLayout() {
+        return layout;
+    }
+
+    /** Вершины в VBO закодированы компактно — позиции нужно восстанавливать через {@link #getPositionDecode()} */
+    public boolean isQuantized() {
+        return !layout.isFloat();
+    }
+
+    public VertexCodec.Decode getPositionDecode() {
+        return decode;
+    }
+
     public int getVertexCount() {
         return vertexCount;
     }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public List<SubMesh> getSubMeshes() {
+        return subMeshes;
+    }
+
+    /** Количество треугольников, которое реально рисуется */
+    public int getTriangleCount() {
+        return (isIndexed() ? indexCount : vertexCount) / 3;
+    }
+
+    public int getTriangleCount(int lod) {
+        if (lod <= 0 || lods.isEmpty()) return getTriangleCount();
+        return lods.get(Math.min(lod, lods.size()) - 1).indexCount() / 3;
+    }
+
+    /** Уровней детализации вместе с исходным */
+    public int getLodCount() {
+        return lods.size() + 1;
+    }
+
+    /** Геометрическая ошибка каждого уровня в единицах модели, [0] = 0 */
+    public float[] getLodErrors() {
+        return lodErrors;
+    }
+
+    public AABB getBounds() {
+        if (bounds == null) {
+            float[] verts = getVertices();
+            Vector3f min = new Vector3f(Float.POSITIVE_INFINITY);
+            Vector3f max = new Vector3f(Float.NEGATIVE_INFINITY);
+            for (int i = 0; i + 2 < verts.length; i += stride) {
+                min.min(new Vector3f(verts[i], verts[i + 1], verts[i + 2]));
+                max.max(new Vector3f(verts[i], verts[i + 1], verts[i + 2]));
+            }
+            bounds = verts.length == 0 ? new AABB(new Vector3f(), new Vector3f()) : new AABB(min, max);
+        }
+        return bounds;
+    }
+
+    /** Оценка занятой видеопамяти: VBO + EBO (с уровнями LOD) */
+    public long getGpuBytes() {
+        long bytes = (long) vertexCount * layout.getStride();
+        if (isIndexed()) bytes += (long) indexCount * MeshData.indexSize(indexType);
+        for (Lod lod : lods) bytes += (long) lod.indexCount() * MeshData.indexSize(indexType);
+        return bytes;
+    }
 }
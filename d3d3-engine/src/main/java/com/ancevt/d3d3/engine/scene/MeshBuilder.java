@@ -1,37 +1,56 @@
 package com.ancevt.d3d3.engine.scene;
 
+import com.ancevt.d3d3.engine.util.IntArray;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Собирает индексированный меш: одинаковые вершины склеиваются через {@link VertexWelder}.
+ */
 public class MeshBuilder {
-    private final List<Float> vertices = new ArrayList<>();
     private final int stride;
+    private final VertexWelder welder;
+    private final IntArray indices = new IntArray(1024);
+    private final float[] vertex;
 
     public MeshBuilder(int stride) {
         this.stride = stride;
+        this.welder = new VertexWelder(stride);
+        this.vertex = new float[stride];
+    }
+
+    /** Добавляет треугольники из неиндексированного массива вершин (triangle soup) */
+    public MeshBuilder addVertices(float[] verts) {
+        for (int i = 0; i + stride <= verts.length; i += stride) {
+            indices.add(welder.add(verts, i));
+        }
+        return this;
     }
 
     public MeshBuilder addMesh(Mesh mesh, float offsetX, float offsetY, float offsetZ) {
         float[] verts = mesh.getVertices();
         int stride = mesh.getStride();
+        int[] meshIndices = mesh.getIndices();
+        int count = meshIndices != null ? meshIndices.length : verts.length / stride;
+
+        for (int t = 0; t < count; t++) {
+            int i = (meshIndices != null ? meshIndices[t] : t) * stride;
 
-        for (int i = 0; i < verts.length; i += stride) {
             // позиция
-            vertices.add(verts[i]     + offsetX);
-            vertices.add(verts[i + 1] + offsetY);
-            vertices.add(verts[i + 2] + offsetZ);
+            vertex[0] = verts[i]     + offsetX;
+            vertex[1] = verts[i + 1] + offsetY;
+            vertex[2] = verts[i + 2] + offsetZ;
 
             // UV
-            vertices.add(verts[i + 3]);
-            vertices.add(verts[i + 4]);
+            vertex[3] = verts[i + 3];
+            vertex[4] = verts[i + 4];
 
             // нормали
-            vertices.add(verts[i + 5]);
-            vertices.add(verts[i + 6]);
-            vertices.add(verts[i + 7]);
+            vertex[5] = verts[i + 5];
+            vertex[6] = verts[i + 6];
+            vertex[7] = verts[i + 7];
+
+            indices.add(welder.add(vertex, 0));
         }
         return this;
     }
@@ -39,36 +58,66 @@ public class MeshBuilder {
     public MeshBuilder addMeshTransformed(Mesh mesh, Matrix4f transform) {
         float[] verts = mesh.getVertices();
         int stride = mesh.getStride();
+        int[] meshIndices = mesh.getIndices();
+        int count = meshIndices != null ? meshIndices.length : verts.length / stride;
+
+        Vector3f pos = new Vector3f();
+        Vector3f normal = new Vector3f();
+
+        for (int t = 0; t < count; t++) {
+            int i = (meshIndices != null ? meshIndices[t] : t) * stride;
 
-        for (int i = 0; i < verts.length; i += stride) {
             // Позиция вершины
-            Vector3f pos = new Vector3f(verts[i], verts[i + 1], verts[i + 2]);
-            pos.mulPosition(transform);
+            pos.set(verts[i], verts[i + 1], verts[i + 2]).mulPosition(transform);
 
             // Нормаль
-            Vector3f normal = new Vector3f(verts[i + 5], verts[i + 6], verts[i + 7]);
-            normal.mulDirection(transform).normalize();
+            normal.set(verts[i + 5], verts[i + 6], verts[i + 7]).mulDirection(transform).normalize();
 
-            // Добавляем в массив
-            vertices.add(pos.x);
-            vertices.add(pos.y);
-            vertices.add(pos.z);
+            vertex[0] = pos.x;
+            vertex[1] = pos.y;
+            vertex[2] = pos.z;
 
-            vertices.add(verts[i + 3]); // UV
-            vertices.add(verts[i + 4]);
+            vertex[3] = verts[i + 3]; // UV
+            vertex[4] = verts[i + 4];
 
-            vertices.add(normal.x);
-            vertices.add(normal.y);
-            vertices.add(normal.z);
+            vertex[5] = normal.x;
+            vertex[6] = normal.y;
+            vertex[7] = normal.z;
+
+            indices.add(welder.add(vertex, 0));
         }
         return this;
     }
 
+    public int getVertexCount() {
+        return welder.getVertexCount();
+    }
+
+    public int getIndexCount() {
+        return indices.size();
+    }
 
+    /**
+     * CPU-часть меша (без GL), освобождается вызывающим через {@link MeshData#free()}.
+     * Треугольники переупорядочены {@link MeshOptimizer}.
+     */
+    public MeshData buildData() {
+        MeshData data = MeshData.indexed(welder, indices);
+        if (data.getIndexCount() > 0) MeshOptimizer.optimize(data);
+        return data;
+    }
 
     public Mesh build() {
-        float[] arr = new float[vertices.size()];
-        for (int i = 0; i < arr.length; i++) arr[i] = vertices.get(i);
-        return new Mesh(arr, stride);
+        return build(VertexLayout.forFloatStride(stride));
+    }
+
+    /** Меш с заданной раскладкой вершин в VBO (например, компактной {@link VertexLayout#FIXED}) */
+    public Mesh build(VertexLayout layout) {
+        MeshData data = buildData();
+        try {
+            return new Mesh(data, layout);
+        } finally {
+            data.free();
+        }
     }
 }
@@ -0,0 +1,174 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+import lombok.Getter;
+import lombok.Setter;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_INT;
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Вершины (и, опционально, индексы) меша на стороне CPU (off-heap), ещё не загруженные в GPU.
+ * Не требует GL-контекста, поэтому может собираться в любом потоке.
+ */
+@Getter
+public class MeshData {
+    private final FloatBuffer vertices;
+    private final int stride;
+    private final int vertexCount;
+
+    // null — меш без индексов (triangle soup)
+    private final ByteBuffer indices;
+    private final int indexType;
+    private final int indexCount;
+
+    // false — буферы чужие (например, memory-mapped кэш), free() их не трогает
+    private final boolean owned;
+
+    private AABB bounds;
+
+    // диапазоны индексов по материалам; пусто — весь меш одним материалом
+    @Setter
+    private List<SubMesh> subMeshes = List.of();
+
+    // упрощённые уровни детализации (индексы к этим же вершинам); пусто — без LOD
+    @Setter
+    private List<MeshLod> lods = List.of();
+
+    /**
+     * @param vertices буфер, выделенный через MemoryUtil (position = 0, limit = кол-во float)
+     */
+    public MeshData(FloatBuffer vertices, int stride) {
+        this(vertices, stride, null, 0);
+    }
+
+    /**
+     * @param indices   буфер индексов, выделенный через MemoryUtil
+     * @param indexType GL_UNSIGNED_SHORT или GL_UNSIGNED_INT
+     */
+    public MeshData(FloatBuffer vertices, int stride, ByteBuffer indices, int indexType) {
+        this(vertices, stride, indices, indexType, null, true);
+    }
+
+    private MeshData(FloatBuffer vertices, int stride, ByteBuffer indices, int indexType,
+                     AABB bounds, boolean owned) {
+        this.vertices = vertices;
+        this.stride = stride;
+        this.vertexCount = vertices.remaining() / stride;
+        this.indices = indices;
+        this.indexType = indexType;
+        this.indexCount = indices == null ? 0 : indices.remaining() / indexSize(indexType);
+        this.bounds = bounds;
+        this.owned = owned;
+    }
+
+    /** Обёртка над чужой памятью (mapped-файл и т.п.): free() её не освобождает */
+    public static MeshData view(FloatBuffer vertices, int stride, ByteBuffer indices, int indexType, AABB bounds) {
+        return new MeshData(vertices, stride, indices, indexType, bounds, false);
+    }
+
+    public static MeshData of(float[] vertices, int stride) {
+        FloatBuffer buffer = MemoryUtil.memAllocFloat(vertices.length);
+        buffer.put(vertices).flip();
+        return new MeshData(buffer, stride);
+    }
+
+    /** Индексированный меш; разрядность индексов (16/32 бит) выбирается по количеству вершин */
+    public static MeshData indexed(FloatArray vertices, int stride, IntArray indices) {
+        int vertexCount = vertices.size() / stride;
+        FloatBuffer vb = MemoryUtil.memAllocFloat(Math.max(vertices.size(), 1));
+        vb.put(vertices.array(), 0, vertices.size()).flip();
+        ByteBuffer ib = packIndices(indices.array(), indices.size(), vertexCount);
+        return new MeshData(vb, stride, ib, indexTypeFor(vertexCount));
+    }
+
+    public static MeshData indexed(VertexWelder welder, IntArray indices) {
+        return indexed(welder.getVertices(), welder.getStride(), indices);
+    }
+
+    public boolean isIndexed() {
+        return indices != null;
+    }
+
+    /** Количество вершин, которое реально рисуется (индексов или вершин) */
+    public int getElementCount() {
+        return isIndexed() ? indexCount : vertexCount;
+    }
+
+    /** Локальный AABB по позициям вершин (считается один раз) */
+    public AABB getBounds() {
+        if (bounds == null) {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+            int base = vertices.position();
+            for (int i = 0; i < vertexCount; i++) {
+                int v = base + i * stride;
+                float x = vertices.get(v);
+                float y = vertices.get(v + 1);
+                float z = vertices.get(v + 2);
+                minX = Math.min(minX, x);
+                minY = Math.min(minY, y);
+                minZ = Math.min(minZ, z);
+                maxX = Math.max(maxX, x);
+                maxY = Math.max(maxY, y);
+                maxZ = Math.max(maxZ, z);
+            }
+            bounds = vertexCount == 0
+                    ? new AABB(new Vector3f(), new Vector3f())
+                    : new AABB(new Vector3f(minX, minY, minZ), new Vector3f(maxX, maxY, maxZ));
+        }
+        return bounds;
+    }
+
+    public int getIndex(int i) {
+        return indexType == GL_UNSIGNED_SHORT
+                ? Short.toUnsignedInt(indices.getShort(indices.position() + i * 2))
+                : indices.getInt(indices.position() + i * 4);
+    }
+
+    public float[] toArray() {
+        float[] arr = new float[vertices.remaining()];
+        vertices.get(vertices.position(), arr);
+        return arr;
+    }
+
+    public int[] indicesToArray() {
+        int[] arr = new int[indexCount];
+        for (int i = 0; i < indexCount; i++) arr[i] = getIndex(i);
+        return arr;
+    }
+
+    public void free() {
+        if (!owned) return;
+        MemoryUtil.memFree(vertices);
+        if (indices != null) MemoryUtil.memFree(indices);
+        for (MeshLod lod : lods) MemoryUtil.memFree(lod.indices());
+    }
+
+    public static int indexTypeFor(int vertexCount) {
+        return vertexCount <= 0xFFFF ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+    }
+
+    public static int indexSize(int indexType) {
+        return indexType == GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    }
+
+    public static ByteBuffer packIndices(int[] src, int count, int vertexCount) {
+        int type = indexTypeFor(vertexCount);
+        ByteBuffer buffer = MemoryUtil.memAlloc(Math.max(count * indexSize(type), 1));
+        if (type == GL_UNSIGNED_SHORT) {
+            for (int i = 0; i < count; i++) buffer.putShort(i * 2, (short) src[i]);
+        } else {
+            buffer.asIntBuffer().put(src, 0, count);
+        }
+        buffer.limit(count * indexSize(type));
+        return buffer;
+    }
+}
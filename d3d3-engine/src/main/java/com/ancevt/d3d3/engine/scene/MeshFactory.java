@@ -149,7 +149,32 @@ public class MeshFactory {
                 -1.0f, -1.0f,  1.0f,
                 1.0f, -1.0f,  1.0f
         };
-        return new Mesh(vertices, 3);
+        return createIndexedMesh(vertices, 3); // 36 -> 8 вершин
+    }
+
+    /**
+     * Индексированный меш из неиндексированного массива вершин: одинаковые вершины склеиваются
+     * (например, куб из {@link #createTexturedCube} — 36 -> 24 вершины).
+     */
+    public static Mesh createIndexedMesh(float[] vertices, int stride) {
+        return new MeshBuilder(stride).addVertices(vertices).build();
+    }
+
+    public static Mesh createTexturedCubeMesh(float size, UVRect uv) {
+        return createIndexedMesh(createTexturedCube(size, uv), 8);
+    }
+
+    /**
+     * Вершины stride 8 -> stride 12 с пустым тайлом: обычная геометрия (uv уже в атласе)
+     * рядом с геометрией {@link BlockMesher} в одном меше с тайловой раскладкой.
+     */
+    public static float[] withEmptyTile(float[] vertices) {
+        int count = vertices.length / 8;
+        float[] out = new float[count * BlockMesher.STRIDE];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(vertices, i * 8, out, i * BlockMesher.STRIDE, 8);
+        }
+        return out;
     }
 
     public static float[] createFloorTile(float size, float thickness, UVRect uv) {
@@ -0,0 +1,18 @@
+package com.ancevt.d3d3.engine.scene;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Упрощённый уровень детализации: свои индексы к вершинам основного меша.
+ *
+ * @param indices   индексы в формате {@link MeshData#getIndexType()} основного меша
+ * @param subMeshes диапазоны по материалам внутри indices (пусто — один материал)
+ * @param error     геометрическая ошибка уровня в единицах модели
+ */
+public record MeshLod(ByteBuffer indices, int indexCount, List<SubMesh> subMeshes, float error) {
+
+    public int getTriangleCount() {
+        return indexCount / 3;
+    }
+}
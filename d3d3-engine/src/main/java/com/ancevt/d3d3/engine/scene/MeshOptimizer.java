@@ -0,0 +1,359 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.IntArray;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.GL_UNSIGNED_SHORT;
+
+/**
+ * Переупорядочивание индексированного меша под кэш вершин GPU и early-Z (на этапе импорта).
+ * <ol>
+ *   <li>Tipsify (Sander, Nehab, Barczak 2007) — треугольники веером вокруг вершин, пока те в кэше;</li>
+ *   <li>кластеры по ACMR разбиваются мельче и сортируются «снаружи внутрь» — меньше перерисовки;</li>
+ *   <li>вершины перенумеровываются в порядке первого использования — выборка из VBO идёт подряд.</li>
+ * </ol>
+ * Каждый сабмеш оптимизируется отдельно, диапазоны материалов не меняются.
+ * Меш меняется на месте: количество вершин и индексов то же.
+ */
+public final class MeshOptimizer {
+
+    /** Размер моделируемого FIFO-кэша вершин */
+    public static final int CACHE_SIZE = 16;
+
+    /** Насколько кластер может быть хуже по ACMR ради лучшего порядка отрисовки */
+    public static final float OVERDRAW_THRESHOLD = 1.05f;
+
+    /**
+     * ACMR — промахов кэша на треугольник (идеал около 0.5, худший случай 3);
+     * ATVR — промахов на вершину (идеал 1).
+     */
+    public record Stats(float acmrBefore, float acmrAfter, float atvrBefore, float atvrAfter, int clusters) {
+        @Override
+        public String toString() {
+            return String.format("ACMR %.3f -> %.3f, ATVR %.3f -> %.3f, %d clusters",
+                    acmrBefore, acmrAfter, atvrBefore, atvrAfter, clusters);
+        }
+    }
+
+    private MeshOptimizer() {
+    }
+
+    public static Stats optimize(MeshData data) {
+        return optimize(data, CACHE_SIZE, OVERDRAW_THRESHOLD);
+    }
+
+    public static Stats optimize(MeshData data, int cacheSize, float overdrawThreshold) {
+        if (!data.isIndexed()) {
+            throw new IllegalArgumentException("Mesh optimizer needs an indexed mesh");
+        }
+        int vertexCount = data.getVertexCount();
+        int[] indices = data.indicesToArray();
+        int misses = cacheMisses(indices, 0, indices.length, vertexCount, cacheSize);
+
+        int clusters = 0;
+        int[] scratch = new int[indices.length];
+        for (SubMesh range : ranges(data)) {
+            int from = range.firstIndex();
+            int to = from + range.indexCount() - range.indexCount() % 3;
+            IntArray boundaries = new IntArray();
+            tipsify(indices, from, to, vertexCount, cacheSize, scratch, boundaries);
+            System.arraycopy(scratch, from, indices, from, to - from);
+            clusters += optimizeOverdraw(data, indices, from, to, vertexCount, cacheSize, overdrawThreshold,
+                    boundaries, scratch);
+        }
+        int optimizedMisses = cacheMisses(indices, 0, indices.length, vertexCount, cacheSize);
+
+        reorderVertices(data, indices);
+
+        int triangles = Math.max(indices.length / 3, 1);
+        int vertices = Math.max(vertexCount, 1);
+        return new Stats((float) misses / triangles, (float) optimizedMisses / triangles,
+                (float) misses / vertices, (float) optimizedMisses / vertices, clusters);
+    }
+
+    /** Только Tipsify на диапазоне индексов (индексы упрощённых LOD к тем же вершинам) */
+    public static void optimizeVertexCache(int[] indices, int from, int to, int vertexCount) {
+        int end = to - (to - from) % 3;
+        int[] out = new int[end];
+        tipsify(indices, from, end, vertexCount, CACHE_SIZE, out, new IntArray());
+        System.arraycopy(out, from, indices, from, end - from);
+    }
+
+    /** Промахи FIFO-кэша вершин на диапазоне индексов */
+    public static int cacheMisses(int[] indices, int from, int to, int vertexCount, int cacheSize) {
+        int[] timestamps = new int[vertexCount];
+        int time = cacheSize + 1;
+        int misses = 0;
+        for (int i = from; i < to; i++) {
+            int v = indices[i];
+            if (time - timestamps[v] > cacheSize) {
+                timestamps[v] = time++;
+                misses++;
+            }
+        }
+        return misses;
+    }
+
+    /** ACMR уже загруженного в MeshData порядка */
+    public static float acmr(MeshData data, int cacheSize) {
+        int[] indices = data.indicesToArray();
+        return (float) cacheMisses(indices, 0, indices.length, data.getVertexCount(), cacheSize)
+                / Math.max(indices.length / 3, 1);
+    }
+
+    private static List<SubMesh> ranges(MeshData data) {
+        return data.getSubMeshes().isEmpty()
+                ? List.of(new SubMesh(0, 0, data.getIndexCount()))
+                : data.getSubMeshes();
+    }
+
+    /**
+     * Tipsify: результат в out[from, to), в boundaries — начала кластеров (номера треугольников
+     * от from), где обход упёрся в тупик и перешёл на новую вершину.
+     */
+    static void tipsify(int[] indices, int from, int to, int vertexCount, int cacheSize,
+                        int[] out, IntArray boundaries) {
+        int triangleCount = (to - from) / 3;
+        if (triangleCount == 0) return;
+
+        // вершина -> её треугольники
+        int[] live = new int[vertexCount];
+        for (int i = from; i < to; i++) live[indices[i]]++;
+        int[] offsets = new int[vertexCount + 1];
+        for (int v = 0; v < vertexCount; v++) offsets[v + 1] = offsets[v] + live[v];
+        int[] adjacency = new int[to - from];
+        int[] fill = Arrays.copyOf(offsets, vertexCount);
+        for (int t = 0; t < triangleCount; t++) {
+            for (int j = 0; j < 3; j++) adjacency[fill[indices[from + t * 3 + j]]++] = t;
+        }
+
+        int[] cacheTime = new int[vertexCount];
+        boolean[] emitted = new boolean[triangleCount];
+        int[] deadEnd = new int[to - from];
+        int deadEndSize = 0;
+        IntArray candidates = new IntArray(64);
+
+        int time = cacheSize + 1;
+        int cursor = 0;
+        int written = from;
+        int fan = indices[from];
+        boundaries.add(0);
+
+        while (fan >= 0) {
+            candidates.clear();
+            for (int k = offsets[fan]; k < offsets[fan + 1]; k++) {
+                int t = adjacency[k];
+                if (emitted[t]) continue;
+                emitted[t] = true;
+                for (int j = 0; j < 3; j++) {
+                    int v = indices[from + t * 3 + j];
+                    out[written++] = v;
+                    deadEnd[deadEndSize++] = v;
+                    candidates.add(v);
+                    live[v]--;
+                    if (time - cacheTime[v] > cacheSize) cacheTime[v] = time++;
+                }
+            }
+
+            // следующая вершина: та, что останется в кэше после своего веера, и дольше всех в нём
+            int best = -1;
+            int bestPriority = -1;
+            for (int c = 0; c < candidates.size(); c++) {
+                int v = candidates.get(c);
+                if (live[v] <= 0) continue;
+                int priority = 0;
+                if (time - cacheTime[v] + 2 * live[v] <= cacheSize) priority = time - cacheTime[v];
+                if (priority > bestPriority) {
+                    best = v;
+                    bestPriority = priority;
+                }
+            }
+
+            if (best < 0) {
+                // тупик: последние выданные вершины, затем просто следующая живая
+                while (deadEndSize > 0 && best < 0) {
+                    int v = deadEnd[--deadEndSize];
+                    if (live[v] > 0) best = v;
+                }
+                while (best < 0 && cursor < vertexCount) {
+                    if (live[cursor] > 0) best = cursor;
+                    else cursor++;
+                }
+                if (best >= 0 && written < to) boundaries.add((written - from) / 3);
+            }
+            fan = best;
+        }
+    }
+
+    /**
+     * Дробит кластеры Tipsify там, где их ACMR уже не хуже threshold от среднего, и сортирует
+     * по «выпуклости»: сначала кластеры, смотрящие наружу от центра, — они чаще закрывают остальные.
+     *
+     * @return количество кластеров
+     */
+    private static int optimizeOverdraw(MeshData data, int[] indices, int from, int to, int vertexCount,
+                                        int cacheSize, float threshold, IntArray hardBoundaries, int[] scratch) {
+        int triangleCount = (to - from) / 3;
+        if (triangleCount == 0) return 0;
+
+        // мягкие границы внутри каждого жёсткого кластера
+        IntArray starts = new IntArray();
+        int[] timestamps = new int[vertexCount];
+        int time = cacheSize + 1;
+        for (int c = 0; c < hardBoundaries.size(); c++) {
+            int start = hardBoundaries.get(c);
+            int end = c + 1 < hardBoundaries.size() ? hardBoundaries.get(c + 1) : triangleCount;
+
+            time += cacheSize + 1;
+            int clusterMisses = 0;
+            for (int t = start; t < end; t++) {
+                for (int j = 0; j < 3; j++) {
+                    int v = indices[from + t * 3 + j];
+                    if (time - timestamps[v] > cacheSize) {
+                        timestamps[v] = time++;
+                        clusterMisses++;
+                    }
+                }
+            }
+            float clusterThreshold = threshold * clusterMisses / (end - start);
+
+            starts.add(start);
+            time += cacheSize + 1;
+            int misses = 0;
+            int faces = 0;
+            for (int t = start; t < end - 1; t++) {
+                for (int j = 0; j < 3; j++) {
+                    int v = indices[from + t * 3 + j];
+                    if (time - timestamps[v] > cacheSize) {
+                        timestamps[v] = time++;
+                        misses++;
+                    }
+                }
+                faces++;
+                if (misses <= clusterThreshold * faces) {
+                    starts.add(t + 1);
+                    time += cacheSize + 1;
+                    misses = 0;
+                    faces = 0;
+                }
+            }
+        }
+
+        int clusterCount = starts.size();
+        if (clusterCount == 1) return 1;
+
+        // центр диапазона и центры/нормали кластеров (взвешенные по площади)
+        FloatBuffer vertices = data.getVertices();
+        int base = vertices.position();
+        int stride = data.getStride();
+        float[] centroids = new float[clusterCount * 3];
+        float[] normals = new float[clusterCount * 3];
+        double meshX = 0, meshY = 0, meshZ = 0, meshArea = 0;
+        for (int c = 0; c < clusterCount; c++) {
+            int start = starts.get(c);
+            int end = c + 1 < clusterCount ? starts.get(c + 1) : triangleCount;
+            double cx = 0, cy = 0, cz = 0, nx = 0, ny = 0, nz = 0, area = 0;
+            for (int t = start; t < end; t++) {
+                int a = base + indices[from + t * 3] * stride;
+                int b = base + indices[from + t * 3 + 1] * stride;
+                int d = base + indices[from + t * 3 + 2] * stride;
+                float ax = vertices.get(a), ay = vertices.get(a + 1), az = vertices.get(a + 2);
+                float e1x = vertices.get(b) - ax, e1y = vertices.get(b + 1) - ay, e1z = vertices.get(b + 2) - az;
+                float e2x = vertices.get(d) - ax, e2y = vertices.get(d + 1) - ay, e2z = vertices.get(d + 2) - az;
+                double crossX = e1y * e2z - e1z * e2y;
+                double crossY = e1z * e2x - e1x * e2z;
+                double crossZ = e1x * e2y - e1y * e2x;
+                double w = Math.sqrt(crossX * crossX + crossY * crossY + crossZ * crossZ);
+                cx += w * (ax + vertices.get(b) + vertices.get(d)) / 3;
+                cy += w * (ay + vertices.get(b + 1) + vertices.get(d + 1)) / 3;
+                cz += w * (az + vertices.get(b + 2) + vertices.get(d + 2)) / 3;
+                nx += crossX;
+                ny += crossY;
+                nz += crossZ;
+                area += w;
+            }
+            meshX += cx;
+            meshY += cy;
+            meshZ += cz;
+            meshArea += area;
+            double inv = area > 0 ? 1 / area : 0;
+            centroids[c * 3] = (float) (cx * inv);
+            centroids[c * 3 + 1] = (float) (cy * inv);
+            centroids[c * 3 + 2] = (float) (cz * inv);
+            double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            double invLength = length > 0 ? 1 / length : 0;
+            normals[c * 3] = (float) (nx * invLength);
+            normals[c * 3 + 1] = (float) (ny * invLength);
+            normals[c * 3 + 2] = (float) (nz * invLength);
+        }
+        double invArea = meshArea > 0 ? 1 / meshArea : 0;
+        float centerX = (float) (meshX * invArea);
+        float centerY = (float) (meshY * invArea);
+        float centerZ = (float) (meshZ * invArea);
+
+        // ключ сортировки: (центр кластера - центр меша) · нормаль кластера, по убыванию
+        long[] keys = new long[clusterCount];
+        for (int c = 0; c < clusterCount; c++) {
+            float key = (centroids[c * 3] - centerX) * normals[c * 3]
+                    + (centroids[c * 3 + 1] - centerY) * normals[c * 3 + 1]
+                    + (centroids[c * 3 + 2] - centerZ) * normals[c * 3 + 2];
+            keys[c] = ((long) descending(key) << 32) | c;
+        }
+        Arrays.sort(keys);
+
+        int written = from;
+        for (long key : keys) {
+            int c = (int) key;
+            int start = starts.get(c);
+            int end = c + 1 < clusterCount ? starts.get(c + 1) : triangleCount;
+            System.arraycopy(indices, from + start * 3, scratch, written, (end - start) * 3);
+            written += (end - start) * 3;
+        }
+        System.arraycopy(scratch, from, indices, from, to - from);
+        return clusterCount;
+    }
+
+    /** float -> int, сортирующийся как беззнаковый по убыванию значения */
+    private static int descending(float value) {
+        int bits = Float.floatToIntBits(value);
+        int ascending = bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE;
+        return Integer.MAX_VALUE - (ascending >>> 1);
+    }
+
+    /** Перенумеровывает вершины в порядке первого использования и пишет индексы обратно */
+    private static void reorderVertices(MeshData data, int[] indices) {
+        int vertexCount = data.getVertexCount();
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for (int i = 0; i < indices.length; i++) {
+            int v = indices[i];
+            if (remap[v] < 0) remap[v] = next++;
+            indices[i] = remap[v];
+        }
+        // неиспользуемые вершины — в конец, количество не меняется
+        for (int v = 0; v < vertexCount; v++) {
+            if (remap[v] < 0) remap[v] = next++;
+        }
+
+        FloatBuffer vertices = data.getVertices();
+        int base = vertices.position();
+        int stride = data.getStride();
+        float[] copy = data.toArray();
+        for (int v = 0; v < vertexCount; v++) {
+            vertices.put(base + remap[v] * stride, copy, v * stride, stride);
+        }
+
+        ByteBuffer ib = data.getIndices();
+        int ibBase = ib.position();
+        if (data.getIndexType() == GL_UNSIGNED_SHORT) {
+            for (int i = 0; i < indices.length; i++) ib.putShort(ibBase + i * 2, (short) indices[i]);
+        } else {
+            for (int i = 0; i < indices.length; i++) ib.putInt(ibBase + i * 4, indices[i]);
+        }
+    }
+}
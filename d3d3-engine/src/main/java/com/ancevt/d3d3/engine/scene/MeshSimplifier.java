@@ -0,0 +1,480 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.IntArray;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Упрощение меша схлопыванием рёбер по квадрикам ошибки (Garland, Heckbert 1997).
+ * <p>
+ * Вершины с одной позицией (швы UV и нормалей, плоские грани) считаются одной точкой топологии;
+ * вершина схлопывается в соседнюю и встаёт на её место, поэтому новые вершины не нужны —
+ * упрощённые индексы ссылаются на вершины исходного меша. Из вершин цели берётся та, чьи UV
+ * и нормаль ближе всего к заменяемой. Открытые границы держатся дополнительными квадриками,
+ * перевороты треугольников запрещены. Точки на стыке сабмешей (материалов) не сдвигаются вовсе:
+ * сабмеши упрощаются по отдельности, и сдвинутая в одном точка шва осталась бы на месте в соседнем —
+ * между материалами пошли бы трещины.
+ */
+public final class MeshSimplifier {
+
+    // вес квадрик границы относительно квадрик граней
+    private static final double BOUNDARY_WEIGHT = 10;
+
+    private final FloatBuffer vertices;
+    private final int base;
+    private final int stride;
+    private final int vertexCount;
+
+    // вершина -> точка (уникальная позиция) и вершины каждой точки (CSR)
+    private final int[] pointOf;
+    private final int[] pointVertexOffsets;
+    private final int[] pointVertices;
+    private final float[] positions;
+    private final int pointCount;
+
+    private float error;
+
+    public MeshSimplifier(MeshData data) {
+        this.vertices = data.getVertices();
+        this.base = vertices.position();
+        this.stride = data.getStride();
+        this.vertexCount = data.getVertexCount();
+
+        pointOf = new int[vertexCount];
+        Map<PositionKey, Integer> points = new HashMap<>();
+        IntArray firstVertex = new IntArray();
+        for (int v = 0; v < vertexCount; v++) {
+            int o = base + v * stride;
+            PositionKey key = new PositionKey(Float.floatToIntBits(vertices.get(o)),
+                    Float.floatToIntBits(vertices.get(o + 1)), Float.floatToIntBits(vertices.get(o + 2)));
+            Integer point = points.get(key);
+            if (point == null) {
+                point = firstVertex.size();
+                points.put(key, point);
+                firstVertex.add(v);
+            }
+            pointOf[v] = point;
+        }
+        pointCount = firstVertex.size();
+
+        positions = new float[pointCount * 3];
+        for (int p = 0; p < pointCount; p++) {
+            int o = base + firstVertex.get(p) * stride;
+            positions[p * 3] = vertices.get(o);
+            positions[p * 3 + 1] = vertices.get(o + 1);
+            positions[p * 3 + 2] = vertices.get(o + 2);
+        }
+
+        pointVertexOffsets = new int[pointCount + 1];
+        for (int v = 0; v < vertexCount; v++) pointVertexOffsets[pointOf[v] + 1]++;
+        for (int p = 0; p < pointCount; p++) pointVertexOffsets[p + 1] += pointVertexOffsets[p];
+        pointVertices = new int[vertexCount];
+        int[] fill = Arrays.copyOf(pointVertexOffsets, pointCount);
+        for (int v = 0; v < vertexCount; v++) pointVertices[fill[pointOf[v]]++] = v;
+    }
+
+    /**
+     * Строит цепочку LOD: каждый уровень упрощается из предыдущего, сабмеши — по отдельности.
+     * Индексы уровней оптимизируются под кэш вершин. Уровни, почти не уменьшившие меш, отбрасываются.
+     */
+    public static List<MeshLod> buildChain(MeshData data, LodSettings settings) {
+        if (!settings.isEnabled() || !data.isIndexed() || data.getIndexCount() == 0) return List.of();
+
+        MeshSimplifier simplifier = new MeshSimplifier(data);
+        AABB bounds = data.getBounds();
+        float radius = bounds.max.distance(bounds.min) * 0.5f;
+        float maxError = settings.maxError() * radius;
+
+        List<SubMesh> ranges = data.getSubMeshes().isEmpty()
+                ? List.of(new SubMesh(0, 0, data.getIndexCount()))
+                : data.getSubMeshes();
+        int[][] current = new int[ranges.size()][];
+        int[] all = data.indicesToArray();
+        for (int r = 0; r < ranges.size(); r++) {
+            SubMesh range = ranges.get(r);
+            current[r] = Arrays.copyOfRange(all, range.firstIndex(), range.firstIndex() + range.indexCount());
+        }
+        boolean[] seams = ranges.size() > 1 ? simplifier.sharedPoints(current) : null;
+
+        List<MeshLod> lods = new ArrayList<>();
+        int previousCount = data.getIndexCount();
+        float error = 0;
+        for (int level = 0; level < settings.levels(); level++) {
+            IntArray indices = new IntArray(previousCount);
+            List<SubMesh> subMeshes = new ArrayList<>(ranges.size());
+            float levelError = 0;
+            for (int r = 0; r < ranges.size(); r++) {
+                int target = (int) (current[r].length / 3 * settings.ratio()) * 3;
+                current[r] = simplifier.simplify(current[r], target, maxError, seams);
+                levelError = Math.max(levelError, simplifier.getError());
+
+                int first = indices.size();
+                indices.addAll(current[r], 0, current[r].length);
+                MeshOptimizer.optimizeVertexCache(indices.array(), first, indices.size(), data.getVertexCount());
+                subMeshes.add(new SubMesh(ranges.get(r).material(), first, current[r].length));
+            }
+
+            // меньше 10% выигрыша — дальше упрощать нечего (ошибка упёрлась в maxError)
+            if (indices.size() > previousCount * 0.9f) break;
+            previousCount = indices.size();
+            // уровень упрощается из предыдущего — ошибки складываются (оценка сверху)
+            error += levelError;
+
+            ByteBuffer packed = MeshData.packIndices(indices.array(), indices.size(), data.getVertexCount());
+            lods.add(new MeshLod(packed, indices.size(),
+                    data.getSubMeshes().isEmpty() ? List.of() : subMeshes, error));
+        }
+        return lods;
+    }
+
+    /** Точки, на которые ссылается больше одного набора треугольников (швы между сабмешами) */
+    public boolean[] sharedPoints(int[][] ranges) {
+        int[] owner = new int[pointCount];
+        Arrays.fill(owner, -1);
+        boolean[] shared = new boolean[pointCount];
+        for (int r = 0; r < ranges.length; r++) {
+            for (int index : ranges[r]) {
+                int point = pointOf[index];
+                if (owner[point] == -1) {
+                    owner[point] = r;
+                } else if (owner[point] != r) {
+                    shared[point] = true;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /** Ошибка последнего {@link #simplify} (расстояние в единицах модели) */
+    public float getError() {
+        return error;
+    }
+
+    /**
+     * @param indices     треугольники (индексы вершин исходного меша)
+     * @param targetCount желаемое количество индексов
+     * @param maxError    предельное отклонение поверхности
+     * @return упрощённые индексы; могут остаться больше targetCount, если дальше ошибка велика
+     */
+    public int[] simplify(int[] indices, int targetCount, float maxError) {
+        return simplify(indices, targetCount, maxError, null);
+    }
+
+    /**
+     * @param fixed точки, которые нельзя сдвигать (в них можно схлопывать соседей); null — все подвижны
+     * @see #simplify(int[], int, float)
+     */
+    public int[] simplify(int[] indices, int targetCount, float maxError, boolean[] fixed) {
+        error = 0;
+        int[] triangles = indices.clone();
+        int triangleCount = triangles.length / 3;
+        int targetTriangles = targetCount / 3;
+        double maxErrorSq = (double) maxError * maxError;
+
+        double[] quadrics = new double[pointCount * Quadric.SIZE];
+        addFaceQuadrics(triangles, triangleCount, quadrics);
+        addBoundaryQuadrics(triangles, triangleCount, quadrics);
+
+        int[] remap = new int[pointCount];
+        for (int p = 0; p < pointCount; p++) remap[p] = p;
+
+        double maxApplied = 0;
+        while (triangleCount > targetTriangles) {
+            // рёбра (по точкам), уникальные
+            long[] edges = new long[triangleCount * 3];
+            int edgeCount = 0;
+            for (int t = 0; t < triangleCount; t++) {
+                for (int j = 0; j < 3; j++) {
+                    int a = pointOf[triangles[t * 3 + j]];
+                    int b = pointOf[triangles[t * 3 + (j + 1) % 3]];
+                    edges[edgeCount++] = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+                }
+            }
+            Arrays.sort(edges, 0, edgeCount);
+            int unique = 0;
+            for (int i = 0; i < edgeCount; i++) {
+                if (unique == 0 || edges[unique - 1] != edges[i]) edges[unique++] = edges[i];
+            }
+
+            // стоимость схлопывания в лучшую сторону; ключ сортировки — биты float стоимости
+            long[] order = new long[unique];
+            boolean[] forward = new boolean[unique];
+            for (int e = 0; e < unique; e++) {
+                int a = (int) (edges[e] >>> 32);
+                int b = (int) edges[e];
+                // неподвижная точка схлопывается только как цель
+                double ab = fixed != null && fixed[a] ? Double.POSITIVE_INFINITY : collapseCost(quadrics, a, b);
+                double ba = fixed != null && fixed[b] ? Double.POSITIVE_INFINITY : collapseCost(quadrics, b, a);
+                forward[e] = ab <= ba;
+                float cost = (float) Math.min(ab, ba);
+                order[e] = ((long) Float.floatToIntBits(Math.max(cost, 0f)) << 32) | e;
+            }
+            Arrays.sort(order);
+
+            // точка -> треугольники
+            int[] offsets = new int[pointCount + 1];
+            for (int i = 0; i < triangleCount * 3; i++) offsets[pointOf[triangles[i]] + 1]++;
+            for (int p = 0; p < pointCount; p++) offsets[p + 1] += offsets[p];
+            int[] adjacency = new int[triangleCount * 3];
+            int[] fill = Arrays.copyOf(offsets, pointCount);
+            for (int i = 0; i < triangleCount * 3; i++) adjacency[fill[pointOf[triangles[i]]]++] = i / 3;
+
+            boolean[] locked = new boolean[pointCount];
+            int goal = triangleCount - targetTriangles;
+            int removed = 0;
+            int collapses = 0;
+            for (long entry : order) {
+                if (removed >= goal) break;
+                double cost = Float.intBitsToFloat((int) (entry >>> 32));
+                if (cost > maxErrorSq) break;
+
+                int e = (int) entry;
+                int a = (int) (edges[e] >>> 32);
+                int b = (int) edges[e];
+                int from = forward[e] ? a : b;
+                int to = forward[e] ? b : a;
+                if (locked[from] || locked[to]) continue;
+
+                int shared = collapseRemoves(triangles, offsets, adjacency, remap, from, to, fixed);
+                if (shared < 0) continue;
+
+                remap[from] = to;
+                Quadric.add(quadrics, to, from);
+                locked[from] = true;
+                locked[to] = true;
+                removed += shared;
+                collapses++;
+                maxApplied = Math.max(maxApplied, cost);
+            }
+            if (collapses == 0) break;
+
+            // переписываем треугольники на вершины целевых точек, вырожденные убираем
+            int written = 0;
+            for (int t = 0; t < triangleCount; t++) {
+                int a = triangles[t * 3], b = triangles[t * 3 + 1], c = triangles[t * 3 + 2];
+                int pa = find(remap, pointOf[a]), pb = find(remap, pointOf[b]), pc = find(remap, pointOf[c]);
+                if (pa == pb || pb == pc || pa == pc) continue;
+                triangles[written * 3] = pa == pointOf[a] ? a : closestVertex(pa, a);
+                triangles[written * 3 + 1] = pb == pointOf[b] ? b : closestVertex(pb, b);
+                triangles[written * 3 + 2] = pc == pointOf[c] ? c : closestVertex(pc, c);
+                written++;
+            }
+            triangleCount = written;
+        }
+
+        error = (float) Math.sqrt(maxApplied);
+        return Arrays.copyOf(triangles, triangleCount * 3);
+    }
+
+    /**
+     * Сколько треугольников исчезнет при схлопывании from -> to, или -1, если какой-то
+     * из оставшихся треугольников вокруг from перевернётся или выродится, исчезнет треугольник
+     * с ребром между двумя неподвижными точками (ребро шва перекинулось бы на соседа через шов)
+     * или у from и to есть общие соседи помимо третьих вершин общих треугольников — тогда
+     * схлопывание склеивает поверхность в складку из двух встречных треугольников.
+     */
+    private int collapseRemoves(int[] triangles, int[] offsets, int[] adjacency, int[] remap, int from, int to,
+                                boolean[] fixed) {
+        int removes = 0;
+        for (int k = offsets[from]; k < offsets[from + 1]; k++) {
+            int t = adjacency[k];
+            int p0 = find(remap, pointOf[triangles[t * 3]]);
+            int p1 = find(remap, pointOf[triangles[t * 3 + 1]]);
+            int p2 = find(remap, pointOf[triangles[t * 3 + 2]]);
+            if (p0 == p1 || p1 == p2 || p0 == p2) continue; // уже вырожден
+            if (p0 == to || p1 == to || p2 == to) {
+                int third = p0 != from && p0 != to ? p0 : p1 != from && p1 != to ? p1 : p2;
+                if (fixed != null && fixed[to] && fixed[third]) return -1;
+                removes++;
+                continue;
+            }
+            float[] before = normal(p0, p1, p2);
+            float[] after = normal(p0 == from ? to : p0, p1 == from ? to : p1, p2 == from ? to : p2);
+            float dot = before[0] * after[0] + before[1] * after[1] + before[2] * after[2];
+            float lengths = (float) Math.sqrt((before[0] * before[0] + before[1] * before[1] + before[2] * before[2])
+                    * (after[0] * after[0] + after[1] * after[1] + after[2] * after[2]));
+            if (lengths == 0 || dot <= 0.25f * lengths) return -1;
+        }
+        return commonNeighbours(triangles, offsets, adjacency, remap, from, to) > removes ? -1 : removes;
+    }
+
+    private int commonNeighbours(int[] triangles, int[] offsets, int[] adjacency, int[] remap, int from, int to) {
+        IntArray around = neighbours(triangles, offsets, adjacency, remap, from);
+        IntArray aroundTo = neighbours(triangles, offsets, adjacency, remap, to);
+        int common = 0;
+        for (int i = 0; i < around.size(); i++) {
+            int p = around.get(i);
+            if (p != to && aroundTo.contains(p)) common++;
+        }
+        return common;
+    }
+
+    /** Соседние точки (без повторов) по невырожденным треугольникам вокруг point */
+    private IntArray neighbours(int[] triangles, int[] offsets, int[] adjacency, int[] remap, int point) {
+        IntArray result = new IntArray();
+        for (int k = offsets[point]; k < offsets[point + 1]; k++) {
+            int t = adjacency[k];
+            int p0 = find(remap, pointOf[triangles[t * 3]]);
+            int p1 = find(remap, pointOf[triangles[t * 3 + 1]]);
+            int p2 = find(remap, pointOf[triangles[t * 3 + 2]]);
+            if (p0 == p1 || p1 == p2 || p0 == p2) continue;
+            for (int p : new int[]{p0, p1, p2}) {
+                if (p != point && !result.contains(p)) result.add(p);
+            }
+        }
+        return result;
+    }
+
+    private float[] normal(int a, int b, int c) {
+        float ax = positions[a * 3], ay = positions[a * 3 + 1], az = positions[a * 3 + 2];
+        float e1x = positions[b * 3] - ax, e1y = positions[b * 3 + 1] - ay, e1z = positions[b * 3 + 2] - az;
+        float e2x = positions[c * 3] - ax, e2y = positions[c * 3 + 1] - ay, e2z = positions[c * 3 + 2] - az;
+        return new float[]{e1y * e2z - e1z * e2y, e1z * e2x - e1x * e2z, e1x * e2y - e1y * e2x};
+    }
+
+    /** Вершина точки point с атрибутами (UV, нормаль), ближайшими к вершине vertex */
+    private int closestVertex(int point, int vertex) {
+        int best = pointVertices[pointVertexOffsets[point]];
+        if (stride <= 3) return best;
+        float bestDistance = Float.POSITIVE_INFINITY;
+        int o = base + vertex * stride;
+        for (int k = pointVertexOffsets[point]; k < pointVertexOffsets[point + 1]; k++) {
+            int candidate = pointVertices[k];
+            int c = base + candidate * stride;
+            float distance = 0;
+            for (int i = 3; i < stride; i++) {
+                float d = vertices.get(o + i) - vertices.get(c + i);
+                distance += d * d;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    private static int find(int[] remap, int point) {
+        int root = point;
+        while (remap[root] != root) root = remap[root];
+        while (remap[point] != root) {
+            int next = remap[point];
+            remap[point] = root;
+            point = next;
+        }
+        return root;
+    }
+
+    /** Ошибка (квадрат расстояния) при переносе from в позицию to */
+    private double collapseCost(double[] quadrics, int from, int to) {
+        return Quadric.evaluate(quadrics, from, to, positions[to * 3], positions[to * 3 + 1], positions[to * 3 + 2]);
+    }
+
+    private void addFaceQuadrics(int[] triangles, int triangleCount, double[] quadrics) {
+        for (int t = 0; t < triangleCount; t++) {
+            int a = pointOf[triangles[t * 3]], b = pointOf[triangles[t * 3 + 1]], c = pointOf[triangles[t * 3 + 2]];
+            float[] n = normal(a, b, c);
+            double length = Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+            if (length == 0) continue;
+            double nx = n[0] / length, ny = n[1] / length, nz = n[2] / length;
+            double d = -(nx * positions[a * 3] + ny * positions[a * 3 + 1] + nz * positions[a * 3 + 2]);
+            double area = length * 0.5;
+            Quadric.addPlane(quadrics, a, nx, ny, nz, d, area);
+            Quadric.addPlane(quadrics, b, nx, ny, nz, d, area);
+            Quadric.addPlane(quadrics, c, nx, ny, nz, d, area);
+        }
+    }
+
+    /** Рёбра, принадлежащие одному треугольнику: плоскость через ребро перпендикулярно грани */
+    private void addBoundaryQuadrics(int[] triangles, int triangleCount, double[] quadrics) {
+        long[] edges = new long[triangleCount * 3];
+        for (int t = 0; t < triangleCount; t++) {
+            for (int j = 0; j < 3; j++) {
+                int a = pointOf[triangles[t * 3 + j]];
+                int b = pointOf[triangles[t * 3 + (j + 1) % 3]];
+                long key = a < b ? ((long) a << 32) | b : ((long) b << 32) | a;
+                edges[t * 3 + j] = key;
+            }
+        }
+        long[] sorted = edges.clone();
+        Arrays.sort(sorted);
+
+        for (int t = 0; t < triangleCount; t++) {
+            for (int j = 0; j < 3; j++) {
+                long key = edges[t * 3 + j];
+                int at = Arrays.binarySearch(sorted, key);
+                boolean single = (at == 0 || sorted[at - 1] != key) && (at + 1 == sorted.length || sorted[at + 1] != key);
+                if (!single) continue;
+
+                int a = pointOf[triangles[t * 3 + j]];
+                int b = pointOf[triangles[t * 3 + (j + 1) % 3]];
+                int c = pointOf[triangles[t * 3 + (j + 2) % 3]];
+                float[] n = normal(a, b, c);
+                double ex = positions[b * 3] - positions[a * 3];
+                double ey = positions[b * 3 + 1] - positions[a * 3 + 1];
+                double ez = positions[b * 3 + 2] - positions[a * 3 + 2];
+                // плоскость через ребро, содержащая нормаль грани
+                double px = ey * n[2] - ez * n[1];
+                double py = ez * n[0] - ex * n[2];
+                double pz = ex * n[1] - ey * n[0];
+                double length = Math.sqrt(px * px + py * py + pz * pz);
+                if (length == 0) continue;
+                px /= length;
+                py /= length;
+                pz /= length;
+                double d = -(px * positions[a * 3] + py * positions[a * 3 + 1] + pz * positions[a * 3 + 2]);
+                double weight = BOUNDARY_WEIGHT * (ex * ex + ey * ey + ez * ez);
+                Quadric.addPlane(quadrics, a, px, py, pz, d, weight);
+                Quadric.addPlane(quadrics, b, px, py, pz, d, weight);
+            }
+        }
+    }
+
+    private record PositionKey(int x, int y, int z) {
+    }
+
+    /** Симметричная квадрика 4x4 (10 коэффициентов) + суммарный вес, плоско в double[] */
+    private static final class Quadric {
+        static final int SIZE = 11;
+
+        static void addPlane(double[] q, int point, double a, double b, double c, double d, double weight) {
+            int o = point * SIZE;
+            q[o] += weight * a * a;
+            q[o + 1] += weight * a * b;
+            q[o + 2] += weight * a * c;
+            q[o + 3] += weight * a * d;
+            q[o + 4] += weight * b * b;
+            q[o + 5] += weight * b * c;
+            q[o + 6] += weight * b * d;
+            q[o + 7] += weight * c * c;
+            q[o + 8] += weight * c * d;
+            q[o + 9] += weight * d * d;
+            q[o + 10] += weight;
+        }
+
+        static void add(double[] q, int to, int from) {
+            for (int i = 0; i < SIZE; i++) q[to * SIZE + i] += q[from * SIZE + i];
+        }
+
+        /** (Q_a + Q_b)(p) / вес — средний квадрат расстояния до плоскостей */
+        static double evaluate(double[] q, int a, int b, double x, double y, double z) {
+            double sum = 0;
+            double weight = 0;
+            for (int point : new int[]{a, b}) {
+                int o = point * SIZE;
+                sum += q[o] * x * x + 2 * q[o + 1] * x * y + 2 * q[o + 2] * x * z + 2 * q[o + 3] * x
+                        + q[o + 4] * y * y + 2 * q[o + 5] * y * z + 2 * q[o + 6] * y
+                        + q[o + 7] * z * z + 2 * q[o + 8] * z
+                        + q[o + 9];
+                weight += q[o + 10];
+            }
+            return weight > 0 ? Math.abs(sum) / weight : 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.ancevt.d3d3.engine.scene;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+/**
+ * Модель с несколькими материалами в одном VBO/EBO. Каждый сабмеш рисуется своей
+ * текстурой и цветом; индекс материала — {@link SubMesh#material()}.
+ */
+public class ModelNode extends Node {
+
+    @Getter
+    private final Mesh mesh;
+
+    private int[] textureIds;
+    private Vector3f[] colors;
+
+    // уровень детализации с прошлого кадра (гистерезис)
+    @Getter
+    private int lod;
+
+    // меньше 1 — рисуется в прозрачном проходе
+    @Getter
+    @Setter
+    private float opacity = 1f;
+
+    /**
+     * @param textureIds текстура по индексу материала
+     * @param colors     цвет (Kd) по индексу материала
+     */
+    public ModelNode(Mesh mesh, int[] textureIds, Vector3f[] colors) {
+        this.mesh = mesh;
+        this.textureIds = textureIds;
+        this.colors = colors;
+    }
+
+    /** Новая таблица материалов, например после горячей перезагрузки OBJ (поток рендера) */
+    public void setMaterials(int[] textureIds, Vector3f[] colors) {
+        this.textureIds = textureIds;
+        this.colors = colors;
+    }
+
+    @Override
+    protected void draw(RenderContext ctx) {
+        Matrix4f model = getWorldMatrix();
+        lod = ctx.selectLod(mesh, model, lod);
+        ctx.submit(mesh, lod, textureIds, colors, opacity, model);
+    }
+
+    @Override
+    public AABB getLocalBounds() {
+        return mesh != null ? mesh.getBounds() : null;
+    }
+
+    public int getMaterialCount() {
+        return textureIds.length;
+    }
+}
@@ -5,6 +5,7 @@ import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Node {
@@ -18,6 +19,31 @@ public class Node {
     @Getter
     protected List<Node> children = new ArrayList<>();
 
+    // кэш мировой матрицы и границ: пересчитывается в updateTransforms, только если
+    // изменилась своя трансформация, трансформация родителя или локальные границы
+    private static int versionCounter;
+    private final float[] cachedTransform = new float[9];
+    private final Matrix4f localMatrix = new Matrix4f();
+    private final Matrix4f worldMatrix = new Matrix4f();
+    private int worldVersion = -1;
+    private int parentWorldVersion = -1;
+    private AABB cachedLocalBounds;
+
+    // своя геометрия и всё поддерево в мировых координатах
+    private final AABB worldBounds = new AABB(new Vector3f(), new Vector3f());
+    private final AABB subtreeBounds = new AABB(new Vector3f(), new Vector3f());
+    private boolean hasSubtreeBounds;
+    // узлов с геометрией в поддереве (для счётчика отсечённых)
+    private int drawableCount;
+
+    // лист в пространственном индексе сцены (см. updateTransforms(DynamicAabbTree))
+    private DynamicAabbTree<Node> index;
+    private int proxy = -1;
+
+    {
+        Arrays.fill(cachedTransform, Float.NaN);
+    }
+
     public void addChild(Node child) {
         children.add(child);
         child.parent = this;
@@ -26,6 +52,15 @@ public class Node {
     public void removeChild(Node child) {
         children.remove(child);
         child.parent = null;
+        child.leaveIndex();
+    }
+
+    /** Убирает поддерево из пространственного индекса */
+    private void leaveIndex() {
+        if (proxy >= 0) leaveIndexSelf();
+        for (Node child : children) {
+            child.leaveIndex();
+        }
     }
 
     public Matrix4f getLocalTransform() {
@@ -45,12 +80,150 @@ public class Node {
         }
     }
 
+    /**
+     * Обход дерева: узлы с геометрией кладут элементы в очередь кадра ({@link RenderContext#submit}),
+     * сама отрисовка — в {@link RenderContext#flush()} после обхода, в отсортированном порядке.
+     */
     public void render(RenderContext ctx) {
+        if (getLocalBounds() != null) {
+            if (ctx.isVisible(worldBounds)) {
+                ctx.countDrawn(1);
+                draw(ctx);
+            } else {
+                ctx.countCulled(1);
+            }
+        }
         for (Node child : children) {
+            // всё поддерево вне пирамиды видимости — не спускаемся
+            if (child.hasSubtreeBounds && !ctx.isVisible(child.subtreeBounds)) {
+                ctx.countCulled(child.drawableCount);
+                continue;
+            }
             child.render(ctx);
         }
     }
 
+    /** Отрисовка своей геометрии (узел виден); матрица — {@link #getWorldMatrix()} */
+    protected void draw(RenderContext ctx) {
+    }
+
+    /** Границы своей геометрии в локальных координатах; null — узел ничего не рисует */
+    public AABB getLocalBounds() {
+        return null;
+    }
+
+    /**
+     * Сплошные боксы в локальных координатах, закрывающие то, что за ними (см. {@link OcclusionCuller}).
+     * Должны лежать внутри видимой геометрии узла; по умолчанию перекрывателей нет.
+     */
+    public List<AABB> getOccluders() {
+        return List.of();
+    }
+
+    /**
+     * Обновляет кэш мировых матриц и границ всего поддерева. Вызывается раз в кадр перед
+     * {@link #render}; матрица пересчитывается, только если трансформация изменилась.
+     */
+    public void updateTransforms() {
+        updateTransforms(parent, null);
+    }
+
+    /**
+     * То же, плюс поддержка пространственного индекса: узлы с геометрией вставляются в него,
+     * при изменении мировых границ переставляются, без геометрии — удаляются.
+     */
+    public void updateTransforms(DynamicAabbTree<Node> index) {
+        updateTransforms(parent, index);
+    }
+
+    private void updateTransforms(Node parentNode, DynamicAabbTree<Node> spatialIndex) {
+        boolean changed = false;
+        if (transformChanged()) {
+            localMatrix.set(getLocalTransform());
+            changed = true;
+        }
+        int parentVersion = parentNode != null ? parentNode.worldVersion : 0;
+        if (changed || parentVersion != parentWorldVersion || worldVersion < 0) {
+            if (parentNode != null) parentNode.worldMatrix.mul(localMatrix, worldMatrix);
+            else worldMatrix.set(localMatrix);
+            parentWorldVersion = parentVersion;
+            worldVersion = ++versionCounter;
+            changed = true;
+        }
+
+        AABB local = getLocalBounds();
+        boolean boundsChanged = local != null && (changed || local != cachedLocalBounds);
+        if (boundsChanged) {
+            worldMatrix.transformAab(local.min, local.max, worldBounds.min, worldBounds.max);
+        }
+        cachedLocalBounds = local;
+        if (spatialIndex != null) syncIndex(spatialIndex, local != null, boundsChanged);
+
+        hasSubtreeBounds = local != null;
+        drawableCount = local != null ? 1 : 0;
+        if (hasSubtreeBounds) {
+            subtreeBounds.min.set(worldBounds.min);
+            subtreeBounds.max.set(worldBounds.max);
+        }
+        for (Node child : children) {
+            child.updateTransforms(this, spatialIndex);
+            drawableCount += child.drawableCount;
+            if (!child.hasSubtreeBounds) continue;
+            if (hasSubtreeBounds) {
+                subtreeBounds.min.min(child.subtreeBounds.min);
+                subtreeBounds.max.max(child.subtreeBounds.max);
+            } else {
+                subtreeBounds.min.set(child.subtreeBounds.min);
+                subtreeBounds.max.set(child.subtreeBounds.max);
+                hasSubtreeBounds = true;
+            }
+        }
+    }
+
+    private void syncIndex(DynamicAabbTree<Node> spatialIndex, boolean drawable, boolean boundsChanged) {
+        if (!drawable) {
+            if (proxy >= 0) leaveIndexSelf();
+            return;
+        }
+        if (index != spatialIndex) {
+            if (proxy >= 0) leaveIndexSelf();
+            index = spatialIndex;
+            proxy = spatialIndex.insert(worldBounds, this);
+        } else if (boundsChanged) {
+            spatialIndex.move(proxy, worldBounds);
+        }
+    }
+
+    private void leaveIndexSelf() {
+        index.remove(proxy);
+        index = null;
+        proxy = -1;
+    }
+
+    /** Сравнивает position/rotation/scale с прошлым кадром (векторы меняют и напрямую через геттеры) */
+    private boolean transformChanged() {
+        float[] c = cachedTransform;
+        if (c[0] == position.x && c[1] == position.y && c[2] == position.z
+                && c[3] == rotation.x && c[4] == rotation.y && c[5] == rotation.z
+                && c[6] == scale.x && c[7] == scale.y && c[8] == scale.z) {
+            return false;
+        }
+        c[0] = position.x; c[1] = position.y; c[2] = position.z;
+        c[3] = rotation.x; c[4] = rotation.y; c[5] = rotation.z;
+        c[6] = scale.x; c[7] = scale.y; c[8] = scale.z;
+        return true;
+    }
+
+    /** Мировая матрица на момент последнего {@link #updateTransforms()}; не изменять */
+    public Matrix4f getWorldMatrix() {
+        return worldMatrix;
+    }
+
+    /** Границы своей геометрии в мировых координатах (после {@link #updateTransforms()}) */
+    public AABB getWorldBounds() {
+        return worldBounds;
+    }
+
     public void update(float time) {
         for (Node child : children) {
             child.update(time);
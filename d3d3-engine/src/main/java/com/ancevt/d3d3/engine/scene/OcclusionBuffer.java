@@ -0,0 +1,462 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.FloatArray;
+import com.ancevt.d3d3.engine.util.IntArray;
+import lombok.Getter;
+import org.joml.Matrix4f;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Программный буфер глубины низкого разрешения для отсечения перекрытых объектов на CPU.
+ * <p>
+ * Кадр: {@link #begin} → {@link #addOccluder} для каждого перекрывателя (грани бокса бьются
+ * на треугольники и раскладываются по тайлам) → {@link #rasterize()} (тайлы растеризуются
+ * параллельно, каждый пишет только свои пиксели) → {@link #isOccluded} для кандидатов.
+ * <p>
+ * Покрытие консервативно внутрь: пишутся только пиксели, целиком лежащие внутри контура бокса на экране,
+ * так что щель уже пикселя буфера не заливается. Лицевые грани обрезаются контуром, сдвинутым внутрь
+ * на полпикселя, и дальше растеризуются по центру пикселя: внутренние рёбра (диагонали граней, ребро
+ * между двумя лицевыми гранями) сами по себе дыр не оставляют.
+ * <p>
+ * Глубина — z/w в [0, 1], в пикселе хранится ближайшая. Над буфером строится пирамида
+ * максимумов (hi-Z): тексел уровня k — самая дальняя глубина в квадрате 2^k пикселей.
+ * Объект перекрыт, если его ближайшая точка дальше самой дальней глубины под его
+ * экранным прямоугольником; чтение с GPU не нужно, ответ готов в том же кадре.
+ */
+public class OcclusionBuffer {
+
+    public static final int DEFAULT_WIDTH = 256;
+    public static final int DEFAULT_HEIGHT = 128;
+    public static final int TILE_SIZE = 32;
+
+    // данные треугольника: три ребра (A, B, C), плоскость z (A, B, C), прямоугольник в пикселях, max z
+    private static final int TRIANGLE_FLOATS = 17;
+    // контур: не больше трёх лицевых граней по 5 рёбер; грань после обрезки — не больше 5 + контур
+    private static final int MAX_OUTLINE = 15;
+    private static final int MAX_CLIPPED = 5 + MAX_OUTLINE;
+
+    // грани бокса против часовой стрелки снаружи; угол i = (x: бит 0, y: бит 1, z: бит 2)
+    private static final int[][] BOX_FACES = {
+            {0, 4, 6, 2}, // -X
+            {1, 3, 7, 5}, // +X
+            {0, 1, 5, 4}, // -Y
+            {2, 6, 7, 3}, // +Y
+            {0, 2, 3, 1}, // -Z
+            {4, 5, 7, 6}  // +Z
+    };
+    // грань по другую сторону ребра (face[i], face[i + 1])
+    private static final int[][] FACE_NEIGHBOURS = new int[6][4];
+
+    static {
+        for (int f = 0; f < 6; f++) {
+            for (int i = 0; i < 4; i++) {
+                int p = BOX_FACES[f][i], q = BOX_FACES[f][(i + 1) % 4];
+                for (int g = 0; g < 6; g++) {
+                    if (g != f && contains(BOX_FACES[g], p) && contains(BOX_FACES[g], q)) {
+                        FACE_NEIGHBOURS[f][i] = g;
+                    }
+                }
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int tilesX;
+    private final int tilesY;
+    private final ForkJoinPool pool;
+
+    // уровень 0 — сам буфер глубины
+    private final float[][] levels;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+
+    private final FloatArray triangles = new FloatArray(TRIANGLE_FLOATS * 1024);
+    private final IntArray[] bins;
+
+    private final Matrix4f viewProjection = new Matrix4f();
+    private final Matrix4f occluderMatrix = new Matrix4f();
+    // углы в clip space, лицевые грани и их многоугольники на экране после отсечения ближней плоскостью
+    private final float[] clip = new float[8 * 4];
+    private final boolean[] front = new boolean[6];
+    private final float[] polygon = new float[5 * 4];
+    private final boolean[] outer = new boolean[5];
+    private final float[][] faces = new float[6][5 * 3];
+    private final int[] faceSizes = new int[6];
+    // рёбра контура бокса (A, B, C), сдвинутые внутрь на полпикселя
+    private final float[] outline = new float[MAX_OUTLINE * 3];
+    private int outlineSize;
+    // многоугольник грани при обрезке контуром
+    private float[] screen = new float[MAX_CLIPPED * 3];
+    private float[] clipped = new float[MAX_CLIPPED * 3];
+
+    @Getter
+    private int occluderCount;
+
+    public OcclusionBuffer() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT, ForkJoinPool.commonPool());
+    }
+
+    public OcclusionBuffer(int width, int height, ForkJoinPool pool) {
+        if (Integer.bitCount(width) != 1 || Integer.bitCount(height) != 1 || width < TILE_SIZE || height < TILE_SIZE) {
+            throw new IllegalArgumentException("Occlusion buffer size must be a power of two, at least "
+                    + TILE_SIZE + ": " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.pool = pool;
+        tilesX = width / TILE_SIZE;
+        tilesY = height / TILE_SIZE;
+
+        int levelCount = Integer.numberOfTrailingZeros(Math.max(width, height)) + 1;
+        levels = new float[levelCount][];
+        levelWidths = new int[levelCount];
+        levelHeights = new int[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            levelWidths[level] = Math.max(width >> level, 1);
+            levelHeights[level] = Math.max(height >> level, 1);
+            levels[level] = new float[levelWidths[level] * levelHeights[level]];
+        }
+
+        bins = new IntArray[tilesX * tilesY];
+        for (int i = 0; i < bins.length; i++) {
+            bins[i] = new IntArray(64);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Число треугольников перекрывателей в кадре (после отбраковки задних граней) */
+    public int getTriangleCount() {
+        return triangles.size() / TRIANGLE_FLOATS;
+    }
+
+    /** Начало кадра: буфер пуст (всё на дальней плоскости), матрица projection * view */
+    public void begin(Matrix4f projectionView) {
+        viewProjection.set(projectionView);
+        triangles.clear();
+        for (IntArray bin : bins) {
+            bin.clear();
+        }
+        occluderCount = 0;
+    }
+
+    /**
+     * Добавляет сплошной бокс-перекрыватель. Растеризуются только лицевые грани; части за ближней
+     * плоскостью отрезаются, так что стены вплотную к камере тоже перекрывают.
+     *
+     * @param model матрица модели бокса, null — бокс уже в мировых координатах
+     */
+    public void addOccluder(AABB box, Matrix4f model) {
+        Matrix4f m = model != null ? viewProjection.mul(model, occluderMatrix) : viewProjection;
+        for (int i = 0; i < 8; i++) {
+            float x = (i & 1) != 0 ? box.max.x : box.min.x;
+            float y = (i & 2) != 0 ? box.max.y : box.min.y;
+            float z = (i & 4) != 0 ? box.max.z : box.min.z;
+            int o = i * 4;
+            clip[o] = m.m00() * x + m.m10() * y + m.m20() * z + m.m30();
+            clip[o + 1] = m.m01() * x + m.m11() * y + m.m21() * z + m.m31();
+            clip[o + 2] = m.m02() * x + m.m12() * y + m.m22() * z + m.m32();
+            clip[o + 3] = m.m03() * x + m.m13() * y + m.m23() * z + m.m33();
+        }
+        // лицевая ли грань — по ориентации (x, y, w) её углов: не зависит от отсечения ближней плоскостью
+        for (int f = 0; f < 6; f++) {
+            int[] face = BOX_FACES[f];
+            front[f] = orientation(face[0] * 4, face[1] * 4, face[2] * 4) > 0;
+        }
+        outlineSize = 0;
+        for (int f = 0; f < 6; f++) {
+            faceSizes[f] = front[f] ? projectFace(f) : 0;
+        }
+        for (int f = 0; f < 6; f++) {
+            if (faceSizes[f] >= 3) addFace(f);
+        }
+        occluderCount++;
+    }
+
+    private float orientation(int a, int b, int c) {
+        float ax = clip[a], ay = clip[a + 1], aw = clip[a + 3];
+        float bx = clip[b], by = clip[b + 1], bw = clip[b + 3];
+        float cx = clip[c], cy = clip[c + 1], cw = clip[c + 3];
+        return ax * (by * cw - bw * cy) - ay * (bx * cw - bw * cx) + aw * (bx * cy - by * cx);
+    }
+
+    /**
+     * Отсекает лицевую грань плоскостью z = -w и переводит в экранные координаты. Рёбра, за которыми
+     * задняя грань или появившиеся при отсечении, — контур бокса: они попадают в {@link #outline}.
+     *
+     * @return число вершин многоугольника грани
+     */
+    private int projectFace(int f) {
+        int[] face = BOX_FACES[f];
+        int count = 0;
+        for (int i = 0; i < 4; i++) {
+            int p = face[i] * 4;
+            int q = face[(i + 1) % 4] * 4;
+            boolean edgeOuter = !front[FACE_NEIGHBOURS[f][i]];
+            float dp = clip[p + 2] + clip[p + 3];
+            float dq = clip[q + 2] + clip[q + 3];
+            if (dp >= 0) {
+                outer[count] = edgeOuter;
+                System.arraycopy(clip, p, polygon, count++ * 4, 4);
+            }
+            if ((dp >= 0) != (dq >= 0)) {
+                float t = dp / (dp - dq);
+                // выход за плоскость — дальше ребро по самой плоскости, вход — снова по ребру грани
+                outer[count] = dp >= 0 || edgeOuter;
+                int o = count++ * 4;
+                for (int k = 0; k < 4; k++) {
+                    polygon[o + k] = clip[p + k] + (clip[q + k] - clip[p + k]) * t;
+                }
+            }
+        }
+        if (count < 3) return 0;
+
+        float[] out = faces[f];
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            float w = polygon[o + 3];
+            out[i * 3] = (polygon[o] / w * 0.5f + 0.5f) * width;
+            out[i * 3 + 1] = (polygon[o + 1] / w * 0.5f + 0.5f) * height;
+            out[i * 3 + 2] = Math.max(polygon[o + 2] / w * 0.5f + 0.5f, 0f);
+        }
+        for (int i = 0; i < count; i++) {
+            if (!outer[i]) continue;
+            int j = (i + 1) % count;
+            // ребро E(p) = A * px + B * py + C, внутри >= 0; минимум по пикселю — в углу: центр минус (|A| + |B|) / 2
+            float a = out[i * 3 + 1] - out[j * 3 + 1];
+            float b = out[j * 3] - out[i * 3];
+            float c = -(a * out[i * 3] + b * out[i * 3 + 1]) - 0.5f * (Math.abs(a) + Math.abs(b));
+            int o = outlineSize++ * 3;
+            outline[o] = a;
+            outline[o + 1] = b;
+            outline[o + 2] = c;
+        }
+        return count;
+    }
+
+    /** Обрезает грань сдвинутым контуром (z на экране линейна) и раскладывает веер */
+    private void addFace(int f) {
+        int count = faceSizes[f];
+        System.arraycopy(faces[f], 0, screen, 0, count * 3);
+        for (int e = 0; e < outlineSize && count >= 3; e++) {
+            float a = outline[e * 3], b = outline[e * 3 + 1], c = outline[e * 3 + 2];
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                int j = (i + 1) % count;
+                float dp = a * screen[i * 3] + b * screen[i * 3 + 1] + c;
+                float dq = a * screen[j * 3] + b * screen[j * 3 + 1] + c;
+                if (dp >= 0) {
+                    System.arraycopy(screen, i * 3, clipped, n++ * 3, 3);
+                }
+                if ((dp >= 0) != (dq >= 0)) {
+                    float t = dp / (dp - dq);
+                    int o = n++ * 3;
+                    for (int k = 0; k < 3; k++) {
+                        clipped[o + k] = screen[i * 3 + k] + (screen[j * 3 + k] - screen[i * 3 + k]) * t;
+                    }
+                }
+            }
+            float[] swap = screen;
+            screen = clipped;
+            clipped = swap;
+            count = n;
+        }
+        for (int i = 1; i + 1 < count; i++) {
+            setupTriangle(0, i, i + 1);
+        }
+    }
+
+    /** Рёбра и плоскость глубины в экранных координатах; задние и вырожденные отбрасываются */
+    private void setupTriangle(int i0, int i1, int i2) {
+        float x0 = screen[i0 * 3], y0 = screen[i0 * 3 + 1], z0 = screen[i0 * 3 + 2];
+        float x1 = screen[i1 * 3], y1 = screen[i1 * 3 + 1], z1 = screen[i1 * 3 + 2];
+        float x2 = screen[i2 * 3], y2 = screen[i2 * 3 + 1], z2 = screen[i2 * 3 + 2];
+
+        float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if (!(area > 0)) return; // задняя грань, ребро к камере или NaN
+
+        int minX = Math.max((int) Math.floor(Math.min(x0, Math.min(x1, x2))), 0);
+        int minY = Math.max((int) Math.floor(Math.min(y0, Math.min(y1, y2))), 0);
+        int maxX = Math.min((int) Math.ceil(Math.max(x0, Math.max(x1, x2))), width);
+        int maxY = Math.min((int) Math.ceil(Math.max(y0, Math.max(y1, y2))), height);
+        if (minX >= maxX || minY >= maxY) return;
+
+        // ребро v0->v1: E(p) = A * px + B * py + C, внутри >= 0
+        float a01 = y0 - y1, b01 = x1 - x0, c01 = -(a01 * x0 + b01 * y0);
+        float a12 = y1 - y2, b12 = x2 - x1, c12 = -(a12 * x1 + b12 * y1);
+        float a20 = y2 - y0, b20 = x0 - x2, c20 = -(a20 * x2 + b20 * y2);
+        // барицентрические веса вершин — E12, E20, E01, делённые на площадь
+        float inv = 1f / area;
+        float za = (a12 * z0 + a20 * z1 + a01 * z2) * inv;
+        float zb = (b12 * z0 + b20 * z1 + b01 * z2) * inv;
+        // плоскость сдвинута к самой дальней точке пикселя: перекрыватель не бывает ближе, чем есть
+        float zc = (c12 * z0 + c20 * z1 + c01 * z2) * inv + 0.5f * (Math.abs(za) + Math.abs(zb));
+
+        int index = triangles.size() / TRIANGLE_FLOATS;
+        triangles.ensureCapacity(triangles.size() + TRIANGLE_FLOATS);
+        triangles.add(a01, b01, c01);
+        triangles.add(a12, b12, c12);
+        triangles.add(a20, b20, c20);
+        triangles.add(za, zb, zc);
+        triangles.add(minX, minY);
+        triangles.add(maxX, maxY);
+        triangles.add(Math.max(z0, Math.max(z1, z2)));
+
+        int tx1 = (maxX - 1) / TILE_SIZE;
+        int ty1 = (maxY - 1) / TILE_SIZE;
+        for (int ty = minY / TILE_SIZE; ty <= ty1; ty++) {
+            for (int tx = minX / TILE_SIZE; tx <= tx1; tx++) {
+                bins[ty * tilesX + tx].add(index);
+            }
+        }
+    }
+
+    /** Растеризует перекрыватели кадра по тайлам в пуле потоков и строит пирамиду глубины */
+    public void rasterize() {
+        // parallel stream внутри задачи пула выполняется на воркерах этого же пула
+        pool.submit(() -> IntStream.range(0, bins.length).parallel().forEach(this::rasterizeTile)).join();
+        buildPyramid();
+    }
+
+    private void rasterizeTile(int tile) {
+        float[] depth = levels[0];
+        int tileX = (tile % tilesX) * TILE_SIZE;
+        int tileY = (tile / tilesX) * TILE_SIZE;
+        for (int y = tileY; y < tileY + TILE_SIZE; y++) {
+            Arrays.fill(depth, y * width + tileX, y * width + tileX + TILE_SIZE, 1f);
+        }
+
+        float[] data = triangles.array();
+        IntArray bin = bins[tile];
+        for (int i = 0; i < bin.size(); i++) {
+            int t = bin.get(i) * TRIANGLE_FLOATS;
+            float a0 = data[t], b0 = data[t + 1], c0 = data[t + 2];
+            float a1 = data[t + 3], b1 = data[t + 4], c1 = data[t + 5];
+            float a2 = data[t + 6], b2 = data[t + 7], c2 = data[t + 8];
+            float za = data[t + 9], zb = data[t + 10], zc = data[t + 11];
+            int x0 = Math.max((int) data[t + 12], tileX);
+            int y0 = Math.max((int) data[t + 13], tileY);
+            int x1 = Math.min((int) data[t + 14], tileX + TILE_SIZE);
+            int y1 = Math.min((int) data[t + 15], tileY + TILE_SIZE);
+            float zMax = data[t + 16];
+
+            for (int y = y0; y < y1; y++) {
+                // значения в центре пикселя (x + 0.5, y + 0.5)
+                float py = y + 0.5f;
+                float r0 = b0 * py + c0 + a0 * 0.5f;
+                float r1 = b1 * py + c1 + a1 * 0.5f;
+                float r2 = b2 * py + c2 + a2 * 0.5f;
+                // отрезок строки, где все три ребра >= 0: дальше цикл без ветвлений, только min глубины
+                float from = x0;
+                float to = x1 - 1;
+                if (a0 > 0) from = Math.max(from, -r0 / a0); else if (a0 < 0) to = Math.min(to, -r0 / a0); else if (r0 < 0) continue;
+                if (a1 > 0) from = Math.max(from, -r1 / a1); else if (a1 < 0) to = Math.min(to, -r1 / a1); else if (r1 < 0) continue;
+                if (a2 > 0) from = Math.max(from, -r2 / a2); else if (a2 < 0) to = Math.min(to, -r2 / a2); else if (r2 < 0) continue;
+                int start = (int) Math.ceil(from);
+                int end = (int) Math.floor(to);
+
+                float rz = zb * py + zc + za * 0.5f;
+                int row = y * width;
+                for (int x = start; x <= end; x++) {
+                    depth[row + x] = Math.min(depth[row + x], Math.min(rz + za * x, zMax));
+                }
+            }
+        }
+    }
+
+    private void buildPyramid() {
+        for (int level = 1; level < levels.length; level++) {
+            float[] src = levels[level - 1];
+            float[] dst = levels[level];
+            int srcWidth = levelWidths[level - 1];
+            int srcHeight = levelHeights[level - 1];
+            int dstWidth = levelWidths[level];
+            int dstHeight = levelHeights[level];
+            for (int y = 0; y < dstHeight; y++) {
+                int sy0 = Math.min(y * 2, srcHeight - 1) * srcWidth;
+                int sy1 = Math.min(y * 2 + 1, srcHeight - 1) * srcWidth;
+                for (int x = 0; x < dstWidth; x++) {
+                    int sx0 = Math.min(x * 2, srcWidth - 1);
+                    int sx1 = Math.min(x * 2 + 1, srcWidth - 1);
+                    dst[y * dstWidth + x] = Math.max(
+                            Math.max(src[sy0 + sx0], src[sy0 + sx1]),
+                            Math.max(src[sy1 + sx0], src[sy1 + sx1]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Перекрыт ли мировой AABB перекрывателями кадра. Бокс, пересекающий ближнюю плоскость,
+     * всегда считается видимым. Проверяется не больше 2x2 текселов пирамиды.
+     */
+    public boolean isOccluded(AABB box) {
+        return isOccluded(box.min.x, box.min.y, box.min.z, box.max.x, box.max.y, box.max.z);
+    }
+
+    public boolean isOccluded(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        Matrix4f m = viewProjection;
+        float sx0 = Float.MAX_VALUE, sy0 = Float.MAX_VALUE, sx1 = -Float.MAX_VALUE, sy1 = -Float.MAX_VALUE;
+        float nearest = Float.MAX_VALUE;
+        for (int i = 0; i < 8; i++) {
+            float x = (i & 1) != 0 ? maxX : minX;
+            float y = (i & 2) != 0 ? maxY : minY;
+            float z = (i & 4) != 0 ? maxZ : minZ;
+            float cw = m.m03() * x + m.m13() * y + m.m23() * z + m.m33();
+            float cz = m.m02() * x + m.m12() * y + m.m22() * z + m.m32();
+            if (cz < -cw || cw <= 0) return false;
+            float cx = m.m00() * x + m.m10() * y + m.m20() * z + m.m30();
+            float cy = m.m01() * x + m.m11() * y + m.m21() * z + m.m31();
+            float inv = 1f / cw;
+            sx0 = Math.min(sx0, cx * inv);
+            sx1 = Math.max(sx1, cx * inv);
+            sy0 = Math.min(sy0, cy * inv);
+            sy1 = Math.max(sy1, cy * inv);
+            nearest = Math.min(nearest, cz * inv);
+        }
+        nearest = nearest * 0.5f + 0.5f;
+
+        int px0 = Math.max((int) Math.floor((sx0 * 0.5f + 0.5f) * width), 0);
+        int py0 = Math.max((int) Math.floor((sy0 * 0.5f + 0.5f) * height), 0);
+        int px1 = Math.min((int) Math.floor((sx1 * 0.5f + 0.5f) * width), width - 1);
+        int py1 = Math.min((int) Math.floor((sy1 * 0.5f + 0.5f) * height), height - 1);
+        if (px0 > px1 || py0 > py1) return false; // вне экрана — дело пирамиды видимости
+
+        int level = 0;
+        while (level < levels.length - 1 && ((px1 >> level) - (px0 >> level) > 1 || (py1 >> level) - (py0 >> level) > 1)) {
+            level++;
+        }
+        float[] hiZ = levels[level];
+        int levelWidth = levelWidths[level];
+        int lx1 = Math.min(px1 >> level, levelWidth - 1);
+        int ly1 = Math.min(py1 >> level, levelHeights[level] - 1);
+        for (int y = py0 >> level; y <= ly1; y++) {
+            for (int x = px0 >> level; x <= lx1; x++) {
+                if (hiZ[y * levelWidth + x] >= nearest) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Глубина пикселя уровня 0 после {@link #rasterize()}; 1 — пусто */
+    public float getDepth(int x, int y) {
+        return levels[0][y * width + x];
+    }
+
+    private static boolean contains(int[] array, int value) {
+        for (int v : array) {
+            if (v == value) return true;
+        }
+        return false;
+    }
+}
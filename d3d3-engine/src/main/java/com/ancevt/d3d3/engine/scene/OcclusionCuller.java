@@ -0,0 +1,172 @@
+package com.ancevt.d3d3.engine.scene;
+
+import lombok.Getter;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Отсечение перекрытых узлов на CPU. Раз в кадр из видимых узлов собираются перекрыватели
+ * ({@link Node#getOccluders()}), в {@link OcclusionBuffer} растеризуются самые крупные на экране
+ * из них, после чего границы узлов-кандидатов проверяются по пирамиде глубины.
+ */
+public class OcclusionCuller {
+
+    public static final int DEFAULT_MAX_OCCLUDERS = 384;
+    // допуск совпадения граней при слиянии боксов
+    private static final float MERGE_EPSILON = 1e-4f;
+
+    private final OcclusionBuffer buffer;
+    private final int maxOccluders;
+
+    // перекрыватели-кандидаты кадра: бокс, его матрица и ключ (вес << 32 | индекс)
+    private final List<AABB> candidateBoxes = new ArrayList<>();
+    private final List<Matrix4f> candidateMatrices = new ArrayList<>();
+    private long[] candidateKeys = new long[256];
+
+    private final Vector3f worldMin = new Vector3f();
+    private final Vector3f worldMax = new Vector3f();
+
+    @Getter
+    private int tested;
+    @Getter
+    private int occluded;
+    // время сбора и растеризации перекрывателей в последнем build
+    @Getter
+    private long buildNanos;
+
+    public OcclusionCuller() {
+        this(new OcclusionBuffer(), DEFAULT_MAX_OCCLUDERS);
+    }
+
+    public OcclusionCuller(OcclusionBuffer buffer, int maxOccluders) {
+        if (maxOccluders <= 0) {
+            throw new IllegalArgumentException("Max occluders must be greater than 0");
+        }
+        this.buffer = buffer;
+        this.maxOccluders = maxOccluders;
+    }
+
+    public OcclusionBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Строит буфер перекрытия кадра по перекрывателям узлов, прошедших пирамиду видимости.
+     *
+     * @param nodes          видимые узлы (после {@link Node#updateTransforms()})
+     * @param projectionView projection * view кадра
+     * @param frustum        пирамида видимости той же матрицы
+     * @param eye            позиция камеры — для оценки экранного размера перекрывателей
+     */
+    public void build(List<Node> nodes, Matrix4f projectionView, FrustumIntersection frustum, Vector3f eye) {
+        long start = System.nanoTime();
+        tested = 0;
+        occluded = 0;
+        candidateBoxes.clear();
+        candidateMatrices.clear();
+
+        for (Node node : nodes) {
+            List<AABB> occluders = node.getOccluders();
+            if (occluders.isEmpty()) continue;
+            Matrix4f world = node.getWorldMatrix();
+            for (AABB box : occluders) {
+                world.transformAab(box.min, box.max, worldMin, worldMax);
+                if (!frustum.testAab(worldMin, worldMax)) continue;
+                addCandidate(box, world, screenWeight(eye));
+            }
+        }
+
+        // самые крупные на экране — последними после сортировки
+        int count = candidateBoxes.size();
+        Arrays.sort(candidateKeys, 0, count);
+        buffer.begin(projectionView);
+        for (int i = count - 1; i >= Math.max(count - maxOccluders, 0); i--) {
+            int index = (int) candidateKeys[i];
+            buffer.addOccluder(candidateBoxes.get(index), candidateMatrices.get(index));
+        }
+        buffer.rasterize();
+        buildNanos = System.nanoTime() - start;
+    }
+
+    /** Перекрыт ли мировой AABB перекрывателями последнего {@link #build} */
+    public boolean isOccluded(AABB worldBounds) {
+        tested++;
+        if (!buffer.isOccluded(worldBounds)) return false;
+        occluded++;
+        return true;
+    }
+
+    private void addCandidate(AABB box, Matrix4f world, float weight) {
+        int index = candidateBoxes.size();
+        if (index == candidateKeys.length) {
+            candidateKeys = Arrays.copyOf(candidateKeys, index * 2);
+        }
+        // положительный float как int сравнивается так же, как float
+        candidateKeys[index] = (long) Float.floatToIntBits(weight) << 32 | index;
+        candidateBoxes.add(box);
+        candidateMatrices.add(world);
+    }
+
+    /** Квадрат диагонали бокса на квадрат расстояния до камеры ~ занимаемая доля экрана */
+    private float screenWeight(Vector3f eye) {
+        float dx = Math.max(Math.max(worldMin.x - eye.x, eye.x - worldMax.x), 0);
+        float dy = Math.max(Math.max(worldMin.y - eye.y, eye.y - worldMax.y), 0);
+        float dz = Math.max(Math.max(worldMin.z - eye.z, eye.z - worldMax.z), 0);
+        float distanceSquared = Math.max(dx * dx + dy * dy + dz * dz, 1e-4f);
+        return worldMin.distanceSquared(worldMax) / distanceSquared;
+    }
+
+    /**
+     * Сливает соприкасающиеся боксы с одинаковым сечением (ряды кубиков стен — в одну стену) по X,
+     * затем Z, затем Y. Крупных перекрывателей нужно меньше, и щелей между ними нет.
+     */
+    public static List<AABB> mergeBoxes(List<AABB> boxes) {
+        List<AABB> result = new ArrayList<>();
+        for (AABB box : boxes) {
+            result.add(new AABB(box.min, box.max));
+        }
+        result = mergeAlong(result, 0);
+        result = mergeAlong(result, 2);
+        return mergeAlong(result, 1);
+    }
+
+    private static List<AABB> mergeAlong(List<AABB> boxes, int axis) {
+        int b = (axis + 1) % 3;
+        int c = (axis + 2) % 3;
+        boxes.sort(Comparator.<AABB>comparingDouble(box -> box.min.get(b))
+                .thenComparingDouble(box -> box.max.get(b))
+                .thenComparingDouble(box -> box.min.get(c))
+                .thenComparingDouble(box -> box.max.get(c))
+                .thenComparingDouble(box -> box.min.get(axis)));
+
+        List<AABB> merged = new ArrayList<>();
+        AABB current = null;
+        for (AABB box : boxes) {
+            if (current != null && sameSection(current, box, b) && sameSection(current, box, c)
+                    && box.min.get(axis) <= current.max.get(axis) + MERGE_EPSILON) {
+                current.max.setComponent(axis, Math.max(current.max.get(axis), box.max.get(axis)));
+                // сечение — пересечение двух почти равных: слитый бокс не выходит за исходные
+                current.min.setComponent(b, Math.max(current.min.get(b), box.min.get(b)));
+                current.max.setComponent(b, Math.min(current.max.get(b), box.max.get(b)));
+                current.min.setComponent(c, Math.max(current.min.get(c), box.min.get(c)));
+                current.max.setComponent(c, Math.min(current.max.get(c), box.max.get(c)));
+                continue;
+            }
+            if (current != null) merged.add(current);
+            current = box;
+        }
+        if (current != null) merged.add(current);
+        return merged;
+    }
+
+    private static boolean sameSection(AABB a, AABB b, int axis) {
+        return Math.abs(a.min.get(axis) - b.min.get(axis)) <= MERGE_EPSILON
+                && Math.abs(a.max.get(axis) - b.max.get(axis)) <= MERGE_EPSILON;
+    }
+}
@@ -1,27 +1,86 @@
 package com.ancevt.d3d3.engine.scene;
 
 import com.ancevt.d3d3.engine.render.Camera;
+import com.ancevt.d3d3.engine.render.GLState;
 import com.ancevt.d3d3.engine.render.ShaderProgram;
+import com.ancevt.d3d3.engine.render.Uniform;
+import lombok.Getter;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
 
-import static org.lwjgl.opengl.GL20.*;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.lwjgl.opengl.GL15.*;
 
 public class RenderContext {
     private ShaderProgram shader;
     private Camera camera;
     private Matrix4f projection;   // 🔹 добавляем проекцию
-    private int modelLoc, viewLoc, projLoc, objectColorLoc;
+    private final Uniform.Mat4 modelUniform;
+    private final Uniform.Vec3 objectColorUniform;
+    private final Uniform.Vec4 uvTransformUniform;
+    private final Uniform.Int1 octNormalsUniform;
+    private final Uniform.Float1 opacityUniform;
+
+    private final Uniform.Int1 instancedUniform;
+
+    private final RenderQueue queue = new RenderQueue();
+
+    // столько и больше одинаковых элементов подряд рисуются одним инстансным вызовом
+    public static final int MIN_INSTANCES = 2;
+    private static final Vector3f WHITE = new Vector3f(1, 1, 1);
+
+    // данные экземпляров (VertexLayout.INSTANCE_FLOATS на экземпляр) и буфер, куда они стримятся
+    private FloatBuffer instanceData;
+    private int instanceVbo;
+
+    // вызовы отрисовки последнего flush
+    @Getter
+    private int drawCalls;
+
+    // отсечение по пирамиде видимости projection * view текущего кадра
+    private final Matrix4f projectionView = new Matrix4f();
+    private final FrustumIntersection frustum = new FrustumIntersection();
+    @Getter
+    private int drawnNodes;
+    @Getter
+    private int culledNodes;
+    private final Consumer<Node> drawVisible = node -> {
+        drawnNodes++;
+        node.draw(this);
+    };
+
+    // отсечение перекрытых узлов на CPU; null — выключено
+    private OcclusionCuller occlusionCuller;
+    private boolean occlusionReady;
+    @Getter
+    private int occludedNodes;
+    private final List<Node> visibleNodes = new ArrayList<>();
+    private final Consumer<Node> collectVisible = visibleNodes::add;
+
+    private final Matrix4f meshModel = new Matrix4f();
+    private final Vector4f uvTransform = new Vector4f();
+    private final Vector3f lodCenter = new Vector3f();
+    private final Vector3f lodScale = new Vector3f();
 
     public RenderContext(ShaderProgram shader, Camera camera, Matrix4f projection) {
         this.shader = shader;
         this.camera = camera;
         this.projection = projection;
 
-        modelLoc = glGetUniformLocation(shader.getId(), "model");
-        viewLoc = glGetUniformLocation(shader.getId(), "view");
-        projLoc = glGetUniformLocation(shader.getId(), "projection");
-        objectColorLoc = glGetUniformLocation(shader.getId(), "objectColor");
+        // хэндлы кэшируются в программе: тут только поиск по имени, без обращений к GL
+        modelUniform = shader.uniformMat4("model");
+        objectColorUniform = shader.uniformVec3("objectColor");
+        uvTransformUniform = shader.uniformVec4("uvTransform");
+        octNormalsUniform = shader.uniformInt("octNormals");
+        opacityUniform = shader.uniformFloat("opacity");
+        instancedUniform = shader.uniformInt("instanced");
     }
 
     public Matrix4f getProjection() {
@@ -36,17 +95,299 @@ public class RenderContext {
         return camera;
     }
 
+    public RenderQueue getQueue() {
+        return queue;
+    }
+
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
+    /** Включает отсечение перекрытых узлов в {@link #render(DynamicAabbTree)}; null — выключает */
+    public void setOcclusionCuller(OcclusionCuller occlusionCuller) {
+        this.occlusionCuller = occlusionCuller;
+    }
+
+    /** Начало кадра: плоскости пирамиды видимости из projection * view, сброс счётчиков узлов */
+    public void beginFrame(Matrix4f view) {
+        frustum.set(projection.mul(view, projectionView));
+        drawnNodes = 0;
+        culledNodes = 0;
+        occludedNodes = 0;
+        occlusionReady = false;
+    }
+
+    /** Пересекает ли мировой AABB пирамиду видимости кадра */
+    public boolean isVisible(AABB bounds) {
+        return frustum.testAab(bounds.min, bounds.max);
+    }
 
+    /**
+     * Перекрыт ли мировой AABB (узел, чанк) перекрывателями кадра; до построения буфера
+     * перекрытия в {@link #render(DynamicAabbTree)} или без него — всегда false.
+     */
+    public boolean isOccluded(AABB bounds) {
+        return occlusionReady && occlusionCuller.isOccluded(bounds);
+    }
+
+    /**
+     * Рисует видимые узлы из пространственного индекса сцены: запрос по пирамиде видимости
+     * обходит только пересекающие её ветви, а не всё дерево узлов. С {@link OcclusionCuller}
+     * видимые узлы ещё проверяются на перекрытие и перекрытые не попадают в очередь.
+     */
+    public void render(DynamicAabbTree<Node> index) {
+        if (occlusionCuller == null) {
+            int before = drawnNodes;
+            index.queryFrustum(frustum, drawVisible);
+            culledNodes += index.size() - (drawnNodes - before);
+            return;
+        }
+
+        visibleNodes.clear();
+        index.queryFrustum(frustum, collectVisible);
+        culledNodes += index.size() - visibleNodes.size();
+        occlusionCuller.build(visibleNodes, projectionView, frustum, camera.getPosition());
+        occlusionReady = true;
+        for (Node node : visibleNodes) {
+            if (occlusionCuller.isOccluded(node.getWorldBounds())) {
+                occludedNodes++;
+            } else {
+                drawVisible.accept(node);
+            }
+        }
+    }
+
+    void countDrawn(int nodes) {
+        drawnNodes += nodes;
+    }
+
+    void countCulled(int nodes) {
+        culledNodes += nodes;
+    }
+
+    /**
+     * Кладёт меш в очередь кадра; рисуется в {@link #flush()}.
+     *
+     * @param opacity меньше 1 — прозрачный проход (сзади вперёд, со смешиванием)
+     */
+    public void submit(Mesh mesh, int lod, int textureId, Vector3f color, float opacity, Matrix4f model) {
+        RenderQueue.Item item = enqueue(mesh, lod, textureId, opacity, model);
+        item.textureId = textureId;
+        item.color = color;
+    }
+
+    /** Меш с несколькими материалами; для ключа сортировки берётся текстура первого */
+    public void submit(Mesh mesh, int lod, int[] textureIds, Vector3f[] colors, float opacity, Matrix4f model) {
+        RenderQueue.Item item = enqueue(mesh, lod, textureIds.length > 0 ? textureIds[0] : 0, opacity, model);
+        item.textureIds = textureIds;
+        item.colors = colors;
+    }
+
+    private RenderQueue.Item enqueue(Mesh mesh, int lod, int textureId, float opacity, Matrix4f model) {
+        float depth = worldCenter(mesh, model, lodCenter).distanceSquared(camera.getPosition());
+        int vao = mesh.getVaoId(lod);
+        long key = opacity < 1f
+                ? RenderQueue.transparentKey(shader.getId(), textureId, vao, depth)
+                : RenderQueue.opaqueKey(shader.getId(), textureId, vao, depth);
+
+        RenderQueue.Item item = queue.item(queue.add(key));
+        item.mesh = mesh;
+        item.lod = lod;
+        item.opacity = opacity;
+        item.model.set(model);
+        item.textureIds = null;
+        item.colors = null;
+        return item;
+    }
+
+    /**
+     * Сортирует очередь кадра и рисует её; очередь после этого пуста.
+     * Подряд идущие элементы с тем же мешом, уровнем и материалом (после сортировки они соседи)
+     * рисуются одним инстансным вызовом: матрицы и цвета узлов уходят в буфер экземпляров.
+     */
+    public void flush() {
+        queue.sort();
+        shader.use();
+        drawCalls = 0;
+        boolean blending = false;
+        int size = queue.size();
+        for (int i = 0; i < size; ) {
+            RenderQueue.Item item = queue.item(queue.slotAt(i));
+            if (item.isTransparent() && !blending) {
+                // прозрачные идут последними: глубину проверяют, но не пишут
+                GLState.enable(GL_BLEND);
+                GLState.blendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA);
+                GLState.depthMask(false);
+                blending = true;
+            }
 
+            int run = 1;
+            while (i + run < size && sameBatch(item, queue.item(queue.slotAt(i + run)))) run++;
+
+            opacityUniform.set(item.opacity);
+            if (run >= MIN_INSTANCES) {
+                drawInstanced(i, run);
+            } else if (item.textureIds != null) {
+                drawMesh(item.mesh, item.lod, item.textureIds, item.colors, item.model);
+            } else {
+                drawMesh(item.mesh, item.lod, item.textureId, item.color, item.model);
+            }
+            i += run;
+        }
+        if (blending) {
+            GLState.disable(GL_BLEND);
+            GLState.depthMask(true);
+        }
+        queue.clear();
+    }
+
+    /** Освобождает буфер экземпляров */
+    public void cleanup() {
+        if (instanceVbo != 0) GLState.deleteBuffer(instanceVbo);
+        if (instanceData != null) MemoryUtil.memFree(instanceData);
+        instanceVbo = 0;
+        instanceData = null;
+    }
+
+    private static boolean sameBatch(RenderQueue.Item a, RenderQueue.Item b) {
+        if (a.mesh != b.mesh || a.lod != b.lod || a.opacity != b.opacity) return false;
+        if (a.textureIds != null) return a.textureIds == b.textureIds && a.colors == b.colors;
+        return b.textureIds == null && a.textureId == b.textureId;
+    }
+
+    /** count элементов очереди с позиции first — один вызов на сабмеш */
+    private void drawInstanced(int first, int count) {
+        RenderQueue.Item item = queue.item(queue.slotAt(first));
+        Mesh mesh = item.mesh;
+        VertexCodec.Decode decode = mesh.getPositionDecode();
+
+        int floats = count * VertexLayout.INSTANCE_FLOATS;
+        if (instanceData == null || instanceData.capacity() < floats) {
+            instanceData = MemoryUtil.memRealloc(instanceData, Math.max(floats, 64 * VertexLayout.INSTANCE_FLOATS));
+        }
+        for (int k = 0; k < count; k++) {
+            RenderQueue.Item instance = queue.item(queue.slotAt(first + k));
+            int base = k * VertexLayout.INSTANCE_FLOATS;
+            Matrix4f m = decode.hasPositionTransform() ? decode.applyTo(instance.model, meshModel) : instance.model;
+            m.get(base, instanceData);
+            // у многоматериального меша цвет — в материале, экземпляр его не меняет
+            Vector3f color = instance.textureIds != null ? WHITE : instance.color;
+            instanceData.put(base + 16, color.x).put(base + 17, color.y).put(base + 18, color.z);
+        }
+
+        if (instanceVbo == 0) instanceVbo = glGenBuffers();
+        GLState.bindBuffer(GL_ARRAY_BUFFER, instanceVbo);
+        // новое хранилище каждый раз: драйвер не ждёт, пока GPU дочитает прошлый батч
+        glBufferData(GL_ARRAY_BUFFER, MemoryUtil.memSlice(instanceData, 0, floats), GL_STREAM_DRAW);
+
+        setLayoutUniforms(mesh);
+        instancedUniform.set(true);
+        if (item.textureIds != null) {
+            int[] textureIds = item.textureIds;
+            Vector3f[] colors = item.colors;
+            mesh.renderInstanced(material -> {
+                objectColorUniform.set(colors[material]);
+                GLState.bindTexture(0, GL_TEXTURE_2D, textureIds[material]);
+                drawCalls++;
+            }, item.lod, instanceVbo, count);
+        } else {
+            objectColorUniform.set(WHITE);
+            GLState.bindTexture(0, GL_TEXTURE_2D, item.textureId);
+            mesh.renderInstanced(item.lod, instanceVbo, count);
+            drawCalls++;
+        }
+    }
 
     public void renderMesh(Mesh mesh, int textureId, Vector3f color, Matrix4f model) {
+        renderMesh(mesh, 0, textureId, color, model);
+    }
+
+    public void renderMesh(Mesh mesh, int lod, int textureId, Vector3f color, Matrix4f model) {
+        shader.use();
+        opacityUniform.set(1f);
+        drawMesh(mesh, lod, textureId, color, model);
+    }
+
+    private void drawMesh(Mesh mesh, int lod, int textureId, Vector3f color, Matrix4f model) {
+        shader.use();
+        setMeshUniforms(mesh, model);
+        objectColorUniform.set(color);
+        GLState.bindTexture(0, GL_TEXTURE_2D, textureId);
+
+        mesh.render(lod);
+        drawCalls++;
+    }
+
+    /**
+     * Меш с несколькими материалами: матрица ставится один раз, текстура и цвет уходят в GL
+     * только при смене материала (сабмеши уже сгруппированы по материалам).
+     */
+    public void renderMesh(Mesh mesh, int[] textureIds, Vector3f[] colors, Matrix4f model) {
+        renderMesh(mesh, 0, textureIds, colors, model);
+    }
+
+    public void renderMesh(Mesh mesh, int lod, int[] textureIds, Vector3f[] colors, Matrix4f model) {
         shader.use();
-        glUniformMatrix4fv(modelLoc, false, model.get(new float[16]));
-        glUniform3f(objectColorLoc, color.x, color.y, color.z);
+        opacityUniform.set(1f);
+        drawMesh(mesh, lod, textureIds, colors, model);
+    }
+
+    private void drawMesh(Mesh mesh, int lod, int[] textureIds, Vector3f[] colors, Matrix4f model) {
+        shader.use();
+        setMeshUniforms(mesh, model);
 
-        glActiveTexture(GL_TEXTURE0);
-        glBindTexture(GL_TEXTURE_2D, textureId);
+        mesh.render(material -> {
+            objectColorUniform.set(colors[material]);
+            GLState.bindTexture(0, GL_TEXTURE_2D, textureIds[material]);
+            drawCalls++;
+        }, lod);
+    }
+
+    /**
+     * Уровень детализации меша с матрицей model по экранному размеру (см. {@link LodSelector}).
+     *
+     * @param current уровень в прошлом кадре — для гистерезиса
+     */
+    public int selectLod(Mesh mesh, Matrix4f model, int current) {
+        if (mesh.getLodCount() == 1) return 0;
+
+        AABB bounds = mesh.getBounds();
+        worldCenter(mesh, model, lodCenter);
+        float scale = Math.max(model.getScale(lodScale).x, Math.max(lodScale.y, lodScale.z));
+        float radius = bounds.max.distance(bounds.min) * 0.5f * scale;
+
+        float distance = lodCenter.distance(camera.getPosition()) - radius;
+        if (distance <= 0) return 0;
+        // ошибка 1 в единицах модели -> доля половины высоты экрана
+        float errorScale = projection.m11() * scale / distance;
+        return LodSelector.select(mesh.getLodErrors(), current, errorScale);
+    }
+
+    /** Центр AABB меша в мировых координатах */
+    private static Vector3f worldCenter(Mesh mesh, Matrix4f model, Vector3f dest) {
+        AABB bounds = mesh.getBounds();
+        dest.set(
+                (bounds.min.x + bounds.max.x) * 0.5f,
+                (bounds.min.y + bounds.max.y) * 0.5f,
+                (bounds.min.z + bounds.max.z) * 0.5f);
+        return model.transformPosition(dest);
+    }
+
+    /**
+     * Матрица модели и параметры раскладки вершин. Деквантизация позиций компактного меша
+     * (центр + шаг) вшивается в матрицу модели — шейдеру она ничего не стоит.
+     */
+    private void setMeshUniforms(Mesh mesh, Matrix4f model) {
+        VertexCodec.Decode decode = mesh.getPositionDecode();
+        Matrix4f m = decode.hasPositionTransform() ? decode.applyTo(model, meshModel) : model;
+        modelUniform.set(m);
+        instancedUniform.set(false);
+        setLayoutUniforms(mesh);
+    }
 
-        mesh.render();
+    private void setLayoutUniforms(Mesh mesh) {
+        mesh.getUVTransform(uvTransform);
+        uvTransformUniform.set(uvTransform);
+        octNormalsUniform.set(mesh.getLayout().hasOctNormals());
     }
 }
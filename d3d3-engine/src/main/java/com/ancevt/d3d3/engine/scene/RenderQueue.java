@@ -0,0 +1,193 @@
+package com.ancevt.d3d3.engine.scene;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+
+/**
+ * Очередь отрисовки кадра: узлы сцены кладут сюда элементы, очередь сортирует их по 64-битному ключу
+ * и отдаёт в порядке, при котором меньше всего смен состояния GL.
+ * <p>
+ * Ключ непрозрачного элемента: проход | шейдер | текстура | VAO | глубина — одинаковое состояние
+ * идёт подряд, внутри группы спереди назад (ранний Z-тест).
+ * Прозрачного: проход | инвертированная глубина | шейдер | текстура | VAO — сзади вперёд, иначе смешивание неверно.
+ * Сортировка — поразрядная LSD по байтам, устойчивая; байты, одинаковые у всех ключей, пропускаются.
+ * Элементы и массивы переиспользуются между кадрами.
+ */
+public class RenderQueue {
+
+    public static final int PASS_OPAQUE = 0;
+    public static final int PASS_TRANSPARENT = 1;
+
+    private static final int DEPTH_BITS = 22;
+    private static final int DEPTH_MASK = (1 << DEPTH_BITS) - 1;
+
+    // меньше — сортировка вставками, гистограммы не окупаются
+    private static final int INSERTION_SORT_THRESHOLD = 48;
+
+    private Item[] items = new Item[0];
+    private long[] keys = new long[64];
+    private long[] keysTmp = new long[64];
+    private int[] slots = new int[64];
+    private int[] slotsTmp = new int[64];
+    private final int[] histograms = new int[8 * 256];
+    private int size;
+
+    /** Данные одного вызова отрисовки */
+    static final class Item {
+        Mesh mesh;
+        int lod;
+        int textureId;
+        int[] textureIds;
+        Vector3f color;
+        Vector3f[] colors;
+        float opacity;
+        final Matrix4f model = new Matrix4f();
+
+        boolean isTransparent() {
+            return opacity < 1f;
+        }
+    }
+
+    /**
+     * Ключ непрозрачного элемента.
+     *
+     * @param depth неотрицательная монотонная мера удалённости (например, квадрат расстояния до камеры)
+     */
+    public static long opaqueKey(int shader, int texture, int vao, float depth) {
+        return (long) PASS_OPAQUE << 62
+                | (long) (shader & 0xFF) << 54
+                | (long) (texture & 0xFFFF) << 38
+                | (long) (vao & 0xFFFF) << 22
+                | depthBits(depth);
+    }
+
+    /** Ключ прозрачного элемента: глубина сразу после прохода, дальние раньше */
+    public static long transparentKey(int shader, int texture, int vao, float depth) {
+        return (long) PASS_TRANSPARENT << 62
+                | (long) (~depthBits(depth) & DEPTH_MASK) << 40
+                | (long) (shader & 0xFF) << 32
+                | (long) (texture & 0xFFFF) << 16
+                | (vao & 0xFFFF);
+    }
+
+    public static int pass(long key) {
+        return (int) (key >>> 62);
+    }
+
+    /** Старшие биты неотрицательного float монотонны по значению */
+    private static int depthBits(float depth) {
+        if (!(depth > 0)) return 0; // 0, отрицательные и NaN
+        if (depth == Float.POSITIVE_INFINITY) return DEPTH_MASK;
+        return Float.floatToRawIntBits(depth) >>> (31 - DEPTH_BITS);
+    }
+
+    /** Добавляет элемент с ключом; возвращает слот для заполнения данных */
+    public int add(long key) {
+        if (size == keys.length) grow();
+        keys[size] = key;
+        slots[size] = size;
+        return size++;
+    }
+
+    Item item(int slot) {
+        if (slot >= items.length) {
+            int old = items.length;
+            items = Arrays.copyOf(items, Math.max(slot + 1, old * 2));
+            for (int i = old; i < items.length; i++) items[i] = new Item();
+        }
+        return items[slot];
+    }
+
+    /** Слот i-го элемента в отсортированном порядке (после {@link #sort()}) */
+    public int slotAt(int i) {
+        return slots[i];
+    }
+
+    public long keyAt(int i) {
+        return keys[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /** Забывает элементы кадра; ссылки на меши и материалы отпускаются */
+    public void clear() {
+        for (int i = 0; i < size && i < items.length; i++) {
+            Item item = items[i];
+            item.mesh = null;
+            item.textureIds = null;
+            item.color = null;
+            item.colors = null;
+        }
+        size = 0;
+    }
+
+    public void sort() {
+        if (size < INSERTION_SORT_THRESHOLD) {
+            insertionSort();
+            return;
+        }
+
+        Arrays.fill(histograms, 0);
+        for (int i = 0; i < size; i++) {
+            long key = keys[i];
+            for (int b = 0; b < 8; b++) {
+                histograms[b * 256 + (int) (key >>> (b * 8) & 0xFF)]++;
+            }
+        }
+
+        for (int b = 0; b < 8; b++) {
+            int base = b * 256;
+            int shift = b * 8;
+            // байт одинаков у всех ключей — проход ничего не переставит
+            if (histograms[base + (int) (keys[0] >>> shift & 0xFF)] == size) continue;
+
+            int offset = 0;
+            for (int d = 0; d < 256; d++) {
+                int count = histograms[base + d];
+                histograms[base + d] = offset;
+                offset += count;
+            }
+            for (int i = 0; i < size; i++) {
+                long key = keys[i];
+                int dst = histograms[base + (int) (key >>> shift & 0xFF)]++;
+                keysTmp[dst] = key;
+                slotsTmp[dst] = slots[i];
+            }
+
+            long[] k = keys;
+            keys = keysTmp;
+            keysTmp = k;
+            int[] s = slots;
+            slots = slotsTmp;
+            slotsTmp = s;
+        }
+    }
+
+    private void insertionSort() {
+        for (int i = 1; i < size; i++) {
+            long key = keys[i];
+            int slot = slots[i];
+            int j = i - 1;
+            // беззнаковое сравнение: проход в старших битах
+            while (j >= 0 && Long.compareUnsigned(keys[j], key) > 0) {
+                keys[j + 1] = keys[j];
+                slots[j + 1] = slots[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            slots[j + 1] = slot;
+        }
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        keysTmp = new long[capacity];
+        slots = Arrays.copyOf(slots, capacity);
+        slotsTmp = new int[capacity];
+    }
+}
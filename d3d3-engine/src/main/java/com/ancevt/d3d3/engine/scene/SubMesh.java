@@ -0,0 +1,11 @@
+package com.ancevt.d3d3.engine.scene;
+
+/**
+ * Диапазон индексов меша, рисуемый одним материалом.
+ *
+ * @param material   индекс в таблице материалов модели
+ * @param firstIndex первый индекс в EBO
+ * @param indexCount количество индексов
+ */
+public record SubMesh(int material, int firstIndex, int indexCount) {
+}
@@ -0,0 +1,288 @@
+package com.ancevt.d3d3.engine.scene;
+
+import org.joml.Matrix4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Перекодирование float-вершин CPU в {@link VertexLayout} и обратно.
+ * Параметры деквантизации ({@link Decode}) шейдер получает через матрицу модели (позиции)
+ * и uniform'ы uvTransform / octNormals.
+ */
+public final class VertexCodec {
+
+    private VertexCodec() {
+    }
+
+    /**
+     * Как восстановить float-значения: позиция = origin + q * positionScale,
+     * uv = uvOffset + q * uvScale.
+     */
+    public record Decode(float originX, float originY, float originZ, float positionScale,
+                         float uOffset, float vOffset, float uScale, float vScale) {
+
+        public static final Decode IDENTITY = new Decode(0, 0, 0, 1, 0, 0, 1, 1);
+
+        public boolean hasPositionTransform() {
+            return originX != 0 || originY != 0 || originZ != 0 || positionScale != 1;
+        }
+
+        /** model * translate(origin) * scale(positionScale) */
+        public Matrix4f applyTo(Matrix4f model, Matrix4f dest) {
+            return model.translate(originX, originY, originZ, dest).scale(positionScale);
+        }
+    }
+
+    public record Encoded(ByteBuffer vertices, Decode decode) {
+    }
+
+    /**
+     * @param vertices float-вершины (position = 0), stride floatStride
+     * @return буфер из MemoryUtil.memAlloc (освобождает вызывающий) и параметры деквантизации
+     */
+    public static Encoded encode(FloatBuffer vertices, int floatStride, int vertexCount, VertexLayout layout) {
+        if (floatStride < layout.getFloatStride()) {
+            throw new IllegalArgumentException("Vertex stride " + floatStride + " has no data for " + layout);
+        }
+        int base = vertices.position();
+
+        // диапазоны для квантизации
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY, minZ = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
+        float minU = Float.POSITIVE_INFINITY, minV = Float.POSITIVE_INFINITY;
+        float maxU = Float.NEGATIVE_INFINITY, maxV = Float.NEGATIVE_INFINITY;
+        boolean hasUV = floatStride >= 5;
+        for (int i = 0; i < vertexCount; i++) {
+            int v = base + i * floatStride;
+            float x = vertices.get(v), y = vertices.get(v + 1), z = vertices.get(v + 2);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+            if (hasUV) {
+                float u = vertices.get(v + 3), t = vertices.get(v + 4);
+                minU = Math.min(minU, u);
+                minV = Math.min(minV, t);
+                maxU = Math.max(maxU, u);
+                maxV = Math.max(maxV, t);
+            }
+        }
+        if (vertexCount == 0) {
+            minX = minY = minZ = maxX = maxY = maxZ = 0;
+            minU = minV = maxU = maxV = 0;
+        }
+
+        VertexLayout.Format positionFormat = layout.get(VertexLayout.Semantic.POSITION).format();
+        VertexLayout.Attribute uvAttribute = layout.get(VertexLayout.Semantic.TEXCOORD);
+
+        float originX = 0, originY = 0, originZ = 0, positionScale = 1;
+        if (positionFormat != VertexLayout.Format.FLOAT3) {
+            // центр AABB — чтобы использовать весь диапазон со знаком
+            originX = (minX + maxX) * 0.5f;
+            originY = (minY + maxY) * 0.5f;
+            originZ = (minZ + maxZ) * 0.5f;
+            if (positionFormat == VertexLayout.Format.SHORT3) {
+                float halfExtent = Math.max(maxX - originX, Math.max(maxY - originY, maxZ - originZ));
+                positionScale = halfExtent > 0 ? halfExtent / Short.MAX_VALUE : 1f;
+            }
+        }
+        float uOffset = 0, vOffset = 0, uScale = 1, vScale = 1;
+        if (uvAttribute != null && uvAttribute.format() == VertexLayout.Format.UNORM16X2) {
+            uOffset = minU;
+            vOffset = minV;
+            uScale = maxU > minU ? maxU - minU : 1f;
+            vScale = maxV > minV ? maxV - minV : 1f;
+        }
+        Decode decode = new Decode(originX, originY, originZ, positionScale, uOffset, vOffset, uScale, vScale);
+
+        int stride = layout.getStride();
+        ByteBuffer out = MemoryUtil.memCalloc(Math.max(vertexCount * stride, 1)).order(ByteOrder.nativeOrder());
+        long address = MemoryUtil.memAddress(out);
+        for (int i = 0; i < vertexCount; i++) {
+            int v = base + i * floatStride;
+            long dst = address + (long) i * stride;
+            for (VertexLayout.Attribute attribute : layout.getAttributes()) {
+                long a = dst + attribute.offset();
+                int src = v + attribute.semantic().floatOffset;
+                switch (attribute.format()) {
+                    case FLOAT2 -> {
+                        MemoryUtil.memPutFloat(a, vertices.get(src));
+                        MemoryUtil.memPutFloat(a + 4, vertices.get(src + 1));
+                    }
+                    case FLOAT3 -> {
+                        MemoryUtil.memPutFloat(a, vertices.get(src));
+                        MemoryUtil.memPutFloat(a + 4, vertices.get(src + 1));
+                        MemoryUtil.memPutFloat(a + 8, vertices.get(src + 2));
+                    }
+                    case HALF3 -> {
+                        MemoryUtil.memPutShort(a, toHalf(vertices.get(src) - originX));
+                        MemoryUtil.memPutShort(a + 2, toHalf(vertices.get(src + 1) - originY));
+                        MemoryUtil.memPutShort(a + 4, toHalf(vertices.get(src + 2) - originZ));
+                    }
+                    case SHORT3 -> {
+                        MemoryUtil.memPutShort(a, quantizeSigned((vertices.get(src) - originX) / positionScale));
+                        MemoryUtil.memPutShort(a + 2, quantizeSigned((vertices.get(src + 1) - originY) / positionScale));
+                        MemoryUtil.memPutShort(a + 4, quantizeSigned((vertices.get(src + 2) - originZ) / positionScale));
+                    }
+                    case FLOAT4 -> {
+                        for (int k = 0; k < 4; k++) MemoryUtil.memPutFloat(a + 4L * k, vertices.get(src + k));
+                    }
+                    case UNORM16X4 -> {
+                        for (int k = 0; k < 4; k++) MemoryUtil.memPutShort(a + 2L * k, unorm16(vertices.get(src + k)));
+                    }
+                    case UNORM16X2 -> {
+                        MemoryUtil.memPutShort(a, unorm16((vertices.get(src) - uOffset) / uScale));
+                        MemoryUtil.memPutShort(a + 2, unorm16((vertices.get(src + 1) - vOffset) / vScale));
+                    }
+                    case OCT8X2 -> putOct(a, vertices.get(src), vertices.get(src + 1), vertices.get(src + 2));
+                }
+            }
+        }
+        out.limit(vertexCount * stride);
+        return new Encoded(out, decode);
+    }
+
+    /**
+     * Обратное преобразование в float-вершины (stride {@link VertexLayout#getFloatStride()}).
+     * Нужно, когда меш читают обратно из VBO (коллизии, MeshBuilder).
+     */
+    public static float[] decode(ByteBuffer encoded, int vertexCount, VertexLayout layout, Decode decode) {
+        int floatStride = layout.getFloatStride();
+        int stride = layout.getStride();
+        float[] out = new float[vertexCount * floatStride];
+        long address = MemoryUtil.memAddress(encoded);
+        for (int i = 0; i < vertexCount; i++) {
+            long src = address + (long) i * stride;
+            int dst = i * floatStride;
+            for (VertexLayout.Attribute attribute : layout.getAttributes()) {
+                long a = src + attribute.offset();
+                int o = dst + attribute.semantic().floatOffset;
+                switch (attribute.format()) {
+                    case FLOAT2 -> {
+                        out[o] = MemoryUtil.memGetFloat(a);
+                        out[o + 1] = MemoryUtil.memGetFloat(a + 4);
+                    }
+                    case FLOAT3 -> {
+                        out[o] = MemoryUtil.memGetFloat(a);
+                        out[o + 1] = MemoryUtil.memGetFloat(a + 4);
+                        out[o + 2] = MemoryUtil.memGetFloat(a + 8);
+                    }
+                    case HALF3 -> {
+                        out[o] = decode.originX() + fromHalf(MemoryUtil.memGetShort(a));
+                        out[o + 1] = decode.originY() + fromHalf(MemoryUtil.memGetShort(a + 2));
+                        out[o + 2] = decode.originZ() + fromHalf(MemoryUtil.memGetShort(a + 4));
+                    }
+                    case SHORT3 -> {
+                        out[o] = decode.originX() + MemoryUtil.memGetShort(a) * decode.positionScale();
+                        out[o + 1] = decode.originY() + MemoryUtil.memGetShort(a + 2) * decode.positionScale();
+                        out[o + 2] = decode.originZ() + MemoryUtil.memGetShort(a + 4) * decode.positionScale();
+                    }
+                    case FLOAT4 -> {
+                        for (int k = 0; k < 4; k++) out[o + k] = MemoryUtil.memGetFloat(a + 4L * k);
+                    }
+                    case UNORM16X4 -> {
+                        for (int k = 0; k < 4; k++) out[o + k] = Short.toUnsignedInt(MemoryUtil.memGetShort(a + 2L * k)) / 65535f;
+                    }
+                    case UNORM16X2 -> {
+                        out[o] = decode.uOffset() + Short.toUnsignedInt(MemoryUtil.memGetShort(a)) / 65535f * decode.uScale();
+                        out[o + 1] = decode.vOffset() + Short.toUnsignedInt(MemoryUtil.memGetShort(a + 2)) / 65535f * decode.vScale();
+                    }
+                    case OCT8X2 -> getOct(a, out, o);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static short quantizeSigned(float value) {
+        return (short) Math.max(-Short.MAX_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+
+    private static short unorm16(float value) {
+        return (short) Math.max(0, Math.min(65535, Math.round(value * 65535f)));
+    }
+
+    /** Октаэдрическое кодирование: единичная сфера -> квадрат [-1, 1]^2 */
+    private static void putOct(long address, float x, float y, float z) {
+        float l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 == 0) {
+            MemoryUtil.memPutByte(address, (byte) 0);
+            MemoryUtil.memPutByte(address + 1, (byte) 127);
+            return;
+        }
+        float u = x / l1;
+        float v = y / l1;
+        if (z < 0) {
+            float fu = (1 - Math.abs(v)) * Math.signum(u == 0 ? 1 : u);
+            float fv = (1 - Math.abs(u)) * Math.signum(v == 0 ? 1 : v);
+            u = fu;
+            v = fv;
+        }
+        MemoryUtil.memPutByte(address, (byte) Math.round(u * 127f));
+        MemoryUtil.memPutByte(address + 1, (byte) Math.round(v * 127f));
+    }
+
+    /** То же декодирование, что в вершинном шейдере */
+    private static void getOct(long address, float[] out, int o) {
+        float u = Math.max(MemoryUtil.memGetByte(address) / 127f, -1f);
+        float v = Math.max(MemoryUtil.memGetByte(address + 1) / 127f, -1f);
+        float z = 1 - Math.abs(u) - Math.abs(v);
+        if (z < 0) {
+            float fu = (1 - Math.abs(v)) * (u >= 0 ? 1 : -1);
+            float fv = (1 - Math.abs(u)) * (v >= 0 ? 1 : -1);
+            u = fu;
+            v = fv;
+        }
+        float length = (float) Math.sqrt(u * u + v * v + z * z);
+        out[o] = u / length;
+        out[o + 1] = v / length;
+        out[o + 2] = z / length;
+    }
+
+    /** float32 -> float16 с округлением к ближайшему */
+    static short toHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent >= 31) {
+            // переполнение -> бесконечность (NaN сохраняется)
+            boolean nan = ((bits >>> 23) & 0xFF) == 0xFF && mantissa != 0;
+            return (short) (sign | 0x7C00 | (nan ? 0x200 : 0));
+        }
+        if (exponent <= 0) {
+            if (exponent < -10) return (short) sign;
+            // денормализованное
+            mantissa |= 0x800000;
+            int shift = 14 - exponent;
+            int half = mantissa >> shift;
+            if (((mantissa >> (shift - 1)) & 1) != 0) half++;
+            return (short) (sign | half);
+        }
+        int half = sign | (exponent << 10) | (mantissa >> 13);
+        // округление; перенос в экспоненту корректен
+        if ((mantissa & 0x1000) != 0) half++;
+        return (short) half;
+    }
+
+    static float fromHalf(short value) {
+        int h = value & 0xFFFF;
+        int sign = (h & 0x8000) << 16;
+        int exponent = (h >>> 10) & 0x1F;
+        int mantissa = h & 0x3FF;
+        if (exponent == 0) {
+            float f = mantissa / 1024f / 16384f;
+            return sign != 0 ? -f : f;
+        }
+        if (exponent == 31) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,245 @@
+package com.ancevt.d3d3.engine.scene;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL33.glVertexAttribDivisor;
+
+/**
+ * Описание вершины в VBO: какие атрибуты, в каком формате и по какому смещению.
+ * <p>
+ * На CPU вершины всегда лежат float'ами (position xyz [+ uv] [+ normal xyz] [+ tile], stride 3/5/8/12),
+ * а при загрузке в GPU кодируются в формат раскладки ({@link VertexCodec}):
+ * <ul>
+ *   <li>{@link #FLOAT} — как есть, 32 байта;</li>
+ *   <li>{@link #HALF} — half-float позиции относительно центра меша, 12 байт;</li>
+ *   <li>{@link #FIXED} — 16-битные позиции с фиксированной точкой по AABB меша, 12 байт.</li>
+ * </ul>
+ * В компактных раскладках нормаль — октаэдрическая, 2 байта, UV — 16 бит в диапазоне UV меша.
+ * <p>
+ * {@link #FLOAT_TILED} / {@link #FIXED_TILED} добавляют тайл атласа (u, v, width, height): uv вершины
+ * тогда в единицах тайла и повторяется внутри него ({@link BlockMesher} — один квад на много блоков).
+ */
+public final class VertexLayout {
+
+    public enum Semantic {
+        POSITION(0, 3, 0),
+        TEXCOORD(1, 2, 3),
+        NORMAL(2, 3, 5),
+        TILE(8, 4, 8);
+
+        /** location в шейдере */
+        public final int location;
+        /** компонентов во float-представлении на CPU */
+        public final int floats;
+        /** смещение в полной float-вершине (stride 12) */
+        public final int floatOffset;
+
+        Semantic(int location, int floats, int floatOffset) {
+            this.location = location;
+            this.floats = floats;
+            this.floatOffset = floatOffset;
+        }
+    }
+
+    public enum Format {
+        FLOAT2(2, GL_FLOAT, 8, false),
+        FLOAT3(3, GL_FLOAT, 12, false),
+        FLOAT4(4, GL_FLOAT, 16, false),
+        /** half-float, позиция относительно центра меша */
+        HALF3(3, GL_HALF_FLOAT, 6, false),
+        /** int16 с фиксированной точкой: центр + значение * шаг */
+        SHORT3(3, GL_SHORT, 6, false),
+        /** uint16 нормализованный, в диапазоне UV меша */
+        UNORM16X2(2, GL_UNSIGNED_SHORT, 4, true),
+        /** октаэдрическая нормаль, int8 нормализованный */
+        OCT8X2(2, GL_BYTE, 2, true),
+        /** uint16 нормализованный, значения уже в [0, 1] (тайл атласа) */
+        UNORM16X4(4, GL_UNSIGNED_SHORT, 8, true);
+
+        public final int components;
+        public final int glType;
+        public final int bytes;
+        public final boolean normalized;
+
+        Format(int components, int glType, int bytes, boolean normalized) {
+            this.components = components;
+            this.glType = glType;
+            this.bytes = bytes;
+            this.normalized = normalized;
+        }
+    }
+
+    public record Attribute(Semantic semantic, Format format, int offset) {
+    }
+
+    // данные экземпляра при инстансинге: mat4 модели + vec3 цвета
+    public static final int INSTANCE_MODEL_LOCATION = 3;
+    public static final int INSTANCE_COLOR_LOCATION = 7;
+    public static final int INSTANCE_FLOATS = 16 + 3;
+
+    public static final VertexLayout POSITION = builder().add(Semantic.POSITION, Format.FLOAT3).build();
+
+    public static final VertexLayout POSITION_TEXCOORD = builder()
+            .add(Semantic.POSITION, Format.FLOAT3)
+            .add(Semantic.TEXCOORD, Format.FLOAT2)
+            .build();
+
+    public static final VertexLayout FLOAT = builder()
+            .add(Semantic.POSITION, Format.FLOAT3)
+            .add(Semantic.TEXCOORD, Format.FLOAT2)
+            .add(Semantic.NORMAL, Format.FLOAT3)
+            .build();
+
+    public static final VertexLayout HALF = builder()
+            .add(Semantic.POSITION, Format.HALF3)
+            .add(Semantic.NORMAL, Format.OCT8X2)
+            .add(Semantic.TEXCOORD, Format.UNORM16X2)
+            .build();
+
+    public static final VertexLayout FIXED = builder()
+            .add(Semantic.POSITION, Format.SHORT3)
+            .add(Semantic.NORMAL, Format.OCT8X2)
+            .add(Semantic.TEXCOORD, Format.UNORM16X2)
+            .build();
+
+    public static final VertexLayout FLOAT_TILED = builder()
+            .add(Semantic.POSITION, Format.FLOAT3)
+            .add(Semantic.TEXCOORD, Format.FLOAT2)
+            .add(Semantic.NORMAL, Format.FLOAT3)
+            .add(Semantic.TILE, Format.FLOAT4)
+            .build();
+
+    public static final VertexLayout FIXED_TILED = builder()
+            .add(Semantic.POSITION, Format.SHORT3)
+            .add(Semantic.NORMAL, Format.OCT8X2)
+            .add(Semantic.TEXCOORD, Format.UNORM16X2)
+            .add(Semantic.TILE, Format.UNORM16X4)
+            .build();
+
+    private final List<Attribute> attributes;
+    private final int stride;
+
+    private VertexLayout(List<Attribute> attributes, int stride) {
+        this.attributes = Collections.unmodifiableList(attributes);
+        this.stride = stride;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /** Float-раскладка для CPU-вершин со stride 3, 5, 8 или 12 */
+    public static VertexLayout forFloatStride(int stride) {
+        return switch (stride) {
+            case 3 -> POSITION;
+            case 5 -> POSITION_TEXCOORD;
+            case 8 -> FLOAT;
+            case 12 -> FLOAT_TILED;
+            default -> throw new IllegalArgumentException("Unsupported vertex stride: " + stride);
+        };
+    }
+
+    /** Размер вершины в байтах */
+    public int getStride() {
+        return stride;
+    }
+
+    public List<Attribute> getAttributes() {
+        return attributes;
+    }
+
+    /** Атрибут или null, если его нет */
+    public Attribute get(Semantic semantic) {
+        for (Attribute attribute : attributes) {
+            if (attribute.semantic() == semantic) return attribute;
+        }
+        return null;
+    }
+
+    /** Stride float-вершины на CPU с теми же атрибутами */
+    public int getFloatStride() {
+        if (get(Semantic.TILE) != null) return 12;
+        if (get(Semantic.NORMAL) != null) return 8;
+        if (get(Semantic.TEXCOORD) != null) return 5;
+        return 3;
+    }
+
+    /** Все атрибуты float — вершины CPU уходят в VBO без перекодирования */
+    public boolean isFloat() {
+        for (Attribute attribute : attributes) {
+            if (attribute.format().glType != GL_FLOAT) return false;
+        }
+        return true;
+    }
+
+    public boolean hasOctNormals() {
+        Attribute normal = get(Semantic.NORMAL);
+        return normal != null && normal.format() == Format.OCT8X2;
+    }
+
+    /**
+     * Атрибуты экземпляра для привязанного VAO из текущего GL_ARRAY_BUFFER:
+     * матрица модели (4 столбца, location 3..6) и цвет (location 7), по одному на экземпляр.
+     */
+    public static void applyInstanceAttributes() {
+        int stride = INSTANCE_FLOATS * Float.BYTES;
+        for (int column = 0; column < 4; column++) {
+            int location = INSTANCE_MODEL_LOCATION + column;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, 4, GL_FLOAT, false, stride, (long) column * 4 * Float.BYTES);
+            glVertexAttribDivisor(location, 1);
+        }
+        glEnableVertexAttribArray(INSTANCE_COLOR_LOCATION);
+        glVertexAttribPointer(INSTANCE_COLOR_LOCATION, 3, GL_FLOAT, false, stride, 16L * Float.BYTES);
+        glVertexAttribDivisor(INSTANCE_COLOR_LOCATION, 1);
+    }
+
+    /** Настраивает атрибуты привязанного VAO под текущий GL_ARRAY_BUFFER */
+    public void apply() {
+        for (Attribute attribute : attributes) {
+            Format format = attribute.format();
+            int location = attribute.semantic().location;
+            glEnableVertexAttribArray(location);
+            glVertexAttribPointer(location, format.components, format.glType, format.normalized,
+                    stride, attribute.offset());
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("VertexLayout[");
+        for (Attribute attribute : attributes) {
+            if (sb.length() > 13) sb.append(", ");
+            sb.append(attribute.semantic()).append(':').append(attribute.format());
+        }
+        return sb.append(", ").append(stride).append(" bytes]").toString();
+    }
+
+    public static class Builder {
+        private final List<Attribute> attributes = new ArrayList<>();
+        private int offset;
+
+        /** Атрибуты кладутся подряд; 4-байтовые форматы выравниваются на 4 */
+        public Builder add(Semantic semantic, Format format) {
+            for (Attribute attribute : attributes) {
+                if (attribute.semantic() == semantic) {
+                    throw new IllegalArgumentException("Duplicate vertex attribute: " + semantic);
+                }
+            }
+            if (format.bytes % 4 == 0) offset = (offset + 3) & -4;
+            attributes.add(new Attribute(semantic, format, offset));
+            offset += format.bytes;
+            return this;
+        }
+
+        public VertexLayout build() {
+            if (attributes.isEmpty() || attributes.get(0).semantic() != Semantic.POSITION) {
+                throw new IllegalArgumentException("Vertex layout must start with a position");
+            }
+            return new VertexLayout(new ArrayList<>(attributes), (offset + 3) & -4);
+        }
+    }
+}
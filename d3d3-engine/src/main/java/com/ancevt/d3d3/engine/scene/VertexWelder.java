@@ -0,0 +1,98 @@
+package com.ancevt.d3d3.engine.scene;
+
+import com.ancevt.d3d3.engine.util.FloatArray;
+
+/**
+ * Дедупликация вершин: одинаковые наборы float (позиция/UV/нормаль) получают один индекс.
+ * Внутри — open addressing хеш-таблица на примитивном int[], без боксинга.
+ */
+public class VertexWelder {
+    private final int stride;
+    private final FloatArray vertices;
+
+    // 0 — пустой слот, иначе индекс вершины + 1
+    private int[] table;
+    private int mask;
+    private int vertexCount;
+
+    public VertexWelder(int stride) {
+        this(stride, 1024);
+    }
+
+    public VertexWelder(int stride, int expectedVertices) {
+        this.stride = stride;
+        this.vertices = new FloatArray(Math.max(expectedVertices, 16) * stride);
+        int capacity = Integer.highestOneBit(Math.max(expectedVertices, 16) * 2 - 1) << 1;
+        table = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Возвращает индекс вершины src[offset .. offset + stride), добавляя её при необходимости */
+    public int add(float[] src, int offset) {
+        int slot = hash(src, offset) & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) break;
+            if (matches(entry - 1, src, offset)) return entry - 1;
+            slot = (slot + 1) & mask;
+        }
+
+        int index = vertexCount++;
+        vertices.addAll(src, offset, stride);
+        table[slot] = index + 1;
+
+        if (vertexCount * 2 > table.length) rehash();
+        return index;
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /** Уникальные вершины (валидны первые getVertexCount() * stride элементов) */
+    public FloatArray getVertices() {
+        return vertices;
+    }
+
+    public void clear() {
+        vertices.clear();
+        java.util.Arrays.fill(table, 0);
+        vertexCount = 0;
+    }
+
+    private boolean matches(int index, float[] src, int offset) {
+        float[] data = vertices.array();
+        int base = index * stride;
+        for (int i = 0; i < stride; i++) {
+            if (Float.floatToRawIntBits(data[base + i]) != Float.floatToRawIntBits(src[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        int newMask = newTable.length - 1;
+        float[] data = vertices.array();
+        for (int i = 0; i < vertexCount; i++) {
+            int slot = hash(data, i * stride) & newMask;
+            while (newTable[slot] != 0) slot = (slot + 1) & newMask;
+            newTable[slot] = i + 1;
+        }
+        table = newTable;
+        mask = newMask;
+    }
+
+    private int hash(float[] src, int offset) {
+        int h = 0;
+        for (int i = 0; i < stride; i++) {
+            h = (h ^ Float.floatToRawIntBits(src[offset + i])) * 0x9E3779B1;
+        }
+        return h ^ (h >>> 16);
+    }
+}
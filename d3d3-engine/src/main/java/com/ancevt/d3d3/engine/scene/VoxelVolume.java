@@ -0,0 +1,47 @@
+package com.ancevt.d3d3.engine.scene;
+
+import lombok.Getter;
+
+/**
+ * Плотный воксельный объём: один байт на воксель, 0 — пусто, иначе номер материала (1..255).
+ * Оси как в движке: Y — вверх.
+ */
+public class VoxelVolume {
+    @Getter
+    private final int sizeX;
+    @Getter
+    private final int sizeY;
+    @Getter
+    private final int sizeZ;
+
+    private final byte[] voxels;
+
+    public VoxelVolume(int sizeX, int sizeY, int sizeZ) {
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+        this.voxels = new byte[sizeX * sizeY * sizeZ];
+    }
+
+    /** @return материал вокселя или 0 (в т.ч. за пределами объёма) */
+    public int get(int x, int y, int z) {
+        if (x < 0 || y < 0 || z < 0 || x >= sizeX || y >= sizeY || z >= sizeZ) return 0;
+        return voxels[x + sizeX * (y + sizeY * z)] & 0xFF;
+    }
+
+    public void set(int x, int y, int z, int material) {
+        voxels[x + sizeX * (y + sizeY * z)] = (byte) material;
+    }
+
+    public int getSize(int axis) {
+        return axis == 0 ? sizeX : axis == 1 ? sizeY : sizeZ;
+    }
+
+    public int getSolidCount() {
+        int count = 0;
+        for (byte v : voxels) {
+            if (v != 0) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,78 @@
+package com.ancevt.d3d3.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Растущий массив примитивных float без боксинга.
+ */
+public class FloatArray {
+    private float[] data;
+    private int size;
+
+    public FloatArray() {
+        this(16);
+    }
+
+    public FloatArray(int capacity) {
+        data = new float[Math.max(capacity, 1)];
+    }
+
+    public void add(float v) {
+        ensureCapacity(size + 1);
+        data[size++] = v;
+    }
+
+    public void add(float a, float b) {
+        ensureCapacity(size + 2);
+        data[size++] = a;
+        data[size++] = b;
+    }
+
+    public void add(float a, float b, float c) {
+        ensureCapacity(size + 3);
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(float[] src, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(src, offset, data, size, length);
+        size += length;
+    }
+
+    public float get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, float v) {
+        data[index] = v;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Прямой доступ к внутреннему массиву (валидны первые size() элементов) */
+    public float[] array() {
+        return data;
+    }
+
+    public float[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ancevt.d3d3.engine.util;
+
+import java.util.Arrays;
+
+/**
+ * Растущий массив примитивных int без боксинга.
+ */
+public class IntArray {
+    private int[] data;
+    private int size;
+
+    public IntArray() {
+        this(16);
+    }
+
+    public IntArray(int capacity) {
+        data = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int v) {
+        ensureCapacity(size + 1);
+        data[size++] = v;
+    }
+
+    public void add(int a, int b, int c) {
+        ensureCapacity(size + 3);
+        data[size++] = a;
+        data[size++] = b;
+        data[size++] = c;
+    }
+
+    public void addAll(int[] src, int offset, int length) {
+        ensureCapacity(size + length);
+        System.arraycopy(src, offset, data, size, length);
+        size += length;
+    }
+
+    public int get(int index) {
+        return data[index];
+    }
+
+    public void set(int index, int v) {
+        data[index] = v;
+    }
+
+    /** Линейный поиск — для коротких массивов */
+    public boolean contains(int v) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == v) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /** Прямой доступ к внутреннему массиву (валидны первые size() элементов) */
+    public int[] array() {
+        return data;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity > data.length) {
+            data = Arrays.copyOf(data, Math.max(capacity, data.length * 2));
+        }
+    }
+}
@@ -1,23 +1,18 @@
 package com.ancevt.d3d3.engine.util;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.stream.Collectors;
+import com.ancevt.d3d3.engine.asset.AssetBuffer;
+import com.ancevt.d3d3.engine.asset.AssetSources;
+
+import java.nio.charset.StandardCharsets;
 
 public class TextLoader {
 
     public static String load(String resourcePath) {
-        try (InputStream in = TextLoader.class.getClassLoader().getResourceAsStream(resourcePath)) {
-            if (in == null) {
+        try (AssetBuffer asset = AssetSources.open(resourcePath)) {
+            if (asset == null) {
                 throw new RuntimeException("Shader file not found: " + resourcePath);
             }
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
-                return reader.lines().collect(Collectors.joining("\n"));
-            }
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to load shader: " + resourcePath, e);
+            return StandardCharsets.UTF_8.decode(asset.data().duplicate()).toString();
         }
     }
 }
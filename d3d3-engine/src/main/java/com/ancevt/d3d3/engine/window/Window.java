@@ -51,6 +51,14 @@ public class Window {
         GLFW.glfwTerminate();
     }
 
+    /** Размер кадра в пикселях, (ширина, высота); на HiDPI может отличаться от размера окна */
+    public void getFramebufferSize(int[] size) {
+        int[] w = new int[1], h = new int[1];
+        GLFW.glfwGetFramebufferSize(window, w, h);
+        size[0] = w[0];
+        size[1] = h[0];
+    }
+
     public long getWindowHandle() {
         return window;
     }